@@ -1,11 +1,21 @@
 package io.github.seiya_matsuoka.interactivelogmaskingcli;
 
+import io.github.seiya_matsuoka.interactivelogmaskingcli.cli.CommandLineCli;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.cli.InteractiveCli;
 
 /** アプリ（interactive-log-masking-cli）のエントリポイント。 */
 public class App {
 
   public static void main(String[] args) {
-    InteractiveCli.createDefault().run();
+    // 引数なしは対話モード、引数ありはパイプライン等で使う非対話モード
+    if (args.length == 0) {
+      InteractiveCli.createDefault().run();
+      return;
+    }
+
+    int exitCode = CommandLineCli.createDefault().run(args);
+    if (exitCode != CommandLineCli.EXIT_OK) {
+      System.exit(exitCode);
+    }
   }
 }
@@ -0,0 +1,247 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.cli;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.RuleValidationException;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.ProcessingOptions;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskRunReport;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.service.FileMaskingService;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.service.FollowPlan;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.service.StreamPlan;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 引数で動かす（非対話の）CLI。
+ *
+ * <p>シェルのパイプラインや常駐で使うためのモードを提供する。対話は行わず、処理結果（件数）やエラーは標準エラーへ出す。
+ *
+ * <pre>
+ * --stdin [--rules &lt;path&gt;] [--report &lt;path&gt;] [--flush-ms &lt;n&gt;] [--byte-level] [--quiet]
+ * --follow &lt;input&gt; [--out &lt;dir&gt;] [--suffix &lt;s&gt;] [--checkpoint &lt;path&gt;] [--poll-ms &lt;n&gt;] ...
+ * （共通）[--metrics-file &lt;path&gt;] [--metrics-port &lt;n&gt;] [--metrics-interval-ms &lt;n&gt;]
+ * </pre>
+ */
+public class CommandLineCli {
+
+  /** 正常終了。 */
+  public static final int EXIT_OK = 0;
+
+  /** 実行時のエラー（ルール不正・入出力エラーなど）。 */
+  public static final int EXIT_ERROR = 1;
+
+  /** 引数の誤り。 */
+  public static final int EXIT_USAGE = 2;
+
+  private static final String USAGE =
+      String.join(
+          System.lineSeparator(),
+          "使い方: interactive-log-masking-cli --stdin [オプション]",
+          "        interactive-log-masking-cli --follow <input> [オプション]",
+          "  （引数なしで起動すると対話モードになります）",
+          "",
+          "  --stdin            標準入力をマスキングして標準出力へ書き出す",
+          "  --follow <input>   入力（ファイル/ディレクトリ）への追記を追いかけて out へ追記し続ける",
+          "  --rules <path>     ルールJSON（既定: rules/mask-rules.json）",
+          "  --report <path>    終了時にレポート（JSON）を出力する（--stdin のみ）",
+          "  --flush-ms <n>     入力が流れ続けている間の flush 間隔（ms。既定: "
+              + ProcessingOptions.DEFAULT_STREAM_FLUSH_MILLIS
+              + "。--stdin のみ）",
+          "  --out <dir>        出力先ディレクトリ（既定: out。--follow のみ）",
+          "  --suffix <s>       出力ファイル名のサフィックス（既定: なし。--follow のみ）",
+          "  --checkpoint <p>   処理位置の保存先（既定: <out>/"
+              + FollowPlan.DEFAULT_CHECKPOINT_NAME
+              + "。--follow のみ）",
+          "  --poll-ms <n>      変更の確認間隔（ms。既定: "
+              + ProcessingOptions.DEFAULT_FOLLOW_POLL_MILLIS
+              + "。--follow のみ）",
+          "  --metrics-file <p> 実行中のメトリクスを Prometheus のテキスト形式で書き出す（一定間隔で書き直す）",
+          "  --metrics-port <n> 実行中のメトリクスを http://127.0.0.1:<n>/metrics で公開する",
+          "  --metrics-interval-ms <n>  --metrics-file を書き直す間隔（ms。既定: "
+              + ProcessingOptions.DEFAULT_METRICS_INTERVAL_MILLIS
+              + "）",
+          "  --byte-level       ルールが ASCII のみの場合、バイト単位で処理する",
+          "  --quiet            終了時の件数と、ルールの処理コストの警告を標準エラーへ出さない",
+          "  -h, --help         この使い方を表示する");
+
+  private final FileMaskingService service;
+  private final InputStream in;
+  private final OutputStream out;
+  private final PrintStream err;
+
+  public CommandLineCli(
+      FileMaskingService service, InputStream in, OutputStream out, PrintStream err) {
+    this.service = service;
+    this.in = in;
+    this.out = out;
+    this.err = err;
+  }
+
+  /** 既定構成で起動するためのファクトリ（標準入力/標準出力をバッファ無しで直接使う）。 */
+  public static CommandLineCli createDefault() {
+    // System.out は行単位で flush されるため、出力の flush は StreamMasker 側で制御する
+    return new CommandLineCli(
+        new FileMaskingService(),
+        new FileInputStream(FileDescriptor.in),
+        new FileOutputStream(FileDescriptor.out),
+        System.err);
+  }
+
+  /**
+   * 引数に従って実行する。
+   *
+   * @param args コマンドライン引数
+   * @return 終了コード
+   */
+  public int run(String[] args) {
+
+    boolean stdin = false;
+    boolean quiet = false;
+    Path followInput = null;
+    Path outputBase = Path.of("out");
+    String suffix = "";
+    Path checkpointFile = null;
+    Path rulesPath = Path.of("rules").resolve("mask-rules.json");
+    Path reportFile = null;
+    ProcessingOptions options = ProcessingOptions.defaults();
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String arg = args[i];
+        switch (arg) {
+          case "--stdin" -> stdin = true;
+          case "--follow" -> followInput = Path.of(value(args, ++i, arg));
+          case "--out" -> outputBase = Path.of(value(args, ++i, arg));
+          case "--suffix" -> suffix = value(args, ++i, arg);
+          case "--checkpoint" -> checkpointFile = Path.of(value(args, ++i, arg));
+          case "--poll-ms" -> options.setFollowPollMillis(parseLong(value(args, ++i, arg), arg));
+          case "--rules" -> rulesPath = Path.of(value(args, ++i, arg));
+          case "--report" -> reportFile = Path.of(value(args, ++i, arg));
+          case "--flush-ms" -> options.setStreamFlushMillis(parseLong(value(args, ++i, arg), arg));
+          case "--metrics-file" -> options.setMetricsFile(Path.of(value(args, ++i, arg)));
+          case "--metrics-port" -> options.setMetricsPort(parseInt(value(args, ++i, arg), arg));
+          case "--metrics-interval-ms" ->
+              options.setMetricsIntervalMillis(parseLong(value(args, ++i, arg), arg));
+          case "--byte-level" -> options.setByteLevelMasking(true);
+          case "--quiet" -> quiet = true;
+          case "-h", "--help" -> {
+            err.println(USAGE);
+            return EXIT_OK;
+          }
+          default -> throw new IllegalArgumentException("不明な引数です: " + arg);
+        }
+      }
+      if (stdin == (followInput != null)) {
+        throw new IllegalArgumentException("モードを1つ指定してください（--stdin / --follow）");
+      }
+    } catch (IllegalArgumentException e) {
+      err.println("[ERROR] " + e.getMessage());
+      err.println(USAGE);
+      return EXIT_USAGE;
+    }
+
+    try {
+      if (!quiet) {
+        // 処理コストの警告（指数関数的なものは実行時の検証でエラーになる）
+        for (String warning : service.ruleWarnings(rulesPath)) {
+          err.println("[WARN] " + warning);
+        }
+      }
+      if (stdin) {
+        MaskRunReport report =
+            service.runStream(new StreamPlan(rulesPath, reportFile, options), in, out);
+        if (!quiet) {
+          printCounts(report);
+        }
+      } else {
+        follow(
+            new FollowPlan(followInput, outputBase, rulesPath, suffix, checkpointFile, options),
+            quiet);
+      }
+      return EXIT_OK;
+
+    } catch (RuleValidationException e) {
+      err.println("[ERROR] ルール設定が不正です: " + e.getMessage());
+    } catch (IOException e) {
+      err.println("[ERROR] 入出力エラー: " + e.getMessage());
+    } catch (Exception e) {
+      err.println("[ERROR] 予期しないエラー: " + e.getMessage());
+    }
+    return EXIT_ERROR;
+  }
+
+  /** 終了（Ctrl+C など）の要求があるまで追従する。終了時はチェックポイントを保存してから戻る。 */
+  private void follow(FollowPlan plan, boolean quiet) throws Exception {
+    AtomicBoolean stop = new AtomicBoolean();
+    CountDownLatch done = new CountDownLatch(1);
+
+    Thread hook =
+        new Thread(
+            () -> {
+              stop.set(true);
+              try {
+                // チェックポイントの保存まで待つ（ポーリング間隔 + 余裕）
+                done.await(plan.options().getFollowPollMillis() + 10_000L, TimeUnit.MILLISECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            },
+            "follow-shutdown");
+    Runtime.getRuntime().addShutdownHook(hook);
+
+    err.println("追従を開始しました（Ctrl+C で終了）: " + plan.inputPath());
+    try {
+      MaskRunReport report = service.runFollow(plan, stop::get, err::println);
+      if (!quiet) {
+        // フックから停止された場合も、フックが待っている間に出力する
+        printCounts(report);
+      }
+    } finally {
+      done.countDown();
+      try {
+        Runtime.getRuntime().removeShutdownHook(hook);
+      } catch (IllegalStateException e) {
+        // 終了処理中（フックから停止された場合）は外せないが、そのまま終了してよい
+      }
+    }
+  }
+
+  private void printCounts(MaskRunReport report) {
+    err.println("masked: " + report.totalCount());
+    for (Map.Entry<String, Long> e : new TreeMap<>(report.totalPerRule()).entrySet()) {
+      err.println("  " + e.getKey() + ": " + e.getValue());
+    }
+  }
+
+  private static String value(String[] args, int index, String option) {
+    if (index >= args.length) {
+      throw new IllegalArgumentException(option + " の値を指定してください");
+    }
+    return args[index];
+  }
+
+  private static int parseInt(String value, String option) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(option + " には数値を指定してください: " + value);
+    }
+  }
+
+  private static long parseLong(String value, String option) {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(option + " には数値を指定してください: " + value);
+    }
+  }
+}
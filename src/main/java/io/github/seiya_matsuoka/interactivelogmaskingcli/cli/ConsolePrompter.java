@@ -90,6 +90,34 @@ public class ConsolePrompter {
     return Path.of(v);
   }
 
+  /** 整数入力（空入力ならデフォルトを採用、min..max の範囲外は再入力）。 */
+  public int askInt(String label, int defaultValue, int min, int max) {
+    if (min > max || defaultValue < min || defaultValue > max) {
+      throw new IllegalArgumentException("デフォルト値（defaultValue）または範囲（min/max）が不正です。");
+    }
+
+    while (true) {
+      out.printf("%s（%d〜%d、空Enterで: %d）: ", label, min, max, defaultValue);
+      out.flush();
+
+      String raw = readLine().trim();
+
+      if (raw.isEmpty()) {
+        return defaultValue;
+      }
+      try {
+        int n = Integer.parseInt(raw);
+        if (n < min || n > max) {
+          out.println("  範囲外です。");
+          continue;
+        }
+        return n;
+      } catch (NumberFormatException e) {
+        out.println("  数字で入力してください。");
+      }
+    }
+  }
+
   /** 選択肢（1..N）の入力。 */
   public int askChoice(String label, List<String> options, int defaultIndex1Based) {
     Objects.requireNonNull(options, "options");
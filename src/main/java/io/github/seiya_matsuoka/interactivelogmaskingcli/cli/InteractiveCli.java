@@ -1,20 +1,29 @@
 package io.github.seiya_matsuoka.interactivelogmaskingcli.cli;
 
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.RegexCost;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.RuleCost;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.RuleValidationException;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.RulesRepository;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.BinaryPolicy;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.OutputCompression;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.ProcessingOptions;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.ProgressTracker;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskRunReport;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskedFileReport;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.service.FileMaskingService;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.service.RunPlan;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Scanner;
 
 /**
  * 対話CLIのエントリポイント。
  *
- * <p>ユーザー入力から RunPlan を組み立て、FileMaskingService.run(plan) を呼び出す。
+ * <p>ユーザー入力から RunPlan を組み立て、FileMaskingService.runSummary(plan, progress) を呼び出す。
  */
 public class InteractiveCli {
 
@@ -54,6 +63,7 @@ public class InteractiveCli {
 
     try {
       RunPlan plan = askRunPlan();
+      printRuleCosts(plan);
       out.println();
 
       boolean ok = prompter.askYesNo("上記の内容で実行しますか？", true);
@@ -64,7 +74,15 @@ public class InteractiveCli {
 
       out.println();
       out.println("実行中...");
-      MaskRunReport report = service.run(plan);
+      // 実行中は進捗（ファイル数・バイト数・速度・残り時間）を1行で更新し続ける
+      ProgressTracker progress = new ProgressTracker();
+      MaskRunReport report;
+      ProgressTicker ticker = ProgressTicker.start(progress, out);
+      try {
+        report = service.runSummary(plan, progress);
+      } finally {
+        ticker.close();
+      }
 
       out.println();
       printReport(report, plan.dryRun());
@@ -110,11 +128,15 @@ public class InteractiveCli {
     // 4) ルール指定
     RuleWizard.RuleSource ruleSource = ruleWizard.chooseRuleSource(defaultRules);
 
-    // 5) RunPlan
+    // 5) 詳細オプション（既定のままでよければスキップ）
+    ProcessingOptions options = askProcessingOptions();
+
+    // 6) RunPlan
     RunPlan plan =
-        (ruleSource.rulesPath() != null)
-            ? RunPlan.ofRulesPath(inputPath, outputBase, ruleSource.rulesPath(), suffix, dryRun)
-            : RunPlan.ofConfig(inputPath, outputBase, ruleSource.config(), suffix, dryRun);
+        ((ruleSource.rulesPath() != null)
+                ? RunPlan.ofRulesPath(inputPath, outputBase, ruleSource.rulesPath(), suffix, dryRun)
+                : RunPlan.ofConfig(inputPath, outputBase, ruleSource.config(), suffix, dryRun))
+            .withOptions(options);
 
     // 実行内容のサマリを表示（ここはまだ実行前）
     out.println();
@@ -123,6 +145,49 @@ public class InteractiveCli {
     out.println("out   : " + plan.outputBase());
     out.println("suffix: " + (plan.suffix().isBlank() ? "(none)" : plan.suffix()));
     out.println("dryRun: " + plan.dryRun());
+    out.println("parallelism: " + plan.options().getParallelism());
+    if (plan.options().getChunkThresholdBytes() > 0) {
+      out.println("split >= : " + plan.options().getChunkThresholdBytes() + " bytes");
+    }
+    if (plan.options().getPipelineWorkers() > 0) {
+      out.println("pipeline workers: " + plan.options().getPipelineWorkers());
+    }
+    if (plan.options().isByteLevelMasking()) {
+      out.println("byte-level: true");
+    }
+    if (plan.options().isIncremental()) {
+      out.println("incremental: true");
+    }
+    if (plan.options().isPassthroughUnchanged()) {
+      out.println("passthrough: true");
+    }
+    if (plan.options().getOutputCompression() != OutputCompression.MATCH_INPUT) {
+      out.println("compression: " + plan.options().getOutputCompression());
+    }
+    if (!plan.options().getIncludeGlobs().isEmpty()) {
+      out.println("include: " + String.join(", ", plan.options().getIncludeGlobs()));
+    }
+    if (!plan.options().getExcludeGlobs().isEmpty()) {
+      out.println("exclude: " + String.join(", ", plan.options().getExcludeGlobs()));
+    }
+    if (plan.options().getDiscoveryThreads() > 0) {
+      out.println("discovery threads: " + plan.options().getDiscoveryThreads());
+    }
+    if (plan.options().getLongLineThresholdChars() > 0) {
+      out.println("long line > : " + plan.options().getLongLineThresholdChars() + " chars");
+    }
+    if (plan.options().getMappedReadThresholdBytes() > 0) {
+      out.println("mmap >=  : " + plan.options().getMappedReadThresholdBytes() + " bytes");
+    }
+    if (plan.options().isCollectMetrics()) {
+      out.println("metrics: true");
+    }
+    if (plan.options().isFlightRecording()) {
+      out.println("jfr: true");
+    }
+    if (plan.options().getMetricsFile() != null) {
+      out.println("prometheus: " + plan.options().getMetricsFile());
+    }
     out.println(
         "rules : " + (plan.rulesPath() != null ? plan.rulesPath() : "(interactive config)"));
     out.println("------------------");
@@ -130,9 +195,156 @@ public class InteractiveCli {
     return plan;
   }
 
+  /** ルールごとの正規表現の処理コストと、警告を表示する（実行前の確認用）。 */
+  private void printRuleCosts(RunPlan plan) throws IOException {
+    List<RuleCost> costs = service.estimateRuleCosts(plan);
+    if (costs.isEmpty()) {
+      return;
+    }
+    out.println("---- 正規表現の処理コスト ----");
+    for (RuleCost cost : costs) {
+      out.println(cost.id() + ": " + cost.cost());
+    }
+    for (RuleCost cost : costs) {
+      if (cost.cost() == RegexCost.EXPONENTIAL) {
+        out.println("[ERROR] " + cost.id() + ": 行の長さに対して処理時間が指数関数的に増えます（実行できません）");
+      } else if (cost.isWarning()) {
+        out.println("[WARN] " + cost.id() + ": 長い行で処理が遅くなるおそれがあります");
+      }
+      for (String finding : cost.findings()) {
+        out.println("  - " + finding);
+      }
+    }
+    out.println("------------------");
+  }
+
+  private ProcessingOptions askProcessingOptions() {
+    ProcessingOptions options = ProcessingOptions.defaults();
+
+    boolean advanced = prompter.askYesNo("詳細オプションを設定しますか？", false);
+    if (!advanced) {
+      return options;
+    }
+
+    // 並列度（同時に処理するファイル数）
+    int cpus = Runtime.getRuntime().availableProcessors();
+    options.setParallelism(
+        prompter.askInt("同時に処理するファイル数（並列度）を入力してください", 1, 1, Math.max(cpus * 4, 1)));
+
+    // 1ファイル内のパイプライン処理（並列度 1 の場合のみ有効）
+    if (options.getParallelism() == 1) {
+      options.setPipelineWorkers(
+          prompter.askInt("読み込み/書き出しと並行してマスキングするワーカー数（0 で無効）", 0, 0, Math.max(cpus * 4, 1)));
+    }
+
+    // 大きなファイルの分割処理（並列度 2 以上の場合のみ有効）
+    if (options.getParallelism() > 1) {
+      int thresholdMb =
+          prompter.askInt("このサイズ（MB）以上のファイルは分割して並列処理します（0 で無効）", 0, 0, Integer.MAX_VALUE);
+      options.setChunkThresholdBytes(thresholdMb * 1024L * 1024L);
+    }
+
+    // ASCII のみのルールは UTF-8 のバイト列のまま処理する（デコード/エンコードを省く）
+    options.setByteLevelMasking(
+        prompter.askYesNo("ルールが ASCII のみの場合、バイト単位で高速に処理しますか？", false));
+
+    // 置換の無い範囲はそのまま転送する（改行も入力のまま残る）
+    options.setPassthroughUnchanged(
+        prompter.askYesNo("置換の無い範囲は入力をそのままコピーしますか？（改行も入力のまま残ります）", false));
+
+    // 前回から変わっていないファイルは処理を省く（out/ のマニフェストで判定）
+    options.setIncremental(
+        prompter.askYesNo("前回から変わっていないファイルは処理を省きますか？（差分実行）", false));
+
+    // 入力ディレクトリの絞り込み（カンマ区切りの glob。空なら絞り込まない）
+    options.setIncludeGlobs(
+        splitGlobs(prompter.askString("処理対象にするファイルの glob（カンマ区切り。例: **/*.log）", "")));
+    options.setExcludeGlobs(
+        splitGlobs(prompter.askString("処理対象外にするファイル/ディレクトリの glob（カンマ区切り）", "")));
+
+    // 入力ディレクトリを辿りながら、見つかったファイルから処理を始める
+    options.setDiscoveryThreads(
+        prompter.askInt(
+            "入力ディレクトリを辿るスレッド数（0 ですべて列挙してから処理）", 0, 0, Math.max(cpus * 4, 1)));
+
+    // gzip の出力（gzip の入力は常に展開しながら読む）
+    int compression =
+        prompter.askChoice(
+            "出力ファイルの圧縮方法を選んでください",
+            List.of("入力が gzip なら gzip で出力する", "圧縮しない", "すべて gzip で出力する"),
+            1);
+    options.setOutputCompression(
+        switch (compression) {
+          case 2 -> OutputCompression.NONE;
+          case 3 -> OutputCompression.GZIP;
+          default -> OutputCompression.MATCH_INPUT;
+        });
+    options.setCompressionThreads(
+        prompter.askInt(
+            "gzip 出力を圧縮するスレッド数（大きなファイルのみ。0 で1スレッド）", 0, 0, Math.max(cpus * 4, 1)));
+
+    // バイナリ（コアダンプ・圧縮ファイルなど）と判定したファイルの扱い
+    int binary =
+        prompter.askChoice(
+            "バイナリと判定したファイルの扱いを選んでください",
+            List.of("スキップしてレポートに理由を記録する", "エラーにする", "判定せずにテキストとして処理する"),
+            1);
+    options.setBinaryPolicy(
+        switch (binary) {
+          case 2 -> BinaryPolicy.FAIL;
+          case 3 -> BinaryPolicy.PROCESS;
+          default -> BinaryPolicy.SKIP;
+        });
+
+    // 極端に長い行（1行の JSON ダンプなど）は、行全体を読まずに区切って処理する
+    int longLineKb =
+        prompter.askInt(
+            "この長さ（K文字）を超える行は区切って処理します（0 で無効）", 0, 0, Integer.MAX_VALUE / 1024);
+    options.setLongLineThresholdChars(longLineKb * 1024);
+
+    // 大きなファイルの読み込み方法（メモリマップ）
+    int mappedMb =
+        prompter.askInt("このサイズ（MB）以上のファイルはメモリマップで読み込みます（0 で無効）", 0, 0, Integer.MAX_VALUE);
+    options.setMappedReadThresholdBytes(mappedMb * 1024L * 1024L);
+
+    // 遅いルール・ファイルを探すための計測（レポートに記録する）
+    options.setCollectMetrics(
+        prompter.askYesNo("ルールごと・ファイルごとの処理時間をレポートに記録しますか？（処理は少し遅くなります）", false));
+
+    // 正規表現のホットスポットなどを調べるための JFR の記録（レポートの隣に .jfr を出力する）
+    options.setFlightRecording(
+        prompter.askYesNo("実行の間 JFR（Flight Recorder）で記録しますか？（レポートの隣に .jfr を出力します）", false));
+
+    // 実行中のメトリクス（Prometheus のテキスト形式。textfile collector 向け）
+    String metricsFile =
+        prompter.askString("Prometheus 形式のメトリクスを書き出すファイル（空欄で出力しない）", "");
+    if (!metricsFile.isBlank()) {
+      options.setMetricsFile(Path.of(metricsFile.strip()));
+    }
+
+    return options;
+  }
+
+  private static List<String> splitGlobs(String value) {
+    if (value == null || value.isBlank()) {
+      return List.of();
+    }
+    return Arrays.stream(value.split(",")).map(String::trim).filter(v -> !v.isEmpty()).toList();
+  }
+
   private void printReport(MaskRunReport report, boolean dryRun) {
     out.println("---- 結果 ----");
-    out.println("対象ファイル数: " + report.files().size());
+    out.println("対象ファイル数: " + report.fileCount());
+    if (report.cachedCount() > 0) {
+      out.println("処理を省いたファイル数: " + report.cachedCount() + "（前回から変更なし。件数は前回の値）");
+    }
+    List<MaskedFileReport> skipped = report.skipped();
+    if (!skipped.isEmpty()) {
+      out.println("スキップしたファイル数: " + skipped.size() + "（バイナリと判定）");
+      for (MaskedFileReport f : skipped) {
+        out.println("  - " + f.inputFile() + " (" + f.skippedReason() + ")");
+      }
+    }
     out.println("合計置換件数 : " + report.totalCount());
 
     out.println();
@@ -0,0 +1,125 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.cli;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.ProgressTracker;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 実行中の進捗を1行で表示し続ける（対話CLI用）。
+ *
+ * <p>バックグラウンドのスレッドが一定間隔で {@link ProgressTracker#snapshot()} を読み、 行頭（{@code \r}）から同じ行を書き直す。
+ * 表示の間隔で間引くため、処理するファイルの数が多くても出力は増えない。
+ *
+ * <p>表示例: {@code [3/10 files] 120.5/400.0 MB (30%) 85.2 MB/s hits=1234 ETA 00:00:03}
+ *
+ * <p>{@link #close()} で停止し、最後の状態を表示して改行する。
+ */
+final class ProgressTicker implements AutoCloseable {
+
+  /** 表示の間隔（ms）。 */
+  static final long INTERVAL_MILLIS = 1_000L;
+
+  private static final double MB = 1024.0 * 1024.0;
+
+  private final ProgressTracker tracker;
+  private final PrintStream out;
+  private final ScheduledExecutorService timer;
+
+  // 直前に表示した時点の値（現在の速度を求める。表示スレッドからのみ触る）
+  private long lastBytes;
+  private long lastNanos;
+  private int lastWidth;
+
+  private ProgressTicker(ProgressTracker tracker, PrintStream out) {
+    this.tracker = tracker;
+    this.out = out;
+    this.timer =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r, "progress-ticker");
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  /**
+   * 表示を開始する。
+   *
+   * @param tracker 表示する進捗
+   * @param out 表示先
+   * @return 開始した表示（close で停止する）
+   */
+  static ProgressTicker start(ProgressTracker tracker, PrintStream out) {
+    ProgressTicker ticker = new ProgressTicker(tracker, out);
+    ticker.timer.scheduleAtFixedRate(
+        ticker::render, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    return ticker;
+  }
+
+  /** 表示を停止し、最後の状態を表示して改行する。 */
+  @Override
+  public void close() {
+    timer.shutdownNow();
+    try {
+      timer.awaitTermination(INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    render();
+    out.println();
+  }
+
+  private synchronized void render() {
+    ProgressTracker.Snapshot s = tracker.snapshot();
+
+    // 現在の速度は、直前の表示からの増分で求める（初回は開始からの平均）
+    long dNanos = s.elapsedNanos() - lastNanos;
+    double bytesPerSec = (dNanos > 0) ? (s.bytesDone() - lastBytes) * 1e9 / dNanos : 0.0;
+    lastBytes = s.bytesDone();
+    lastNanos = s.elapsedNanos();
+
+    String line = format(s, bytesPerSec);
+    // 前回の表示より短い場合は、残りを空白で消す
+    int pad = Math.max(0, lastWidth - line.length());
+    lastWidth = line.length();
+    out.print("\r" + line + " ".repeat(pad));
+    out.flush();
+  }
+
+  /**
+   * 進捗を1行の文字列にする。
+   *
+   * @param s 進捗
+   * @param bytesPerSec 現在の速度（バイト/秒）
+   * @return 表示する文字列（改行・{@code \r} を含まない）
+   */
+  static String format(ProgressTracker.Snapshot s, double bytesPerSec) {
+    // 合計が確定するまでは、合計に "+" を付ける（まだ増える）
+    String more = s.totalsKnown() ? "" : "+";
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ROOT, "[%d/%d%s files] ", s.filesDone(), s.filesTotal(), more));
+    sb.append(
+        String.format(
+            Locale.ROOT,
+            "%.1f/%.1f%s MB (%d%%) %.1f MB/s hits=%d",
+            s.bytesDone() / MB,
+            s.bytesTotal() / MB,
+            more,
+            (int) (s.fraction() * 100),
+            bytesPerSec / MB,
+            s.hits()));
+
+    long eta = s.etaNanos();
+    sb.append(" ETA ").append((eta >= 0) ? formatDuration(eta) : "--:--:--");
+    return sb.toString();
+  }
+
+  private static String formatDuration(long nanos) {
+    long sec = TimeUnit.NANOSECONDS.toSeconds(nanos);
+    return String.format(
+        Locale.ROOT, "%02d:%02d:%02d", sec / 3600, (sec / 60) % 60, sec % 60);
+  }
+}
@@ -0,0 +1,539 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.config;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 正規表現が「UTF-8 のバイト列を1バイト=1文字として見ても、デコード後の文字列と同じ結果になる」かを判定する。
+ *
+ * <p>判定に通ったルールだけで構成されたルールセットは、{@link
+ * io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngine#maskBytes} でデコード/エンコードを省いて処理できる。
+ *
+ * <h2>条件（保守的に判定する）</h2>
+ *
+ * <ul>
+ *   <li>文字を消費する要素（リテラル・文字クラス・\d \w \s 等）は ASCII の文字にしかマッチしない。
+ *       非 ASCII 文字を構成するバイト（0x80 以上）には何もマッチしないため、マッチ範囲は ASCII の連続部分に限られる。
+ *   <li>空文字にマッチし得ない（空マッチは多バイト文字の途中の位置にも現れてしまうため）。
+ *   <li>\p \h \v \R \X などの、非 ASCII 文字の一部にだけマッチし得る要素を含まない。
+ *   <li>非 ASCII 文字すべてにマッチする要素（否定クラス {@code [^...]}、\S \D \W、DOTALL / UNIX_LINES 下の {@code .}）は、
+ *       「直前が ASCII の要素」かつ「最長一致の {@code *} / {@code +}」で、直後が ASCII の要素・{@code \z}・パターン末尾の場合に限り許可する
+ *       （マッチの開始/終了が多バイト文字の途中にならないため）。
+ *   <li>行末の判定が非 ASCII の改行文字（U+0085 等）に依存する {@code $} / \Z、複数行モードの {@code ^} を含まない。
+ *   <li>先読み/後読み・後方参照・{@code \b} / {@code \B} を含まない（単語境界は、単語文字の直後の結合文字（U+0301 等）を単語の一部とみなすため、
+ *       ASCII のバイトだけでは判定できない）。
+ *   <li>UNICODE_CASE / UNICODE_CHARACTER_CLASS / COMMENTS / CANON_EQ を使わない。
+ * </ul>
+ */
+final class AsciiSafetyAnalyzer {
+
+  /** インラインフラグ（例: {@code (?i)}, {@code (?-d:...)}）の検出用。 */
+  private static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?([a-zA-Z-]+)[:)]");
+
+  private final String src;
+  private final boolean multiline;
+  private final boolean unixLines;
+  private final boolean dotMatchesAll;
+  private int pos;
+
+  /** 非 ASCII にもマッチする要素の直後で、まだ「終了位置を確定させる要素」が現れていない。 */
+  private boolean pending;
+
+  /** グループ直前の ASCII の要素を、グループ先頭の非 ASCII にもマッチする要素の「直前」として使った。 */
+  private boolean entryUsed;
+
+  private AsciiSafetyAnalyzer(
+      String src, boolean multiline, boolean unixLines, boolean dotMatchesAll) {
+    this.src = src;
+    this.multiline = multiline;
+    this.unixLines = unixLines;
+    this.dotMatchesAll = dotMatchesAll;
+  }
+
+  /**
+   * パターンがバイト単位の処理で同じ結果になるかを判定する。
+   *
+   * @param regex 正規表現（検証済み）
+   * @param flags {@link Pattern#compile(String, int)} に渡すフラグ
+   * @return true: ASCII 安全（バイト単位で処理してよい）
+   */
+  static boolean isAsciiSafe(String regex, int flags) {
+
+    if (regex == null || regex.isEmpty()) {
+      return false;
+    }
+
+    int unsupported =
+        Pattern.UNICODE_CASE | Pattern.UNICODE_CHARACTER_CLASS | Pattern.COMMENTS | Pattern.CANON_EQ;
+    if ((flags & unsupported) != 0) {
+      return false;
+    }
+
+    if ((flags & Pattern.LITERAL) != 0) {
+      // 文字列そのものとの比較になるため、ASCII だけで構成されていれば安全
+      return regex.chars().allMatch(c -> c < 0x80);
+    }
+
+    boolean multiline = (flags & Pattern.MULTILINE) != 0;
+    boolean unixLines = (flags & Pattern.UNIX_LINES) != 0;
+    boolean dotAll = (flags & Pattern.DOTALL) != 0;
+
+    // インラインフラグはスコープを追わず、パターン全体に効くものとして保守的に扱う
+    Matcher m = INLINE_FLAGS.matcher(regex);
+    while (m.find()) {
+      String letters = m.group(1);
+      int minus = letters.indexOf('-');
+      String on = (minus < 0) ? letters : letters.substring(0, minus);
+      String off = (minus < 0) ? "" : letters.substring(minus);
+
+      if (on.indexOf('u') >= 0 || on.indexOf('U') >= 0 || on.indexOf('x') >= 0) {
+        return false;
+      }
+      if (on.indexOf('m') >= 0) {
+        multiline = true;
+      }
+      if (off.indexOf('d') >= 0) {
+        unixLines = false;
+      }
+      if (off.indexOf('s') >= 0) {
+        dotAll = false;
+      }
+    }
+
+    try {
+      // '.' が非 ASCII 文字すべてにマッチするのは、改行文字（U+0085 等）を区別しない場合のみ
+      AsciiSafetyAnalyzer a =
+          new AsciiSafetyAnalyzer(regex, multiline, unixLines, dotAll || unixLines);
+      int minLength = a.parseAlternation(false);
+      return a.pos == regex.length() && minLength > 0;
+    } catch (RuntimeException e) {
+      // 判定できない構文は「安全でない」として扱う
+      return false;
+    }
+  }
+
+  // ---- 構文解析（再帰下降） ----
+
+  /**
+   * @param entryAscii 直前（グループの外側）が ASCII の要素か
+   * @return マッチの最短文字数
+   */
+  private int parseAlternation(boolean entryAscii) {
+    // いずれかの分岐が pending のまま終われば、グループの後ろに引き継ぐ
+    boolean pendingOut = false;
+
+    pending = false;
+    int min = parseSequence(entryAscii);
+    pendingOut |= pending;
+
+    while (pos < src.length() && src.charAt(pos) == '|') {
+      pos++;
+      pending = false;
+      min = Math.min(min, parseSequence(entryAscii));
+      pendingOut |= pending;
+    }
+    pending = pendingOut;
+    return min;
+  }
+
+  private int parseSequence(boolean entryAscii) {
+    long total = 0;
+    boolean prevAscii = entryAscii;
+    boolean first = true;
+
+    while (pos < src.length()) {
+      char c = src.charAt(pos);
+      if (c == '|' || c == ')') {
+        break;
+      }
+      // 非 ASCII にもマッチする要素の直後にグループは置けない（終了位置を確定できないため）
+      require(!(pending && c == '('));
+
+      boolean wasPending = pending;
+      boolean outerEntryUsed = entryUsed;
+      entryUsed = false;
+
+      Elem elem = parseAtom(prevAscii);
+      Quant q = parseQuantifier();
+
+      if (elem.kind() == Kind.GROUP && entryUsed) {
+        // グループを繰り返すと、2回目以降の先頭の直前は ASCII の要素とは限らない
+        require(!q.present() || (q.min() == 1 && q.max() == 1));
+      }
+
+      if (wasPending) {
+        switch (elem.kind()) {
+          case ASCII:
+            // ASCII の要素は多バイト文字の途中（0x80 以上のバイト）にはマッチしないため、終了位置が文字境界に確定する
+            require(q.min() >= 1);
+            pending = false;
+            break;
+          case END:
+            // 多バイト文字の途中では成立しない（\z: 入力末尾のみ）
+            require(!q.present());
+            break;
+          default:
+            throw unsafe();
+        }
+      }
+
+      if (elem.kind() == Kind.WIDE) {
+        // 開始位置は直前の ASCII の要素で文字境界に、終了位置は最長一致 + 後続の要素で文字境界に確定させる
+        require(prevAscii);
+        require(q.present() && q.greedyOrPossessive() && q.max() < 0);
+        pending = true;
+        if (first) {
+          entryUsed = true;
+        }
+      }
+      if (elem.kind() == Kind.GROUP && pending) {
+        // 末尾が pending のグループは繰り返せない
+        require(!q.present() || (q.min() == 1 && q.max() == 1));
+      }
+
+      // 先頭の要素で外側の直前を使った場合は、外側のグループにも伝える
+      entryUsed = outerEntryUsed || (first && entryUsed);
+
+      prevAscii = (elem.kind() == Kind.ASCII && q.min() >= 1);
+      first = false;
+      total += (long) elem.min() * q.min();
+    }
+    return (int) Math.min(total, Integer.MAX_VALUE);
+  }
+
+  private Elem parseAtom(boolean prevAscii) {
+    char c = src.charAt(pos);
+
+    switch (c) {
+      case '(':
+        return new Elem(parseGroup(prevAscii), Kind.GROUP);
+      case '[':
+        return new Elem(1, parseCharClass() ? Kind.WIDE : Kind.ASCII);
+      case '^':
+        // 複数行モードでは非 ASCII の改行文字（U+0085 等）の直後にもマッチするため不可
+        require(!multiline);
+        pos++;
+        return new Elem(0, Kind.ZERO);
+      case '$':
+        // 末尾の改行文字の直前にもマッチする（UNIX_LINES なら \n のみで、行には含まれない）
+        require(unixLines && !multiline);
+        pos++;
+        return new Elem(0, Kind.ZERO);
+      case '.':
+        require(dotMatchesAll);
+        pos++;
+        return new Elem(1, Kind.WIDE);
+      case '\\':
+        return parseEscape();
+      case '*':
+      case '+':
+      case '?':
+      case '{':
+        throw unsafe();
+      default:
+        pos++;
+        requireAscii(c);
+        return new Elem(1, Kind.ASCII);
+    }
+  }
+
+  private int parseGroup(boolean entryAscii) {
+    pos++; // '('
+
+    if (src.startsWith("?", pos)) {
+      if (src.startsWith("?:", pos) || src.startsWith("?>", pos)) {
+        pos += 2;
+      } else if (src.startsWith("?=", pos)
+          || src.startsWith("?!", pos)
+          || src.startsWith("?<=", pos)
+          || src.startsWith("?<!", pos)) {
+        // 先読み/後読み
+        throw unsafe();
+      } else if (src.startsWith("?<", pos)) {
+        int close = src.indexOf('>', pos);
+        require(close >= 0);
+        pos = close + 1;
+      } else {
+        // インラインフラグ（内容は isAsciiSafe で事前に確認済み）
+        int i = pos + 1;
+        while (i < src.length() && (Character.isLetter(src.charAt(i)) || src.charAt(i) == '-')) {
+          i++;
+        }
+        require(i < src.length());
+        if (src.charAt(i) == ')') {
+          pos = i + 1;
+          return 0;
+        }
+        require(src.charAt(i) == ':');
+        pos = i + 1;
+      }
+    }
+
+    int inner = parseAlternation(entryAscii);
+    require(pos < src.length() && src.charAt(pos) == ')');
+    pos++; // ')'
+    return inner;
+  }
+
+  private Elem parseEscape() {
+    pos++; // '\'
+    require(pos < src.length());
+    char c = src.charAt(pos++);
+
+    switch (c) {
+      case 'b':
+      case 'B':
+        // 単語文字の直後の結合文字（NON_SPACING_MARK）も単語の一部として判定されるため、バイト単位では再現できない
+        throw unsafe();
+      case 'z':
+        return new Elem(0, Kind.END);
+      case 'A':
+      case 'G':
+        return new Elem(0, Kind.ZERO);
+
+      case 'd':
+      case 'w':
+      case 's':
+        return new Elem(1, Kind.ASCII);
+      case 'D':
+      case 'W':
+      case 'S':
+        // ASCII モードでは非 ASCII 文字はすべてこちらに含まれる
+        return new Elem(1, Kind.WIDE);
+
+      case 'Q':
+        {
+          int end = src.indexOf("\\E", pos);
+          String quoted = (end < 0) ? src.substring(pos) : src.substring(pos, end);
+          pos = (end < 0) ? src.length() : end + 2;
+          quoted.chars().forEach(ch -> requireAscii((char) ch));
+          return new Elem(quoted.length(), quoted.isEmpty() ? Kind.ZERO : Kind.ASCII);
+        }
+
+      default:
+        requireAscii(escapedChar(c));
+        return new Elem(1, Kind.ASCII);
+    }
+  }
+
+  /** 1文字を表すエスケープ（\t \x41 \u0041 \0101 \cA \. 等）の文字コードを返す（それ以外は不可）。 */
+  private int escapedChar(char c) {
+    switch (c) {
+      case 't':
+        return '\t';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 'f':
+        return '\f';
+      case 'a':
+        return 0x07;
+      case 'e':
+        return 0x1B;
+      case 'x':
+        if (pos < src.length() && src.charAt(pos) == '{') {
+          int close = src.indexOf('}', pos);
+          require(close > pos + 1);
+          int v = Integer.parseInt(src.substring(pos + 1, close), 16);
+          pos = close + 1;
+          return v;
+        }
+        return hex(2);
+      case 'u':
+        return hex(4);
+      case '0':
+        {
+          int start = pos;
+          while (pos < src.length() && pos - start < 3 && isOctal(src.charAt(pos))) {
+            pos++;
+          }
+          require(pos > start);
+          return Integer.parseInt(src.substring(start, pos), 8);
+        }
+      case 'c':
+        require(pos < src.length());
+        return src.charAt(pos++) ^ 64;
+      default:
+        // 英数字のエスケープ（\p \h \v \R \X \k \1 など）は非 ASCII の一部にマッチし得る or 参照のため不可
+        require(!Character.isLetterOrDigit(c));
+        return c;
+    }
+  }
+
+  private int hex(int digits) {
+    require(pos + digits <= src.length());
+    int v = Integer.parseInt(src.substring(pos, pos + digits), 16);
+    pos += digits;
+    return v;
+  }
+
+  private Quant parseQuantifier() {
+    if (pos >= src.length()) {
+      return Quant.ONCE;
+    }
+
+    char c = src.charAt(pos);
+    int min;
+    int max;
+
+    if (c == '?' || c == '*') {
+      pos++;
+      min = 0;
+      max = (c == '?') ? 1 : -1;
+    } else if (c == '+') {
+      pos++;
+      min = 1;
+      max = -1;
+    } else if (c == '{') {
+      int close = src.indexOf('}', pos);
+      require(close >= 0);
+      String body = src.substring(pos + 1, close);
+      int comma = body.indexOf(',');
+      if (comma < 0) {
+        min = Integer.parseInt(body.trim());
+        max = min;
+      } else {
+        min = Integer.parseInt(body.substring(0, comma).trim());
+        String upper = body.substring(comma + 1).trim();
+        max = upper.isEmpty() ? -1 : Integer.parseInt(upper);
+      }
+      pos = close + 1;
+    } else {
+      return Quant.ONCE;
+    }
+
+    // 最短一致（?）/ 強欲（+）の修飾子
+    boolean lazy = false;
+    if (pos < src.length() && (src.charAt(pos) == '?' || src.charAt(pos) == '+')) {
+      lazy = src.charAt(pos) == '?';
+      pos++;
+    }
+    return new Quant(true, min, max, !lazy);
+  }
+
+  /**
+   * 文字クラスを読み、ASCII の文字だけで構成されていることを確認する。
+   *
+   * @return true: 否定クラス（{@code [^...]}。非 ASCII 文字すべてにマッチする）
+   */
+  private boolean parseCharClass() {
+    pos++; // '['
+
+    boolean negated = pos < src.length() && src.charAt(pos) == '^';
+    if (negated) {
+      pos++;
+    }
+    parseClassBody();
+    return negated;
+  }
+
+  private void parseClassBody() {
+    boolean first = true;
+    while (pos < src.length()) {
+      char c = src.charAt(pos);
+
+      if (c == ']' && !first) {
+        pos++;
+        return;
+      }
+      first = false;
+
+      if (c == '[') {
+        // 和集合（[a[b]]）。入れ子の否定は扱わない
+        pos++;
+        require(pos < src.length() && src.charAt(pos) != '^');
+        parseClassBody();
+        continue;
+      }
+      if (c == '&' && src.startsWith("&&", pos)) {
+        throw unsafe();
+      }
+
+      int lo = classChar();
+      if (lo < 0) {
+        // \d \w \s などの定義済みクラス
+        continue;
+      }
+      requireAscii(lo);
+
+      // 範囲（a-z）。末尾の '-' はリテラル
+      if (pos + 1 < src.length() && src.charAt(pos) == '-' && src.charAt(pos + 1) != ']') {
+        pos++;
+        int hi = classChar();
+        require(hi >= 0);
+        requireAscii(hi);
+      }
+    }
+    throw unsafe();
+  }
+
+  /** 文字クラス内の1要素を読み、文字コードを返す（\d \w \s は -1）。 */
+  private int classChar() {
+    char c = src.charAt(pos++);
+    if (c != '\\') {
+      return c;
+    }
+    require(pos < src.length());
+    char e = src.charAt(pos++);
+    if (e == 'd' || e == 'w' || e == 's') {
+      return -1;
+    }
+    if (e == 'Q') {
+      int end = src.indexOf("\\E", pos);
+      require(end >= 0);
+      src.substring(pos, end).chars().forEach(ch -> requireAscii((char) ch));
+      pos = end + 2;
+      return -1;
+    }
+    return escapedChar(e);
+  }
+
+  /** 要素の種類。 */
+  private enum Kind {
+    /** ASCII の文字だけにマッチする1文字分の要素。 */
+    ASCII,
+    /** 非 ASCII 文字すべて（と ASCII の一部）にマッチする1文字分の要素。 */
+    WIDE,
+    /** \z */
+    END,
+    /** その他のゼロ幅の要素（^ \A \G 等）。 */
+    ZERO,
+    /** グループ。 */
+    GROUP
+  }
+
+  /**
+   * @param min 1回分の最短文字数
+   * @param kind 種類
+   */
+  private record Elem(int min, Kind kind) {}
+
+  /**
+   * @param present 量指定子があるか
+   * @param min 最小回数
+   * @param max 最大回数（-1 は上限なし）
+   * @param greedyOrPossessive 最長一致 or 強欲（最短一致でない）
+   */
+  private record Quant(boolean present, int min, int max, boolean greedyOrPossessive) {
+    static final Quant ONCE = new Quant(false, 1, 1, true);
+  }
+
+  private static boolean isOctal(char c) {
+    return c >= '0' && c <= '7';
+  }
+
+  private static void requireAscii(int c) {
+    require(c >= 0 && c < 0x80);
+  }
+
+  private static void require(boolean condition) {
+    if (!condition) {
+      throw unsafe();
+    }
+  }
+
+  private static IllegalStateException unsafe() {
+    return new IllegalStateException("not ascii-safe");
+  }
+}
@@ -1,6 +1,8 @@
 package io.github.seiya_matsuoka.interactivelogmaskingcli.config;
 
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskRule;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.ReplacementTemplate;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.util.RegexFlagUtil;
 import java.util.ArrayList;
 import java.util.List;
@@ -10,6 +12,12 @@ import java.util.regex.Pattern;
  * 設定（MaskRulesConfig）を、実行用のコンパイル済みルール（MaskRule）に変換する。
  *
  * <p>正規表現の妥当性は {@link RuleValidator} で検証済みであることを前提とする。
+ *
+ * <p>あわせて各パターンからアンカー（必須リテラル）を抽出し、行単位のプレフィルタに使えるようにする。
+ *
+ * <p>置換文字列もここで1回だけ解析し（{@link ReplacementTemplate}）、マッチのたびに解釈し直さないようにする。
+ *
+ * <p>UTF-8 のバイト列のまま処理できるルールかどうか（{@link AsciiSafetyAnalyzer}）もここで判定する。
  */
 public class MaskRuleCompiler {
 
@@ -32,12 +40,44 @@ public class MaskRuleCompiler {
         continue;
       }
 
-      Pattern pattern = Pattern.compile(r.getPattern(), RegexFlagUtil.toPatternFlags(r.getFlags()));
+      int flags = RegexFlagUtil.toPatternFlags(r.getFlags());
+      Pattern pattern = Pattern.compile(r.getPattern(), flags);
       boolean enabled = r.isEnabledEffective();
 
-      result.add(new MaskRule(r.getId(), r.getName(), enabled, pattern, r.getReplacement()));
+      // マッチするなら必ず含まれるリテラル（抽出できなければ空 = 常に評価）
+      List<String> anchors = PatternLiteralExtractor.extract(r.getPattern(), flags);
+
+      // 置換文字列（$1 等）を事前に解析しておく
+      ReplacementTemplate template = ReplacementTemplate.compile(r.getReplacement(), pattern);
+
+      // UTF-8 のバイト列のまま処理できるか（置換文字列も解析済みで UTF-8 に変換できること）
+      boolean asciiSafe =
+          template != null
+              && template.isUtf8Encodable()
+              && AsciiSafetyAnalyzer.isAsciiSafe(r.getPattern(), flags);
+
+      result.add(
+          new MaskRule(
+              r.getId(),
+              r.getName(),
+              enabled,
+              pattern,
+              r.getReplacement(),
+              anchors,
+              template,
+              asciiSafe));
     }
 
     return result;
   }
+
+  /**
+   * 設定をルールセット（ルール + アンカーのプレフィルタ）へ変換する。
+   *
+   * @param config ルール設定
+   * @return コンパイル済みルールセット（nullを返さない）
+   */
+  public CompiledRuleSet compileRuleSet(MaskRulesConfig config) {
+    return CompiledRuleSet.of(compile(config));
+  }
 }
@@ -0,0 +1,543 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 正規表現から「マッチするなら必ず含まれるリテラル（アンカー）」を抽出する。
+ *
+ * <p>抽出結果は {@link io.github.seiya_matsuoka.interactivelogmaskingcli.core.KeywordPrefilter} の
+ * キーワードとして使い、行にアンカーが1つも含まれない場合はそのルールの正規表現評価を省略する。
+ *
+ * <h2>方針</h2>
+ *
+ * <ul>
+ *   <li>抽出は保守的に行う（取りこぼしは「常に評価」になるだけだが、誤ったアンカーはマスク漏れになる）。
+ *   <li>戻り値は「いずれか1つが含まれる」集合（例: {@code (?:ip|clientIp)=} → {@code ip=}, {@code clientIp=}）。
+ *   <li>解釈できない構文・フラグ（COMMENTS / LITERAL / CANON_EQ 等）を含む場合は空を返す。
+ *   <li>大文字/小文字はプレフィルタ側で ASCII の範囲で同一視するため、CASE_INSENSITIVE はそのまま扱える。
+ *       ただし UNICODE_CASE を併用すると、i / k / s は非 ASCII 文字（U+0130, U+0131, U+212A, U+017F）とも一致するため
+ *       リテラルとして扱わない。
+ * </ul>
+ */
+final class PatternLiteralExtractor {
+
+  /** 連結/選択で展開するリテラル集合の上限（組み合わせ爆発の防止）。 */
+  private static final int MAX_SET_SIZE = 16;
+
+  /** インラインフラグ（例: {@code (?i)}, {@code (?-i:...)}）の検出用。 */
+  private static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?([a-zA-Z-]+)[:)]");
+
+  private final String src;
+  private final boolean unicodeCase;
+  private final boolean caseInsensitive;
+  private int pos;
+
+  private PatternLiteralExtractor(String src, boolean unicodeCase, boolean caseInsensitive) {
+    this.src = src;
+    this.unicodeCase = unicodeCase;
+    this.caseInsensitive = caseInsensitive;
+  }
+
+  /**
+   * パターンからアンカー（いずれか1つが必ず含まれるリテラル）を抽出する。
+   *
+   * @param regex 正規表現（検証済み）
+   * @param flags {@link Pattern#compile(String, int)} に渡すフラグ
+   * @return アンカー一覧（抽出できない場合は空。null は返さない）
+   */
+  static List<String> extract(String regex, int flags) {
+
+    if (regex == null || regex.isEmpty()) {
+      return List.of();
+    }
+
+    // 空白/コメントの解釈が変わる・リテラル比較の前提が崩れるフラグは対象外にする
+    if ((flags & (Pattern.COMMENTS | Pattern.LITERAL | Pattern.CANON_EQ)) != 0) {
+      return List.of();
+    }
+
+    boolean unicodeCase = (flags & (Pattern.UNICODE_CASE | Pattern.UNICODE_CHARACTER_CLASS)) != 0;
+    boolean caseInsensitive = (flags & Pattern.CASE_INSENSITIVE) != 0;
+
+    Matcher m = INLINE_FLAGS.matcher(regex);
+    while (m.find()) {
+      String letters = m.group(1);
+      if (letters.indexOf('x') >= 0) {
+        return List.of();
+      }
+      if (letters.indexOf('u') >= 0 || letters.indexOf('U') >= 0) {
+        unicodeCase = true;
+      }
+      // 一部だけに付いたフラグ（(?i:X) など）も、パターン全体に付いたものとして保守的に扱う
+      if (letters.indexOf('i') >= 0) {
+        caseInsensitive = true;
+      }
+    }
+
+    try {
+      PatternLiteralExtractor p = new PatternLiteralExtractor(regex, unicodeCase, caseInsensitive);
+      Info info = p.parseAlternation();
+      if (p.pos != regex.length()) {
+        // 対応する '(' の無い ')' など。コンパイル済みなら通常起きないが、念のため諦める
+        return List.of();
+      }
+      Set<String> best = info.best();
+      return (best == null) ? List.of() : List.copyOf(best);
+    } catch (RuntimeException e) {
+      // 解析できない構文は「アンカー無し（常に評価）」として扱う
+      return List.of();
+    }
+  }
+
+  // ---- 構文解析（再帰下降） ----
+
+  private Info parseAlternation() {
+    List<Info> branches = new ArrayList<>();
+    branches.add(parseSequence());
+    while (pos < src.length() && src.charAt(pos) == '|') {
+      pos++;
+      branches.add(parseSequence());
+    }
+    if (branches.size() == 1) {
+      return branches.get(0);
+    }
+
+    // exact: 全分岐が有限集合なら和集合
+    Set<String> exact = new LinkedHashSet<>();
+    for (Info b : branches) {
+      if (b.exact == null) {
+        exact = null;
+        break;
+      }
+      exact.addAll(b.exact);
+    }
+    if (exact != null && exact.size() > MAX_SET_SIZE) {
+      exact = null;
+    }
+
+    // required: 各分岐が必ず含むリテラルの和集合（1つでも不明な分岐があれば不明）
+    Set<String> required = new LinkedHashSet<>();
+    for (Info b : branches) {
+      Set<String> best = b.best();
+      if (best == null) {
+        required = null;
+        break;
+      }
+      required.addAll(best);
+    }
+    if (required != null && required.size() > MAX_SET_SIZE) {
+      required = null;
+    }
+
+    return new Info(exact, required);
+  }
+
+  private Info parseSequence() {
+
+    // current: 直前から連続している「完全に確定したリテラル列」の集合
+    Set<String> current = Set.of("");
+    boolean allExact = true;
+    Set<String> best = null;
+
+    while (pos < src.length()) {
+      char c = src.charAt(pos);
+      if (c == '|' || c == ')') {
+        break;
+      }
+
+      Info atom = applyQuantifier(parseAtom());
+
+      if (atom.exact != null) {
+        Set<String> joined = cross(current, atom.exact);
+        if (joined == null) {
+          // 組み合わせが多すぎる場合は、ここで区切って新しい列を始める
+          best = better(best, current);
+          current = atom.exact;
+          allExact = false;
+        } else {
+          current = joined;
+        }
+      } else {
+        // 不確定な要素で列が途切れる
+        best = better(best, current);
+        best = better(best, atom.required);
+        current = Set.of("");
+        allExact = false;
+      }
+    }
+
+    best = better(best, current);
+    return new Info(allExact ? current : null, best);
+  }
+
+  private Info parseAtom() {
+    char c = src.charAt(pos);
+
+    switch (c) {
+      case '(':
+        return parseGroup();
+      case '[':
+        skipCharClass();
+        return Info.UNKNOWN;
+      case '.':
+        pos++;
+        return Info.UNKNOWN;
+      case '^':
+      case '$':
+        pos++;
+        return Info.EMPTY;
+      case '\\':
+        return parseEscape();
+      case '*':
+      case '+':
+      case '?':
+      case '{':
+        // 量指定子が単独で現れるケース（通常はコンパイルエラー）。解析を諦める
+        throw new IllegalStateException("dangling quantifier");
+      default:
+        pos++;
+        return literal(c);
+    }
+  }
+
+  private Info parseGroup() {
+    pos++; // '('
+
+    boolean zeroWidth = false;
+    boolean flagsOnly = false;
+
+    if (src.startsWith("?", pos)) {
+      if (src.startsWith("?:", pos) || src.startsWith("?>", pos)) {
+        pos += 2;
+      } else if (src.startsWith("?=", pos) || src.startsWith("?!", pos)) {
+        pos += 2;
+        zeroWidth = true;
+      } else if (src.startsWith("?<=", pos) || src.startsWith("?<!", pos)) {
+        pos += 3;
+        zeroWidth = true;
+      } else if (src.startsWith("?<", pos)) {
+        // 名前付きグループ (?<name>X)
+        int close = src.indexOf('>', pos);
+        if (close < 0) {
+          throw new IllegalStateException("unterminated group name");
+        }
+        pos = close + 1;
+      } else {
+        // インラインフラグ (?i) / (?i:X)
+        int i = pos + 1;
+        while (i < src.length() && (Character.isLetter(src.charAt(i)) || src.charAt(i) == '-')) {
+          i++;
+        }
+        if (i >= src.length()) {
+          throw new IllegalStateException("unterminated flags");
+        }
+        if (src.charAt(i) == ')') {
+          flagsOnly = true;
+          pos = i;
+        } else if (src.charAt(i) == ':') {
+          pos = i + 1;
+        } else {
+          throw new IllegalStateException("unknown group");
+        }
+      }
+    }
+
+    Info inner = flagsOnly ? Info.EMPTY : parseAlternation();
+
+    if (pos >= src.length() || src.charAt(pos) != ')') {
+      throw new IllegalStateException("unterminated group");
+    }
+    pos++; // ')'
+
+    // 先読み/後読みは文字を消費しないため、連結上は空文字として扱う
+    return zeroWidth ? Info.EMPTY : inner;
+  }
+
+  private Info parseEscape() {
+    pos++; // '\'
+    if (pos >= src.length()) {
+      throw new IllegalStateException("trailing backslash");
+    }
+    char c = src.charAt(pos++);
+
+    switch (c) {
+      // ゼロ幅（境界/位置）
+      case 'b':
+      case 'B':
+      case 'A':
+      case 'z':
+      case 'Z':
+      case 'G':
+        if (c == 'b' && pos < src.length() && src.charAt(pos) == '{') {
+          // \b{g}（書記素境界）
+          skipBraces();
+        }
+        return Info.EMPTY;
+
+      // 制御文字
+      case 't':
+        return literal('\t');
+      case 'n':
+        return literal('\n');
+      case 'r':
+        return literal('\r');
+      case 'f':
+        return literal('\f');
+      case 'a':
+        return literal('\u0007');
+      case 'e':
+        return literal('\u001B');
+
+      case 'Q':
+        {
+          int end = src.indexOf("\\E", pos);
+          String quoted = (end < 0) ? src.substring(pos) : src.substring(pos, end);
+          pos = (end < 0) ? src.length() : end + 2;
+          for (int i = 0; i < quoted.length(); i++) {
+            if (!isSafeLiteral(quoted.charAt(i))) {
+              return Info.UNKNOWN;
+            }
+          }
+          return new Info(Set.of(quoted), null);
+        }
+
+      case 'p':
+      case 'P':
+      case 'x':
+      case 'N':
+        if (pos < src.length() && src.charAt(pos) == '{') {
+          skipBraces();
+        } else if (c == 'x') {
+          pos += 2;
+        } else if (c != 'N') {
+          pos++;
+        }
+        return Info.UNKNOWN;
+
+      case 'u':
+        pos += 4;
+        return Info.UNKNOWN;
+
+      case 'c':
+        pos++;
+        return Info.UNKNOWN;
+
+      case 'k':
+        {
+          int close = src.indexOf('>', pos);
+          pos = (close < 0) ? src.length() : close + 1;
+          return Info.UNKNOWN;
+        }
+
+      case '0':
+        while (pos < src.length() && src.charAt(pos) >= '0' && src.charAt(pos) <= '7') {
+          pos++;
+        }
+        return Info.UNKNOWN;
+
+      default:
+        if (Character.isLetterOrDigit(c)) {
+          // \d \w \s \R \X や後方参照（\1）など、リテラルでないもの
+          while (Character.isDigit(c) && pos < src.length() && Character.isDigit(src.charAt(pos))) {
+            pos++;
+          }
+          return Info.UNKNOWN;
+        }
+        // 記号のエスケープ（\. \= \" など）はリテラル
+        return literal(c);
+    }
+  }
+
+  private Info applyQuantifier(Info atom) {
+    if (pos >= src.length()) {
+      return atom;
+    }
+
+    char c = src.charAt(pos);
+    int min;
+    int max;
+
+    if (c == '?' || c == '*') {
+      pos++;
+      min = 0;
+      max = (c == '?') ? 1 : -1;
+    } else if (c == '+') {
+      pos++;
+      min = 1;
+      max = -1;
+    } else if (c == '{') {
+      int close = src.indexOf('}', pos);
+      if (close < 0) {
+        throw new IllegalStateException("unterminated quantifier");
+      }
+      String body = src.substring(pos + 1, close);
+      int comma = body.indexOf(',');
+      if (comma < 0) {
+        min = Integer.parseInt(body.trim());
+        max = min;
+      } else {
+        min = Integer.parseInt(body.substring(0, comma).trim());
+        String upper = body.substring(comma + 1).trim();
+        max = upper.isEmpty() ? -1 : Integer.parseInt(upper);
+      }
+      pos = close + 1;
+    } else {
+      return atom;
+    }
+
+    // 最短一致（?）/ 強欲（+）の修飾子は、含まれるリテラルに影響しないため読み飛ばす
+    if (pos < src.length() && (src.charAt(pos) == '?' || src.charAt(pos) == '+')) {
+      pos++;
+    }
+
+    if (min == 0) {
+      // 0回の可能性があるので、何も保証できない
+      return Info.UNKNOWN;
+    }
+    if (min == 1 && max == 1) {
+      return atom;
+    }
+    // 1回以上は確定するため、required は維持できる（exact は回数が決まらないので捨てる）
+    return new Info(null, atom.best());
+  }
+
+  private void skipCharClass() {
+    pos++; // '['
+    if (pos < src.length() && src.charAt(pos) == '^') {
+      pos++;
+    }
+    // 先頭の ']' はリテラル扱い
+    if (pos < src.length() && src.charAt(pos) == ']') {
+      pos++;
+    }
+    int depth = 1;
+    while (pos < src.length()) {
+      char c = src.charAt(pos);
+      if (c == '\\') {
+        if (src.startsWith("\\Q", pos)) {
+          int end = src.indexOf("\\E", pos + 2);
+          pos = (end < 0) ? src.length() : end + 2;
+          continue;
+        }
+        pos += 2;
+        continue;
+      }
+      if (c == '[') {
+        depth++;
+      } else if (c == ']') {
+        depth--;
+        if (depth == 0) {
+          pos++;
+          return;
+        }
+      }
+      pos++;
+    }
+    throw new IllegalStateException("unterminated character class");
+  }
+
+  private void skipBraces() {
+    int close = src.indexOf('}', pos);
+    if (close < 0) {
+      throw new IllegalStateException("unterminated braces");
+    }
+    pos = close + 1;
+  }
+
+  private Info literal(char c) {
+    return isSafeLiteral(c) ? new Info(Set.of(String.valueOf(c)), null) : Info.UNKNOWN;
+  }
+
+  /**
+   * プレフィルタの照合（ASCII のみ大小無視）と正規表現の照合結果がずれない文字かどうか。
+   *
+   * <p>UNICODE_CASE 下では非 ASCII 文字の大文字/小文字が同一視されるため、非 ASCII はリテラルとして扱わない。 さらに大小無視の場合は、
+   * 非 ASCII 文字とも一致する ASCII の英字（例: {@code k} と U+212A KELVIN SIGN、{@code s} と U+017F LATIN SMALL LETTER
+   * LONG S）も扱わない。
+   */
+  private boolean isSafeLiteral(char c) {
+    if (Character.isSurrogate(c)) {
+      return false;
+    }
+    if (!unicodeCase) {
+      return true;
+    }
+    if (c >= 0x80) {
+      return false;
+    }
+    return !caseInsensitive || !foldsToNonAscii(c);
+  }
+
+  /** UNICODE_CASE で大小無視した場合に、非 ASCII 文字とも一致する ASCII 文字か。 */
+  private static boolean foldsToNonAscii(char c) {
+    switch (Character.toLowerCase(c)) {
+      case 'i': // U+0130, U+0131
+      case 'k': // U+212A
+      case 's': // U+017F
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  // ---- 集合演算 ----
+
+  private static Set<String> cross(Set<String> left, Set<String> right) {
+    if ((long) left.size() * right.size() > MAX_SET_SIZE) {
+      return null;
+    }
+    Set<String> out = new LinkedHashSet<>();
+    for (String l : left) {
+      for (String r : right) {
+        out.add(l + r);
+      }
+    }
+    return out;
+  }
+
+  /** アンカー候補として、より絞り込みに効く方を返す（最短要素が長いほど良い／同じなら要素数が少ない方）。 */
+  private static Set<String> better(Set<String> a, Set<String> b) {
+    int sa = score(a);
+    int sb = score(b);
+    if (sb > sa) {
+      return b;
+    }
+    if (sb == sa && sb > 0 && b.size() < a.size()) {
+      return b;
+    }
+    return a;
+  }
+
+  private static int score(Set<String> s) {
+    if (s == null || s.isEmpty() || s.size() > MAX_SET_SIZE) {
+      return 0;
+    }
+    int min = Integer.MAX_VALUE;
+    for (String x : s) {
+      min = Math.min(min, x.length());
+    }
+    return min;
+  }
+
+  /**
+   * 部分式の解析結果。
+   *
+   * @param exact 部分式がマッチし得る文字列の全集合（有限かつ小さい場合のみ。不明なら null）
+   * @param required マッチ時に必ずいずれかを含む文字列の集合（不明なら null）
+   */
+  private record Info(Set<String> exact, Set<String> required) {
+
+    static final Info UNKNOWN = new Info(null, null);
+    static final Info EMPTY = new Info(Set.of(""), null);
+
+    Set<String> best() {
+      Set<String> b = better(null, exact);
+      return better(b, required);
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.config;
+
+/**
+ * 正規表現の処理コストの見積もり（1行の長さ n に対する、最悪の場合の処理時間の増え方）。
+ *
+ * <p>{@link RuleValidator#estimateCosts(MaskRulesConfig)} が、パターンの静的な解析と、生成した入力での計測から求める。
+ */
+public enum RegexCost {
+
+  /** n に比例する（安全）。 */
+  LINEAR,
+
+  /** n の2乗に比例する（マッチしない長い行で遅くなるが、通常のログでは問題になりにくい）。 */
+  QUADRATIC,
+
+  /** n の3乗以上に比例する（長い行1つで処理が止まったように見える。警告する）。 */
+  POLYNOMIAL,
+
+  /** n に対して指数関数的に増える（数十文字の行で処理が終わらなくなる。検証エラーにする）。 */
+  EXPONENTIAL
+}
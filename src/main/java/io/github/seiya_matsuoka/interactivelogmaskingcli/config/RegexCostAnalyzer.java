@@ -0,0 +1,741 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.config;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 正規表現の処理コスト（バックトラックの爆発：ReDoS）を見積もる。
+ *
+ * <h2>静的な解析</h2>
+ *
+ * <p>パターンを構文解析し、バックトラックが爆発しやすい次の構造を探す。文字の集合は、代表の文字（{@link #PROBES}）のうち
+ * どれにマッチするかで近似する（各要素を単独で {@link Pattern} にコンパイルして判定する）。
+ *
+ * <ul>
+ *   <li>入れ子の量指定子：上限なしの繰り返しの中に、同じ文字にマッチする上限なしの繰り返しがあり、その後ろが空でもよい（例: {@code
+ *       (a+)+}, {@code (\w+\s?)*}）
+ *   <li>繰り返しの中のあいまいな選択：上限なしの繰り返しの中の選択肢が、同じ文字で始まる（例: {@code (a|ab)*}, {@code (\w|\d)+}）
+ *   <li>隣り合う量指定子の重なり：空でもよい要素だけを挟んで、同じ文字にマッチする上限なしの繰り返しが続く（例: {@code \d+\d+},
+ *       {@code .*\s*=}）
+ * </ul>
+ *
+ * <p>強欲な量指定子（{@code a++}）・アトミックグループ（{@code (?>...)}）の中はバックトラックしないため対象外。
+ *
+ * <h2>計測</h2>
+ *
+ * <p>見つかった構造と上限なしの繰り返しごとに「前置き + 繰り返す文字 × n + マッチを失敗させる文字」の入力を作り、n を倍にしながら
+ * {@link Matcher#find()} が読んだ文字数（{@link CharSequence#charAt} の回数）を数える。 時間ではなく読んだ文字数で比べるため、
+ * 結果は実行環境の速さによらない。 読んだ文字数が上限を超えた時点で打ち切るため、危険なパターンでも計測は短時間で終わる。
+ *
+ * <p>JDK は一部の入れ子の量指定子（{@code (a+)+} など）を内部で最適化するため、静的な解析で見つかっても計測では線形になることがある。
+ * その場合は見つかった構造だけを警告として返す。
+ */
+final class RegexCostAnalyzer {
+
+  /** 文字の集合の判定に使う代表の文字（英数字を先にし、入力を作るときに読みやすい文字を選ぶ）。 */
+  private static final String PROBES = buildProbes();
+
+  /** 計測する繰り返し回数（倍ずつ増やす）。 */
+  private static final int[] SIZES = {16, 32, 64, 128, 256, 512};
+
+  /** 1回の計測で読む文字数の上限（超えたら打ち切る）。 */
+  static final long STEP_LIMIT = 1_000_000L;
+
+  /** この回数以下で上限を超えた場合は、指数関数的とみなす。 */
+  private static final int EXPONENTIAL_SIZE = 64;
+
+  /** 計測する入力の数の上限。 */
+  private static final int MAX_PROBES = 12;
+
+  /** 上限がこの回数より大きい繰り返しは、上限なしとして扱う。 */
+  private static final int LARGE_REPEAT = 16;
+
+  /** インラインフラグ（例: {@code (?i)}, {@code (?-d:...)}）の検出用。 */
+  private static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?([a-zA-Z-]+)[:)]");
+
+  private final String src;
+  private final int flags;
+  private int pos;
+
+  private final Set<String> findings = new LinkedHashSet<>();
+  private final Set<Probe> probes = new LinkedHashSet<>();
+
+  private RegexCostAnalyzer(String src, int flags) {
+    this.src = src;
+    this.flags = flags;
+  }
+
+  /**
+   * パターンの処理コストを見積もる。
+   *
+   * @param regex 正規表現（コンパイルできることを確認済み）
+   * @param flags {@link Pattern#compile(String, int)} に渡すフラグ
+   * @return 見積もり
+   */
+  static Result analyze(String regex, int flags) {
+    if ((flags & Pattern.LITERAL) != 0) {
+      return new Result(RegexCost.LINEAR, List.of());
+    }
+    Pattern pattern = Pattern.compile(regex, flags);
+
+    // インラインフラグはスコープを追わず、パターン全体に効くものとして扱う
+    int effective = flags;
+    Matcher m = INLINE_FLAGS.matcher(regex);
+    while (m.find()) {
+      String letters = m.group(1);
+      int minus = letters.indexOf('-');
+      String on = (minus < 0) ? letters : letters.substring(0, minus);
+      effective |= (on.indexOf('i') >= 0) ? Pattern.CASE_INSENSITIVE : 0;
+      effective |= (on.indexOf('s') >= 0) ? Pattern.DOTALL : 0;
+      effective |= (on.indexOf('x') >= 0) ? Pattern.COMMENTS : 0;
+    }
+
+    RegexCostAnalyzer a = new RegexCostAnalyzer(regex, effective);
+    boolean parsed = false;
+    if ((effective & Pattern.COMMENTS) == 0) {
+      try {
+        Node root = a.parseAlternation();
+        if (a.pos == regex.length()) {
+          a.visit(root, "", false);
+          parsed = true;
+        }
+      } catch (RuntimeException e) {
+        a.findings.clear();
+        a.probes.clear();
+      }
+    }
+    if (!parsed) {
+      // 解析できない構文（コメント付きのパターンなど）は、一般的な入力での計測だけ行う
+      for (String pump : List.of("a", "0", " ")) {
+        a.probes.add(new Probe("", pump, "!"));
+      }
+    }
+
+    RegexCost cost = RegexCost.LINEAR;
+    for (Probe probe : a.probes) {
+      RegexCost c = measure(pattern, probe);
+      if (c.compareTo(cost) > 0) {
+        cost = c;
+      }
+      if (cost == RegexCost.EXPONENTIAL) {
+        break;
+      }
+    }
+    return new Result(cost, List.copyOf(a.findings));
+  }
+
+  // ---- 構造の検出 ----
+
+  /**
+   * @param prefix node の直前までにマッチする最短の文字列（計測の入力の前置きに使う）
+   * @param atomic バックトラックしない範囲（強欲な量指定子・アトミックグループの中）
+   */
+  private void visit(Node node, String prefix, boolean atomic) {
+    if (node instanceof Seq s) {
+      StringBuilder p = new StringBuilder(prefix);
+      List<Node> items = s.items();
+      for (int i = 0; i < items.size(); i++) {
+        visit(items.get(i), p.toString(), atomic);
+        if (!atomic) {
+          checkAdjacent(items, i, p.toString());
+        }
+        p.append(witness(items.get(i)));
+      }
+    } else if (node instanceof Alt a) {
+      for (Node branch : a.branches()) {
+        visit(branch, prefix, atomic);
+      }
+    } else if (node instanceof Repeat r) {
+      if (r.unbounded()) {
+        // 上限なしの繰り返しは、繰り返す内容を並べた入力で計測する
+        addProbe(prefix, witness(r.body()), first(r.body()));
+        if (!atomic && !r.possessive()) {
+          checkNested(r, prefix);
+        }
+      }
+      visit(r.body(), prefix, atomic || r.possessive());
+    } else if (node instanceof Atomic a) {
+      visit(a.body(), prefix, true);
+    } else if (node instanceof Zero z && z.inner() != null) {
+      visit(z.inner(), prefix, atomic);
+    }
+  }
+
+  /** items[i] の後ろに、空でもよい要素だけを挟んで同じ文字にマッチする繰り返しが続くか。 */
+  private void checkAdjacent(List<Node> items, int i, String prefix) {
+    if (!(items.get(i) instanceof Repeat a) || !a.unbounded() || a.possessive()) {
+      return;
+    }
+    BitSet chars = first(a.body());
+    for (int j = i + 1; j < items.size(); j++) {
+      Node next = items.get(j);
+      if (next instanceof Repeat b && b.unbounded() && !b.possessive()) {
+        BitSet overlap = and(chars, first(b.body()));
+        if (!overlap.isEmpty()) {
+          findings.add("隣り合う量指定子が同じ文字にマッチします（" + a.text() + " と " + b.text() + "）");
+          addProbe(prefix, pick(overlap), or(chars, first(b.body())));
+          return;
+        }
+      }
+      if (!nullable(next)) {
+        return;
+      }
+    }
+  }
+
+  /** 上限なしの繰り返し r の中身が、同じ入力を複数の分け方でマッチできるか。 */
+  private void checkNested(Repeat r, String prefix) {
+    Node body = r.body();
+    BitSet bodyFirst = first(body);
+
+    List<List<Node>> sequences = new ArrayList<>();
+    if (body instanceof Alt a) {
+      checkAlternation(r, a, prefix, bodyFirst);
+      for (Node branch : a.branches()) {
+        sequences.add(items(branch));
+      }
+    } else {
+      sequences.add(items(body));
+    }
+
+    for (List<Node> items : sequences) {
+      for (int i = 0; i < items.size(); i++) {
+        Node item = items.get(i);
+        if (item instanceof Alt a) {
+          checkAlternation(r, a, prefix, bodyFirst);
+        }
+        if (!(item instanceof Repeat inner) || !inner.unbounded() || inner.possessive()) {
+          continue;
+        }
+        // 内側の繰り返しを抜けたあと、外側の次の回が同じ文字から始められると分け方が増える
+        BitSet chars = and(first(inner.body()), bodyFirst);
+        List<Node> rest = items.subList(i + 1, items.size());
+        boolean restNullable = rest.stream().allMatch(RegexCostAnalyzer::nullable);
+        if (!chars.isEmpty()
+            && (restNullable || !and(first(new Seq(rest)), first(inner.body())).isEmpty())) {
+          findings.add("量指定子が入れ子になっています（" + r.text() + " の中の " + inner.text() + "）");
+          addProbe(prefix, pick(chars), or(bodyFirst, first(inner.body())));
+        }
+      }
+    }
+  }
+
+  private void checkAlternation(Repeat r, Alt alt, String prefix, BitSet avoid) {
+    List<Node> branches = alt.branches();
+    for (int i = 0; i < branches.size(); i++) {
+      for (int j = i + 1; j < branches.size(); j++) {
+        Node x = branches.get(i);
+        Node y = branches.get(j);
+        BitSet overlap = and(first(x), first(y));
+        if (!overlap.isEmpty() || (nullable(x) && nullable(y))) {
+          findings.add("繰り返し " + r.text() + " の中の選択肢が同じ文字で始まります");
+          String pump = witness(x);
+          addProbe(prefix, pump.isEmpty() ? pick(overlap) : pump, avoid);
+          return;
+        }
+      }
+    }
+  }
+
+  /** 計測する入力を加える（失敗させる文字は、繰り返す文字の集合に含まれない文字と、入力の終端の2通り）。 */
+  private void addProbe(String prefix, String pump, BitSet avoid) {
+    if (pump.isEmpty() || probes.size() >= MAX_PROBES) {
+      return;
+    }
+    int fail = avoid.nextClearBit(0);
+    if (fail < PROBES.length()) {
+      probes.add(new Probe(prefix, pump, String.valueOf(PROBES.charAt(fail))));
+    }
+    probes.add(new Probe(prefix, pump, ""));
+  }
+
+  // ---- 計測 ----
+
+  private static RegexCost measure(Pattern pattern, Probe probe) {
+    long previous = -1;
+    double degree = 0;
+    for (int n : SIZES) {
+      long steps = steps(pattern, probe.input(n));
+      if (steps < 0) {
+        return (n <= EXPONENTIAL_SIZE) ? RegexCost.EXPONENTIAL : RegexCost.POLYNOMIAL;
+      }
+      if (previous > 0) {
+        // 長さを倍にしたときの増え方（n^k なら 2^k 倍）
+        degree = Math.log((double) steps / previous) / Math.log(2);
+      }
+      previous = steps;
+    }
+    if (degree < 1.5) {
+      return RegexCost.LINEAR;
+    }
+    return (degree < 2.5) ? RegexCost.QUADRATIC : RegexCost.POLYNOMIAL;
+  }
+
+  /** 入力全体を find し終えるまでに読んだ文字数（上限を超えた場合は -1）。 */
+  private static long steps(Pattern pattern, String input) {
+    CountingSequence seq = new CountingSequence(input);
+    try {
+      Matcher m = pattern.matcher(seq);
+      while (m.find()) {
+        // 件数は使わない
+      }
+      return seq.steps;
+    } catch (StepLimitExceeded | StackOverflowError e) {
+      // スタックの溢れも、実際の処理では行を処理できないため上限超えとして扱う
+      return -1;
+    }
+  }
+
+  // ---- 構文解析（再帰下降。コンパイルできることは確認済みのため、構文の誤りは細かく扱わない） ----
+
+  private Node parseAlternation() {
+    List<Node> branches = new ArrayList<>();
+    branches.add(parseSequence());
+    while (pos < src.length() && src.charAt(pos) == '|') {
+      pos++;
+      branches.add(parseSequence());
+    }
+    return (branches.size() == 1) ? branches.get(0) : new Alt(branches);
+  }
+
+  private Node parseSequence() {
+    List<Node> items = new ArrayList<>();
+    while (pos < src.length()) {
+      char c = src.charAt(pos);
+      if (c == '|' || c == ')') {
+        break;
+      }
+      int start = pos;
+      Node atom = parseAtom();
+      items.add(parseQuantifier(atom, start));
+    }
+    return (items.size() == 1) ? items.get(0) : new Seq(items);
+  }
+
+  private Node parseAtom() {
+    char c = src.charAt(pos);
+    switch (c) {
+      case '(':
+        return parseGroup();
+      case '[':
+        {
+          int end = classEnd(pos);
+          Node n = new Chars(charsOf(src.substring(pos, end)));
+          pos = end;
+          return n;
+        }
+      case '.':
+        pos++;
+        return new Chars(charsOf("."));
+      case '^':
+      case '$':
+        pos++;
+        return new Zero(null);
+      case '\\':
+        return parseEscape();
+      default:
+        {
+          int cp = src.codePointAt(pos);
+          pos += Character.charCount(cp);
+          return literal(cp);
+        }
+    }
+  }
+
+  private Node parseGroup() {
+    pos++; // '('
+    boolean atomic = false;
+    boolean zeroWidth = false;
+
+    if (src.startsWith("?", pos)) {
+      if (src.startsWith("?:", pos)) {
+        pos += 2;
+      } else if (src.startsWith("?>", pos)) {
+        pos += 2;
+        atomic = true;
+      } else if (src.startsWith("?=", pos) || src.startsWith("?!", pos)) {
+        pos += 2;
+        zeroWidth = true;
+      } else if (src.startsWith("?<=", pos) || src.startsWith("?<!", pos)) {
+        pos += 3;
+        zeroWidth = true;
+      } else if (src.startsWith("?<", pos)) {
+        pos = src.indexOf('>', pos) + 1;
+      } else {
+        // インラインフラグ（効果は analyze で全体に反映済み）
+        int i = pos + 1;
+        while (i < src.length() && (Character.isLetter(src.charAt(i)) || src.charAt(i) == '-')) {
+          i++;
+        }
+        pos = i + 1;
+        if (src.charAt(i) == ')') {
+          return new Zero(null);
+        }
+      }
+    }
+
+    Node inner = parseAlternation();
+    if (pos >= src.length() || src.charAt(pos) != ')') {
+      throw new IllegalStateException("unbalanced group");
+    }
+    pos++; // ')'
+    if (zeroWidth) {
+      return new Zero(inner);
+    }
+    return atomic ? new Atomic(inner) : inner;
+  }
+
+  private Node parseEscape() {
+    int start = pos;
+    pos++; // '\'
+    char c = src.charAt(pos++);
+
+    switch (c) {
+      case 'b':
+      case 'B':
+      case 'A':
+      case 'G':
+      case 'z':
+      case 'Z':
+        if (c == 'b' && src.startsWith("{", pos)) {
+          pos = src.indexOf('}', pos) + 1;
+        }
+        return new Zero(null);
+      case 'Q':
+        {
+          int end = src.indexOf("\\E", pos);
+          String quoted = (end < 0) ? src.substring(pos) : src.substring(pos, end);
+          pos = (end < 0) ? src.length() : end + 2;
+          List<Node> chars = new ArrayList<>();
+          quoted.codePoints().forEach(cp -> chars.add(literal(cp)));
+          return chars.isEmpty() ? new Zero(null) : new Seq(chars);
+        }
+      case 'k':
+        // 名前付きの後方参照（長さが決まらないため、ゼロ幅として近似する）
+        pos = src.indexOf('>', pos) + 1;
+        return new Zero(null);
+      case 'p':
+      case 'P':
+      case 'N':
+      case 'x':
+        if (src.startsWith("{", pos)) {
+          pos = src.indexOf('}', pos) + 1;
+        } else {
+          pos += (c == 'x') ? 2 : 1;
+        }
+        break;
+      case 'u':
+        pos += 4;
+        break;
+      case 'c':
+        pos++;
+        break;
+      case '0':
+        for (int i = 0; i < 3 && pos < src.length() && isOctal(src.charAt(pos)); i++) {
+          pos++;
+        }
+        break;
+      default:
+        if (c >= '1' && c <= '9') {
+          // 後方参照（ゼロ幅として近似する）
+          while (pos < src.length() && Character.isDigit(src.charAt(pos))) {
+            pos++;
+          }
+          return new Zero(null);
+        }
+        break;
+    }
+    return new Chars(charsOf(src.substring(start, pos)));
+  }
+
+  private Node parseQuantifier(Node atom, int start) {
+    if (pos >= src.length()) {
+      return atom;
+    }
+    char c = src.charAt(pos);
+    int min;
+    int max;
+    if (c == '?' || c == '*' || c == '+') {
+      pos++;
+      min = (c == '+') ? 1 : 0;
+      max = (c == '?') ? 1 : -1;
+    } else if (c == '{') {
+      int close = src.indexOf('}', pos);
+      String body = src.substring(pos + 1, close);
+      int comma = body.indexOf(',');
+      if (comma < 0) {
+        min = Integer.parseInt(body.trim());
+        max = min;
+      } else {
+        min = Integer.parseInt(body.substring(0, comma).trim());
+        String upper = body.substring(comma + 1).trim();
+        max = upper.isEmpty() ? -1 : Integer.parseInt(upper);
+      }
+      pos = close + 1;
+    } else {
+      return atom;
+    }
+
+    boolean possessive = false;
+    if (pos < src.length() && (src.charAt(pos) == '?' || src.charAt(pos) == '+')) {
+      possessive = src.charAt(pos) == '+';
+      pos++;
+    }
+    return new Repeat(atom, min, max, possessive, src.substring(start, pos));
+  }
+
+  /** 文字クラス（{@code [...]}。入れ子を含む）の終わりの直後の位置。 */
+  private int classEnd(int start) {
+    int i = start + 1;
+    if (i < src.length() && src.charAt(i) == '^') {
+      i++;
+    }
+    int depth = 1;
+    while (i < src.length()) {
+      char ch = src.charAt(i);
+      if (ch == '\\') {
+        if (src.startsWith("Q", i + 1)) {
+          int end = src.indexOf("\\E", i + 2);
+          i = (end < 0) ? src.length() : end + 2;
+        } else {
+          i += 2;
+        }
+        continue;
+      }
+      if (ch == '[') {
+        depth++;
+      } else if (ch == ']' && --depth == 0) {
+        return i + 1;
+      }
+      i++;
+    }
+    throw new IllegalStateException("unclosed class");
+  }
+
+  /** リテラルの1文字（大文字小文字を区別しないフラグなどを反映する）。 */
+  private Chars literal(int codePoint) {
+    return new Chars(charsOf(Pattern.quote(new String(Character.toChars(codePoint)))));
+  }
+
+  /** 1文字分の要素がマッチする代表の文字の集合。 */
+  private BitSet charsOf(String element) {
+    BitSet set = new BitSet(PROBES.length());
+    Pattern p;
+    try {
+      p = Pattern.compile(element, flags);
+    } catch (PatternSyntaxException e) {
+      // 単独でコンパイルできない要素は、すべての文字にマッチするものとして扱う
+      set.set(0, PROBES.length());
+      return set;
+    }
+    for (int i = 0; i < PROBES.length(); i++) {
+      if (p.matcher(PROBES.substring(i, i + 1)).matches()) {
+        set.set(i);
+      }
+    }
+    return set;
+  }
+
+  // ---- 構文木の性質 ----
+
+  /** 空文字にマッチし得るか。 */
+  private static boolean nullable(Node node) {
+    if (node instanceof Chars) {
+      return false;
+    }
+    if (node instanceof Seq s) {
+      return s.items().stream().allMatch(RegexCostAnalyzer::nullable);
+    }
+    if (node instanceof Alt a) {
+      return a.branches().stream().anyMatch(RegexCostAnalyzer::nullable);
+    }
+    if (node instanceof Repeat r) {
+      return r.min() == 0 || nullable(r.body());
+    }
+    if (node instanceof Atomic a) {
+      return nullable(a.body());
+    }
+    return true;
+  }
+
+  /** マッチの先頭になり得る文字の集合。 */
+  private static BitSet first(Node node) {
+    BitSet set = new BitSet();
+    if (node instanceof Chars c) {
+      set.or(c.set());
+    } else if (node instanceof Seq s) {
+      for (Node item : s.items()) {
+        set.or(first(item));
+        if (!nullable(item)) {
+          break;
+        }
+      }
+    } else if (node instanceof Alt a) {
+      a.branches().forEach(b -> set.or(first(b)));
+    } else if (node instanceof Repeat r) {
+      set.or(first(r.body()));
+    } else if (node instanceof Atomic a) {
+      set.or(first(a.body()));
+    }
+    return set;
+  }
+
+  /** マッチする最短の文字列の一例（選択は最初の分岐、繰り返しは最小回数）。 */
+  private static String witness(Node node) {
+    if (node instanceof Chars c) {
+      return pick(c.set());
+    }
+    if (node instanceof Seq s) {
+      StringBuilder sb = new StringBuilder();
+      s.items().forEach(item -> sb.append(witness(item)));
+      return sb.toString();
+    }
+    if (node instanceof Alt a) {
+      return witness(a.branches().get(0));
+    }
+    if (node instanceof Repeat r) {
+      String one = witness(r.body());
+      return one.repeat(Math.min(Math.max(r.min(), 0), LARGE_REPEAT));
+    }
+    if (node instanceof Atomic a) {
+      return witness(a.body());
+    }
+    return "";
+  }
+
+  private static List<Node> items(Node node) {
+    return (node instanceof Seq s) ? s.items() : List.of(node);
+  }
+
+  private static String pick(BitSet set) {
+    int i = set.nextSetBit(0);
+    return (i < 0 || i >= PROBES.length()) ? "" : String.valueOf(PROBES.charAt(i));
+  }
+
+  private static BitSet and(BitSet a, BitSet b) {
+    BitSet r = (BitSet) a.clone();
+    r.and(b);
+    return r;
+  }
+
+  private static BitSet or(BitSet a, BitSet b) {
+    BitSet r = (BitSet) a.clone();
+    r.or(b);
+    return r;
+  }
+
+  private static boolean isOctal(char c) {
+    return c >= '0' && c <= '7';
+  }
+
+  private static String buildProbes() {
+    StringBuilder sb = new StringBuilder();
+    for (char c = 'a'; c <= 'z'; c++) {
+      sb.append(c);
+    }
+    for (char c = 'A'; c <= 'Z'; c++) {
+      sb.append(c);
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      sb.append(c);
+    }
+    for (char c = '!'; c <= '~'; c++) {
+      if (!Character.isLetterOrDigit(c)) {
+        sb.append(c);
+      }
+    }
+    // 空白・改行と、非 ASCII の文字（ラテン文字・かな）
+    return sb.append(" \t\n\réあ").toString();
+  }
+
+  /**
+   * 見積もりの結果。
+   *
+   * @param cost 計測から求めたコスト
+   * @param findings 静的な解析で見つかった構造の説明
+   */
+  record Result(RegexCost cost, List<String> findings) {}
+
+  /** 計測に使う入力（prefix + pump × n + suffix）。 */
+  private record Probe(String prefix, String pump, String suffix) {
+    String input(int n) {
+      return prefix + pump.repeat(n) + suffix;
+    }
+  }
+
+  /** 構文木の要素。 */
+  private sealed interface Node permits Chars, Zero, Seq, Alt, Repeat, Atomic {}
+
+  /** 1文字にマッチする要素（代表の文字のうちマッチするものの集合）。 */
+  private record Chars(BitSet set) implements Node {}
+
+  /** ゼロ幅の要素（アンカー・先読み/後読み・後方参照の近似）。inner は先読み/後読みの中身。 */
+  private record Zero(Node inner) implements Node {}
+
+  private record Seq(List<Node> items) implements Node {}
+
+  private record Alt(List<Node> branches) implements Node {}
+
+  /**
+   * @param max 最大回数（-1 は上限なし）
+   * @param possessive 強欲（バックトラックしない）
+   * @param text パターン上の表記（説明用）
+   */
+  private record Repeat(Node body, int min, int max, boolean possessive, String text)
+      implements Node {
+    boolean unbounded() {
+      return max < 0 || max > LARGE_REPEAT;
+    }
+  }
+
+  /** アトミックグループ（中はバックトラックしない）。 */
+  private record Atomic(Node body) implements Node {}
+
+  /** 読んだ文字数を数える入力。上限を超えたら {@link StepLimitExceeded} を投げて打ち切る。 */
+  private static final class CountingSequence implements CharSequence {
+    private final String text;
+    private long steps;
+
+    CountingSequence(String text) {
+      this.text = text;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (++steps > STEP_LIMIT) {
+        throw new StepLimitExceeded();
+      }
+      return text.charAt(index);
+    }
+
+    @Override
+    public int length() {
+      return text.length();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+      return text;
+    }
+  }
+
+  /** 読んだ文字数が上限を超えた（スタックトレースは作らない）。 */
+  private static final class StepLimitExceeded extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    StepLimitExceeded() {
+      super(null, null, false, false);
+    }
+  }
+}
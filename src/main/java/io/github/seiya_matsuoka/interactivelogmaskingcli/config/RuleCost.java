@@ -0,0 +1,23 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.config;
+
+import java.util.List;
+
+/**
+ * 1ルールの処理コストの見積もり（{@link RuleValidator#estimateCosts(MaskRulesConfig)}）。
+ *
+ * @param index ルールの位置（rules[index]）
+ * @param id ルールID
+ * @param cost 計測から求めたコスト
+ * @param findings 静的な解析で見つかった、バックトラックが爆発しやすい構造（説明文。無ければ空）
+ */
+public record RuleCost(int index, String id, RegexCost cost, List<String> findings) {
+
+  public RuleCost {
+    findings = List.copyOf(findings);
+  }
+
+  /** 警告すべきか（3乗以上のコスト、または危険な構造がある）。 */
+  public boolean isWarning() {
+    return cost.compareTo(RegexCost.POLYNOMIAL) >= 0 || !findings.isEmpty();
+  }
+}
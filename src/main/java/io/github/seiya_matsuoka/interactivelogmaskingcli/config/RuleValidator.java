@@ -4,15 +4,25 @@ import io.github.seiya_matsuoka.interactivelogmaskingcli.util.RegexFlagUtil;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
-/** ルール設定の検証を行う。 */
+/**
+ * ルール設定の検証を行う。
+ *
+ * <p>有効なルールの正規表現は処理コストも見積もり（{@link RegexCostAnalyzer}）、バックトラックが指数関数的に増えるもの（ReDoS）は
+ * エラーにする。3乗以上のコストや危険な構造は {@link #warnings(MaskRulesConfig)} で警告として返す。
+ */
 public class RuleValidator {
 
   private static final int SUPPORTED_VERSION = 1;
 
+  /** 見積もりの結果（キー: フラグ + パターン。validate と estimateCosts で同じ計測を繰り返さない）。 */
+  private final Map<String, RegexCostAnalyzer.Result> costs = new ConcurrentHashMap<>();
+
   /**
    * 設定を検証し、エラーがあれば一覧で返す。
    *
@@ -87,6 +97,18 @@ public class RuleValidator {
           Pattern.compile(rule.getPattern(), RegexFlagUtil.toPatternFlags(rule.getFlags()));
         } catch (PatternSyntaxException e) {
           errors.add(prefix + ".pattern の正規表現が不正です: " + e.getDescription());
+          continue;
+        }
+
+        // 処理コスト（無効なルールは使われないため見積もらない）
+        if (rule.isEnabledEffective()) {
+          RegexCostAnalyzer.Result cost = estimate(rule);
+          if (cost.cost() == RegexCost.EXPONENTIAL) {
+            errors.add(
+                prefix
+                    + ".pattern は行の長さに対して処理時間が指数関数的に増えます（ReDoS）"
+                    + describe(cost.findings()));
+          }
         }
       }
     }
@@ -94,6 +116,60 @@ public class RuleValidator {
     return errors;
   }
 
+  /**
+   * 有効なルールごとに、正規表現の処理コストを見積もる。
+   *
+   * <p>パターンが空・不正なルールは含めない（{@link #validate(MaskRulesConfig)} のエラーになる）。
+   *
+   * @param config 対象の設定
+   * @return ルールごとの見積もり（rules の順）
+   */
+  public List<RuleCost> estimateCosts(MaskRulesConfig config) {
+    List<RuleCost> result = new ArrayList<>();
+    if (config == null || config.getRules() == null) {
+      return result;
+    }
+    List<MaskRuleConfig> rules = config.getRules();
+    for (int i = 0; i < rules.size(); i++) {
+      MaskRuleConfig rule = rules.get(i);
+      if (rule == null || isBlank(rule.getPattern()) || !rule.isEnabledEffective()) {
+        continue;
+      }
+      try {
+        RegexCostAnalyzer.Result cost = estimate(rule);
+        result.add(new RuleCost(i, rule.getId(), cost.cost(), cost.findings()));
+      } catch (PatternSyntaxException e) {
+        // 不正なパターンは validate のエラーとして扱う
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 処理コストの警告を返す（3乗以上のコスト、または計測では確認できなかった危険な構造）。
+   *
+   * <p>指数関数的なものは {@link #validate(MaskRulesConfig)} のエラーになるため含めない。
+   *
+   * @param config 対象の設定
+   * @return 警告一覧（空なら問題なし）
+   */
+  public List<String> warnings(MaskRulesConfig config) {
+    List<String> warnings = new ArrayList<>();
+    for (RuleCost cost : estimateCosts(config)) {
+      if (cost.isWarning() && cost.cost() != RegexCost.EXPONENTIAL) {
+        warnings.add(
+            "rules["
+                + cost.index()
+                + "] ("
+                + cost.id()
+                + ") の処理コスト: "
+                + cost.cost()
+                + describe(cost.findings()));
+      }
+    }
+    return warnings;
+  }
+
   /** 検証し、エラーがあれば例外を投げる。 */
   public void validateOrThrow(MaskRulesConfig config) {
     List<String> errors = validate(config);
@@ -102,6 +178,16 @@ public class RuleValidator {
     }
   }
 
+  private RegexCostAnalyzer.Result estimate(MaskRuleConfig rule) {
+    int flags = RegexFlagUtil.toPatternFlags(rule.getFlags());
+    return costs.computeIfAbsent(
+        flags + ":" + rule.getPattern(), k -> RegexCostAnalyzer.analyze(rule.getPattern(), flags));
+  }
+
+  private static String describe(List<String> findings) {
+    return findings.isEmpty() ? "" : ": " + String.join(" / ", findings);
+  }
+
   private static boolean isBlank(String s) {
     return s == null || s.trim().isEmpty();
   }
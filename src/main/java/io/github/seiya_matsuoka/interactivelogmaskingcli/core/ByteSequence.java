@@ -0,0 +1,151 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * バイト列を「1バイト = 1文字（0〜255）」として見せる {@link CharSequence}。
+ *
+ * <p>UTF-8 の行をデコードせずに正規表現へ渡すために使う。ASCII の範囲ではデコード後の文字列と同じ文字になり、
+ * 非 ASCII 文字を構成するバイトは 0x80〜0xFF の文字として現れる（ASCII 安全なルールはこれらにマッチしない）。
+ *
+ * <p>2つの使い方がある。
+ *
+ * <ul>
+ *   <li>ビュー: {@link #wrap(byte[], int, int)} / {@link #reset(byte[], int, int)} で外部の配列の一部を指す（書き込み不可）
+ *   <li>ビルダー: {@link #ByteSequence(int)} で生成し、{@link #append} で追記する（置換結果の組み立て用）
+ * </ul>
+ *
+ * <p>スレッドセーフではない。
+ */
+public final class ByteSequence implements CharSequence {
+
+  private byte[] bytes;
+  private int offset;
+  private int length;
+
+  /** true: 配列はこのインスタンスが所有する（追記可能）。 */
+  private final boolean owned;
+
+  /**
+   * 追記用のバッファとして生成する。
+   *
+   * @param capacity 初期容量
+   */
+  public ByteSequence(int capacity) {
+    this.bytes = new byte[Math.max(capacity, 16)];
+    this.owned = true;
+  }
+
+  private ByteSequence(byte[] bytes, int offset, int length) {
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+    this.owned = false;
+  }
+
+  /**
+   * 配列の一部を指すビューを生成する（コピーしない）。
+   *
+   * @param bytes 配列
+   * @param offset 開始位置
+   * @param length 長さ
+   * @return ビュー
+   */
+  public static ByteSequence wrap(byte[] bytes, int offset, int length) {
+    checkRange(bytes, offset, length);
+    return new ByteSequence(bytes, offset, length);
+  }
+
+  /** ビューが指す範囲を差し替える（行ごとにビューを使い回すため）。 */
+  public ByteSequence reset(byte[] bytes, int offset, int length) {
+    if (owned) {
+      throw new IllegalStateException("追記用のバッファは reset できません");
+    }
+    checkRange(bytes, offset, length);
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
+
+  /** 内容を空にする（追記用のみ）。 */
+  public void clear() {
+    requireOwned();
+    length = 0;
+  }
+
+  /** バイト列を追記する（追記用のみ）。 */
+  public void append(byte[] src, int from, int len) {
+    requireOwned();
+    ensureCapacity(length + len);
+    System.arraycopy(src, from, bytes, length, len);
+    length += len;
+  }
+
+  /** 他のシーケンスの [start, end) を追記する（追記用のみ）。 */
+  public void append(ByteSequence src, int start, int end) {
+    append(src.bytes, src.offset + start, end - start);
+  }
+
+  /** 配列を返す（内部状態そのもの。有効範囲は {@link #offset()} から {@link #length()} バイト）。 */
+  public byte[] array() {
+    return bytes;
+  }
+
+  /** 配列内の開始位置。 */
+  public int offset() {
+    return offset;
+  }
+
+  /** 内容が同じバイト列か。 */
+  public boolean contentEquals(ByteSequence other) {
+    return Arrays.equals(
+        bytes, offset, offset + length, other.bytes, other.offset, other.offset + other.length);
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return (char) (bytes[offset + index] & 0xFF);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > length || start > end) {
+      throw new IndexOutOfBoundsException("start=" + start + ", end=" + end);
+    }
+    return new ByteSequence(bytes, offset + start, end - start);
+  }
+
+  /** 1バイト = 1文字として文字列化する（マッチしたグループの取り出し等。ASCII の範囲なら元の文字列と同じ）。 */
+  @Override
+  public String toString() {
+    return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+  }
+
+  private void ensureCapacity(int required) {
+    if (required > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+    }
+  }
+
+  private void requireOwned() {
+    if (!owned) {
+      throw new IllegalStateException("ビューには追記できません");
+    }
+  }
+
+  private static void checkRange(byte[] bytes, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > bytes.length) {
+      throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length);
+    }
+  }
+}
@@ -0,0 +1,210 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.metrics.MaskMetrics;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 1回の実行で使うコンパイル済みルール一式。
+ *
+ * <p>ルール（適用順）に加えて、全ルールのアンカーをまとめたプレフィルタ（{@link KeywordPrefilter}）を1つ保持する。
+ *
+ * <p>ルールのリスト上の位置を「ルール位置（密なインデックス）」とし、件数は {@code long[]}（長さ = {@link #size()}）で集計する。
+ * ルールID単位の Map へは {@link #toCountMap(long[])} でレポート作成時にだけ変換する。
+ *
+ * <p>構築後は不変のため、複数スレッドから共有してよい。 {@link #withTimer()} で作ったルールセットは、処理時間の累計（{@link
+ * RuleTimer}）だけが変化する（スレッドセーフ）。 {@link #withMetrics(MaskMetrics)} で作ったルールセットも同様に、結び付けた
+ * {@link MaskMetrics} だけが変化する。
+ */
+public final class CompiledRuleSet {
+
+  private final List<MaskRule> rules;
+  private final KeywordPrefilter prefilter;
+  private final boolean asciiSafe;
+  private final RuleTimer timer;
+  private final MaskMetrics metrics;
+
+  /** ルール位置ごとの置換件数のカウンタ（metrics のもの。無効なルールは null）。 */
+  private final LongAdder[] hitCounters;
+
+  private CompiledRuleSet(
+      List<MaskRule> rules,
+      KeywordPrefilter prefilter,
+      boolean asciiSafe,
+      RuleTimer timer,
+      MaskMetrics metrics,
+      LongAdder[] hitCounters) {
+    this.rules = rules;
+    this.prefilter = prefilter;
+    this.asciiSafe = asciiSafe;
+    this.timer = timer;
+    this.metrics = metrics;
+    this.hitCounters = hitCounters;
+  }
+
+  /**
+   * ルール一覧からルールセットを構築する。
+   *
+   * @param rules コンパイル済みルール（適用順。null要素は無効ルールとして扱う）
+   * @return ルールセット
+   */
+  public static CompiledRuleSet of(List<MaskRule> rules) {
+    Objects.requireNonNull(rules, "rules");
+
+    List<MaskRule> copy = new ArrayList<>(rules.size());
+    List<List<String>> anchors = new ArrayList<>(rules.size());
+    boolean asciiSafe = true;
+    for (MaskRule r : rules) {
+      copy.add(r);
+      anchors.add((r == null) ? List.of() : r.anchors());
+
+      // 評価されるルールがすべて ASCII 安全な場合のみ、バイト単位で処理できる
+      if (r != null && r.enabled() && !r.asciiSafe()) {
+        asciiSafe = false;
+      }
+    }
+
+    return new CompiledRuleSet(
+        Collections.unmodifiableList(copy),
+        KeywordPrefilter.build(anchors),
+        asciiSafe,
+        null,
+        null,
+        null);
+  }
+
+  /**
+   * ルールごとの処理時間を計測するルールセットを返す（ルール・プレフィルタはこのルールセットと共有する）。
+   *
+   * <p>計測値は新しい {@link RuleTimer} に加算される（1回の実行ごとに作る想定）。
+   *
+   * @return 処理時間を計測するルールセット
+   */
+  public CompiledRuleSet withTimer() {
+    return new CompiledRuleSet(
+        rules, prefilter, asciiSafe, new RuleTimer(rules), metrics, hitCounters);
+  }
+
+  /** ルールごとの処理時間の累計（計測しない場合は null）。 */
+  public RuleTimer timer() {
+    return timer;
+  }
+
+  /**
+   * 処理量・置換件数・所要時間を metrics へ加算するルールセットを返す（ルール・プレフィルタ・タイマーはこのルールセットと共有する）。
+   *
+   * <p>有効なルールの置換件数のカウンタはここで metrics に登録する（一度も置換が無くても 0 として公開される）。
+   *
+   * @param metrics 加算先（長時間の実行では、複数回の実行で共有してもよい）
+   * @return metrics へ加算するルールセット
+   */
+  public CompiledRuleSet withMetrics(MaskMetrics metrics) {
+    Objects.requireNonNull(metrics, "metrics");
+    LongAdder[] counters = new LongAdder[rules.size()];
+    for (int i = 0; i < counters.length; i++) {
+      MaskRule r = rules.get(i);
+      if (r != null && r.enabled()) {
+        counters[i] = metrics.hits(r.id());
+      }
+    }
+    return new CompiledRuleSet(rules, prefilter, asciiSafe, timer, metrics, counters);
+  }
+
+  /** 加算先のメトリクス（加算しない場合は null）。 */
+  public MaskMetrics metrics() {
+    return metrics;
+  }
+
+  /** ルール位置の置換件数のカウンタ（{@link #withMetrics} で作ったルールセットの有効なルールのみ）。 */
+  LongAdder hitCounter(int ruleIndex) {
+    return hitCounters[ruleIndex];
+  }
+
+  /** ルール一覧（適用順）。 */
+  public List<MaskRule> rules() {
+    return rules;
+  }
+
+  /** ルール数。 */
+  public int size() {
+    return rules.size();
+  }
+
+  /** アンカーのプレフィルタ。 */
+  public KeywordPrefilter prefilter() {
+    return prefilter;
+  }
+
+  /**
+   * 有効なルールがすべて ASCII 安全か（UTF-8 のバイト列のまま {@link MaskEngine#maskBytes} で処理できるか）。
+   */
+  public boolean isAsciiSafe() {
+    return asciiSafe;
+  }
+
+  /**
+   * ルールセットの内容（適用順・ID・有効/無効・パターン・フラグ・置換文字列）から求めた指紋（SHA-256 の16進）。
+   *
+   * <p>同じ内容のルールセットなら同じ値になる。前回の実行結果を使い回してよいかの判定に使う。
+   */
+  public String fingerprint() {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    for (MaskRule r : rules) {
+      if (r == null) {
+        update(digest, "-");
+        continue;
+      }
+      update(digest, r.id());
+      update(digest, Boolean.toString(r.enabled()));
+      update(digest, r.pattern().pattern());
+      update(digest, Integer.toString(r.pattern().flags()));
+      update(digest, r.replacement());
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /** 長さを前置して追加する（区切りの曖昧さをなくすため）。 */
+  private static void update(MessageDigest digest, String value) {
+    byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+    digest.update(bytes);
+  }
+
+  /** ルール位置ごとの件数を集計するための配列を生成する。 */
+  public long[] newCounters() {
+    return new long[rules.size()];
+  }
+
+  /**
+   * ルール位置ごとの件数を、ルールID単位の Map（id -> count）へ変換する。
+   *
+   * <p>件数が 0 のルールは含めない。同じIDのルールが複数ある場合は加算する。
+   *
+   * @param counts ルール位置ごとの件数（長さ = {@link #size()}）
+   * @return ルール別件数（不変）
+   */
+  public Map<String, Long> toCountMap(long[] counts) {
+    Map<String, Long> map = new HashMap<>();
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        map.merge(rules.get(i).id(), counts[i], Long::sum);
+      }
+    }
+    return Map.copyOf(map);
+  }
+}
@@ -0,0 +1,241 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ルールのアンカー（必須リテラル）を1回の走査でまとめて探すプレフィルタ（Aho–Corasick）。
+ *
+ * <p>{@link MaskEngine} は行ごとにこのプレフィルタを1回だけ走らせ、アンカーが見つかったルールだけ正規表現を評価する。
+ *
+ * <ul>
+ *   <li>ASCII の大文字/小文字は同一視する（CASE_INSENSITIVE のルールも取りこぼさないため）。
+ *   <li>誤検知（候補にしたが実際はマッチしない）は許容し、取りこぼしは起こさない。
+ *   <li>アンカーを持たないルールは常に候補とする。
+ * </ul>
+ *
+ * <p>構築後は不変のため、複数スレッドから共有してよい。
+ */
+public final class KeywordPrefilter {
+
+  private static final int ASCII = 128;
+
+  /** ASCII 文字の遷移表（state * 128 + ch）。失敗遷移を畳み込んだ DFA。 */
+  private final int[] asciiDelta;
+
+  /** 非 ASCII 文字の遷移（状態ごと。trie の子のみで、無ければ null。失敗時は fail を辿る）。 */
+  private final List<Map<Character, Integer>> wideChildren;
+
+  private final int[] fail;
+
+  /** 各状態で確定するルール番号（fail 先の出力も含めて併合済み）。 */
+  private final int[][] outputs;
+
+  /** アンカーを持たず、常に評価が必要なルール番号。 */
+  private final int[] alwaysRun;
+
+  /** アンカーを持つルールの数（すべて見つかった時点で走査を打ち切るため）。 */
+  private final int anchoredRuleCount;
+
+  private KeywordPrefilter(
+      int[] asciiDelta,
+      List<Map<Character, Integer>> wideChildren,
+      int[] fail,
+      int[][] outputs,
+      int[] alwaysRun,
+      int anchoredRuleCount) {
+    this.asciiDelta = asciiDelta;
+    this.wideChildren = wideChildren;
+    this.fail = fail;
+    this.outputs = outputs;
+    this.alwaysRun = alwaysRun;
+    this.anchoredRuleCount = anchoredRuleCount;
+  }
+
+  /**
+   * ルールごとのアンカー一覧からプレフィルタを構築する。
+   *
+   * @param anchorsPerRule ルール位置ごとのアンカー（空ならそのルールは常に候補）
+   * @return プレフィルタ
+   */
+  @SuppressWarnings("unchecked")
+  public static KeywordPrefilter build(List<List<String>> anchorsPerRule) {
+
+    // trie を構築（状態0 が根）
+    List<Map<Character, Integer>> children = new ArrayList<>();
+    List<List<Integer>> out = new ArrayList<>();
+    children.add(new HashMap<>());
+    out.add(new ArrayList<>());
+
+    List<Integer> always = new ArrayList<>();
+    int anchored = 0;
+
+    for (int rule = 0; rule < anchorsPerRule.size(); rule++) {
+      List<String> anchors = anchorsPerRule.get(rule);
+      if (anchors == null || anchors.isEmpty() || anchors.contains("")) {
+        always.add(rule);
+        continue;
+      }
+      anchored++;
+      for (String anchor : anchors) {
+        int state = 0;
+        for (int i = 0; i < anchor.length(); i++) {
+          char ch = fold(anchor.charAt(i));
+          Integer next = children.get(state).get(ch);
+          if (next == null) {
+            next = children.size();
+            children.add(new HashMap<>());
+            out.add(new ArrayList<>());
+            children.get(state).put(ch, next);
+          }
+          state = next;
+        }
+        if (!out.get(state).contains(rule)) {
+          out.get(state).add(rule);
+        }
+      }
+    }
+
+    int n = children.size();
+    int[] fail = new int[n];
+    int[] delta = new int[n * ASCII];
+
+    // 幅優先で fail と ASCII 遷移表を埋める
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    for (int ch = 0; ch < ASCII; ch++) {
+      Integer next = children.get(0).get((char) ch);
+      if (next != null) {
+        delta[ch] = next;
+        queue.add(next);
+      }
+    }
+    for (Map.Entry<Character, Integer> e : children.get(0).entrySet()) {
+      if (e.getKey() >= ASCII) {
+        queue.add(e.getValue());
+      }
+    }
+
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+
+      // fail 先の出力を併合する（短いアンカーが長いアンカーの接尾辞になっている場合）
+      for (int r : out.get(fail[state])) {
+        if (!out.get(state).contains(r)) {
+          out.get(state).add(r);
+        }
+      }
+
+      for (Map.Entry<Character, Integer> e : children.get(state).entrySet()) {
+        char ch = e.getKey();
+        int child = e.getValue();
+
+        int f = fail[state];
+        while (f != 0 && !children.get(f).containsKey(ch)) {
+          f = fail[f];
+        }
+        Integer target = children.get(f).get(ch);
+        fail[child] = (target == null || target == child) ? 0 : target;
+
+        queue.add(child);
+      }
+
+      for (int ch = 0; ch < ASCII; ch++) {
+        Integer next = children.get(state).get((char) ch);
+        delta[state * ASCII + ch] = (next != null) ? next : delta[fail[state] * ASCII + ch];
+      }
+    }
+
+    int[][] outputs = new int[n][];
+    List<Map<Character, Integer>> wide = new ArrayList<>(n);
+    for (int s = 0; s < n; s++) {
+      outputs[s] = out.get(s).stream().mapToInt(Integer::intValue).toArray();
+
+      Map<Character, Integer> w = null;
+      for (Map.Entry<Character, Integer> e : children.get(s).entrySet()) {
+        if (e.getKey() >= ASCII) {
+          if (w == null) {
+            w = new HashMap<>();
+          }
+          w.put(e.getKey(), e.getValue());
+        }
+      }
+      wide.add(w);
+    }
+
+    return new KeywordPrefilter(
+        delta,
+        wide,
+        fail,
+        outputs,
+        always.stream().mapToInt(Integer::intValue).toArray(),
+        anchored);
+  }
+
+  /**
+   * テキストを1回走査し、評価が必要なルール位置に true を立てる。
+   *
+   * <p>candidates は呼び出し側で初期化しておくこと（このメソッドは true を立てるだけで false には戻さない）。
+   *
+   * @param text 走査対象
+   * @param candidates ルール位置ごとの候補フラグ（長さはルール数以上）
+   */
+  public void scan(CharSequence text, boolean[] candidates) {
+
+    for (int r : alwaysRun) {
+      candidates[r] = true;
+    }
+    if (anchoredRuleCount == 0) {
+      return;
+    }
+
+    int found = 0;
+    int state = 0;
+    int len = text.length();
+
+    for (int i = 0; i < len; i++) {
+      char ch = text.charAt(i);
+      if (ch < ASCII) {
+        state = asciiDelta[state * ASCII + fold(ch)];
+      } else {
+        state = stepWide(state, ch);
+      }
+
+      int[] hits = outputs[state];
+      if (hits.length == 0) {
+        continue;
+      }
+      for (int r : hits) {
+        if (!candidates[r]) {
+          candidates[r] = true;
+          found++;
+        }
+      }
+      // アンカーを持つルールがすべて候補になったら、それ以上走査しても結果は変わらない
+      if (found >= anchoredRuleCount) {
+        return;
+      }
+    }
+  }
+
+  private int stepWide(int state, char ch) {
+    int s = state;
+    while (true) {
+      Map<Character, Integer> w = wideChildren.get(s);
+      Integer next = (w == null) ? null : w.get(ch);
+      if (next != null) {
+        return next;
+      }
+      if (s == 0) {
+        return 0;
+      }
+      s = fail[s];
+    }
+  }
+
+  private static char fold(char ch) {
+    return (ch >= 'A' && ch <= 'Z') ? (char) (ch + ('a' - 'A')) : ch;
+  }
+}
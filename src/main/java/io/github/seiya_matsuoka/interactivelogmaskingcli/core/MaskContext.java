@@ -0,0 +1,183 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.metrics.MaskMetrics;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.regex.Matcher;
+
+/**
+ * {@link MaskEngine} が行ごとの処理で使い回す作業領域（スレッドごとに1つ）。
+ *
+ * <p>行ごと・ルールごとに確保していたオブジェクトをここにまとめ、定常状態ではアロケーションが発生しないようにする。
+ *
+ * <ul>
+ *   <li>ルールごとの {@link Matcher}（{@link Matcher#reset(CharSequence)} で使い回す）
+ *   <li>置換結果の組み立て用 {@link StringBuilder}（同期なし）
+ *   <li>プレフィルタの候補フラグ
+ *   <li>ルール位置ごとの置換件数（{@code long[]}）と処理した行数
+ * </ul>
+ *
+ * <p>スレッドセーフではない。複数スレッドで処理する場合はスレッドごとに {@link #MaskContext(CompiledRuleSet)} で生成すること。
+ */
+public final class MaskContext {
+
+  private final CompiledRuleSet ruleSet;
+  private final Matcher[] matchers;
+  private final boolean[] candidates;
+  private final long[] counts;
+  private final StringBuilder builder = new StringBuilder(256);
+
+  /** バイト単位の処理で使う置換結果の組み立て領域（交互に使う。初回のみ生成）。 */
+  private ByteSequence byteScratchA;
+
+  private ByteSequence byteScratchB;
+
+  private long totalCount;
+  private long lines;
+
+  /** メトリクスへ加算済みの行数・件数（{@link #publishMetrics(long)} で差分だけを加算するため）。 */
+  private long publishedLines;
+
+  private long[] publishedCounts;
+
+  /** 1行のマスキング時間を計測する行を選ぶためのカウンタ（リセットしない）。 */
+  private int lineTicks;
+
+  /** 直前の {@code applyRule} の置換回数（戻り値を増やさずに受け渡すため）。 */
+  int lastApplyCount;
+
+  /**
+   * @param ruleSet この作業領域で処理するルールセット
+   */
+  public MaskContext(CompiledRuleSet ruleSet) {
+    this.ruleSet = Objects.requireNonNull(ruleSet, "ruleSet");
+    this.matchers = new Matcher[ruleSet.size()];
+    this.candidates = new boolean[ruleSet.size()];
+    this.counts = new long[ruleSet.size()];
+  }
+
+  /** 対象のルールセット。 */
+  public CompiledRuleSet ruleSet() {
+    return ruleSet;
+  }
+
+  /**
+   * ルール位置ごとの累計置換件数。
+   *
+   * <p>返す配列は内部状態そのもの（コピーしない）。{@link #resetCounts()} までの累計が入る。
+   */
+  public long[] counts() {
+    return counts;
+  }
+
+  /** 累計の合計置換件数。 */
+  public long totalCount() {
+    return totalCount;
+  }
+
+  /** 累計の処理行数（{@link #resetCounts()} までの累計）。 */
+  public long lines() {
+    return lines;
+  }
+
+  /** 件数・行数をゼロに戻す（Matcher 等の作業領域はそのまま使い回す）。 */
+  public void resetCounts() {
+    Arrays.fill(counts, 0L);
+    totalCount = 0;
+    lines = 0;
+    publishedLines = 0;
+    if (publishedCounts != null) {
+      Arrays.fill(publishedCounts, 0L);
+    }
+  }
+
+  /**
+   * 前回の加算（または {@link #resetCounts()}）以降の行数・件数を、ルールセットのメトリクス（{@link
+   * CompiledRuleSet#withMetrics}）へ加算する。
+   *
+   * <p>1ファイル・追記1回分などの区切りで呼ぶ（行ごとには呼ばない）。メトリクスを持たないルールセットでは何もしない。
+   *
+   * @param bytes 前回の加算以降に処理した入力のバイト数
+   */
+  public void publishMetrics(long bytes) {
+    MaskMetrics metrics = ruleSet.metrics();
+    if (metrics == null) {
+      return;
+    }
+    if (publishedCounts == null) {
+      publishedCounts = new long[counts.length];
+    }
+    metrics.addInput(lines - publishedLines, bytes);
+    publishedLines = lines;
+    for (int i = 0; i < counts.length; i++) {
+      long delta = counts[i] - publishedCounts[i];
+      if (delta > 0) {
+        ruleSet.hitCounter(i).add(delta);
+        publishedCounts[i] = counts[i];
+      }
+    }
+  }
+
+  /**
+   * 他で集計した件数を加算する（分割して並列に処理した結果を1ファイル分にまとめる場合など）。
+   *
+   * @param perRule ルール位置ごとの件数（長さはルール数）
+   * @param total 合計件数
+   */
+  public void addCounts(long[] perRule, long total) {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += perRule[i];
+    }
+    totalCount += total;
+  }
+
+  /**
+   * 他で処理した行数を加算する（{@link #addCounts(long[], long)} と合わせて使う）。
+   *
+   * @param n 行数
+   */
+  public void addLines(long n) {
+    lines += n;
+  }
+
+  void addCount(int ruleIndex, int count) {
+    counts[ruleIndex] += count;
+    totalCount += count;
+  }
+
+  /** この行のマスキング時間を計測するか（{@link MaskMetrics#LINE_SAMPLE_INTERVAL} 行に1行）。 */
+  boolean sampleLine() {
+    return (lineTicks++ & (MaskMetrics.LINE_SAMPLE_INTERVAL - 1)) == 0;
+  }
+
+  boolean[] candidates() {
+    return candidates;
+  }
+
+  StringBuilder builder() {
+    builder.setLength(0);
+    return builder;
+  }
+
+  /** current と重ならない方の組み立て領域を空にして返す。 */
+  ByteSequence byteScratch(ByteSequence current) {
+    if (byteScratchA == null) {
+      byteScratchA = new ByteSequence(256);
+      byteScratchB = new ByteSequence(256);
+    }
+    ByteSequence out = (current == byteScratchA) ? byteScratchB : byteScratchA;
+    out.clear();
+    return out;
+  }
+
+  /** ルール位置の Matcher を input 向けに reset して返す（初回のみ生成）。 */
+  Matcher matcher(int ruleIndex, MaskRule rule, CharSequence input) {
+    Matcher m = matchers[ruleIndex];
+    if (m == null) {
+      m = rule.pattern().matcher(input);
+      matchers[ruleIndex] = m;
+      return m;
+    }
+    return m.reset(input);
+  }
+}
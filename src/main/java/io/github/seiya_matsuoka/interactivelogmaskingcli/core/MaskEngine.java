@@ -1,9 +1,12 @@
 package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
 
-import java.util.HashMap;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.jfr.MaskRuleEvent;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.metrics.MaskMetrics;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
+import jdk.jfr.EventType;
 
 /**
  * マスキング処理のコア（文字列に対する置換 + 件数集計）。
@@ -23,9 +26,35 @@ import java.util.regex.Matcher;
  * <p>そのため、dryRun の場合でも内部的には置換を行って current を更新しながら 次のルールを評価する（ルール同士の影響を反映する）。
  *
  * <p>ただし、外部へ返す {@link MaskEngineResult#outputText()} は入力文字列のままにする。
+ *
+ * <h2>プレフィルタ</h2>
+ *
+ * <p>行ごとに {@link KeywordPrefilter} を1回走らせ、アンカー（必須リテラル）が含まれないルールは正規表現の評価自体を省略する。
+ *
+ * <p>あるルールが文字列を書き換えた場合は、後続ルールのアンカーが新たに現れる可能性があるため、書き換え後の文字列で再走査する。
+ *
+ * <h2>計測</h2>
+ *
+ * <p>処理した行数は常に作業領域（{@link MaskContext#lines()}）へ加算する。 ルールセットが {@link RuleTimer}
+ * を持つ場合のみ、ルールを1つ適用するごとの所要時間も加算する。
+ *
+ * <p>JFR でイベント（{@link MaskRuleEvent}）を記録している間は、ルールの適用ごとにイベントを発行する（しきい値より速く終わったものは
+ * 記録されない）。記録しているかは行ごとに1回だけ確認し、記録していない場合はイベントを作らない。
+ *
+ * <p>ルールセットが {@link MaskMetrics} を持つ場合は、{@link MaskMetrics#LINE_SAMPLE_INTERVAL} 行に1行だけ
+ * 1行のマスキング時間を記録する（件数・行数は入出力側が区切りごとにまとめて加算する）。
  */
 public class MaskEngine {
 
+  /** ルール適用のイベントの種類（記録しているかの確認用）。 */
+  private static final EventType RULE_EVENT = EventType.getEventType(MaskRuleEvent.class);
+
+  /** {@link #maskText(String, CompiledRuleSet, boolean)} 用のスレッドごとの作業領域。 */
+  private final ThreadLocal<MaskContext> contexts = new ThreadLocal<>();
+
+  /** {@link #maskText(String, List, boolean)} で最後に変換したルールセット（同じリストなら使い回す）。 */
+  private volatile CompiledRules lastCompiled;
+
   /**
    * 文字列をマスキングする。
    *
@@ -35,6 +64,9 @@ public class MaskEngine {
    *
    * <p>例: ルールAが文字列を書き換え、その結果ルールBのマッチ箇所が変わる場合でも、 dryRun と実運用で件数が一致するようにするため。
    *
+   * <p>ルールセット（{@link CompiledRuleSet}）への変換は、直前の呼び出しと同じリスト（同一インスタンス）であれば使い回す。
+   * そのため、渡したリストをあとから書き換えた場合は、新しいリストとして渡し直すこと。
+   *
    * @param input 入力文字列（null の場合は空文字扱い）
    * @param rules コンパイル済みルール（順番に適用される）
    * @param dryRun dryRun（出力文字列は入力のまま、件数だけ集計）
@@ -42,77 +74,316 @@ public class MaskEngine {
    */
   public MaskEngineResult maskText(String input, List<MaskRule> rules, boolean dryRun) {
 
+    // ルールが無い場合は、そのまま返す（countsは空）
+    if (rules == null || rules.isEmpty()) {
+      return new MaskEngineResult((input == null) ? "" : input, Map.of(), 0);
+    }
+
+    CompiledRules cached = lastCompiled;
+    if (cached == null || cached.source() != rules) {
+      cached = new CompiledRules(rules, CompiledRuleSet.of(rules));
+      lastCompiled = cached;
+    }
+    return maskText(input, cached.ruleSet(), dryRun);
+  }
+
+  /**
+   * 文字列をマスキングする（ルールセット版）。
+   *
+   * <p>プレフィルタで候補になったルールだけを評価する点を除き、{@link #maskText(String, List, boolean)} と同じ結果を返す。
+   *
+   * <p>作業領域はスレッドごとに使い回す。大量の行を処理する場合は {@link #mask(String, MaskContext, boolean)} を使うと、
+   * 行ごとの結果オブジェクト（Map 等）も確保せずに済む。
+   *
+   * @param input 入力文字列（null の場合は空文字扱い）
+   * @param ruleSet コンパイル済みルールセット
+   * @param dryRun dryRun（出力文字列は入力のまま、件数だけ集計）
+   * @return 結果
+   */
+  public MaskEngineResult maskText(String input, CompiledRuleSet ruleSet, boolean dryRun) {
+
+    MaskContext ctx = threadContext(ruleSet);
+    ctx.resetCounts();
+
+    String output = mask(input, ctx, dryRun);
+
+    // 置換が無い行（大半の行）では Map を確保しない
+    if (ctx.totalCount() == 0) {
+      return new MaskEngineResult(output, Map.of(), 0);
+    }
+
+    // ルール別の置換件数（id -> count）
+    return new MaskEngineResult(output, ruleSet.toCountMap(ctx.counts()), ctx.totalCount());
+  }
+
+  /**
+   * 文字列をマスキングし、件数を作業領域（{@link MaskContext#counts()}）へ加算する。
+   *
+   * <p>置換が1件も無い場合は、入力と同一のインスタンスをそのまま返す（新しい文字列を作らない）。
+   *
+   * <p>dryRun の場合でも内部的には置換して後続ルールを評価し、件数は実運用と同じになる（戻り値は入力のまま）。
+   *
+   * @param input 入力文字列（null の場合は空文字扱い）
+   * @param ctx 作業領域（このスレッド専用のもの）
+   * @param dryRun dryRun（出力文字列は入力のまま、件数だけ集計）
+   * @return マスキング後文字列（dryRun の場合は入力文字列）
+   */
+  public String mask(String input, MaskContext ctx, boolean dryRun) {
+
     // null を扱いやすくするため、最初に空文字へ正規化する
     String original = (input == null) ? "" : input;
 
+    ctx.addLines(1);
+
+    CompiledRuleSet ruleSet = ctx.ruleSet();
+    List<MaskRule> rules = ruleSet.rules();
+    if (rules.isEmpty()) {
+      return original;
+    }
+
+    // 計測しない場合は時刻も取得しない
+    RuleTimer timer = ruleSet.timer();
+    MaskMetrics metrics = ruleSet.metrics();
+    boolean sampled = (metrics != null) && ctx.sampleLine();
+    long lineStarted = sampled ? System.nanoTime() : 0L;
+    boolean recording = RULE_EVENT.isEnabled();
+
     // current は次のルールが評価する対象文字列。dryRun でも件数精度を保つため内部的には更新し続ける。
     String current = original;
 
-    // ルール別の置換件数（id -> count）
-    Map<String, Long> counts = new HashMap<>();
-    long total = 0;
+    // アンカーが含まれるルール（＋アンカー無しのルール）だけを候補にする
+    boolean[] candidates = ctx.candidates();
+    Arrays.fill(candidates, false);
+    ruleSet.prefilter().scan(current, candidates);
 
-    // ルールが無い場合は、そのまま返す（countsは空）
-    if (rules == null || rules.isEmpty()) {
-      return new MaskEngineResult(original, Map.copyOf(counts), total);
-    }
+    for (int i = 0; i < rules.size(); i++) {
+      MaskRule rule = rules.get(i);
 
-    for (MaskRule rule : rules) {
-      // null・無効ルールはスキップ
-      if (rule == null || !rule.enabled()) {
+      // null・無効ルール・アンカーが無い行はスキップ
+      if (rule == null || !rule.enabled() || !candidates[i]) {
         continue;
       }
 
-      // 現在の文字列に対してルールを1つ適用（置換後文字列と置換回数を取得）
-      ApplyResult applied = applyRule(current, rule);
+      // 現在の文字列に対してルールを1つ適用（置換が無ければ同一インスタンスが返る）
+      long started = (timer != null) ? System.nanoTime() : 0L;
+      MaskRuleEvent event = recording ? new MaskRuleEvent() : null;
+      if (event != null) {
+        event.begin();
+      }
+      String applied = applyRule(current, i, rule, ctx);
+      if (timer != null) {
+        timer.add(i, System.nanoTime() - started);
+      }
+      if (event != null) {
+        commit(event, rule, current.length(), ctx.lastApplyCount);
+      }
 
       // 置換が発生した場合のみ集計を更新
-      if (applied.count > 0) {
-        // 同じidが複数回出た場合も加算される（通常はid重複はValidatorで弾く想定）
-        counts.merge(rule.id(), (long) applied.count, Long::sum);
-        total += applied.count;
+      if (ctx.lastApplyCount > 0) {
+        ctx.addCount(i, ctx.lastApplyCount);
+
+        if (!applied.equals(current)) {
+          // 置換で後続ルールのアンカーが現れる／消える可能性があるため、後続分の候補を引き直す
+          Arrays.fill(candidates, i + 1, candidates.length, false);
+          ruleSet.prefilter().scan(applied, candidates);
+        }
       }
 
       // 次のルールは置換後の文字列を評価する
       // dryRunでもここは更新する（件数の一致を優先するため）
-      current = applied.output;
+      current = applied;
     }
 
-    // dryRun の場合は見た目の出力は変えない（元文字列のまま返す）。実運用（dryRun=false）の場合は最終置換後文字列を返す
-    String output = dryRun ? original : current;
+    if (sampled) {
+      metrics.lineMasked(System.nanoTime() - lineStarted);
+    }
 
-    return new MaskEngineResult(output, Map.copyOf(counts), total);
+    // dryRun の場合は見た目の出力は変えない（元文字列のまま返す）。実運用（dryRun=false）の場合は最終置換後文字列を返す
+    return dryRun ? original : current;
   }
 
   /**
-   * 1つのルールを文字列へ適用し、置換後文字列と置換回数を返す。
+   * 1つのルールを文字列へ適用し、置換後文字列を返す（置換回数は {@link MaskContext#lastApplyCount}）。
    *
-   * <p>実装は {@link Matcher#find()} を繰り返し、マッチするたびに {@link Matcher#appendReplacement(StringBuffer,
-   * String)} を呼び出して置換する。
+   * <p>実装は {@link Matcher#find()} を繰り返し、マッチするたびに置換結果を連結する。
    *
    * <p>この方式により、置換回数（マッチ回数）を正確に集計する。
    *
+   * <p>Matcher と StringBuilder は作業領域のものを使い回し、1件もマッチしない場合は入力をそのまま返す。
+   *
+   * <p>置換はコンパイル時に解析済みの {@link ReplacementTemplate} の片を直接連結する（マッチごとに置換文字列を解析しない）。
+   * 解析できなかった置換文字列のみ、従来どおり {@link Matcher#appendReplacement(StringBuilder, String)} に任せる。
+   *
    * <p>replacement は Java の正規表現置換仕様に従う。
    *
    * <p>"$1" などの参照が解釈されるため、文字列として "$" や "\" をそのまま出したい場合は replacement 側でエスケープが必要になる。
    */
-  private static ApplyResult applyRule(String input, MaskRule rule) {
-    Matcher m = rule.pattern().matcher(input);
+  private static String applyRule(String input, int ruleIndex, MaskRule rule, MaskContext ctx) {
+    Matcher m = ctx.matcher(ruleIndex, rule, input);
+
+    // 大半の行はここで終わる（StringBuilder も新しい文字列も作らない）
+    if (!m.find()) {
+      ctx.lastApplyCount = 0;
+      return input;
+    }
 
     int count = 0;
-    StringBuffer sb = new StringBuffer();
+    StringBuilder sb = ctx.builder();
+    ReplacementTemplate template = rule.template();
 
-    // find() で次のマッチ箇所へ進む。マッチごとに appendReplacement を行うことで置換回数をカウントする
-    while (m.find()) {
-      count++;
-      m.appendReplacement(sb, rule.replacement());
+    if (template == null) {
+      // find() で次のマッチ箇所へ進む。マッチごとに appendReplacement を行うことで置換回数をカウントする
+      do {
+        count++;
+        m.appendReplacement(sb, rule.replacement());
+      } while (m.find());
+
+      // 最後に残りの文字列（末尾側）を appendTail で連結して完成させる
+      m.appendTail(sb);
+
+    } else {
+      int last = 0;
+      do {
+        count++;
+        // 前回のマッチ末尾から今回のマッチ先頭までをそのまま写し、置換結果を続ける
+        sb.append(input, last, m.start());
+        template.appendTo(sb, m, input);
+        last = m.end();
+      } while (m.find());
+
+      // 残りの文字列（末尾側）を連結して完成させる
+      sb.append(input, last, input.length());
+    }
+
+    ctx.lastApplyCount = count;
+    return sb.toString();
+  }
+
+  /**
+   * UTF-8 の1行をバイト列のまま処理する（デコード/エンコードを省く）。
+   *
+   * <p>{@link CompiledRuleSet#isAsciiSafe()} が true のルールセット専用。ASCII 安全なルールは ASCII
+   * の文字にしかマッチしないため、非 ASCII のバイトはそのまま残り、マッチした範囲だけが置換結果の UTF-8 バイト列に置き換わる。
+   * 結果（出力バイト列・件数）は、同じ行をデコードして {@link #mask(String, MaskContext, boolean)} に通し、UTF-8
+   * に戻したものと一致する。
+   *
+   * <p>戻り値は input そのものか、ctx 内の組み立て領域（次の呼び出しで上書きされる）のいずれか。
+   *
+   * @param input 1行分の UTF-8 バイト列（改行を含まない）
+   * @param ctx 作業領域（件数はここに加算される）
+   * @param dryRun true: 件数のみ集計し input をそのまま返す
+   * @return 置換後のバイト列
+   * @throws IllegalArgumentException ルールセットが ASCII 安全でない場合
+   */
+  public ByteSequence maskBytes(ByteSequence input, MaskContext ctx, boolean dryRun) {
+
+    CompiledRuleSet ruleSet = ctx.ruleSet();
+    if (!ruleSet.isAsciiSafe()) {
+      throw new IllegalArgumentException("ASCII 安全でないルールを含むため、バイト単位では処理できません");
+    }
+    ctx.addLines(1);
+
+    List<MaskRule> rules = ruleSet.rules();
+    if (rules.isEmpty()) {
+      return input;
+    }
+
+    RuleTimer timer = ruleSet.timer();
+    MaskMetrics metrics = ruleSet.metrics();
+    boolean sampled = (metrics != null) && ctx.sampleLine();
+    long lineStarted = sampled ? System.nanoTime() : 0L;
+    boolean recording = RULE_EVENT.isEnabled();
+    ByteSequence current = input;
+
+    boolean[] candidates = ctx.candidates();
+    Arrays.fill(candidates, false);
+    ruleSet.prefilter().scan(current, candidates);
+
+    for (int i = 0; i < rules.size(); i++) {
+      MaskRule rule = rules.get(i);
+      if (rule == null || !rule.enabled() || !candidates[i]) {
+        continue;
+      }
+
+      long started = (timer != null) ? System.nanoTime() : 0L;
+      MaskRuleEvent event = recording ? new MaskRuleEvent() : null;
+      if (event != null) {
+        event.begin();
+      }
+      ByteSequence applied = applyRuleBytes(current, i, rule, ctx);
+      if (timer != null) {
+        timer.add(i, System.nanoTime() - started);
+      }
+      if (event != null) {
+        commit(event, rule, current.length(), ctx.lastApplyCount);
+      }
+
+      if (ctx.lastApplyCount > 0) {
+        ctx.addCount(i, ctx.lastApplyCount);
+
+        if (!applied.contentEquals(current)) {
+          Arrays.fill(candidates, i + 1, candidates.length, false);
+          ruleSet.prefilter().scan(applied, candidates);
+        }
+      }
+      current = applied;
+    }
+
+    if (sampled) {
+      metrics.lineMasked(System.nanoTime() - lineStarted);
+    }
+    return dryRun ? input : current;
+  }
+
+  /** {@link #applyRule} のバイト列版（置換結果は current と重ならない組み立て領域に作る）。 */
+  private static ByteSequence applyRuleBytes(
+      ByteSequence input, int ruleIndex, MaskRule rule, MaskContext ctx) {
+    Matcher m = ctx.matcher(ruleIndex, rule, input);
+
+    if (!m.find()) {
+      ctx.lastApplyCount = 0;
+      return input;
     }
 
-    // 最後に残りの文字列（末尾側）を appendTail で連結して完成させる
-    m.appendTail(sb);
+    int count = 0;
+    ByteSequence out = ctx.byteScratch(input);
+    ReplacementTemplate template = rule.template();
+
+    int last = 0;
+    do {
+      count++;
+      out.append(input, last, m.start());
+      template.appendTo(out, m, input);
+      last = m.end();
+    } while (m.find());
+    out.append(input, last, input.length());
 
-    return new ApplyResult(sb.toString(), count);
+    ctx.lastApplyCount = count;
+    return out;
+  }
+
+  /** イベントを閉じ、しきい値を超えていれば記録する。 */
+  private static void commit(MaskRuleEvent event, MaskRule rule, int inputLength, int hits) {
+    event.end();
+    if (!event.shouldCommit()) {
+      return;
+    }
+    event.ruleId = rule.id();
+    event.inputLength = inputLength;
+    event.hits = hits;
+    event.commit();
+  }
+
+  /** このスレッド用の作業領域を返す（ルールセットが変わった場合のみ作り直す）。 */
+  private MaskContext threadContext(CompiledRuleSet ruleSet) {
+    MaskContext ctx = contexts.get();
+    if (ctx == null || ctx.ruleSet() != ruleSet) {
+      ctx = new MaskContext(ruleSet);
+      contexts.set(ctx);
+    }
+    return ctx;
   }
 
-  private record ApplyResult(String output, int count) {}
+  /** 変換元のリストと、変換したルールセット。 */
+  private record CompiledRules(List<MaskRule> source, CompiledRuleSet ruleSet) {}
 }
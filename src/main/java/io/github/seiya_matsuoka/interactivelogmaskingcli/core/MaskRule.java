@@ -1,5 +1,6 @@
 package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
 
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -12,6 +13,56 @@ import java.util.regex.Pattern;
  * @param enabled 有効/無効
  * @param pattern コンパイル済み正規表現
  * @param replacement 置換文字列（$1 等の参照も可能）
+ * @param anchors マッチ時に必ずいずれかを含むリテラル（空なら常に評価する）
+ * @param template 解析済みの置換文字列（null の場合は {@link java.util.regex.Matcher#appendReplacement} で都度解釈する）
+ * @param asciiSafe UTF-8 のバイト列のまま処理しても結果が変わらないか（{@link MaskEngine#maskBytes} の対象にできるか）
  */
 public record MaskRule(
-    String id, String name, boolean enabled, Pattern pattern, String replacement) {}
+    String id,
+    String name,
+    boolean enabled,
+    Pattern pattern,
+    String replacement,
+    List<String> anchors,
+    ReplacementTemplate template,
+    boolean asciiSafe) {
+
+  public MaskRule {
+    anchors = (anchors == null) ? List.of() : List.copyOf(anchors);
+  }
+
+  /** バイト単位の処理の対象外（asciiSafe=false）としてルールを生成する。 */
+  public MaskRule(
+      String id,
+      String name,
+      boolean enabled,
+      Pattern pattern,
+      String replacement,
+      List<String> anchors,
+      ReplacementTemplate template) {
+    this(id, name, enabled, pattern, replacement, anchors, template, false);
+  }
+
+  /** 置換文字列を解析してルールを生成する。 */
+  public MaskRule(
+      String id,
+      String name,
+      boolean enabled,
+      Pattern pattern,
+      String replacement,
+      List<String> anchors) {
+    this(
+        id,
+        name,
+        enabled,
+        pattern,
+        replacement,
+        anchors,
+        ReplacementTemplate.compile(replacement, pattern));
+  }
+
+  /** アンカー無し（常に評価）のルールを生成する。 */
+  public MaskRule(String id, String name, boolean enabled, Pattern pattern, String replacement) {
+    this(id, name, enabled, pattern, replacement, List.of());
+  }
+}
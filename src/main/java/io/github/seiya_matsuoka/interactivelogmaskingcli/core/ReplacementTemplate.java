@@ -0,0 +1,295 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 事前に解析した置換文字列（リテラル片 + グループ参照）。
+ *
+ * <p>{@link Matcher#appendReplacement(StringBuilder, String)} はマッチのたびに置換文字列の {@code $1} や
+ * {@code \} を解析し直す。ルールの置換文字列は実行中に変わらないため、コンパイル時に1回だけ解析しておき、 実行時は片を順に連結するだけにする。
+ *
+ * <p>解釈は {@link Matcher#appendReplacement(StringBuilder, String)} と同じ:
+ *
+ * <ul>
+ *   <li>{@code \x} は文字 x そのもの
+ *   <li>{@code $n} はグループ n（後続の数字は、グループ数を超えない範囲で番号に含める）
+ *   <li>{@code ${name}} は名前付きグループ
+ *   <li>マッチしなかったグループは空文字
+ * </ul>
+ *
+ * <p>構築後は不変のため、複数スレッドから共有してよい。
+ */
+public final class ReplacementTemplate {
+
+  /** 名前付きグループ参照を表す groups の値。 */
+  private static final int NAMED = -1;
+
+  /** 片ごとのリテラル（グループ参照の片は null）。 */
+  private final String[] literals;
+
+  /** 片ごとのグループ番号（リテラル片では未使用）。 */
+  private final int[] groups;
+
+  /** 片ごとのグループ名（番号参照・リテラル片では null）。 */
+  private final String[] names;
+
+  /** グループ参照を含まない場合の置換文字列（含む場合は null）。 */
+  private final String literalOnly;
+
+  /** 片ごとのリテラルの UTF-8 バイト列（バイト単位の処理用。グループ参照の片は null）。 */
+  private final byte[][] literalBytes;
+
+  /** リテラル片がすべて UTF-8 に変換できる（対になっていないサロゲートを含まない）か。 */
+  private final boolean utf8Encodable;
+
+  private ReplacementTemplate(String[] literals, int[] groups, String[] names) {
+    this.literals = literals;
+    this.groups = groups;
+    this.names = names;
+
+    boolean hasGroup = false;
+    StringBuilder sb = new StringBuilder();
+    for (String l : literals) {
+      if (l == null) {
+        hasGroup = true;
+        break;
+      }
+      sb.append(l);
+    }
+    this.literalOnly = hasGroup ? null : sb.toString();
+
+    this.literalBytes = new byte[literals.length][];
+    boolean encodable = true;
+    for (int i = 0; i < literals.length; i++) {
+      if (literals[i] != null) {
+        literalBytes[i] = literals[i].getBytes(StandardCharsets.UTF_8);
+        encodable &= isWellFormed(literals[i]);
+      }
+    }
+    this.utf8Encodable = encodable;
+  }
+
+  /**
+   * 置換文字列を解析する。
+   *
+   * <p>{@link Matcher#appendReplacement(StringBuilder, String)} がエラーにする置換文字列（末尾の {@code $} や、
+   * 存在しないグループ番号など）は null を返す。呼び出し側は従来どおり appendReplacement に任せることで、 エラーの内容・タイミングを変えない。
+   *
+   * @param replacement 置換文字列
+   * @param pattern 対象パターン（グループ数の判定に使う）
+   * @return 解析済みテンプレート（解析できない場合は null）
+   */
+  public static ReplacementTemplate compile(String replacement, Pattern pattern) {
+
+    if (replacement == null || pattern == null) {
+      return null;
+    }
+
+    int groupCount = pattern.matcher("").groupCount();
+
+    List<String> literals = new ArrayList<>();
+    List<Integer> groups = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    StringBuilder pending = new StringBuilder();
+
+    int cursor = 0;
+    int len = replacement.length();
+
+    while (cursor < len) {
+      char c = replacement.charAt(cursor);
+
+      if (c == '\\') {
+        cursor++;
+        if (cursor == len) {
+          return null;
+        }
+        pending.append(replacement.charAt(cursor));
+        cursor++;
+        continue;
+      }
+
+      if (c != '$') {
+        pending.append(c);
+        cursor++;
+        continue;
+      }
+
+      cursor++;
+      if (cursor == len) {
+        return null;
+      }
+
+      int refNum;
+      String refName = null;
+      char next = replacement.charAt(cursor);
+
+      if (next == '{') {
+        cursor++;
+        int nameStart = cursor;
+        while (cursor < len && isAsciiAlnum(replacement.charAt(cursor))) {
+          cursor++;
+        }
+        if (cursor == nameStart || cursor >= len || replacement.charAt(cursor) != '}') {
+          return null;
+        }
+        refName = replacement.substring(nameStart, cursor);
+        if (Character.isDigit(refName.charAt(0))) {
+          return null;
+        }
+        cursor++;
+        refNum = NAMED;
+      } else {
+        refNum = next - '0';
+        if (refNum < 0 || refNum > 9) {
+          return null;
+        }
+        cursor++;
+        // 後続の数字は、グループ数を超えない範囲で番号に含める（appendReplacement と同じ）
+        while (cursor < len) {
+          int digit = replacement.charAt(cursor) - '0';
+          if (digit < 0 || digit > 9) {
+            break;
+          }
+          int candidate = refNum * 10 + digit;
+          if (candidate > groupCount) {
+            break;
+          }
+          refNum = candidate;
+          cursor++;
+        }
+        if (refNum > groupCount) {
+          return null;
+        }
+      }
+
+      if (pending.length() > 0) {
+        literals.add(pending.toString());
+        groups.add(0);
+        names.add(null);
+        pending.setLength(0);
+      }
+      literals.add(null);
+      groups.add(refNum);
+      names.add(refName);
+    }
+
+    if (pending.length() > 0 || literals.isEmpty()) {
+      literals.add(pending.toString());
+      groups.add(0);
+      names.add(null);
+    }
+
+    return new ReplacementTemplate(
+        literals.toArray(new String[0]),
+        groups.stream().mapToInt(Integer::intValue).toArray(),
+        names.toArray(new String[0]));
+  }
+
+  /** グループ参照を含まない（固定文字列の）テンプレートかどうか。 */
+  public boolean isLiteral() {
+    return literalOnly != null;
+  }
+
+  /**
+   * 現在のマッチに対する置換結果を sb に追記する。
+   *
+   * @param sb 追記先
+   * @param m 直前に find() が成功した Matcher
+   * @param text マッチ対象の文字列
+   */
+  public void appendTo(StringBuilder sb, Matcher m, CharSequence text) {
+
+    // 固定文字列の置換（大半のルール）はそのままコピーするだけ
+    if (literalOnly != null) {
+      sb.append(literalOnly);
+      return;
+    }
+
+    for (int i = 0; i < literals.length; i++) {
+      String lit = literals[i];
+      if (lit != null) {
+        sb.append(lit);
+        continue;
+      }
+
+      int start;
+      int end;
+      if (groups[i] == NAMED) {
+        start = m.start(names[i]);
+        end = m.end(names[i]);
+      } else {
+        start = m.start(groups[i]);
+        end = m.end(groups[i]);
+      }
+
+      // マッチしなかったグループは何も追加しない
+      if (start != -1 && end != -1) {
+        sb.append(text, start, end);
+      }
+    }
+  }
+
+  /**
+   * バイト単位の処理（{@link MaskEngine#maskBytes}）で使えるか。
+   *
+   * <p>リテラル片に対になっていないサロゲートが含まれると、UTF-8 へ変換したときに文字列での処理と結果が変わるため使えない。
+   */
+  public boolean isUtf8Encodable() {
+    return utf8Encodable;
+  }
+
+  /**
+   * 現在のマッチに対する置換結果を UTF-8 のバイト列として out に追記する。
+   *
+   * @param out 追記先
+   * @param m 直前に find() が成功した Matcher（text に対するもの）
+   * @param text マッチ対象のバイト列
+   */
+  public void appendTo(ByteSequence out, Matcher m, ByteSequence text) {
+    for (int i = 0; i < literals.length; i++) {
+      byte[] lit = literalBytes[i];
+      if (lit != null) {
+        out.append(lit, 0, lit.length);
+        continue;
+      }
+
+      int start;
+      int end;
+      if (groups[i] == NAMED) {
+        start = m.start(names[i]);
+        end = m.end(names[i]);
+      } else {
+        start = m.start(groups[i]);
+        end = m.end(groups[i]);
+      }
+
+      // マッチしなかったグループは何も追加しない
+      if (start != -1 && end != -1) {
+        out.append(text, start, end);
+      }
+    }
+  }
+
+  private static boolean isWellFormed(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (Character.isHighSurrogate(c)) {
+        if (i + 1 >= s.length() || !Character.isLowSurrogate(s.charAt(i + 1))) {
+          return false;
+        }
+        i++;
+      } else if (Character.isLowSurrogate(c)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isAsciiAlnum(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+  }
+}
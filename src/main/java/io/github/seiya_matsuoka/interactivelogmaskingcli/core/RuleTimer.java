@@ -0,0 +1,55 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ルール位置ごとの処理時間（ナノ秒）の累計（{@link CompiledRuleSet#withTimer()}）。
+ *
+ * <p>{@link MaskEngine} がルールを1つ適用するたびに、その所要時間を加算する。 加算は {@link LongAdder}
+ * で行うため、複数のワーカースレッドから同時に加算しても競合しにくい。
+ *
+ * <p>計測には {@link System#nanoTime()} を使う。タイマーを持たないルールセットでは計測自体を行わない（時刻の取得も省く）。
+ */
+public final class RuleTimer {
+
+  private final List<MaskRule> rules;
+  private final LongAdder[] nanos;
+
+  RuleTimer(List<MaskRule> rules) {
+    this.rules = rules;
+    this.nanos = new LongAdder[rules.size()];
+    for (int i = 0; i < nanos.length; i++) {
+      nanos[i] = new LongAdder();
+    }
+  }
+
+  void add(int ruleIndex, long elapsedNanos) {
+    nanos[ruleIndex].add(elapsedNanos);
+  }
+
+  /** ルール位置の累計（ナノ秒）。 */
+  public long nanos(int ruleIndex) {
+    return nanos[ruleIndex].sum();
+  }
+
+  /**
+   * 累計をルールID単位の Map（id -> ナノ秒）へ変換する。
+   *
+   * <p>無効なルールは含めない（一度も評価していないルールは 0）。同じIDのルールが複数ある場合は加算する。
+   *
+   * @return ルール別の処理時間（不変）
+   */
+  public Map<String, Long> toNanosMap() {
+    Map<String, Long> map = new HashMap<>();
+    for (int i = 0; i < nanos.length; i++) {
+      MaskRule r = rules.get(i);
+      if (r != null && r.enabled()) {
+        map.merge(r.id(), nanos[i].sum(), Long::sum);
+      }
+    }
+    return Map.copyOf(map);
+  }
+}
@@ -0,0 +1,360 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 1行を区切って受け取りながらマスキングする（極端に長い行でも、行全体を1つの文字列にしない）。
+ *
+ * <p>結果（出力・件数）は、同じ行を {@link MaskEngine#mask(String, MaskContext, boolean)} に通した場合と一致する。
+ *
+ * <ul>
+ *   <li>ルールごとに段を作り、前段の出力を次段の入力として流す（ルールを上から順に適用するのと同じ）。
+ *   <li>各段は {@link Matcher#hitEnd()} が false のマッチだけを確定として出力する。 後続の入力次第でマッチの有無・範囲が変わりうる場合は、次の入力を待つ。
+ *   <li>マッチが確定しない間も、後続の入力によらずマッチが始まらないと確定した位置（{@link Probe}）までは先に出力する。
+ * </ul>
+ *
+ * <p>各段が保持するのは未確定の末尾（マッチ、またはマッチになりうる途中）と、後読み用に残す直前 {@link #LOOKBEHIND_CONTEXT} 文字だけである。
+ * 未確定の末尾の長さは確定するまでのマッチの長さで決まり、行末まで続きうるマッチ（例: {@code password=.*}）では行末まで保持する
+ * （確定していない範囲は出力しないため、その段のメモリは行全体を処理する場合と同じになる）。
+ * 未確定の末尾が recheckChars を超えたら、次に探し直すのは保持する量が倍になってからにし、探索の量を行の長さに比例させる。
+ *
+ * <p>スレッドセーフではない。1行ごとに生成すること。
+ */
+public final class StreamingLineMasker {
+
+  /** 出力済みの範囲のうち、後読み・単語境界の判定用に残しておく文字数。 */
+  public static final int LOOKBEHIND_CONTEXT = 1024;
+
+  /** 未確定の末尾がこの文字数を超えたら、探し直す間隔を倍々に広げる（既定値）。 */
+  public static final int DEFAULT_RECHECK_CHARS = 256 * 1024;
+
+  /** 確定できる位置が見つからなかった場合に、最初に判定位置を手前へずらす幅。 */
+  private static final int INITIAL_BACKOFF = 256;
+
+  private final Stage[] stages;
+  private final MaskContext ctx;
+  private final RuleTimer timer;
+
+  /**
+   * 探し直す間隔を広げ始める長さを既定値（{@link #DEFAULT_RECHECK_CHARS}）にする。
+   *
+   * @param ctx 作業領域（件数はここにルール位置ごとに加算される）
+   */
+  public StreamingLineMasker(MaskContext ctx) {
+    this(ctx, DEFAULT_RECHECK_CHARS);
+  }
+
+  /**
+   * @param ctx 作業領域（件数はここにルール位置ごとに加算される）
+   * @param recheckChars 未確定の末尾がこの文字数を超えたら、探し直す間隔を倍々に広げる（1以上。結果には影響しない）
+   */
+  public StreamingLineMasker(MaskContext ctx, int recheckChars) {
+    this.ctx = Objects.requireNonNull(ctx, "ctx");
+    if (recheckChars < 1) {
+      throw new IllegalArgumentException("recheckChars は1以上を指定してください: " + recheckChars);
+    }
+    this.timer = ctx.ruleSet().timer();
+
+    List<MaskRule> rules = ctx.ruleSet().rules();
+    List<Stage> list = new ArrayList<>();
+    for (int i = 0; i < rules.size(); i++) {
+      MaskRule rule = rules.get(i);
+      if (rule != null && rule.enabled()) {
+        list.add(new Stage(i, rule, ctx, recheckChars));
+      }
+    }
+    this.stages = list.toArray(new Stage[0]);
+  }
+
+  /**
+   * 行の続きを受け取り、確定した分のマスキング結果を out に追記する。
+   *
+   * @param chunk 行の続き（改行を含まない）
+   * @param out 追記先
+   */
+  public void append(CharSequence chunk, StringBuilder out) {
+    push(chunk, false, out);
+  }
+
+  /**
+   * 行の終わりを伝え、残りのマスキング結果を out に追記する。
+   *
+   * @param out 追記先
+   */
+  public void finish(StringBuilder out) {
+    push("", true, out);
+    ctx.addLines(1);
+  }
+
+  private void push(CharSequence chunk, boolean last, StringBuilder out) {
+    CharSequence current = chunk;
+    for (Stage stage : stages) {
+      long started = (timer != null) ? System.nanoTime() : 0L;
+      current = stage.accept(current, last);
+      if (timer != null) {
+        timer.add(stage.ruleIndex, System.nanoTime() - started);
+      }
+    }
+    out.append(current);
+  }
+
+  /** 1つのルールを適用する段。 */
+  private static final class Stage {
+
+    private final int ruleIndex;
+    private final MaskRule rule;
+    private final MaskContext ctx;
+    private final StringBuilder buf = new StringBuilder();
+    private final StringBuilder out = new StringBuilder();
+    private final Matcher matcher;
+    private final int recheckChars;
+
+    /** 確定できる位置の判定用（判定用のパターンを組み立てられないルールでは null。その場合は行末まで保持する）。 */
+    private final Probe probe;
+
+    /** buf のうち出力済みの範囲の終わり。 */
+    private int emitted;
+
+    /** 次の探索の開始位置（直前が空マッチの場合は emitted の次）。 */
+    private int from;
+
+    /** 前回の入力の末尾にあった上位サロゲート（対になる文字が届くまで探索対象に含めない）。 */
+    private char heldHigh;
+
+    private boolean holding;
+
+    /** buf の長さがここに達するまでは探し直さない（0 なら入力のたびに探す）。 */
+    private int recheckAt;
+
+    Stage(int ruleIndex, MaskRule rule, MaskContext ctx, int recheckChars) {
+      this.ruleIndex = ruleIndex;
+      this.rule = rule;
+      this.ctx = ctx;
+      this.recheckChars = recheckChars;
+      // 後読み・単語境界は出力済みの範囲も参照し、^ / $ は探索範囲の端ではなく保持している文字列の端で判定する
+      this.matcher =
+          rule.pattern().matcher(buf).useTransparentBounds(true).useAnchoringBounds(false);
+      this.probe = Probe.of(rule.pattern(), buf);
+    }
+
+    /** 入力を受け取り、確定した分の出力を返す（返す内容は次の呼び出しで上書きされる）。 */
+    CharSequence accept(CharSequence chunk, boolean last) {
+      out.setLength(0);
+
+      if (holding) {
+        buf.append(heldHigh);
+        holding = false;
+      }
+      int n = chunk.length();
+      if (!last && n > 0 && Character.isHighSurrogate(chunk.charAt(n - 1))) {
+        buf.append(chunk, 0, n - 1);
+        heldHigh = chunk.charAt(n - 1);
+        holding = true;
+      } else {
+        buf.append(chunk, 0, n);
+      }
+
+      // 未確定の末尾が長い間は、保持する量が倍になるまで探し直さない（結果は行末で必ず確定する）
+      if (!last && buf.length() < recheckAt) {
+        return out;
+      }
+      recheckAt = 0;
+      drain(last);
+      compact();
+      return out;
+    }
+
+    private void drain(boolean last) {
+      int end = buf.length();
+
+      while (from <= end) {
+        matcher.region(from, end);
+        boolean found = matcher.find();
+
+        // hitEnd はマッチした場合のみ当てにする（マッチしなかった場合は常に true になる）
+        if (found && (last || !matcher.hitEnd())) {
+          out.append(buf, emitted, matcher.start());
+          appendReplacement();
+          ctx.addCount(ruleIndex, 1);
+          emitted = matcher.end();
+          // 空マッチの直後は1文字進めて探す（Matcher#find と同じ）
+          from = (matcher.end() == matcher.start()) ? matcher.end() + 1 : matcher.end();
+          continue;
+        }
+
+        if (!found && last) {
+          out.append(buf, emitted, end);
+          emitted = end;
+          from = end;
+          return;
+        }
+
+        // 後続の入力次第で結果が変わりうる。手前の確定できる範囲だけを出力して次の入力を待つ
+        int cut = settledPrefix(found ? matcher.start() : end);
+        if (cut > from) {
+          out.append(buf, emitted, cut);
+          emitted = cut;
+          from = cut;
+        }
+        // 未確定の末尾が長い（行末まで続きうるマッチなど）場合、毎回探し直すと行の長さの2乗の時間になる
+        int held = end - from;
+        if (held > recheckChars) {
+          recheckAt = (int) Math.min(Integer.MAX_VALUE, (long) from + 2L * held);
+        }
+        return;
+      }
+
+      // 行末での空マッチの直後（探す位置が残っていない）
+      if (last) {
+        out.append(buf, emitted, end);
+        emitted = end;
+      }
+    }
+
+    /**
+     * from から cut の手前までのどこからも、後続の入力によらずマッチが始まらないことが確定している cut を返す（無ければ from）。
+     *
+     * <p>cut の位置に番兵を1文字置いた {@link ProbeView} で探し、cut より手前から始めた試行が1つも cut を読まずに失敗すれば、cut
+     * 以降の内容によらず同じ結果になる。見つからなければ cut を手前へずらして（ずらす幅を倍々に広げる）探し直す。
+     */
+    private int settledPrefix(int limit) {
+      if (probe == null) {
+        return from;
+      }
+      int backoff = 0;
+      while (true) {
+        int cut = limit - backoff;
+        if (cut <= from) {
+          return from;
+        }
+        if (probe.settledAt(from, cut)) {
+          return cut;
+        }
+        backoff = (backoff == 0) ? INITIAL_BACKOFF : backoff * 2;
+      }
+    }
+
+    private void appendReplacement() {
+      ReplacementTemplate template = rule.template();
+      if (template != null) {
+        template.appendTo(out, matcher, buf);
+        return;
+      }
+      // 解析できなかった置換文字列は appendReplacement に任せる（region の設定で追記の開始位置は先頭に戻っている）
+      StringBuilder sb = new StringBuilder();
+      matcher.appendReplacement(sb, rule.replacement());
+      out.append(sb, matcher.start(), sb.length());
+    }
+
+    /** 出力済みの範囲を、後読み用の直前 {@link #LOOKBEHIND_CONTEXT} 文字だけ残して捨てる。 */
+    private void compact() {
+      int drop = emitted - LOOKBEHIND_CONTEXT;
+      if (drop <= 0) {
+        return;
+      }
+      buf.delete(0, drop);
+      emitted -= drop;
+      from -= drop;
+      if (recheckAt > 0) {
+        recheckAt -= drop;
+      }
+    }
+  }
+
+  /**
+   * 確定できる位置の判定。
+   *
+   * <p>{@code (?=番兵)|(?:元のパターン)} を、保持している文字列の cut の位置に番兵を置いた {@link ProbeView} に対して探す。 cut
+   * より手前から始めた試行はいずれも失敗し（手前で確定するマッチは先に処理済み）、最後に cut の位置で番兵の分岐がマッチする。 その間に cut
+   * の位置が読まれたのが番兵の分岐の1回だけなら、cut より手前からの試行は cut 以降の内容を参照していない。
+   *
+   * <p>{@link Matcher#hitEnd()} はマッチしなかった場合に常に true になるため、この判定には使えない。
+   */
+  private static final class Probe {
+
+    /** 番兵（U+FFFF は非文字のため通常のテキストには現れない。現れた場合は確定できないと判定されるだけ）。 */
+    private static final char SENTINEL = '\uFFFF';
+
+    private final ProbeView view;
+    private final Matcher matcher;
+
+    private Probe(ProbeView view, Matcher matcher) {
+      this.view = view;
+      this.matcher = matcher;
+    }
+
+    static Probe of(Pattern pattern, StringBuilder buf) {
+      int flags = pattern.flags();
+      String source = pattern.pattern();
+      if ((flags & Pattern.LITERAL) != 0) {
+        source = Pattern.quote(source);
+        flags &= ~Pattern.LITERAL;
+      }
+      // COMMENTS の場合、末尾のコメントが閉じ括弧を隠さないよう改行を挟む
+      String close = ((flags & Pattern.COMMENTS) != 0) ? "\n)" : ")";
+      Pattern probe;
+      try {
+        probe = Pattern.compile("(?=\\uFFFF)|(?:" + source + close, flags);
+      } catch (PatternSyntaxException e) {
+        // インラインの (?x) と末尾のコメントの組み合わせなど
+        return null;
+      }
+      ProbeView view = new ProbeView(buf);
+      return new Probe(
+          view, probe.matcher(view).useTransparentBounds(true).useAnchoringBounds(false));
+    }
+
+    boolean settledAt(int from, int cut) {
+      view.reset(cut);
+      matcher.reset(view);
+      matcher.region(from, cut + 1);
+      return matcher.find() && matcher.start() == cut && view.readsAtCut == 1;
+    }
+  }
+
+  /** 保持している文字列の cut までと、cut の位置の番兵1文字からなる文字列（cut の位置が読まれた回数を数える）。 */
+  private static final class ProbeView implements CharSequence {
+
+    private final StringBuilder buf;
+    private int cut;
+    int readsAtCut;
+
+    ProbeView(StringBuilder buf) {
+      this.buf = buf;
+    }
+
+    void reset(int cut) {
+      this.cut = cut;
+      this.readsAtCut = 0;
+    }
+
+    @Override
+    public int length() {
+      return cut + 1;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index == cut) {
+        readsAtCut++;
+        return Probe.SENTINEL;
+      }
+      return buf.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+      return buf.substring(0, cut) + Probe.SENTINEL;
+    }
+  }
+}
@@ -0,0 +1,937 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.ByteSequence;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskContext;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngine;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskedFileReport;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * zip / tar アーカイブを1つの入力コンテナとして扱い、各エントリをマスキングして同じ構造のアーカイブを書き出す。
+ *
+ * <p>エントリはディスクへ展開せず、入力アーカイブから読みながら処理する。
+ *
+ * <ul>
+ *   <li>エントリごとに {@link MaskedFileReport} を作る（パスは「アーカイブのパス/エントリ名」）。
+ *   <li>gzip で圧縮されたエントリ（例: {@code logs/app.log.gz}）は展開して処理し、gzip に戻して書き出す。
+ *   <li>バイナリと判定したエントリは {@link ProcessingOptions#getBinaryPolicy()} に従う（SKIP の場合は中身を変えずに書き出し、
+ *       スキップとして報告する）。
+ *   <li>ディレクトリ・リンクなどファイル以外のエントリはそのまま書き出す。
+ *   <li>改行は通常の出力と同じ（OS の改行）にそろえる。
+ * </ul>
+ *
+ * <p>tar と STORED（無圧縮）の zip エントリはサイズ（zip は CRC も）を先に書く形式のため、1エントリ分の出力を溜めてから書き出す。
+ * {@value #SPOOL_MEMORY_LIMIT} バイトまではメモリに溜め、超えた分は出力アーカイブと同じディレクトリの一時ファイルへ書く（書き出したら消す）。
+ * tar は ustar 形式（GNU の長いファイル名・pax ヘッダーを含む）に対応し、gzip で圧縮された tar（{@code .tar.gz}）も扱う。
+ *
+ * <p>zip のエントリは名前・時刻・コメントに加えて、圧縮方法（STORED / DEFLATED）と拡張フィールド（拡張タイムスタンプなど）を引き継ぐ。
+ * 外部属性（Unix のパーミッション）は {@code java.util.zip} から読み書きできないため引き継がない。
+ *
+ * <p>スレッドセーフではない（作業領域は呼び出し側から受け取る）。
+ */
+final class ArchiveMasker {
+
+  /** アーカイブの形式。 */
+  enum Format {
+    ZIP,
+    TAR
+  }
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int TAR_BLOCK = 512;
+  private static final int TAR_RECORD = 20 * TAR_BLOCK;
+
+  /** 1エントリ分の出力をメモリに溜める上限（超えた分は一時ファイルへ書く）。 */
+  static final int SPOOL_MEMORY_LIMIT = 4 * 1024 * 1024;
+
+  /** バイナリの判定で読んだ分を巻き戻せる上限（gzip のエントリは展開前のバイト数）。 */
+  private static final int SNIFF_LIMIT = 4 * BUFFER_SIZE;
+
+  /** ustar の8進数のサイズ欄（11桁）で表せる上限。 */
+  private static final long TAR_OCTAL_SIZE_LIMIT = 077777777777L;
+
+  private static final byte[] LINE_SEPARATOR_BYTES =
+      System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+  private final MaskEngine engine;
+  private final ProcessingOptions options;
+  private final GzipCompressor compressor;
+  private final boolean dryRun;
+
+  /**
+   * @param engine マスキングコア
+   * @param options 実行オプション（バイナリの扱いの指定に使う）
+   * @param compressor gzip 出力の圧縮スレッド（実行全体で共有する）
+   * @param dryRun true: 件数集計のみ（出力アーカイブは生成しない）
+   */
+  ArchiveMasker(
+      MaskEngine engine, ProcessingOptions options, GzipCompressor compressor, boolean dryRun) {
+    this.engine = engine;
+    this.options = options;
+    this.compressor = compressor;
+    this.dryRun = dryRun;
+  }
+
+  /**
+   * ファイルがアーカイブかを判定する（zip はマジックナンバー、tar は ustar ヘッダーで判定）。
+   *
+   * @param file 入力ファイル
+   * @param gzip true: gzip として展開した内容で判定する（{@code .tar.gz}）
+   * @return 形式（アーカイブでなければ null）
+   * @throws IOException 読み込みに失敗した場合
+   */
+  static Format detect(Path file, boolean gzip) throws IOException {
+    byte[] head;
+    try (InputStream in = GzipFiles.newInputStream(file, gzip)) {
+      head = in.readNBytes(TAR_BLOCK);
+    } catch (ZipException | EOFException e) {
+      return null;
+    }
+    if (!gzip
+        && head.length >= 4
+        && head[0] == 'P'
+        && head[1] == 'K'
+        && ((head[2] == 3 && head[3] == 4) || (head[2] == 5 && head[3] == 6))) {
+      return Format.ZIP;
+    }
+    if (head.length == TAR_BLOCK && isUstarHeader(head)) {
+      return Format.TAR;
+    }
+    return null;
+  }
+
+  /**
+   * アーカイブの各エントリを処理し、outputArchive へ同じ構造で書き出す。
+   *
+   * @param archive 入力アーカイブ
+   * @param format 形式
+   * @param gzipIn true: 入力アーカイブが gzip（tar のみ）
+   * @param outputArchive 出力アーカイブ
+   * @param gzipOut true: 出力アーカイブを gzip で圧縮する（tar のみ）
+   * @param ctx 作業領域（エントリごとに件数をリセットして使う）
+   * @param sum アーカイブ全体の件数（最初にリセットし、エントリごとの件数を加算する）
+   * @return エントリごとの結果（アーカイブ内の順）
+   * @throws IOException 入出力エラー（アーカイブの形式が不正な場合を含む）
+   */
+  List<MaskedFileReport> process(
+      Path archive,
+      Format format,
+      boolean gzipIn,
+      Path outputArchive,
+      boolean gzipOut,
+      MaskContext ctx,
+      MaskContext sum)
+      throws IOException {
+
+    sum.resetCounts();
+    if (!dryRun && outputArchive.getParent() != null) {
+      Files.createDirectories(outputArchive.getParent());
+    }
+    return (format == Format.ZIP)
+        ? processZip(archive, outputArchive, ctx, sum)
+        : processTar(archive, gzipIn, outputArchive, gzipOut, ctx, sum);
+  }
+
+  private List<MaskedFileReport> processZip(
+      Path archive, Path outputArchive, MaskContext ctx, MaskContext sum) throws IOException {
+
+    List<MaskedFileReport> reports = new ArrayList<>();
+    try (ZipInputStream zin =
+            new ZipInputStream(
+                new BufferedInputStream(Files.newInputStream(archive), BUFFER_SIZE));
+        ZipOutputStream zout =
+            dryRun
+                ? null
+                : new ZipOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(outputArchive), BUFFER_SIZE))) {
+
+      ZipEntry e;
+      while ((e = zin.getNextEntry()) != null) {
+        if (e.isDirectory()) {
+          if (zout != null) {
+            writeZipEntry(zout, e, outputArchive, out -> 0L);
+          }
+          continue;
+        }
+
+        Path inEntry = entryPath(archive, e.getName());
+        Path outEntry = entryPath(outputArchive, e.getName());
+        Entry entry = open(new EntryInputStream(zin, -1), inEntry);
+        if (entry.skipReason() != null) {
+          // バイナリのエントリは中身を変えずに書き出す（読み残しは次の getNextEntry で読み飛ばされる）
+          if (zout != null) {
+            InputStream raw = entry.rewind();
+            writeZipEntry(zout, e, outputArchive, out -> raw.transferTo(out));
+          }
+          entry.close();
+          reports.add(MaskedFileReport.skipped(inEntry, outEntry, entry.skipReason()));
+          continue;
+        }
+
+        FileTiming timing = FileTiming.start();
+        long bytes =
+            (zout != null)
+                ? writeZipEntry(zout, e, outputArchive, out -> mask(entry, out, ctx))
+                : mask(entry, null, ctx);
+        reports.add(toReport(inEntry, outEntry, ctx, sum, bytes, timing));
+      }
+    }
+    return reports;
+  }
+
+  private List<MaskedFileReport> processTar(
+      Path archive,
+      boolean gzipIn,
+      Path outputArchive,
+      boolean gzipOut,
+      MaskContext ctx,
+      MaskContext sum)
+      throws IOException {
+
+    List<MaskedFileReport> reports = new ArrayList<>();
+    try (InputStream in =
+            new BufferedInputStream(GzipFiles.newInputStream(archive, gzipIn), BUFFER_SIZE);
+        OutputStream out =
+            dryRun
+                ? null
+                : new BufferedOutputStream(compressor.open(outputArchive, gzipOut), BUFFER_SIZE)) {
+
+      TarWriter writer = (out != null) ? new TarWriter(out) : null;
+      byte[] header = new byte[TAR_BLOCK];
+
+      // 次のエントリに掛かるメタ情報（GNU の長いファイル名 / pax ヘッダー）。エントリを書き出すときに一緒に書く
+      List<byte[]> pendingMeta = new ArrayList<>();
+      String longName = null;
+      List<String[]> pax = null;
+
+      while (readBlock(in, header)) {
+        if (isZeroBlock(header)) {
+          break;
+        }
+        if (!hasValidChecksum(header)) {
+          throw new IOException("tar のヘッダーが不正です: " + archive);
+        }
+
+        byte type = header[156];
+
+        // pax の size があればそちらが正（8GB 以上のエントリなど）
+        String paxSize = (pax != null) ? paxValue(pax, "size") : null;
+        long size = (paxSize != null && type != 'x') ? Long.parseLong(paxSize) : parseSize(header);
+
+        if (type == 'L' || type == 'K' || type == 'x' || type == 'g') {
+          byte[] data = readData(in, size);
+          if (type == 'L') {
+            longName = cString(data, 0, data.length);
+          } else if (type == 'x') {
+            pax = parsePax(data);
+            String path = paxValue(pax, "path");
+            if (path != null) {
+              longName = path;
+            }
+          }
+          if (type == 'x') {
+            // サイズの書き換えが必要になるため、エントリを書き出すときに組み立てる
+            pendingMeta.add(null);
+          } else {
+            pendingMeta.add(concat(header, data));
+          }
+          continue;
+        }
+
+        String name = (longName != null) ? longName : headerName(header);
+        boolean regular = type == '0' || type == 0 || type == '7';
+
+        if (!regular) {
+          // ディレクトリ・リンクなどはそのまま書き出す
+          byte[] data = readData(in, size);
+          if (writer != null) {
+            writer.writeMeta(pendingMeta, pax, -1);
+            writer.writeEntry(header.clone(), data, data.length);
+          }
+        } else {
+          Path inEntry = entryPath(archive, name);
+          Path outEntry = entryPath(outputArchive, name);
+          EntryInputStream bounded = new EntryInputStream(in, size);
+          Entry entry = open(bounded, inEntry);
+
+          if (entry.skipReason() != null) {
+            // バイナリのエントリは中身を変えずに（元のサイズのまま）書き出す
+            if (writer != null) {
+              writer.writeMeta(pendingMeta, pax, -1);
+              writer.writeEntry(header.clone(), size, entry.rewind());
+            }
+            entry.close();
+            bounded.drain();
+            reports.add(MaskedFileReport.skipped(inEntry, outEntry, entry.skipReason()));
+          } else {
+            FileTiming timing = FileTiming.start();
+            long bytes;
+            if (writer == null) {
+              bytes = mask(entry, null, ctx);
+            } else {
+              // マスキング後のサイズをヘッダーに書くため、1エントリ分を溜めてから書き出す
+              try (EntrySpool spool = new EntrySpool(outputArchive)) {
+                bytes = mask(entry, spool, ctx);
+                writer.writeMeta(pendingMeta, pax, spool.size());
+                try (InputStream data = spool.openInput()) {
+                  writer.writeEntry(header.clone(), spool.size(), data);
+                }
+              }
+            }
+            bounded.drain();
+            reports.add(toReport(inEntry, outEntry, ctx, sum, bytes, timing));
+          }
+          skipPadding(in, size);
+        }
+
+        pendingMeta.clear();
+        longName = null;
+        pax = null;
+      }
+
+      if (writer != null) {
+        writer.finish();
+      }
+    }
+    return reports;
+  }
+
+  /** エントリの内容（gzip なら展開済み）と、バイナリと判定した理由（raw は展開前の内容。先頭へ巻き戻せる）。 */
+  private record Entry(
+      BufferedInputStream raw, BufferedInputStream content, boolean gzip, String skipReason) {
+
+    /** 展開前の内容を先頭から読み直す（バイナリと判定したエントリをそのまま書き出す場合）。 */
+    InputStream rewind() throws IOException {
+      raw.reset();
+      return raw;
+    }
+
+    /** 展開用の資源を解放する（アーカイブ本体は閉じない）。 */
+    void close() throws IOException {
+      if (content != null) {
+        content.close();
+      }
+    }
+  }
+
+  /** エントリを開き、gzip の展開とバイナリの判定を行う（判定に読んだ分は巻き戻す）。 */
+  private Entry open(InputStream raw, Path name) throws IOException {
+    BufferedInputStream in = new BufferedInputStream(raw, BUFFER_SIZE);
+    // バイナリと判定した場合にそのまま書き出せるよう、判定に読む分は巻き戻せるようにしておく
+    in.mark(SNIFF_LIMIT);
+    boolean gzip = in.read() == 0x1F && in.read() == 0x8B;
+    in.reset();
+
+    BufferedInputStream content;
+    byte[] sample;
+    boolean eof;
+    try {
+      content = gzip ? new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE)) : in;
+      if (options.getBinaryPolicy() == BinaryPolicy.PROCESS) {
+        return new Entry(in, content, gzip, null);
+      }
+      content.mark(BinarySniffer.SAMPLE_SIZE + 1);
+      sample = content.readNBytes(BinarySniffer.SAMPLE_SIZE);
+      eof = sample.length < BinarySniffer.SAMPLE_SIZE || content.read() < 0;
+      content.reset();
+    } catch (ZipException | EOFException e) {
+      if (!gzip) {
+        throw e;
+      }
+      return binary(in, null, "invalid-gzip", name);
+    }
+
+    String reason = BinarySniffer.detect(sample, sample.length, eof);
+    return (reason != null)
+        ? binary(in, content, reason, name)
+        : new Entry(in, content, gzip, null);
+  }
+
+  private Entry binary(
+      BufferedInputStream raw, BufferedInputStream content, String reason, Path name)
+      throws IOException {
+    if (options.getBinaryPolicy() == BinaryPolicy.FAIL) {
+      throw new IOException("バイナリのエントリのため処理できません（" + reason + "）: " + name);
+    }
+    return new Entry(raw, content, false, reason);
+  }
+
+  /**
+   * エントリを1行ずつマスキングして out へ書き出す（out が null なら件数のみ）。件数は ctx に集計する。
+   *
+   * @return 読み込んだバイト数（gzip のエントリは展開後）
+   */
+  private long mask(Entry entry, OutputStream out, MaskContext ctx) throws IOException {
+    ctx.resetCounts();
+
+    Utf8LineMasker lineMasker =
+        new Utf8LineMasker(engine, options.isByteLevelMasking() && ctx.ruleSet().isAsciiSafe());
+    // 1行ずつの書き込みをまとめてから出力先（圧縮する zip のエントリなど）へ渡す
+    BufferedOutputStream buffered =
+        (out != null) ? new BufferedOutputStream(out, BUFFER_SIZE) : null;
+    GZIPOutputStream gz =
+        (buffered != null && entry.gzip()) ? new GZIPOutputStream(buffered, BUFFER_SIZE) : null;
+    OutputStream target = (gz != null) ? gz : buffered;
+
+    long bytes = 0;
+    try (ByteLineReader reader = new ByteLineReader(entry.content())) {
+      ByteSequence line;
+      while ((line = reader.next()) != null) {
+        bytes = reader.lineOffset() + line.length() + reader.terminatorLength();
+        byte[] masked = lineMasker.maskLine(line, ctx);
+        if (target == null) {
+          continue;
+        }
+        if (masked == null) {
+          target.write(line.array(), line.offset(), line.length());
+        } else {
+          target.write(masked);
+        }
+        target.write(LINE_SEPARATOR_BYTES);
+      }
+    }
+
+    // アーカイブ自体は閉じない
+    if (gz != null) {
+      gz.finish();
+    }
+    if (buffered != null) {
+      buffered.flush();
+    }
+    return bytes;
+  }
+
+  private MaskedFileReport toReport(
+      Path inEntry,
+      Path outEntry,
+      MaskContext ctx,
+      MaskContext sum,
+      long bytes,
+      FileTiming timing) {
+    sum.addCounts(ctx.counts(), ctx.totalCount());
+    MaskedFileReport report =
+        new MaskedFileReport(
+            inEntry, outEntry, ctx.ruleSet().toCountMap(ctx.counts()), ctx.totalCount());
+    return timing.finish(report, bytes, ctx, options);
+  }
+
+  /** レポート用のエントリのパス（アーカイブのパス/エントリ名。先頭の "/" は外す）。 */
+  private static Path entryPath(Path archive, String name) {
+    String relative = name.replace('\\', '/');
+    while (relative.startsWith("/")) {
+      relative = relative.substring(1);
+    }
+    return relative.isEmpty() ? archive : archive.resolve(relative);
+  }
+
+  /** zip のエントリの内容を書き出す処理（書き出した内容の元になったバイト数を返す）。 */
+  @FunctionalInterface
+  private interface EntryBody {
+    long writeTo(OutputStream out) throws IOException;
+  }
+
+  /**
+   * zip のエントリを元のエントリと同じ属性で書き出す（STORED はサイズと CRC を先に書くため、内容を一度溜める）。
+   *
+   * @return body が返したバイト数
+   */
+  private static long writeZipEntry(
+      ZipOutputStream zout, ZipEntry source, Path outputArchive, EntryBody body)
+      throws IOException {
+    ZipEntry out = copyOf(source);
+    if (out.getMethod() != ZipEntry.STORED) {
+      zout.putNextEntry(out);
+      long bytes = body.writeTo(zout);
+      zout.closeEntry();
+      return bytes;
+    }
+    try (EntrySpool spool = new EntrySpool(outputArchive)) {
+      long bytes = body.writeTo(spool);
+      out.setSize(spool.size());
+      out.setCompressedSize(spool.size());
+      out.setCrc(spool.crc());
+      zout.putNextEntry(out);
+      try (InputStream data = spool.openInput()) {
+        data.transferTo(zout);
+      }
+      zout.closeEntry();
+      return bytes;
+    }
+  }
+
+  /** 書き出す zip のエントリ（サイズ・CRC 以外の属性を引き継ぐ）。 */
+  private static ZipEntry copyOf(ZipEntry e) {
+    ZipEntry out = new ZipEntry(e.getName());
+    out.setTime(e.getTime());
+    if (e.getExtra() != null) {
+      // 拡張タイムスタンプなどを引き継ぐ（ZIP64 のサイズは ZipOutputStream が書き出し時に付け直す）
+      out.setExtra(e.getExtra());
+    }
+    if (e.getComment() != null) {
+      out.setComment(e.getComment());
+    }
+    out.setMethod((e.getMethod() == ZipEntry.STORED) ? ZipEntry.STORED : ZipEntry.DEFLATED);
+    return out;
+  }
+
+  // ---- tar ----
+
+  private static boolean isUstarHeader(byte[] header) {
+    return header[257] == 'u'
+        && header[258] == 's'
+        && header[259] == 't'
+        && header[260] == 'a'
+        && header[261] == 'r'
+        && hasValidChecksum(header);
+  }
+
+  private static boolean hasValidChecksum(byte[] header) {
+    long stored = parseOctal(header, 148, 8);
+    return stored == checksum(header);
+  }
+
+  /** チェックサム欄を空白とみなしたヘッダーのバイトの合計。 */
+  private static long checksum(byte[] header) {
+    long sum = 0;
+    for (int i = 0; i < TAR_BLOCK; i++) {
+      sum += (i >= 148 && i < 156) ? ' ' : (header[i] & 0xFF);
+    }
+    return sum;
+  }
+
+  private static long parseSize(byte[] header) throws IOException {
+    if ((header[124] & 0x80) != 0) {
+      // GNU の base-256 表現（8GB 以上）
+      long v = 0;
+      for (int i = 125; i < 136; i++) {
+        v = (v << 8) | (header[i] & 0xFF);
+      }
+      return v;
+    }
+    long size = parseOctal(header, 124, 12);
+    if (size < 0) {
+      throw new IOException("tar のエントリサイズが不正です");
+    }
+    return size;
+  }
+
+  /** NUL / 空白で終わる8進数の欄を読む（不正なら -1）。 */
+  private static long parseOctal(byte[] header, int off, int len) {
+    long v = 0;
+    int i = off;
+    int end = off + len;
+    while (i < end && header[i] == ' ') {
+      i++;
+    }
+    boolean any = false;
+    for (; i < end; i++) {
+      byte b = header[i];
+      if (b == 0 || b == ' ') {
+        break;
+      }
+      if (b < '0' || b > '7') {
+        return -1;
+      }
+      v = (v << 3) + (b - '0');
+      any = true;
+    }
+    return any ? v : 0;
+  }
+
+  private static String headerName(byte[] header) {
+    String name = cString(header, 0, 100);
+    String prefix = cString(header, 345, 155);
+    return prefix.isEmpty() ? name : prefix + "/" + name;
+  }
+
+  private static String cString(byte[] b, int off, int len) {
+    int end = off;
+    while (end < off + len && b[end] != 0) {
+      end++;
+    }
+    return new String(b, off, end - off, StandardCharsets.UTF_8);
+  }
+
+  private static boolean isZeroBlock(byte[] block) {
+    for (byte b : block) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** 1ブロック読む（アーカイブ終端の目印が無いまま終わった場合は false）。 */
+  private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+    int n = in.readNBytes(block, 0, TAR_BLOCK);
+    if (n == 0) {
+      return false;
+    }
+    if (n < TAR_BLOCK) {
+      throw new EOFException("tar が途中で終わっています");
+    }
+    return true;
+  }
+
+  /** メタ情報・リンクなどの小さなデータを読む（ブロック境界までの詰め物も読み飛ばす）。 */
+  private static byte[] readData(InputStream in, long size) throws IOException {
+    if (size > Integer.MAX_VALUE - TAR_BLOCK) {
+      throw new IOException("tar のエントリが大きすぎます: " + size);
+    }
+    byte[] data = in.readNBytes((int) size);
+    if (data.length < size) {
+      throw new EOFException("tar が途中で終わっています");
+    }
+    skipPadding(in, size);
+    return data;
+  }
+
+  private static void skipPadding(InputStream in, long size) throws IOException {
+    int padding = (int) ((TAR_BLOCK - (size % TAR_BLOCK)) % TAR_BLOCK);
+    in.skipNBytes(padding);
+  }
+
+  private static byte[] concat(byte[] header, byte[] data) {
+    byte[] out = new byte[header.length + data.length];
+    System.arraycopy(header, 0, out, 0, header.length);
+    System.arraycopy(data, 0, out, header.length, data.length);
+    return out;
+  }
+
+  /** pax の拡張ヘッダー（"長さ key=value\n" の並び）を読む。 */
+  private static List<String[]> parsePax(byte[] data) {
+    List<String[]> records = new ArrayList<>();
+    String text = new String(data, StandardCharsets.UTF_8);
+    int pos = 0;
+    while (pos < text.length()) {
+      int space = text.indexOf(' ', pos);
+      int eq = text.indexOf('=', space + 1);
+      int nl = text.indexOf('\n', eq + 1);
+      if (space < 0 || eq < 0 || nl < 0) {
+        break;
+      }
+      records.add(new String[] {text.substring(space + 1, eq), text.substring(eq + 1, nl)});
+      pos = nl + 1;
+    }
+    return records;
+  }
+
+  private static String paxValue(List<String[]> records, String key) {
+    String value = null;
+    for (String[] r : records) {
+      if (r[0].equals(key)) {
+        value = r[1];
+      }
+    }
+    return value;
+  }
+
+  /** pax の拡張ヘッダーを組み立てる（"長さ" は自身の桁数を含む）。 */
+  private static byte[] encodePax(List<String[]> records) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (String[] r : records) {
+      byte[] body = (" " + r[0] + "=" + r[1] + "\n").getBytes(StandardCharsets.UTF_8);
+      int len = body.length + 1;
+      while (len != body.length + Integer.toString(len).length()) {
+        len = body.length + Integer.toString(len).length();
+      }
+      out.writeBytes(Integer.toString(len).getBytes(StandardCharsets.US_ASCII));
+      out.writeBytes(body);
+    }
+    return out.toByteArray();
+  }
+
+  /** tar の書き出し（ヘッダーのサイズ・チェックサムを書き換え、レコード境界まで詰める）。 */
+  private static final class TarWriter {
+    private final OutputStream out;
+    private long written;
+
+    TarWriter(OutputStream out) {
+      this.out = out;
+    }
+
+    /**
+     * エントリの前のメタ情報を書き出す。
+     *
+     * @param pending 読み込んだ順のメタ情報（null は pax の拡張ヘッダーの位置）
+     * @param pax pax の拡張ヘッダーの内容
+     * @param newSize マスキング後のサイズ（pax の size を書き換える。-1 なら書き換えない）
+     */
+    void writeMeta(List<byte[]> pending, List<String[]> pax, long newSize) throws IOException {
+      for (byte[] meta : pending) {
+        if (meta != null) {
+          byte[] header = Arrays.copyOf(meta, TAR_BLOCK);
+          writeEntry(header, meta, TAR_BLOCK, meta.length - TAR_BLOCK);
+          continue;
+        }
+        List<String[]> records = new ArrayList<>(pax);
+        if (newSize >= 0) {
+          records.replaceAll(
+              r -> r[0].equals("size") ? new String[] {"size", Long.toString(newSize)} : r);
+        }
+        byte[] data = encodePax(records);
+        byte[] header = new byte[TAR_BLOCK];
+        byte[] name = "././@PaxHeader".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(name, 0, header, 0, name.length);
+        writeOctal(header, 100, 8, 0644);
+        writeOctal(header, 108, 8, 0);
+        writeOctal(header, 116, 8, 0);
+        writeOctal(header, 136, 12, 0);
+        header[156] = 'x';
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+        writeEntry(header, data, data.length);
+      }
+    }
+
+    void writeEntry(byte[] header, byte[] data, int length) throws IOException {
+      writeEntry(header, data, 0, length);
+    }
+
+    void writeEntry(byte[] header, byte[] data, int off, int length) throws IOException {
+      writeHeader(header, length);
+      write(data, off, length);
+      writePadding(length);
+    }
+
+    /** data から length バイトを読みながら書き出す（大きなエントリ・そのまま書き出すエントリ）。 */
+    void writeEntry(byte[] header, long length, InputStream data) throws IOException {
+      writeHeader(header, length);
+      byte[] buf = new byte[BUFFER_SIZE];
+      long remaining = length;
+      while (remaining > 0) {
+        int n = data.read(buf, 0, (int) Math.min(buf.length, remaining));
+        if (n < 0) {
+          throw new EOFException("tar のエントリが途中で終わっています");
+        }
+        write(buf, 0, n);
+        remaining -= n;
+      }
+      writePadding(length);
+    }
+
+    private void writeHeader(byte[] header, long length) throws IOException {
+      setSize(header, length);
+      long sum = checksum(header);
+      writeOctal(header, 148, 7, sum);
+      header[155] = ' ';
+      write(header, 0, TAR_BLOCK);
+    }
+
+    private void writePadding(long length) throws IOException {
+      int padding = (int) ((TAR_BLOCK - (length % TAR_BLOCK)) % TAR_BLOCK);
+      write(new byte[padding], 0, padding);
+    }
+
+    /** アーカイブ終端（空ブロック2つ）を書き、レコード境界まで詰める。 */
+    void finish() throws IOException {
+      write(new byte[2 * TAR_BLOCK], 0, 2 * TAR_BLOCK);
+      int padding = (int) ((TAR_RECORD - (written % TAR_RECORD)) % TAR_RECORD);
+      write(new byte[padding], 0, padding);
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      written += len;
+    }
+
+    private static void setSize(byte[] header, long size) {
+      if (size <= TAR_OCTAL_SIZE_LIMIT) {
+        writeOctal(header, 124, 12, size);
+        return;
+      }
+      header[124] = (byte) 0x80;
+      long v = size;
+      for (int i = 135; i > 124; i--) {
+        header[i] = (byte) v;
+        v >>>= 8;
+      }
+    }
+
+    /** 8進数を len-1 桁で書き、末尾を NUL にする。 */
+    private static void writeOctal(byte[] header, int off, int len, long value) {
+      long v = value;
+      for (int i = off + len - 2; i >= off; i--) {
+        header[i] = (byte) ('0' + (v & 7));
+        v >>>= 3;
+      }
+      header[off + len - 1] = 0;
+    }
+  }
+
+  /**
+   * 1エントリ分の出力を溜める（tar・STORED の zip はサイズを先に書くため）。
+   *
+   * <p>{@link #SPOOL_MEMORY_LIMIT} バイトまではメモリに溜め、超えたら出力アーカイブと同じディレクトリの一時ファイルへ移す。一時ファイルは
+   * {@link #close()} で消す。
+   */
+  private static final class EntrySpool extends OutputStream {
+    private final Path outputArchive;
+    private final CRC32 crc = new CRC32();
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private int count;
+    private long size;
+    private Path file;
+    private OutputStream fileOut;
+
+    EntrySpool(Path outputArchive) {
+      this.outputArchive = outputArchive;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      crc.update(b, off, len);
+      size += len;
+      if (fileOut == null && count + len > SPOOL_MEMORY_LIMIT) {
+        spill();
+      }
+      if (fileOut != null) {
+        fileOut.write(b, off, len);
+        return;
+      }
+      if (count + len > buf.length) {
+        int grown = Math.min(SPOOL_MEMORY_LIMIT, Math.max(2 * buf.length, count + len));
+        buf = Arrays.copyOf(buf, grown);
+      }
+      System.arraycopy(b, off, buf, count, len);
+      count += len;
+    }
+
+    /** メモリに溜めた分を一時ファイルへ移し、以降は一時ファイルへ書く。 */
+    private void spill() throws IOException {
+      Path dir = outputArchive.toAbsolutePath().getParent();
+      file = Files.createTempFile(dir, "." + outputArchive.getFileName() + ".entry-", ".tmp");
+      fileOut = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+      fileOut.write(buf, 0, count);
+      buf = null;
+      count = 0;
+    }
+
+    long size() {
+      return size;
+    }
+
+    long crc() {
+      return crc.getValue();
+    }
+
+    /** 溜めた内容を先頭から読む（呼び出し側で閉じる）。 */
+    InputStream openInput() throws IOException {
+      if (fileOut == null) {
+        return new ByteArrayInputStream(buf, 0, count);
+      }
+      fileOut.flush();
+      return new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        if (fileOut != null) {
+          fileOut.close();
+        }
+      } finally {
+        if (file != null) {
+          Files.deleteIfExists(file);
+        }
+      }
+    }
+  }
+
+  /** アーカイブ本体を閉じずに、1エントリ分だけを読む入力（limit が -1 なら上限なし）。 */
+  private static final class EntryInputStream extends FilterInputStream {
+    private long remaining;
+
+    EntryInputStream(InputStream in, long limit) {
+      super(in);
+      this.remaining = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining == 0) {
+        return -1;
+      }
+      int b = in.read();
+      if (b >= 0 && remaining > 0) {
+        remaining--;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining == 0) {
+        return -1;
+      }
+      int n = in.read(b, off, (remaining > 0) ? (int) Math.min(len, remaining) : len);
+      if (n > 0 && remaining > 0) {
+        remaining -= n;
+      }
+      if (n < 0 && remaining > 0) {
+        throw new EOFException("tar が途中で終わっています");
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = in.skip((remaining >= 0) ? Math.min(n, remaining) : n);
+      if (remaining > 0) {
+        remaining -= skipped;
+      }
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      int a = in.available();
+      return (remaining >= 0) ? (int) Math.min(a, remaining) : a;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    /** 読み残しを読み飛ばす。 */
+    void drain() throws IOException {
+      if (remaining > 0) {
+        in.skipNBytes(remaining);
+        remaining = 0;
+      }
+    }
+
+    @Override
+    public void close() {
+      // アーカイブ本体は閉じない
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+/**
+ * バイナリと判定した入力ファイル（コアダンプ・ヒープダンプ・圧縮アーカイブなど）の扱い。
+ *
+ * @see ProcessingOptions#setBinaryPolicy(BinaryPolicy)
+ */
+public enum BinaryPolicy {
+
+  /** 処理せずにスキップし、理由をレポートに記録する（既定。アーカイブのエントリは中身を変えずに出力アーカイブへ残す）。 */
+  SKIP,
+
+  /** 実行全体をエラーにする。 */
+  FAIL,
+
+  /** 判定せずにテキストとして処理する（従来動作。不正な UTF-8 はエラーになる）。 */
+  PROCESS
+}
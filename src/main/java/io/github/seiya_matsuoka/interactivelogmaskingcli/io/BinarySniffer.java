@@ -0,0 +1,187 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipException;
+
+/**
+ * ファイル先頭の数KBだけを読み、テキストとして処理できないファイル（バイナリ）かを判定する。
+ *
+ * <p>次のいずれかに当てはまればバイナリとする。
+ *
+ * <ul>
+ *   <li>既知のバイナリ形式のマジックナンバーで始まる（zip / ELF / Java ヒープダンプ など）
+ *   <li>NUL バイトを含む
+ *   <li>不正な UTF-8 の割合が高い（数バイトの破損だけのテキストはバイナリとせず、従来どおり処理時のエラーにする）
+ * </ul>
+ *
+ * <p>gzip は展開した先頭部分で判定する（gzip 自体はバイナリとしない）。
+ */
+final class BinarySniffer {
+
+  /** 判定に読む先頭のバイト数。 */
+  static final int SAMPLE_SIZE = 8 * 1024;
+
+  /** 不正な UTF-8 がこの件数以上、かつサンプルの {@link #INVALID_RATIO_DIVISOR} 分の1以上ならバイナリとする。 */
+  private static final int MIN_INVALID_SEQUENCES = 4;
+
+  private static final int INVALID_RATIO_DIVISOR = 20;
+
+  private static final Magic[] MAGICS = {
+    new Magic("gzip", bytes(0x1F, 0x8B)),
+    new Magic("zip", bytes('P', 'K', 0x03, 0x04)),
+    new Magic("elf", bytes(0x7F, 'E', 'L', 'F')),
+    new Magic("hprof", ascii("JAVA PROFILE ")),
+    new Magic("java-class", bytes(0xCA, 0xFE, 0xBA, 0xBE)),
+    new Magic("bzip2", ascii("BZh")),
+    new Magic("xz", bytes(0xFD, '7', 'z', 'X', 'Z', 0x00)),
+    new Magic("zstd", bytes(0x28, 0xB5, 0x2F, 0xFD)),
+    new Magic("7z", bytes('7', 'z', 0xBC, 0xAF, 0x27, 0x1C)),
+    new Magic("png", bytes(0x89, 'P', 'N', 'G')),
+    new Magic("jpeg", bytes(0xFF, 0xD8, 0xFF)),
+    new Magic("pdf", ascii("%PDF-")),
+    new Magic("sqlite", ascii("SQLite format 3\0")),
+  };
+
+  private BinarySniffer() {}
+
+  /**
+   * ファイルを判定する。
+   *
+   * @param file 入力ファイル
+   * @return バイナリと判定した理由（例: {@code magic:zip} / {@code nul-bytes} / {@code invalid-utf8}）。テキストなら null
+   * @throws IOException 読み込みに失敗した場合
+   */
+  static String detect(Path file) throws IOException {
+    // gzip は展開した内容で判定する（gzip の入力は展開しながら処理できるため）
+    boolean gzip = GzipFiles.isGzip(file);
+    byte[] sample;
+    boolean eof;
+    try (InputStream in = GzipFiles.newInputStream(file, gzip)) {
+      sample = in.readNBytes(SAMPLE_SIZE);
+      eof = sample.length < SAMPLE_SIZE || in.read() < 0;
+    } catch (ZipException | EOFException e) {
+      return gzip ? "invalid-gzip" : null;
+    }
+    return detect(sample, sample.length, eof);
+  }
+
+  /**
+   * 読み込み済みの先頭バイト列を判定する。
+   *
+   * @param sample 先頭バイト列
+   * @param length 有効な長さ
+   * @param eof true: sample がファイル全体（末尾の途切れた UTF-8 も不正として数える）
+   * @return バイナリと判定した理由。テキストなら null
+   */
+  static String detect(byte[] sample, int length, boolean eof) {
+    for (Magic m : MAGICS) {
+      if (m.matches(sample, length)) {
+        return "magic:" + m.name;
+      }
+    }
+
+    int invalid = 0;
+    int i = 0;
+    while (i < length) {
+      int b = sample[i] & 0xFF;
+      if (b == 0) {
+        return "nul-bytes";
+      }
+      if (b < 0x80) {
+        i++;
+        continue;
+      }
+
+      int need = continuationCount(b);
+      if (need < 0) {
+        invalid++;
+        i++;
+        continue;
+      }
+      if (i + need >= length && !eof) {
+        // サンプルの末尾で途切れた文字は判定しない
+        break;
+      }
+
+      int j = 1;
+      while (j <= need && i + j < length && isContinuation(sample[i + j], b, j)) {
+        j++;
+      }
+      if (j <= need) {
+        invalid++;
+      }
+      i += j;
+    }
+
+    if (invalid >= MIN_INVALID_SEQUENCES && invalid * INVALID_RATIO_DIVISOR >= length) {
+      return "invalid-utf8";
+    }
+    return null;
+  }
+
+  /** 先頭バイトに続く継続バイトの数（先頭バイトとして不正なら -1）。 */
+  private static int continuationCount(int lead) {
+    if (lead >= 0xC2 && lead <= 0xDF) {
+      return 1;
+    }
+    if (lead >= 0xE0 && lead <= 0xEF) {
+      return 2;
+    }
+    if (lead >= 0xF0 && lead <= 0xF4) {
+      return 3;
+    }
+    return -1;
+  }
+
+  /** 先頭バイト lead の j バイト目として正しい継続バイトか（過長表現・サロゲートも不正とする）。 */
+  private static boolean isContinuation(byte value, int lead, int j) {
+    int c = value & 0xFF;
+    if (j == 1) {
+      if (lead == 0xE0) {
+        return c >= 0xA0 && c <= 0xBF;
+      }
+      if (lead == 0xED) {
+        return c >= 0x80 && c <= 0x9F;
+      }
+      if (lead == 0xF0) {
+        return c >= 0x90 && c <= 0xBF;
+      }
+      if (lead == 0xF4) {
+        return c >= 0x80 && c <= 0x8F;
+      }
+    }
+    return c >= 0x80 && c <= 0xBF;
+  }
+
+  private static byte[] bytes(int... values) {
+    byte[] b = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      b[i] = (byte) values[i];
+    }
+    return b;
+  }
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private record Magic(String name, byte[] prefix) {
+
+    boolean matches(byte[] sample, int length) {
+      if (length < prefix.length) {
+        return false;
+      }
+      for (int i = 0; i < prefix.length; i++) {
+        if (sample[i] != prefix[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.ByteSequence;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.MalformedInputException;
+import java.util.Arrays;
+
+/**
+ * 入力を UTF-8 のバイト列のまま1行ずつ読む（デコードしない）。
+ *
+ * <p>行の区切り（\n / \r / \r\n）は {@link java.io.BufferedReader#readLine()} と同じ。 不正な UTF-8
+ * は、文字列として読む場合と同様にエラー（{@link MalformedInputException}）にする。 エラーにした行は読み終えた扱いになり
+ * （{@link #lineOffset()} / {@link #terminatorLength()} はその行を指す）、次の {@link #next()} は続きの行を返す。
+ *
+ * <p>返す {@link ByteSequence} は内部バッファを指すビューのため、次の {@link #next()} までに使い終えること。
+ */
+final class ByteLineReader implements Closeable {
+
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream in;
+  private byte[] buf;
+  private final ByteSequence view;
+
+  /** 未処理の範囲 [start, end)。 */
+  private int start;
+
+  private int end;
+  private boolean eof;
+
+  /** buf[0] のファイル内オフセット。 */
+  private long bufferOffset;
+
+  /** 直前に返した行の開始オフセットと、行末の改行のバイト数（0〜2）。 */
+  private long lineOffset;
+
+  private int terminatorLength;
+
+  ByteLineReader(InputStream in) {
+    this(in, new byte[INITIAL_BUFFER_SIZE], 0, 0, false);
+  }
+
+  private ByteLineReader(InputStream in, byte[] buf, int start, int end, boolean eof) {
+    this.in = in;
+    this.buf = buf;
+    this.view = ByteSequence.wrap(buf, start, 0);
+    this.start = start;
+    this.end = end;
+    this.eof = eof;
+  }
+
+  /**
+   * メモリ上のバイト列 [from, to) を1行ずつ読む reader を返す（コピーしない）。
+   *
+   * <p>{@link #lineOffset()} は配列上の位置になる。
+   */
+  static ByteLineReader over(byte[] bytes, int from, int to) {
+    return new ByteLineReader(InputStream.nullInputStream(), bytes, from, to, true);
+  }
+
+  /**
+   * 次の1行（改行を含まない）を返す。
+   *
+   * @return 1行分のバイト列（末尾に達したら null）
+   * @throws IOException 入出力エラー（不正な UTF-8 を含む）
+   */
+  ByteSequence next() throws IOException {
+    int i = start;
+    while (true) {
+      if (i >= end) {
+        if (eof) {
+          return (start >= end) ? null : emit(start, end, end);
+        }
+        i = fill(i);
+        continue;
+      }
+
+      byte b = buf[i];
+      if (b == '\n') {
+        return emit(start, i, i + 1);
+      }
+      if (b == '\r') {
+        // \r\n を1つの区切りとして扱うため、次のバイトが読めるまで待つ
+        if (i + 1 >= end && !eof) {
+          i = fill(i);
+          continue;
+        }
+        int next = (i + 1 < end && buf[i + 1] == '\n') ? i + 2 : i + 1;
+        return emit(start, i, next);
+      }
+      i++;
+    }
+  }
+
+  /** 直前に返した行の、ファイル内の開始オフセット。 */
+  long lineOffset() {
+    return lineOffset;
+  }
+
+  /** 直前に返した行の末尾の改行のバイト数（\n / \r は 1、\r\n は 2、改行なしの最終行は 0）。 */
+  int terminatorLength() {
+    return terminatorLength;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /** 処理済みの分を詰めて（必要なら拡張して）読み足す。走査位置 i の補正後の値を返す。 */
+  private int fill(int i) throws IOException {
+    if (start > 0) {
+      System.arraycopy(buf, start, buf, 0, end - start);
+      bufferOffset += start;
+      i -= start;
+      end -= start;
+      start = 0;
+    }
+    if (end == buf.length) {
+      buf = Arrays.copyOf(buf, buf.length * 2);
+    }
+    int n = in.read(buf, end, buf.length - end);
+    if (n < 0) {
+      eof = true;
+    } else {
+      end += n;
+    }
+    return i;
+  }
+
+  private ByteSequence emit(int from, int to, int next) throws IOException {
+    lineOffset = bufferOffset + from;
+    terminatorLength = next - to;
+    start = next;
+    validateUtf8(buf, from, to);
+    return view.reset(buf, from, to - from);
+  }
+
+  /**
+   * [from, to) が正しい UTF-8 か確認する（{@link java.nio.charset.StandardCharsets#UTF_8} のデコーダと同じ基準）。
+   *
+   * <p>冗長な表現・サロゲート（U+D800〜U+DFFF）・U+10FFFF 超は不正とする。
+   */
+  static void validateUtf8(byte[] bytes, int from, int to) throws MalformedInputException {
+    int i = from;
+    while (i < to) {
+      int b = bytes[i];
+      if (b >= 0) {
+        i++;
+        continue;
+      }
+      b &= 0xFF;
+
+      int need;
+      int lo = 0x80;
+      int hi = 0xBF;
+      if (b >= 0xC2 && b <= 0xDF) {
+        need = 1;
+      } else if (b >= 0xE0 && b <= 0xEF) {
+        need = 2;
+        if (b == 0xE0) {
+          lo = 0xA0;
+        } else if (b == 0xED) {
+          hi = 0x9F;
+        }
+      } else if (b >= 0xF0 && b <= 0xF4) {
+        need = 3;
+        if (b == 0xF0) {
+          lo = 0x90;
+        } else if (b == 0xF4) {
+          hi = 0x8F;
+        }
+      } else {
+        throw new MalformedInputException(1);
+      }
+
+      // 行末で途切れている
+      if (i + need >= to) {
+        throw new MalformedInputException(1);
+      }
+      int second = bytes[i + 1] & 0xFF;
+      if (second < lo || second > hi) {
+        throw new MalformedInputException(1);
+      }
+      for (int k = 2; k <= need; k++) {
+        int cont = bytes[i + k] & 0xFF;
+        if (cont < 0x80 || cont > 0xBF) {
+          throw new MalformedInputException(k);
+        }
+      }
+      i += need + 1;
+    }
+  }
+}
@@ -0,0 +1,340 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskContext;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngine;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 1つの大きなファイルを行境界で分割し、複数スレッドでマスキングする。
+ *
+ * <ul>
+ *   <li>ファイルを約 chunkSize バイトごとの範囲に分ける。範囲の終端は必ず '\n' の直後に合わせる。
+ *   <li>各範囲（チャンク）はワーカーが読み込み・デコード・行分割・マスキング・エンコードまで行う。
+ *   <li>呼び出しスレッドはチャンクを元の順序で書き出し、件数を1ファイル分に合算する。
+ * </ul>
+ *
+ * <p>'\n'（0x0A）は UTF-8 の複数バイト文字の途中には現れないため、境界で文字が分断されることはない。 また行の区切り（\n / \r / \r\n）と出力の改行は
+ * {@link java.io.BufferedReader#readLine()} + {@link java.io.BufferedWriter#newLine()} と同じ扱いにするため、
+ * 出力は逐次処理と同一になる。
+ *
+ * <p>同時に保持するチャンク数は window で制限し、ファイルサイズに比例してメモリを使わないようにする。
+ * 長い行を含んで上限（maxChunkBytes）を超える範囲は、先行するチャンクを書き出してから呼び出しスレッドで1行ずつ処理する
+ * （範囲全体をメモリに読み込まない）。
+ */
+final class ChunkedFileMasker {
+
+  /** 境界探索で一度に読むバイト数。 */
+  private static final int PROBE_SIZE = 8192;
+
+  /** 1チャンクとしてメモリに読み込むバイト数の最大値（配列の上限）。 */
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  private final MaskEngine engine;
+  private final CompiledRuleSet ruleSet;
+  private final ExecutorService pool;
+  private final int chunkSize;
+
+  /** 1チャンクとしてメモリに読み込む上限（chunkSize の4倍。超える範囲は1行ずつ処理する）。 */
+  private final int maxChunkBytes;
+
+  private final int window;
+
+  /** ワーカーごとの作業領域（この masker の寿命の間だけ使う）。 */
+  private final ThreadLocal<MaskContext> contexts;
+
+  /**
+   * @param engine マスキングコア
+   * @param ruleSet コンパイル済みルールセット
+   * @param pool チャンクを処理するワーカー
+   * @param workers ワーカー数（同時に保持するチャンク数の目安）
+   * @param chunkSize 1チャンクの目安バイト数
+   */
+  ChunkedFileMasker(
+      MaskEngine engine, CompiledRuleSet ruleSet, ExecutorService pool, int workers, int chunkSize) {
+    this.engine = engine;
+    this.ruleSet = ruleSet;
+    this.pool = pool;
+    this.chunkSize = chunkSize;
+    this.maxChunkBytes = (int) Math.min(MAX_ARRAY_SIZE, 4L * chunkSize);
+    this.window = Math.max(2, workers * 2);
+    this.contexts = ThreadLocal.withInitial(() -> new MaskContext(ruleSet));
+  }
+
+  /**
+   * 1ファイルを分割して処理する。
+   *
+   * @param inputFile 入力ファイル
+   * @param outputFile 出力ファイル（dryRun の場合は作らない）
+   * @param ctx 件数の集計先（このファイル分にリセットしてから合算する）
+   * @param dryRun true: 件数集計のみ
+   * @param hash 読んだ入力から求める内容のハッシュ（null なら求めない。チャンクを書き出す順に加える）
+   * @throws IOException 入出力エラー（デコード/エンコードのエラーも含む）
+   */
+  void process(
+      Path inputFile, Path outputFile, MaskContext ctx, boolean dryRun, ContentHash hash)
+      throws IOException {
+
+    ctx.resetCounts();
+
+    try (FileChannel in = FileChannel.open(inputFile, StandardOpenOption.READ)) {
+      if (dryRun) {
+        run(in, null, ctx, true, hash);
+        return;
+      }
+
+      if (outputFile.getParent() != null) {
+        Files.createDirectories(outputFile.getParent());
+      }
+      try (OutputStream out =
+          Files.newOutputStream(
+              outputFile,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE)) {
+        run(in, out, ctx, false, hash);
+      }
+    }
+  }
+
+  private void run(
+      FileChannel in, OutputStream out, MaskContext ctx, boolean dryRun, ContentHash hash)
+      throws IOException {
+
+    long size = in.size();
+    ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+
+    try {
+      long start = 0;
+      while (start < size) {
+        long end = nextBoundary(in, Math.min(size, start + chunkSize), size);
+        long from = start;
+        start = end;
+
+        // 長い行で上限を超えた範囲は、順序を保つため先行するチャンクを書き出してから1行ずつ処理する
+        if (end - from > maxChunkBytes) {
+          while (!inFlight.isEmpty()) {
+            drain(WorkerThreads.await(inFlight.poll()), out, ctx, hash);
+          }
+          maskRange(in, from, end, out, ctx, dryRun, hash);
+          continue;
+        }
+        inFlight.add(pool.submit(() -> maskChunk(in, from, end, dryRun, hash != null)));
+
+        // 先頭から順に書き出し、保持するチャンク数を window 以下に抑える
+        while (inFlight.size() >= window) {
+          drain(WorkerThreads.await(inFlight.poll()), out, ctx, hash);
+        }
+      }
+      while (!inFlight.isEmpty()) {
+        drain(WorkerThreads.await(inFlight.poll()), out, ctx, hash);
+      }
+    } finally {
+      // 途中で失敗した場合、残りのチャンクは打ち切る
+      for (Future<Chunk> f : inFlight) {
+        f.cancel(true);
+      }
+    }
+  }
+
+  private static void drain(Chunk chunk, OutputStream out, MaskContext ctx, ContentHash hash)
+      throws IOException {
+    if (hash != null) {
+      hash.update(chunk.input(), 0, chunk.input().length);
+    }
+    if (out != null) {
+      out.write(chunk.data(), 0, chunk.length());
+    }
+    ctx.addCounts(chunk.counts(), chunk.total());
+    ctx.addLines(chunk.lines());
+  }
+
+  /**
+   * target 以降で最初の '\n' の直後の位置を返す（見つからなければファイル末尾）。
+   *
+   * <p>1行が chunkSize より長い場合でも、行の途中では分割しない。
+   */
+  private static long nextBoundary(FileChannel in, long target, long size) throws IOException {
+    if (target >= size) {
+      return size;
+    }
+    ByteBuffer buf = ByteBuffer.allocate(PROBE_SIZE);
+    long pos = target;
+    while (pos < size) {
+      buf.clear();
+      int n = in.read(buf, pos);
+      if (n <= 0) {
+        return size;
+      }
+      for (int i = 0; i < n; i++) {
+        if (buf.get(i) == '\n') {
+          return pos + i + 1;
+        }
+      }
+      pos += n;
+    }
+    return size;
+  }
+
+  /**
+   * ワーカーで1チャンク（[from, to)）を読み込み、行ごとにマスキングした結果を返す。
+   *
+   * @param keepInput true: 読み込んだバイト列を結果に残す（書き出す順に内容のハッシュへ加えるため）
+   */
+  private Chunk maskChunk(FileChannel in, long from, long to, boolean dryRun, boolean keepInput)
+      throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(Math.toIntExact(to - from));
+    long pos = from;
+    while (bytes.hasRemaining()) {
+      int n = in.read(bytes, pos);
+      if (n < 0) {
+        throw new EOFException("読み込み中にファイルが短くなりました");
+      }
+      pos += n;
+    }
+    bytes.flip();
+
+    // 不正な UTF-8 は逐次処理（Files.newBufferedReader）と同様にエラーにする
+    CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(bytes);
+
+    MaskContext ctx = contexts.get();
+    ctx.resetCounts();
+
+    StringBuilder sb = dryRun ? null : new StringBuilder(chars.length() + 64);
+
+    // BufferedReader#readLine と同じ区切り（\n / \r / \r\n）で行に分ける
+    int len = chars.length();
+    int lineStart = 0;
+    int i = 0;
+    while (i < len) {
+      char c = chars.get(i);
+      if (c != '\n' && c != '\r') {
+        i++;
+        continue;
+      }
+      emit(chars.subSequence(lineStart, i).toString(), ctx, sb, dryRun);
+      i++;
+      if (c == '\r' && i < len && chars.get(i) == '\n') {
+        i++;
+      }
+      lineStart = i;
+    }
+    if (lineStart < len) {
+      emit(chars.subSequence(lineStart, len).toString(), ctx, sb, dryRun);
+    }
+
+    long[] counts = Arrays.copyOf(ctx.counts(), ruleSet.size());
+    byte[] input = keepInput ? bytes.array() : null;
+    if (dryRun) {
+      return new Chunk(new byte[0], 0, counts, ctx.totalCount(), ctx.lines(), input);
+    }
+
+    // 出力も逐次処理（Files.newBufferedWriter）と同様、符号化できない文字はエラーにする
+    ByteBuffer encoded = StandardCharsets.UTF_8.newEncoder().encode(CharBuffer.wrap(sb));
+    return new Chunk(
+        encoded.array(), encoded.limit(), counts, ctx.totalCount(), ctx.lines(), input);
+  }
+
+  /**
+   * 範囲（[from, to)）を呼び出しスレッドで1行ずつ読み、マスキングして out へ書き出す（件数は ctx に直接加算する）。
+   *
+   * <p>行の区切り・改行の出力・不正な UTF-8 の扱いは逐次処理と同じ。
+   */
+  private void maskRange(
+      FileChannel in,
+      long from,
+      long to,
+      OutputStream out,
+      MaskContext ctx,
+      boolean dryRun,
+      ContentHash hash)
+      throws IOException {
+
+    InputStream range = new RangeInputStream(in, from, to);
+    BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(
+                (hash == null) ? range : hash.wrap(range), StandardCharsets.UTF_8.newDecoder()));
+    Writer writer =
+        dryRun
+            ? null
+            : new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8.newEncoder()));
+
+    String line;
+    while ((line = reader.readLine()) != null) {
+      String masked = engine.mask(line, ctx, dryRun);
+      if (writer != null) {
+        writer.write(masked);
+        writer.write(LINE_SEPARATOR);
+      }
+    }
+    // out は後続のチャンクでも使うため閉じない
+    if (writer != null) {
+      writer.flush();
+    }
+  }
+
+  private void emit(String line, MaskContext ctx, StringBuilder sb, boolean dryRun) {
+    String masked = engine.mask(line, ctx, dryRun);
+    if (sb != null) {
+      sb.append(masked).append(LINE_SEPARATOR);
+    }
+  }
+
+  /** ファイルの範囲（[from, to)）を位置指定で読むストリーム（チャネルの位置は変えない）。 */
+  private static final class RangeInputStream extends InputStream {
+    private final FileChannel channel;
+    private final long to;
+    private long pos;
+
+    RangeInputStream(FileChannel channel, long from, long to) {
+      this.channel = channel;
+      this.pos = from;
+      this.to = to;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (pos >= to) {
+        return -1;
+      }
+      int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, to - pos)), pos);
+      if (n < 0) {
+        throw new EOFException("読み込み中にファイルが短くなりました");
+      }
+      pos += n;
+      return n;
+    }
+  }
+
+  /** 1チャンク分の処理結果（エンコード済み出力 + 件数 + 行数 + 必要なら読み込んだバイト列）。 */
+  private record Chunk(
+      byte[] data, int length, long[] counts, long total, long lines, byte[] input) {}
+}
@@ -0,0 +1,46 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 入力ファイルの内容の SHA-256（差分実行のマニフェストに記録する）。
+ *
+ * <p>入力を読み直さずに済むよう、処理で入力を読むストリームを {@link #wrap} で包むか、読んだバイト列を {@link #update} で渡す。
+ * いずれの場合も、ファイルの先頭から順にすべてのバイトを1回ずつ渡すこと（gzip の入力は展開前のバイト列）。
+ */
+final class ContentHash {
+
+  private final MessageDigest digest;
+
+  private ContentHash(MessageDigest digest) {
+    this.digest = digest;
+  }
+
+  /** 空の状態から求め始める。 */
+  static ContentHash sha256() {
+    try {
+      return new ContentHash(MessageDigest.getInstance("SHA-256"));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** 読んだバイト列をそのまま加えるストリームで包む。 */
+  InputStream wrap(InputStream in) {
+    return new DigestInputStream(in, digest);
+  }
+
+  /** 読んだバイト列を加える。 */
+  void update(byte[] bytes, int offset, int length) {
+    digest.update(bytes, offset, length);
+  }
+
+  /** ここまでに加えたバイト列の SHA-256（16進文字列）。 */
+  String toHex() {
+    return HexFormat.of().formatHex(digest.digest());
+  }
+}
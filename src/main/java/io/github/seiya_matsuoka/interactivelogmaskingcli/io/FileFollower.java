@@ -0,0 +1,632 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.ByteSequence;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskContext;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngine;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskRunReport;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskedFileReport;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.util.PathUtil;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * 入力ファイルへの追記を追いかけ、追記された分だけをマスキングして出力ファイルへ追記する（追従モード）。
+ *
+ * <ul>
+ *   <li>入力の列挙・出力パスの生成は通常の処理と同じ（{@link InputFileCollector} / {@link PathUtil#toOutputPath}）
+ *   <li>変更は {@link WatchService} で待ち、取りこぼしに備えて一定間隔のポーリングも行う（WatchService が使えない環境ではポーリングのみ）
+ *   <li>処理するのは行の区切りまで。書きかけの行は読んだ分を保持し、区切りが追記されるまで待つ（続きだけを読み足す）
+ *   <li>不正な UTF-8 の行は出力せずに読み飛ばし、警告として知らせる（追従は続ける）
+ *   <li>処理位置はチェックポイント（JSON）に保存し、再起動時はそこから再開する（処理済みの分は再処理しない）
+ * </ul>
+ *
+ * <p>ローテーション（同じパスに別のファイルができる）は、ファイルの識別子の変化で検出する。 開いたままの旧ファイルを最後まで処理してから、新しいファイルを先頭から処理する。
+ * 切り詰め（サイズが処理位置より小さくなる）を検出した場合は、先頭から処理し直す。 いずれの場合も出力ファイルには追記を続ける。
+ *
+ * <p>改行は入力のバイト列のまま出力する。
+ */
+public class FileFollower {
+
+  /** 1回に読み込む量の初期値（これより長い行はバッファを拡張して読む）。 */
+  private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+  private static final byte[] LINE_SEPARATOR_BYTES =
+      System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+  private final InputFileCollector collector;
+  private final MaskEngine engine;
+  private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+  /** 既定の collector / engine を使用するコンストラクタ。 */
+  public FileFollower() {
+    this(new InputFileCollector(), new MaskEngine());
+  }
+
+  /**
+   * @param collector 入力ファイル列挙
+   * @param engine マスキングコア
+   */
+  public FileFollower(InputFileCollector collector, MaskEngine engine) {
+    this.collector = Objects.requireNonNull(collector, "collector");
+    this.engine = Objects.requireNonNull(engine, "engine");
+  }
+
+  /**
+   * stopRequested が true を返すまで、入力への追記を追いかけて処理する（警告は受け取らない）。
+   *
+   * @param inputPath 入力（ファイル or ディレクトリ）
+   * @param outputBase 出力ベース
+   * @param ruleSet コンパイル済みのルールセット
+   * @param suffix 出力ファイル名サフィックス
+   * @param checkpointFile チェックポイントの保存先
+   * @param options 実行オプション（ポーリング間隔・バイト単位の処理の指定に使う）
+   * @param stopRequested 停止の判定（変更待ちの合間に確認する）
+   * @return 今回の実行で処理した分の結果
+   * @throws IOException 入出力エラー
+   */
+  public MaskRunReport follow(
+      Path inputPath,
+      Path outputBase,
+      CompiledRuleSet ruleSet,
+      String suffix,
+      Path checkpointFile,
+      ProcessingOptions options,
+      BooleanSupplier stopRequested)
+      throws IOException {
+    return follow(
+        inputPath,
+        outputBase,
+        ruleSet,
+        suffix,
+        checkpointFile,
+        options,
+        stopRequested,
+        warning -> {});
+  }
+
+  /**
+   * stopRequested が true を返すまで、入力への追記を追いかけて処理する。
+   *
+   * <p>停止時はチェックポイントを保存してから戻る。
+   *
+   * <p>不正な UTF-8 の行は出力せずに読み飛ばし（処理位置はその行の後ろへ進める）、ファイルと位置を warnings へ渡す。
+   *
+   * @param inputPath 入力（ファイル or ディレクトリ）
+   * @param outputBase 出力ベース
+   * @param ruleSet コンパイル済みのルールセット
+   * @param suffix 出力ファイル名サフィックス
+   * @param checkpointFile チェックポイントの保存先
+   * @param options 実行オプション（ポーリング間隔・バイト単位の処理の指定に使う）
+   * @param stopRequested 停止の判定（変更待ちの合間に確認する）
+   * @param warnings 警告（読み飛ばした行など）の受け取り先
+   * @return 今回の実行で処理した分の結果
+   * @throws IOException 入出力エラー
+   */
+  public MaskRunReport follow(
+      Path inputPath,
+      Path outputBase,
+      CompiledRuleSet ruleSet,
+      String suffix,
+      Path checkpointFile,
+      ProcessingOptions options,
+      BooleanSupplier stopRequested,
+      Consumer<String> warnings)
+      throws IOException {
+
+    Objects.requireNonNull(checkpointFile, "checkpointFile");
+    Objects.requireNonNull(stopRequested, "stopRequested");
+    Objects.requireNonNull(warnings, "warnings");
+
+    MaskContext ctx = new MaskContext(ruleSet);
+    Utf8LineMasker masker =
+        new Utf8LineMasker(engine, options.isByteLevelMasking() && ruleSet.isAsciiSafe());
+
+    FollowCheckpointJson checkpoint = loadCheckpoint(checkpointFile);
+    Map<String, Followed> followed = new LinkedHashMap<>();
+    WatchService watcher = newWatchService(inputPath);
+    Set<Path> watchedDirs = new HashSet<>();
+
+    try {
+      boolean rescan = true;
+      while (true) {
+        if (rescan) {
+          discover(
+              inputPath,
+              options.inputFilter(),
+              outputBase,
+              suffix,
+              ruleSet,
+              checkpoint,
+              followed,
+              warnings);
+          register(watcher, inputPath, followed, watchedDirs);
+        }
+
+        boolean changed = false;
+        for (Followed f : followed.values()) {
+          changed |= f.poll(masker, ctx);
+        }
+        if (changed) {
+          saveCheckpoint(checkpointFile, checkpoint, followed);
+        }
+
+        if (stopRequested.getAsBoolean()) {
+          break;
+        }
+        rescan = awaitChange(watcher, options.getFollowPollMillis());
+        if (Thread.currentThread().isInterrupted()) {
+          break;
+        }
+      }
+
+      saveCheckpoint(checkpointFile, checkpoint, followed);
+
+    } finally {
+      for (Followed f : followed.values()) {
+        f.close();
+      }
+      if (watcher != null) {
+        watcher.close();
+      }
+    }
+
+    List<MaskedFileReport> files = new ArrayList<>(followed.size());
+    long[] perRule = ruleSet.newCounters();
+    long total = 0;
+    for (Followed f : followed.values()) {
+      files.add(
+          new MaskedFileReport(f.ref.file(), f.outFile, ruleSet.toCountMap(f.counts), f.total));
+      for (int i = 0; i < perRule.length; i++) {
+        perRule[i] += f.counts[i];
+      }
+      total += f.total;
+    }
+    return new MaskRunReport(inputPath, outputBase, files, ruleSet.toCountMap(perRule), total);
+  }
+
+  /** 入力を列挙し直し、新しく見つかったファイルの追従を始める。 */
+  private void discover(
+      Path inputPath,
+      InputFileFilter filter,
+      Path outputBase,
+      String suffix,
+      CompiledRuleSet ruleSet,
+      FollowCheckpointJson checkpoint,
+      Map<String, Followed> followed,
+      Consumer<String> warnings)
+      throws IOException {
+
+    List<InputFileRef> inputs;
+    try {
+      inputs = collector.collect(inputPath, filter);
+    } catch (IllegalArgumentException | NoSuchFileException e) {
+      // 単一ファイルの入力がローテーションの途中で一時的に存在しない場合など。次の機会に列挙し直す
+      return;
+    }
+
+    for (InputFileRef in : inputs) {
+      String key = in.relative().toString();
+      if (followed.containsKey(key)) {
+        continue;
+      }
+      Path outFile = PathUtil.toOutputPath(outputBase, in.relative(), suffix);
+      FollowCheckpointJson.FileStateJson state =
+          checkpoint.files.computeIfAbsent(key, k -> new FollowCheckpointJson.FileStateJson());
+      Followed f = new Followed(in, outFile, state, ruleSet.newCounters(), warnings);
+      f.resume();
+      followed.put(key, f);
+    }
+  }
+
+  private static WatchService newWatchService(Path inputPath) {
+    try {
+      return inputPath.getFileSystem().newWatchService();
+    } catch (IOException | UnsupportedOperationException e) {
+      // WatchService が使えない環境ではポーリングのみで追従する
+      return null;
+    }
+  }
+
+  /** 入力ファイルのあるディレクトリ（と入力ディレクトリ自体）を監視対象に加える。 */
+  private static void register(
+      WatchService watcher, Path inputPath, Map<String, Followed> followed, Set<Path> watchedDirs) {
+    if (watcher == null) {
+      return;
+    }
+    Set<Path> dirs = new HashSet<>();
+    dirs.add(Files.isDirectory(inputPath) ? inputPath : inputPath.toAbsolutePath().getParent());
+    for (Followed f : followed.values()) {
+      dirs.add(f.ref.file().toAbsolutePath().getParent());
+    }
+    for (Path dir : dirs) {
+      if (dir == null || !watchedDirs.add(dir.toAbsolutePath())) {
+        continue;
+      }
+      try {
+        dir.register(
+            watcher,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+      } catch (IOException e) {
+        // 監視できないディレクトリはポーリングで追従する
+        watchedDirs.remove(dir.toAbsolutePath());
+      }
+    }
+  }
+
+  /**
+   * 変更の通知か、ポーリング間隔の経過まで待つ。
+   *
+   * @return true: 入力を列挙し直す必要がある（ファイルの作成/削除の通知があった、または通知が使えない）
+   */
+  private static boolean awaitChange(WatchService watcher, long pollMillis) {
+    try {
+      if (watcher == null) {
+        Thread.sleep(pollMillis);
+        return true;
+      }
+      boolean rescan = false;
+      WatchKey key = watcher.poll(pollMillis, TimeUnit.MILLISECONDS);
+      while (key != null) {
+        for (var event : key.pollEvents()) {
+          if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
+            rescan = true;
+          }
+        }
+        key.reset();
+        key = watcher.poll();
+      }
+      return rescan;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ClosedWatchServiceException e) {
+      return true;
+    }
+  }
+
+  private FollowCheckpointJson loadCheckpoint(Path checkpointFile) throws IOException {
+    if (!Files.exists(checkpointFile)) {
+      return new FollowCheckpointJson();
+    }
+    FollowCheckpointJson loaded =
+        mapper.readValue(checkpointFile.toFile(), FollowCheckpointJson.class);
+    if (loaded.files == null) {
+      loaded.files = new TreeMap<>();
+    }
+    return loaded;
+  }
+
+  /** 一時ファイルに書いてから置き換える（途中で止まっても壊れたチェックポイントを残さない）。 */
+  private void saveCheckpoint(
+      Path checkpointFile, FollowCheckpointJson checkpoint, Map<String, Followed> followed)
+      throws IOException {
+
+    for (Followed f : followed.values()) {
+      f.commit();
+    }
+
+    Path dir = checkpointFile.toAbsolutePath().getParent();
+    Files.createDirectories(dir);
+    Path tmp = dir.resolve(checkpointFile.getFileName() + ".tmp");
+    mapper.writeValue(tmp.toFile(), checkpoint);
+    try {
+      Files.move(
+          tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static String fileKeyOf(BasicFileAttributes attrs) {
+    Object key = attrs.fileKey();
+    return (key != null) ? key.toString() : "created:" + attrs.creationTime().toMillis();
+  }
+
+  /** 追従中の1ファイル。 */
+  private static final class Followed {
+    final InputFileRef ref;
+    final Path outFile;
+    final FollowCheckpointJson.FileStateJson state;
+    final long[] counts;
+    final Consumer<String> warnings;
+    long total;
+
+    /** 開いている入力（ローテーション後も旧ファイルを読み切るため、パスではなくチャネルで保持する）。 */
+    FileChannel in;
+
+    String fileKey;
+    long offset;
+    FileChannel out;
+    byte[] buf = new byte[READ_BUFFER_SIZE];
+
+    /** buf[0, filled) は offset から読んだ書きかけの行（次のポーリングでは続きだけを読み足す）。 */
+    int filled;
+
+    /** buf[0, scanned) には行の区切りが無い（区切りを探すのは続きの分だけにする）。 */
+    int scanned;
+
+    Followed(
+        InputFileRef ref,
+        Path outFile,
+        FollowCheckpointJson.FileStateJson state,
+        long[] counts,
+        Consumer<String> warnings) {
+      this.ref = ref;
+      this.outFile = outFile;
+      this.state = state;
+      this.counts = counts;
+      this.warnings = warnings;
+    }
+
+    /** チェックポイントの位置から再開する準備をする（出力のチェックポイント以降の部分は切り詰める）。 */
+    void resume() throws IOException {
+      fileKey = state.fileKey;
+      offset = state.offset;
+
+      long outSize = Files.exists(outFile) ? Files.size(outFile) : -1;
+      if (outSize < state.outputSize) {
+        // 出力が消えた/短くなった場合は、入力の先頭から作り直す
+        fileKey = null;
+        offset = 0;
+        state.outputSize = 0;
+        state.offset = 0;
+        if (outSize >= 0) {
+          Files.delete(outFile);
+        }
+        return;
+      }
+      if (outSize > state.outputSize) {
+        // チェックポイントの保存前に止まった分は、再処理するため切り詰める
+        try (FileChannel ch = FileChannel.open(outFile, StandardOpenOption.WRITE)) {
+          ch.truncate(state.outputSize);
+        }
+      }
+    }
+
+    /**
+     * 追記された分を処理する。
+     *
+     * @return true: 処理位置が進んだ（またはファイルが切り替わった）
+     */
+    boolean poll(Utf8LineMasker masker, MaskContext ctx) throws IOException {
+      BasicFileAttributes attrs;
+      try {
+        attrs = Files.readAttributes(ref.file(), BasicFileAttributes.class);
+      } catch (NoSuchFileException e) {
+        // ローテーションで移動済み（新しいファイルはまだ無い）。開いている旧ファイルの残りだけ処理する
+        return (in != null) && drain(masker, ctx, false);
+      }
+
+      String key = fileKeyOf(attrs);
+      boolean changed = false;
+
+      if (in != null && !key.equals(fileKey)) {
+        // ローテーション：旧ファイルを最後（書きかけの行も含む）まで処理してから切り替える
+        drain(masker, ctx, true);
+        in.close();
+        in = null;
+        restart();
+        fileKey = key;
+        changed = true;
+      }
+
+      if (in == null) {
+        if (fileKey != null && !key.equals(fileKey)) {
+          // 停止中にローテーションされた：新しいファイルを先頭から処理する
+          restart();
+          changed = true;
+        }
+        fileKey = key;
+        in = FileChannel.open(ref.file(), StandardOpenOption.READ);
+      }
+
+      if (in.size() < offset + filled) {
+        // 切り詰め（copytruncate 等）：保持している書きかけの行も捨てて、先頭から処理し直す
+        restart();
+        changed = true;
+      }
+
+      return drain(masker, ctx, false) || changed;
+    }
+
+    /** 処理位置を先頭に戻す（保持している書きかけの行は捨てる）。 */
+    private void restart() {
+      offset = 0;
+      filled = 0;
+      scanned = 0;
+    }
+
+    /**
+     * 処理位置からファイルの末尾まで（last でなければ最後の行の区切りまで）を処理して出力へ追記する。
+     *
+     * <p>書きかけの行は buf に残し、次の呼び出しでは続きだけを読み足す（長い行が少しずつ追記されても、読み直さない）。
+     *
+     * @param last true: 末尾の書きかけの行も処理する（ローテーション済みの旧ファイルを読み切る場合）
+     */
+    private boolean drain(Utf8LineMasker masker, MaskContext ctx, boolean last) throws IOException {
+      boolean progressed = false;
+
+      while (true) {
+        int n = 0;
+        long available = in.size() - offset - filled;
+        if (available > 0) {
+          if (filled == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+          }
+          int want = (int) Math.min(available, buf.length - filled);
+          n = Math.max(0, in.read(ByteBuffer.wrap(buf, filled, want), offset + filled));
+          filled += n;
+        }
+
+        int end = lastLineEnd(buf, scanned, filled);
+        boolean atEof = offset + filled >= in.size();
+        if (end < 0) {
+          // 末尾の \r は \r\n の途中かもしれないため、次は \r から探す
+          scanned = Math.max(0, filled - 1);
+          if (atEof && last && filled > 0) {
+            end = filled;
+          } else if (atEof || n == 0) {
+            // 書きかけの行：区切りが追記されるまで待つ
+            return progressed;
+          } else {
+            continue;
+          }
+        }
+
+        writeMasked(masker, ctx, end, last && atEof && end == filled);
+        offset += end;
+        progressed = true;
+
+        System.arraycopy(buf, end, buf, 0, filled - end);
+        filled -= end;
+        scanned = 0;
+        if (atEof && filled == 0) {
+          return true;
+        }
+      }
+    }
+
+    /** [0, end) を行ごとにマスキングして出力へ追記する。 */
+    private void writeMasked(Utf8LineMasker masker, MaskContext ctx, int end, boolean terminate)
+        throws IOException {
+
+      if (out == null) {
+        if (outFile.getParent() != null) {
+          Files.createDirectories(outFile.getParent());
+        }
+        out =
+            FileChannel.open(
+                outFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+      }
+
+      ctx.resetCounts();
+      ByteBuffer pending = ByteBuffer.allocate(end + LINE_SEPARATOR_BYTES.length + 64);
+      ByteLineReader reader = ByteLineReader.over(buf, 0, end);
+
+      ByteSequence line;
+      // 出力が区切りの無い行で終わっているか
+      boolean unterminated = false;
+      while (true) {
+        try {
+          line = reader.next();
+        } catch (MalformedInputException e) {
+          // 不正な UTF-8 の行は出力せずに読み飛ばす（マスキングできない内容をそのまま出さない）
+          warnings.accept(
+              "不正な UTF-8 の行を読み飛ばしました: "
+                  + ref.file()
+                  + " (offset="
+                  + (offset + reader.lineOffset())
+                  + ")");
+          unterminated = false;
+          continue;
+        }
+        if (line == null) {
+          break;
+        }
+        int eol = reader.terminatorLength();
+        byte[] replaced = masker.maskLine(line, ctx);
+        if (replaced == null) {
+          pending = put(pending, line.array(), line.offset(), line.length() + eol);
+        } else {
+          pending = put(pending, replaced, 0, replaced.length);
+          pending = put(pending, line.array(), line.offset() + line.length(), eol);
+        }
+        unterminated = (eol == 0);
+      }
+      if (terminate && unterminated) {
+        // ローテーション前の最後の行に区切りが無い場合も、次のファイルの行とつながらないようにする
+        pending = put(pending, LINE_SEPARATOR_BYTES, 0, LINE_SEPARATOR_BYTES.length);
+      }
+
+      pending.flip();
+      while (pending.hasRemaining()) {
+        out.write(pending);
+      }
+
+      long[] c = ctx.counts();
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] += c[i];
+      }
+      total += ctx.totalCount();
+      ctx.publishMetrics(end);
+    }
+
+    /** 現在の処理位置をチェックポイントへ反映する。 */
+    void commit() throws IOException {
+      state.offset = offset;
+      state.fileKey = fileKey;
+      if (out != null) {
+        state.outputSize = out.size();
+      }
+    }
+
+    void close() throws IOException {
+      try {
+        if (in != null) {
+          in.close();
+        }
+      } finally {
+        if (out != null) {
+          out.close();
+        }
+      }
+    }
+
+    private static ByteBuffer put(ByteBuffer dst, byte[] src, int from, int len) {
+      if (dst.remaining() < len) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(dst.capacity() * 2, dst.position() + len));
+        dst.flip();
+        grown.put(dst);
+        dst = grown;
+      }
+      return dst.put(src, from, len);
+    }
+
+    /**
+     * [from, length) にある最後の行の区切りの直後の位置（区切りが無ければ -1）。末尾の \r は \r\n
+     * の途中かもしれないため区切りとみなさない。
+     */
+    private static int lastLineEnd(byte[] bytes, int from, int length) {
+      for (int i = length - 1; i >= from; i--) {
+        if (bytes[i] == '\n' || (bytes[i] == '\r' && i < length - 1)) {
+          return i + 1;
+        }
+      }
+      return -1;
+    }
+  }
+}
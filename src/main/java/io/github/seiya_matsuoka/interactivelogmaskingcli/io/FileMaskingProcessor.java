@@ -1,19 +1,39 @@
 package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
 
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.ByteSequence;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskContext;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngine;
-import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngineResult;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskRule;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.RuleTimer;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.FileReportListener;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskRunReport;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskedFileReport;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.util.PathUtil;
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * 入力（単一ファイル/ディレクトリ）を処理し、out 配下へマスク済みファイルを出力する。
@@ -27,6 +47,12 @@ import java.util.*;
  */
 public class FileMaskingProcessor {
 
+  /** バイト単位の処理で書き出す改行（{@link BufferedWriter#newLine()} と同じ）。 */
+  private static final byte[] LINE_SEPARATOR_BYTES =
+      System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+  private static final int BYTE_OUTPUT_BUFFER_SIZE = 64 * 1024;
+
   private final InputFileCollector collector;
   private final MaskEngine engine;
 
@@ -75,34 +101,450 @@ public class FileMaskingProcessor {
       Path inputPath, Path outputBase, List<MaskRule> rules, String suffix, boolean dryRun)
       throws IOException {
 
-    Objects.requireNonNull(inputPath, "inputPath");
-    Objects.requireNonNull(outputBase, "outputBase");
     Objects.requireNonNull(rules, "rules");
+    return process(
+        ProcessingRequest.of(inputPath, outputBase, CompiledRuleSet.of(rules), suffix, dryRun));
+  }
+
+  /**
+   * 依頼に従って入力を処理し、out 配下にマスク済みファイルを生成する。
+   *
+   * <p>ルールセット（プレフィルタ含む）は実行全体で1回だけ構築し、全ファイル・全行で共有する。
+   *
+   * <p>{@link ProcessingOptions#getParallelism()} が 2 以上の場合は、複数ファイルをワーカースレッドで同時に処理する。
+   * また分割しきい値以上の大きなファイルは、行境界で分割して全ワーカーで処理する（{@link ChunkedFileMasker}）。
+   *
+   * <ul>
+   *   <li>作業領域と件数の集計はワーカーごとに持ち、ロック無しで加算して最後に合算する。
+   *   <li>ファイル別の結果は入力順（{@link InputFileCollector} のソート順）の位置に格納するため、 逐次処理と同じ順序になる。
+   *   <li>zip / tar の入力は {@link ArchiveMasker} でエントリごとに処理し、エントリごとの結果をアーカイブの位置に並べる。
+   * </ul>
+   *
+   * <p>各入力ファイルの処理が終わるたびに、その結果を {@link ProcessingRequest#listener()} へ渡す（レポートを書き足しながら実行する場合など）。
+   * 並列処理・列挙しながらの処理でも、入力順（{@link InputFileCollector#ORDER}）に並べ直してから渡す
+   * （先に終わったファイルの結果は、それより前のファイルが終わるまで待たせる）。 また入力を見つけるたび・処理が終わるたびに
+   * {@link ProcessingRequest#progress()} へ加算する（別スレッドから読んでよい）。
+   *
+   * <p>{@link ProcessingRequest#keepFileReports()} が false の場合は、ファイル別の結果を listener へ渡すだけで保持せず、
+   * 戻り値のレポートの files は空になる（ファイル数・スキップしたファイル・合計件数は載る）。
+   *
+   * @param request 処理の依頼
+   * @return 実行結果レポート（ファイル別結果 + 集計）
+   * @throws IOException 入出力エラー（listener が投げたものを含む）
+   */
+  public MaskRunReport process(ProcessingRequest request) throws IOException {
 
-    // 1) 入力パスから、処理対象ファイルを収集（単一 or ディレクトリ再帰）
-    List<InputFileRef> inputs = collector.collect(inputPath);
+    Objects.requireNonNull(request, "request");
+    Path inputPath = request.inputPath();
+    Path outputBase = request.outputBase();
+    CompiledRuleSet ruleSet = request.ruleSet();
+    boolean dryRun = request.dryRun();
+    ProcessingOptions options = request.options();
 
-    // 2) ファイルごとのレポートと集計を構築
-    List<MaskedFileReport> fileReports = new ArrayList<>();
-    Map<String, Long> totalPerRule = new HashMap<>();
-    long totalCount = 0;
+    // 計測する場合は、この実行専用のタイマーを持つルールセットで処理する（ルール・プレフィルタは共有）
+    if (options.isCollectMetrics()) {
+      ruleSet = ruleSet.withTimer();
+      request = request.withRuleSet(ruleSet);
+    }
+
+    // 差分実行：前回から変わっていないファイルは処理を省き、前回の件数を使う
+    RunManifest manifest =
+        (options.isIncremental() && !dryRun)
+            ? RunManifest.load(outputBase, RunManifest.fingerprint(ruleSet.fingerprint(), options))
+            : null;
+
+    // 1) 入力を列挙しながら、見つかったファイルから処理する（単一 or ディレクトリ再帰）
+    // inputs と reports は見つかった順（同じ位置が同じファイル。アーカイブはエントリごとの結果）。並べ替えは最後に行う
+    List<InputFileRef> inputs = new ArrayList<>();
+    List<List<MaskedFileReport>> reports;
+    Tally totals;
+
+    // ファイル数・スキップしたファイル・前回の結果の件数は常に集計し、ファイル別の結果は保持する場合だけ reports に残す
+    Completion done = new Completion(request);
+
+    // 並列処理では大きいファイルから投入し、最後に大きなファイルだけが残る状態を避ける（レポートの順序は変わらない）
+    Comparator<InputFileRef> dispatchOrder =
+        (options.getParallelism() > 1 && options.isLargestFirst())
+            ? InputFileCollector.LARGEST_FIRST
+            : InputFileCollector.ORDER;
+
+    // gzip 出力の圧縮スレッドは、ファイルのワーカーと同じく実行全体で1つ作って共有する
+    try (InputFileSource source =
+            collector.open(
+                inputPath, options.inputFilter(), options.getDiscoveryThreads(), dispatchOrder);
+        GzipCompressor compressor = GzipCompressor.forRun(options)) {
+
+      // 全件が先に分かっていれば、listener へ渡す順序をここで決める（列挙しながらの場合は列挙が終わってから）
+      done.expect(source.listed());
+
+      // 2) 各ファイルを処理：入力 →（構造維持+suffix）→ out へ書き出し（dryRunなら出力せず集計のみ）
+      // 件数はルール位置ごとの long[] で集計し、Map への変換はレポート作成時にだけ行う
+      if (options.getParallelism() <= 1) {
+        reports = new ArrayList<>();
+        totals = processSerial(request, manifest, compressor, done, source, inputs, reports);
+      } else {
+        ExecutorService pool =
+            WorkerThreads.newFixedPool("mask-worker", options.getParallelism());
+        try {
+          List<Future<List<MaskedFileReport>>> futures = new ArrayList<>();
+          totals =
+              processParallel(
+                  request, manifest, compressor, done, source, pool, inputs, futures);
+          reports = new ArrayList<>(futures.size());
+          for (Future<List<MaskedFileReport>> f : futures) {
+            reports.add(f.get());
+          }
+        } catch (InterruptedException | ExecutionException e) {
+          // processParallel で完了を確認済みのため、ここには来ない
+          throw new IllegalStateException(e);
+        } finally {
+          pool.shutdownNow();
+        }
+      }
+    }
 
-    // 3) 各ファイルを処理：入力 →（構造維持+suffix）→ out へ書き出し（dryRunなら出力せず集計のみ）
-    for (InputFileRef in : inputs) {
-      // out 配下の出力パス（予定パス）を生成（relative により構造維持）
-      Path outFile = PathUtil.toOutputPath(outputBase, in.relative(), suffix);
+    // 3) 前回の結果を使ったファイルの件数も合計に加え、ファイル別の結果は入力順（relative の文字列順）に並べ直す
+    Map<String, Long> totalPerRule = new HashMap<>(ruleSet.toCountMap(totals.perRule));
+    done.cachedPerRule.forEach((id, c) -> totalPerRule.merge(id, c, Long::sum));
+    long totalCount = totals.total + done.cachedTotal;
 
-      // 実体ファイルを処理して outFile へ出力（dryRunなら出力はしない）
-      MaskedFileReport r = processSingleFile(in.file(), outFile, rules, dryRun);
-      fileReports.add(r);
+    List<MaskedFileReport> fileReports = new ArrayList<>();
+    List<MaskedFileReport> skipped;
+    if (request.keepFileReports()) {
+      Integer[] order = new Integer[inputs.size()];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(
+          order, (a, b) -> InputFileCollector.ORDER.compare(inputs.get(a), inputs.get(b)));
+      for (int i : order) {
+        fileReports.addAll(reports.get(i));
+      }
+      skipped = fileReports.stream().filter(f -> f.isSkipped()).toList();
+    } else {
+      skipped = new ArrayList<>(done.skipped);
+      skipped.sort(Comparator.comparing(f -> f.inputFile().toString()));
+    }
 
-      // ルール別の件数を全体集計へ加算
-      mergeCounts(totalPerRule, r.countsPerRule());
-      totalCount += r.totalCount();
+    // 処理した結果は各ファイルの処理が終わった時点で記録済み。今回の入力に無いファイルの記録を消して保存する
+    if (manifest != null) {
+      manifest.retainOnly(inputs);
+      manifest.save();
     }
 
+    RuleTimer timer = ruleSet.timer();
     return new MaskRunReport(
-        inputPath, outputBase, List.copyOf(fileReports), Map.copyOf(totalPerRule), totalCount);
+        inputPath,
+        outputBase,
+        Collections.unmodifiableList(fileReports),
+        done.files,
+        done.cached,
+        List.copyOf(skipped),
+        Map.copyOf(totalPerRule),
+        totalCount,
+        (timer != null) ? timer.toNanosMap() : Map.of());
+  }
+
+  /** 呼び出しスレッドで1ファイルずつ処理する。 */
+  private Tally processSerial(
+      ProcessingRequest request,
+      RunManifest manifest,
+      GzipCompressor compressor,
+      Completion done,
+      InputFileSource source,
+      List<InputFileRef> inputs,
+      List<List<MaskedFileReport>> reports)
+      throws IOException {
+
+    CompiledRuleSet ruleSet = request.ruleSet();
+    boolean dryRun = request.dryRun();
+    ProcessingOptions options = request.options();
+    ProgressTracker progress = request.progress();
+
+    Tally totals = new Tally(ruleSet);
+
+    // 作業領域（Matcher / StringBuilder / 件数）は全ファイルで使い回す
+    MaskContext ctx = new MaskContext(ruleSet);
+    MaskContext archiveSum = new MaskContext(ruleSet);
+    ArchiveMasker archives = new ArchiveMasker(engine, options, compressor, dryRun);
+
+    // パイプライン処理のスレッドも全ファイルで使い回す（長い行を区切って処理する場合は使わない）
+    PipelinedFileMasker pipeline =
+        (options.getPipelineWorkers() > 0 && options.getLongLineThresholdChars() == 0)
+            ? new PipelinedFileMasker(engine, ruleSet, options.getPipelineWorkers())
+            : null;
+
+    try {
+      InputFileRef in;
+      while ((in = source.next()) != null) {
+        inputs.add(in);
+        long size = in.sizeOrRead();
+        progress.discovered(size);
+
+        // out 配下の出力パス（予定パス）を生成（relative により構造維持。gzip で出力する場合は ".gz" を付ける）
+        boolean gzipIn = GzipFiles.isGzip(in.file());
+        boolean gzip = gzipIn || options.getOutputCompression().compress(gzipIn);
+        Path outFile = outputPath(in, request, gzipIn);
+
+        RunManifest.Snapshot state = (manifest != null) ? manifest.snapshot(in) : null;
+        MaskedFileReport cached = (state != null) ? manifest.lookup(state, outFile) : null;
+        if (cached != null) {
+          reports.add(done.completed(in, size, List.of(cached)));
+          continue;
+        }
+
+        // アーカイブはエントリごとに処理し、同じ構造のアーカイブを出力する
+        ArchiveMasker.Format archive =
+            options.isExpandArchives() ? ArchiveMasker.detect(in.file(), gzipIn) : null;
+        if (archive != null) {
+          boolean gzipOut = options.getOutputCompression().compress(gzipIn);
+          List<MaskedFileReport> entries =
+              archives.process(in.file(), archive, gzipIn, outFile, gzipOut, ctx, archiveSum);
+          reports.add(done.completed(in, size, entries));
+          totals.add(archiveSum);
+          continue;
+        }
+
+        MaskedFileReport skipped = skipIfBinary(in.file(), outFile, options);
+        if (skipped != null) {
+          reports.add(done.completed(in, size, List.of(skipped)));
+          continue;
+        }
+
+        // 実体ファイルを処理して outFile へ出力（dryRunなら出力はしない）
+        // 差分実行では、処理で読んだバイト列から内容のハッシュを求めて記録する（読み直さない）
+        ContentHash hash = (state != null) ? ContentHash.sha256() : null;
+        MaskedFileReport r;
+        if (pipeline != null && !gzip && !needsSingleFilePath(options, ruleSet, dryRun)) {
+          FileTiming timing = FileTiming.start();
+          pipeline.process(in.file(), outFile, ctx, dryRun, options, hash);
+          r = timing.finish(toFileReport(in.file(), outFile, ctx), in.file(), ctx, options);
+        } else {
+          r = processSingleFile(in.file(), outFile, ctx, dryRun, options, hash, compressor);
+        }
+        if (state != null) {
+          manifest.record(state, r, hash.toHex());
+        }
+        reports.add(done.completed(in, size, List.of(r)));
+
+        // ルール別の件数を全体集計へ加算
+        totals.add(ctx);
+      }
+      progress.discoveryFinished();
+      done.discovered(inputs);
+    } finally {
+      if (pipeline != null) {
+        pipeline.close();
+      }
+    }
+    return totals;
+  }
+
+  /**
+   * ワーカースレッドで複数ファイルを同時に処理する。
+   *
+   * <p>分割対象（{@link ProcessingOptions#shouldSplit(long)}）のファイルは、分割用のスレッド（1本）へタスクとして投入し、
+   * そこから分割して全ワーカーで処理する（呼び出しスレッドは列挙を続ける）。 それ以外はファイル単位のタスクとして投入する。 futures には inputs と同じ位置に各ファイルの結果が入る（戻る時点ですべて完了済み）。
+   */
+  private Tally processParallel(
+      ProcessingRequest request,
+      RunManifest manifest,
+      GzipCompressor compressor,
+      Completion done,
+      InputFileSource source,
+      ExecutorService pool,
+      List<InputFileRef> inputs,
+      List<Future<List<MaskedFileReport>>> futures)
+      throws IOException {
+
+    CompiledRuleSet ruleSet = request.ruleSet();
+    boolean dryRun = request.dryRun();
+    ProcessingOptions options = request.options();
+    ProgressTracker progress = request.progress();
+
+    Tally totals = new Tally(ruleSet);
+
+    // ワーカーごとの作業領域と集計（スレッド内ではロック無しで加算し、全タスク完了後に合算する）
+    List<Worker> created = Collections.synchronizedList(new ArrayList<>());
+    ThreadLocal<Worker> local =
+        ThreadLocal.withInitial(
+            () -> {
+              Worker w = new Worker(ruleSet);
+              created.add(w);
+              return w;
+            });
+
+    // 分割するファイルは、分割用のスレッドで1ファイルずつ処理する（作業領域と集計はそのスレッド専用）
+    ExecutorService splitter = null;
+    ChunkedFileMasker chunked = null;
+    MaskContext splitCtx = null;
+    Tally splitTally = new Tally(ruleSet);
+    ArchiveMasker archives = new ArchiveMasker(engine, options, compressor, dryRun);
+
+    boolean completed = false;
+    try {
+      InputFileRef in;
+      while ((in = source.next()) != null) {
+        inputs.add(in);
+        long size = in.sizeOrRead();
+        progress.discovered(size);
+        boolean gzipIn = GzipFiles.isGzip(in.file());
+        boolean gzip = gzipIn || options.getOutputCompression().compress(gzipIn);
+        Path outFile = outputPath(in, request, gzipIn);
+
+        RunManifest.Snapshot state = (manifest != null) ? manifest.snapshot(in) : null;
+        MaskedFileReport cached = (state != null) ? manifest.lookup(state, outFile) : null;
+        if (cached != null) {
+          futures.add(
+              CompletableFuture.completedFuture(
+                  done.completed(in, size, List.of(cached))));
+          continue;
+        }
+
+        // アーカイブはエントリを順に読む必要があるため、1アーカイブを1タスクとして処理する
+        ArchiveMasker.Format archive =
+            options.isExpandArchives() ? ArchiveMasker.detect(in.file(), gzipIn) : null;
+        if (archive != null) {
+          InputFileRef file = in;
+          boolean gzipOut = options.getOutputCompression().compress(gzipIn);
+          futures.add(
+              pool.submit(
+                  () -> {
+                    Worker w = local.get();
+                    List<MaskedFileReport> r =
+                        archives.process(
+                            file.file(), archive, gzipIn, outFile, gzipOut, w.ctx, w.archiveSum);
+                    w.tally.add(w.archiveSum);
+                    return done.completed(file, size, r);
+                  }));
+          continue;
+        }
+
+        MaskedFileReport skipped = skipIfBinary(in.file(), outFile, options);
+        if (skipped != null) {
+          futures.add(
+              CompletableFuture.completedFuture(
+                  done.completed(in, size, List.of(skipped))));
+          continue;
+        }
+
+        // 大きなファイルは、行境界で分割して全ワーカーで処理する（gzip はバイト位置で分割できないため対象外）
+        if (!gzip && options.shouldSplit(size) && !needsSingleFilePath(options, ruleSet, dryRun)) {
+          if (splitter == null) {
+            // ワーカーはチャンクの完了を待たないため、分割用のスレッドをワーカーと分けておけば詰まらない
+            splitter = WorkerThreads.newFixedPool("mask-splitter", 1);
+            chunked =
+                new ChunkedFileMasker(
+                    engine, ruleSet, pool, options.getParallelism(), options.getChunkSizeBytes());
+            splitCtx = new MaskContext(ruleSet);
+          }
+          InputFileRef file = in;
+          ChunkedFileMasker c = chunked;
+          MaskContext sc = splitCtx;
+          futures.add(
+              splitter.submit(
+                  () -> {
+                    ContentHash hash = (state != null) ? ContentHash.sha256() : null;
+                    FileTiming timing = FileTiming.start();
+                    c.process(file.file(), outFile, sc, dryRun, hash);
+                    MaskedFileReport r =
+                        timing.finish(
+                            toFileReport(file.file(), outFile, sc), file.file(), sc, options);
+                    splitTally.add(sc);
+                    if (state != null) {
+                      manifest.record(state, r, hash.toHex());
+                    }
+                    return done.completed(file, size, List.of(r));
+                  }));
+          continue;
+        }
+
+        InputFileRef file = in;
+        futures.add(
+            pool.submit(
+                () -> {
+                  Worker w = local.get();
+                  ContentHash hash = (state != null) ? ContentHash.sha256() : null;
+                  MaskedFileReport r =
+                      processSingleFile(
+                          file.file(), outFile, w.ctx, dryRun, options, hash, compressor);
+                  w.tally.add(w.ctx);
+                  if (state != null) {
+                    manifest.record(state, r, hash.toHex());
+                  }
+                  return done.completed(file, size, List.of(r));
+                }));
+      }
+      progress.discoveryFinished();
+      done.discovered(inputs);
+
+      // 1件でも失敗したら、その例外を投げる（残りのタスクは finally で打ち切る）
+      for (Future<?> f : futures) {
+        WorkerThreads.await(f);
+      }
+      completed = true;
+    } finally {
+      // 失敗時は残りのタスクを打ち切る（プール自体は呼び出し側で停止する）
+      if (!completed) {
+        for (Future<?> f : futures) {
+          f.cancel(true);
+        }
+      }
+      if (splitter != null) {
+        splitter.shutdownNow();
+      }
+    }
+
+    for (Worker w : created) {
+      totals.addAll(w.tally);
+    }
+    totals.addAll(splitTally);
+    return totals;
+  }
+
+  /**
+   * 出力パスを生成する（relative により構造維持）。
+   *
+   * <p>gzip で入出力する場合は、出力するかどうかに合わせて ".gz" を付ける/外す（gzip でないファイルの名前は変えない）。
+   */
+  private static Path outputPath(InputFileRef in, ProcessingRequest request, boolean gzipIn) {
+    Path outFile = PathUtil.toOutputPath(request.outputBase(), in.relative(), request.suffix());
+    boolean gzipOut = request.options().getOutputCompression().compress(gzipIn);
+    return (gzipIn || gzipOut) ? PathUtil.withGzipExtension(outFile, gzipOut) : outFile;
+  }
+
+  /**
+   * 分割処理・パイプライン処理を使わず、ファイル単位で処理する必要があるか（gzip でないファイルについて判定する）。
+   *
+   * <p>置換の無い範囲の転送（改行を入力のまま残す）とバイト単位の処理は {@link #maskSingleFile} でのみ行うため、
+   * これらが有効になるファイルを分割処理・パイプライン処理へ回すと、改行が OS の改行に書き換わる・バイト単位の処理が効かなくなる。
+   */
+  private static boolean needsSingleFilePath(
+      ProcessingOptions options, CompiledRuleSet ruleSet, boolean dryRun) {
+    return (options.isPassthroughUnchanged() && !dryRun)
+        || (options.isByteLevelMasking() && ruleSet.isAsciiSafe());
+  }
+
+  /**
+   * バイナリと判定したファイルを、{@link ProcessingOptions#getBinaryPolicy()} に従って扱う。
+   *
+   * @return スキップした場合はその結果。処理を続ける場合は null
+   * @throws IOException 読み込みに失敗した場合、または FAIL でバイナリと判定した場合
+   */
+  private static MaskedFileReport skipIfBinary(
+      Path inputFile, Path outputFile, ProcessingOptions options) throws IOException {
+
+    if (options.getBinaryPolicy() == BinaryPolicy.PROCESS) {
+      return null;
+    }
+    String reason = BinarySniffer.detect(inputFile);
+    if (reason == null) {
+      return null;
+    }
+    if (options.getBinaryPolicy() == BinaryPolicy.FAIL) {
+      throw new IOException("バイナリファイルのため処理できません（" + reason + "）: " + inputFile);
+    }
+    return MaskedFileReport.skipped(inputFile, outputFile, reason);
   }
 
   /**
@@ -114,32 +556,78 @@ public class FileMaskingProcessor {
    *
    * @param inputFile 入力ファイル
    * @param outputFile 出力ファイル（必要に応じて親ディレクトリを作成）
-   * @param rules コンパイル済みルール
+   * @param ctx 作業領域（件数はこのファイル分にリセットしてから集計する）
    * @param dryRun true: 件数集計のみ（出力ファイルは生成しない）
-   * @return ファイル単位の処理結果
+   * @param options 実行オプション（読み込み方法の選択に使う）
+   * @param hash 読んだ入力から求める内容のハッシュ（null なら求めない）
+   * @param compressor gzip 出力の圧縮スレッド
+   * @return ファイル単位の処理結果（計測する場合は処理量と処理時間を含む）
    * @throws IOException 入出力エラー
    */
   private MaskedFileReport processSingleFile(
-      Path inputFile, Path outputFile, List<MaskRule> rules, boolean dryRun) throws IOException {
+      Path inputFile,
+      Path outputFile,
+      MaskContext ctx,
+      boolean dryRun,
+      ProcessingOptions options,
+      ContentHash hash,
+      GzipCompressor compressor)
+      throws IOException {
+    FileTiming timing = FileTiming.start();
+    MaskedFileReport report =
+        maskSingleFile(inputFile, outputFile, ctx, dryRun, options, hash, compressor);
+    return timing.finish(report, inputFile, ctx, options);
+  }
+
+  /** {@link #processSingleFile} の本体（読み込み・出力の方法を選んで1ファイルを処理する）。 */
+  private MaskedFileReport maskSingleFile(
+      Path inputFile,
+      Path outputFile,
+      MaskContext ctx,
+      boolean dryRun,
+      ProcessingOptions options,
+      ContentHash hash,
+      GzipCompressor compressor)
+      throws IOException {
+
+    // 件数はファイル単位で数える（作業領域自体は使い回す）
+    ctx.resetCounts();
+
+    boolean byteLevel = options.isByteLevelMasking() && ctx.ruleSet().isAsciiSafe();
+
+    // gzip の入力は展開しながら読み、gzip で出力する場合は圧縮しながら書く
+    boolean gzipIn = GzipFiles.isGzip(inputFile);
+    boolean gzipOut = options.getOutputCompression().compress(gzipIn);
+
+    // 長い行は区切って処理する（行全体を1つの文字列にしない）
+    if (options.getLongLineThresholdChars() > 0) {
+      return processLongLines(
+          inputFile, outputFile, ctx, dryRun, options, gzipIn, gzipOut, hash, compressor);
+    }
+
+    // 置換の無い範囲は入力からそのまま転送する（改行も入力のまま残る）
+    if (options.isPassthroughUnchanged() && !dryRun && !gzipIn && !gzipOut) {
+      new PassthroughFileMasker(engine).process(inputFile, outputFile, ctx, byteLevel, hash);
+      return toFileReport(inputFile, outputFile, ctx);
+    }
 
-    Map<String, Long> countsPerRule = new HashMap<>();
-    long totalCount = 0;
+    // ルールがすべて ASCII 安全なら、デコード/エンコードを省いてバイト列のまま処理する
+    if (byteLevel) {
+      return processSingleFileBytes(
+          inputFile, outputFile, ctx, dryRun, options, gzipIn, gzipOut, hash, compressor);
+    }
 
     // dryRun の場合はファイル/ディレクトリ作成をしない
     if (dryRun) {
-      try (BufferedReader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8)) {
+      try (LineReader reader = LineReader.open(inputFile, options, gzipIn, hash)) {
         String line;
         while ((line = reader.readLine()) != null) {
-          // 件数精度を保つため、MaskEngine 側の dryRun=true を使う
-          MaskEngineResult r = engine.maskText(line, rules, true);
-
-          // 置換件数をファイル単位で集計
-          mergeCounts(countsPerRule, r.countsPerRule());
-          totalCount += r.totalCount();
+          // 件数精度を保つため、MaskEngine 側の dryRun=true を使う（件数は ctx に加算される）
+          engine.mask(line, ctx, true);
         }
       }
       // outputFile は予定パスとしてレポートに載せる（実ファイルは作らない）
-      return new MaskedFileReport(inputFile, outputFile, Map.copyOf(countsPerRule), totalCount);
+      return toFileReport(inputFile, outputFile, ctx);
     }
 
     // 本実行：出力先ディレクトリを事前に作成（構造維持でネストする可能性がある）
@@ -147,42 +635,251 @@ public class FileMaskingProcessor {
       Files.createDirectories(outputFile.getParent());
     }
 
-    // 入力を UTF-8 で読み、出力も UTF-8 で書き出す
+    // 入力を UTF-8 で読み（サイズによってはメモリマップ）、出力も UTF-8 で書き出す
     // 既存ファイルがあれば上書き（TRUNCATE_EXISTING）
-    try (BufferedReader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8);
+    try (LineReader reader = LineReader.open(inputFile, options, gzipIn, hash);
         BufferedWriter writer =
-            Files.newBufferedWriter(
-                outputFile,
-                StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING)) {
+            gzipOut
+                ? new BufferedWriter(
+                    new OutputStreamWriter(
+                        compressor.open(outputFile, true),
+                        StandardCharsets.UTF_8.newEncoder()))
+                : Files.newBufferedWriter(
+                    outputFile,
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
 
       String line;
       while ((line = reader.readLine()) != null) {
-        MaskEngineResult r = engine.maskText(line, rules, false);
-
-        // 置換件数をファイル単位で集計
-        mergeCounts(countsPerRule, r.countsPerRule());
-        totalCount += r.totalCount();
+        // 置換件数は ctx にルール位置ごとに加算される
+        String masked = engine.mask(line, ctx, false);
 
         // 置換後の行を書き込み、改行を付与
-        writer.write(r.outputText());
+        writer.write(masked);
         writer.newLine();
       }
     }
 
-    return new MaskedFileReport(inputFile, outputFile, Map.copyOf(countsPerRule), totalCount);
+    return toFileReport(inputFile, outputFile, ctx);
+  }
+
+  /**
+   * 1ファイルを、長い行は区切りながら処理する（{@link LongLineMasker}）。
+   *
+   * <p>行の区切り・改行の出力・不正な UTF-8 の扱いは {@link #processSingleFile} と同じため、出力ファイルは同一になる。
+   */
+  private MaskedFileReport processLongLines(
+      Path inputFile,
+      Path outputFile,
+      MaskContext ctx,
+      boolean dryRun,
+      ProcessingOptions options,
+      boolean gzipIn,
+      boolean gzipOut,
+      ContentHash hash,
+      GzipCompressor compressor)
+      throws IOException {
+
+    LongLineMasker masker = new LongLineMasker(engine, options.getLongLineThresholdChars());
+
+    if (!dryRun && outputFile.getParent() != null) {
+      Files.createDirectories(outputFile.getParent());
+    }
+
+    // 不正な UTF-8 は従来の読み込みと同様にエラーにする（newDecoder は REPORT）
+    try (Reader reader =
+            new InputStreamReader(
+                GzipFiles.newInputStream(inputFile, gzipIn, hash),
+                StandardCharsets.UTF_8.newDecoder());
+        Writer writer =
+            dryRun
+                ? null
+                : new BufferedWriter(
+                    new OutputStreamWriter(
+                        compressor.open(outputFile, gzipOut),
+                        StandardCharsets.UTF_8.newEncoder()))) {
+      masker.process(reader, writer, ctx, dryRun);
+    }
+
+    return toFileReport(inputFile, outputFile, ctx);
+  }
+
+  /**
+   * 1ファイルを UTF-8 のバイト列のまま処理する（{@link MaskEngine#maskBytes}）。
+   *
+   * <p>行の区切り・改行の出力・不正な UTF-8 の扱いは文字列での処理と同じため、出力ファイルは同一になる。
+   */
+  private MaskedFileReport processSingleFileBytes(
+      Path inputFile,
+      Path outputFile,
+      MaskContext ctx,
+      boolean dryRun,
+      ProcessingOptions options,
+      boolean gzipIn,
+      boolean gzipOut,
+      ContentHash hash,
+      GzipCompressor compressor)
+      throws IOException {
+
+    try (ByteLineReader reader =
+        new ByteLineReader(GzipFiles.newInputStream(inputFile, gzipIn, hash))) {
+      ByteSequence line;
+
+      if (dryRun) {
+        while ((line = reader.next()) != null) {
+          engine.maskBytes(line, ctx, true);
+        }
+        return toFileReport(inputFile, outputFile, ctx);
+      }
+
+      if (outputFile.getParent() != null) {
+        Files.createDirectories(outputFile.getParent());
+      }
+      try (OutputStream out =
+          new BufferedOutputStream(
+              compressor.open(outputFile, gzipOut), BYTE_OUTPUT_BUFFER_SIZE)) {
+        while ((line = reader.next()) != null) {
+          ByteSequence masked = engine.maskBytes(line, ctx, false);
+          out.write(masked.array(), masked.offset(), masked.length());
+          out.write(LINE_SEPARATOR_BYTES);
+        }
+      }
+    }
+
+    return toFileReport(inputFile, outputFile, ctx);
   }
 
   /**
-   * ルール別件数のMapを dest に加算してマージする。
+   * 処理を終えた入力ファイルの結果の受け取り（進捗への加算・listener への通知と、レポート用の集計）。
+   *
+   * <p>ファイル数・処理を省いたファイル数・スキップしたファイル・前回の結果を使ったファイルの件数は常に集計する。ファイル別の結果そのものは
+   * {@link ProcessingRequest#keepFileReports()} が true の場合だけ返す（false なら空のリストを返し、保持しない）。
+   * 複数スレッドから呼んでよい（集計はすべてのファイルの処理が終わってから読む）。
    *
-   * <p>countsPerRule は「ルールID -> 件数」。同一IDがあれば加算する。
+   * <p>listener へは入力順（{@link InputFileCollector#ORDER}）に渡す。順序が決まるまで（列挙しながらの場合は列挙が終わるまで）と、
+   * 前のファイルが終わっていない間は、終わったファイルの結果を待たせておく。
    */
-  private static void mergeCounts(Map<String, Long> dest, Map<String, Long> src) {
-    if (src == null) return;
-    for (var e : src.entrySet()) {
-      dest.merge(e.getKey(), e.getValue(), Long::sum);
+  private static final class Completion {
+    final FileReportListener listener;
+    final ProgressTracker progress;
+    final boolean keep;
+    final Map<String, Long> cachedPerRule = new HashMap<>();
+    final List<MaskedFileReport> skipped = new ArrayList<>();
+    final Map<InputFileRef, List<MaskedFileReport>> waiting = new HashMap<>();
+    List<InputFileRef> order;
+    int next;
+    long cachedTotal;
+    int files;
+    int cached;
+
+    Completion(ProcessingRequest request) {
+      this.listener = request.listener();
+      this.progress = request.progress();
+      this.keep = request.keepFileReports();
+    }
+
+    /** listener へ渡す順序（ORDER の順の全件）を決め、待たせていた結果を渡せるところまで渡す。null なら何もしない。 */
+    synchronized void expect(List<InputFileRef> sorted) throws IOException {
+      if (sorted == null || order != null) {
+        return;
+      }
+      order = sorted;
+      deliver();
+    }
+
+    /** 列挙が終わった時点で、まだ順序が決まっていなければ見つかった入力を ORDER で並べて決める。 */
+    void discovered(List<InputFileRef> inputs) throws IOException {
+      List<InputFileRef> sorted = new ArrayList<>(inputs);
+      sorted.sort(InputFileCollector.ORDER);
+      expect(sorted);
+    }
+
+    /** 1入力ファイル分の結果を進捗に加算して（入力順で）listener へ渡し、保持する場合はそのまま返す。 */
+    List<MaskedFileReport> completed(InputFileRef in, long size, List<MaskedFileReport> reports)
+        throws IOException {
+      long hits = 0;
+      for (MaskedFileReport r : reports) {
+        hits += r.totalCount();
+      }
+      progress.completed(size, hits);
+
+      synchronized (this) {
+        waiting.put(in, reports);
+        deliver();
+        for (MaskedFileReport r : reports) {
+          files++;
+          if (r.cached()) {
+            cached++;
+            r.countsPerRule().forEach((id, c) -> cachedPerRule.merge(id, c, Long::sum));
+            cachedTotal += r.totalCount();
+          }
+          if (r.isSkipped()) {
+            skipped.add(r);
+          }
+        }
+      }
+      return keep ? reports : List.of();
+    }
+
+    /** 入力順で次のファイルの結果が揃っている間、listener へ渡す。 */
+    private void deliver() throws IOException {
+      if (order == null) {
+        return;
+      }
+      while (next < order.size()) {
+        List<MaskedFileReport> reports = waiting.remove(order.get(next));
+        if (reports == null) {
+          return;
+        }
+        next++;
+        listener.completed(reports);
+      }
+    }
+  }
+
+  /** 作業領域に集計したファイル単位の件数から、レポートを作成する（ここで初めて Map に変換する）。 */
+  private static MaskedFileReport toFileReport(Path inputFile, Path outputFile, MaskContext ctx) {
+    return new MaskedFileReport(
+        inputFile, outputFile, ctx.ruleSet().toCountMap(ctx.counts()), ctx.totalCount());
+  }
+
+  /** ルール位置ごとの件数と合計件数の集計。 */
+  private static final class Tally {
+    final long[] perRule;
+    long total;
+
+    Tally(CompiledRuleSet ruleSet) {
+      this.perRule = ruleSet.newCounters();
+    }
+
+    /** 作業領域に集計した（1ファイル分の）件数を加算する。 */
+    void add(MaskContext ctx) {
+      long[] src = ctx.counts();
+      for (int i = 0; i < src.length; i++) {
+        perRule[i] += src[i];
+      }
+      total += ctx.totalCount();
+    }
+
+    void addAll(Tally other) {
+      for (int i = 0; i < perRule.length; i++) {
+        perRule[i] += other.perRule[i];
+      }
+      total += other.total;
+    }
+  }
+
+  /** ワーカースレッドごとの作業領域と集計。 */
+  private static final class Worker {
+    final MaskContext ctx;
+    final MaskContext archiveSum;
+    final Tally tally;
+
+    Worker(CompiledRuleSet ruleSet) {
+      this.ctx = new MaskContext(ruleSet);
+      this.archiveSum = new MaskContext(ruleSet);
+      this.tally = new Tally(ruleSet);
     }
   }
 }
@@ -0,0 +1,94 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskContext;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.jfr.MaskFileEvent;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.metrics.MaskMetrics;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.FileMetrics;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskedFileReport;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 1入力ファイル（アーカイブの場合は1エントリ）の処理時間の計測。
+ *
+ * <p>処理を始める前に {@link #start()} し、処理が終わったら {@link #finish} で結果に反映する。
+ *
+ * <ul>
+ *   <li>{@link ProcessingOptions#isCollectMetrics()} が true の場合は、結果に {@link FileMetrics} を付ける。
+ *   <li>JFR で記録している場合は {@link MaskFileEvent} を記録する（記録していない場合は何もしない）。
+ *   <li>ルールセットが {@link MaskMetrics} を持つ場合は、行数・バイト数・置換件数と処理時間を加算する。
+ * </ul>
+ */
+final class FileTiming {
+
+  private final long started;
+  private final MaskFileEvent event;
+
+  private FileTiming() {
+    this.event = new MaskFileEvent();
+    this.event.begin();
+    this.started = System.nanoTime();
+  }
+
+  /** 計測を始める。 */
+  static FileTiming start() {
+    return new FileTiming();
+  }
+
+  /**
+   * 計測を終え、ファイル単位の結果に反映する（入力のバイト数はファイルサイズ）。
+   *
+   * @param report ファイル単位の結果
+   * @param inputFile 入力ファイル（計測値を使う場合のみサイズを読む）
+   * @param ctx このファイルの行数・件数を集計した作業領域
+   * @param options 実行オプション
+   * @return 計測値を付けた結果（計測しない場合は report そのもの）
+   * @throws IOException ファイルサイズを読めない場合
+   */
+  MaskedFileReport finish(
+      MaskedFileReport report, Path inputFile, MaskContext ctx, ProcessingOptions options)
+      throws IOException {
+    event.end();
+    if (!options.isCollectMetrics()
+        && ctx.ruleSet().metrics() == null
+        && !event.shouldCommit()) {
+      return report;
+    }
+    return finish(report, Files.size(inputFile), ctx, options);
+  }
+
+  /**
+   * 計測を終え、ファイル単位の結果に反映する。
+   *
+   * @param report ファイル単位の結果
+   * @param bytes 入力のバイト数
+   * @param ctx このファイルの行数・件数を集計した作業領域
+   * @param options 実行オプション
+   * @return 計測値を付けた結果（計測しない場合は report そのもの）
+   */
+  MaskedFileReport finish(
+      MaskedFileReport report, long bytes, MaskContext ctx, ProcessingOptions options) {
+    long nanos = System.nanoTime() - started;
+
+    event.end();
+    if (event.shouldCommit()) {
+      event.path = report.inputFile().toString();
+      event.bytes = bytes;
+      event.lines = ctx.lines();
+      event.hits = ctx.totalCount();
+      event.commit();
+    }
+
+    MaskMetrics metrics = ctx.ruleSet().metrics();
+    if (metrics != null) {
+      ctx.publishMetrics(bytes);
+      metrics.fileCompleted(nanos);
+    }
+
+    if (!options.isCollectMetrics()) {
+      return report;
+    }
+    return report.withMetrics(new FileMetrics(ctx.lines(), bytes, nanos));
+  }
+}
@@ -0,0 +1,28 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 追従モード（{@link FileFollower}）のチェックポイント（JSON）の入出力用DTO。
+ *
+ * <p>ログ本文は含めない（どこまで処理したかの位置だけを記録する）。
+ */
+public class FollowCheckpointJson {
+
+  public int version = 1;
+
+  /** 入力ベースからの相対パス -> 処理位置 */
+  public Map<String, FileStateJson> files = new TreeMap<>();
+
+  public static class FileStateJson {
+    /** 処理済み（出力済み）の入力のバイト位置（常に行の区切りの直後）。 */
+    public long offset;
+
+    /** 入力ファイルの識別子（ローテーションの検出用。取得できない環境では作成日時）。 */
+    public String fileKey;
+
+    /** offset まで処理した時点の出力ファイルのサイズ（再開時にこれより後ろは切り詰める）。 */
+    public long outputSize;
+  }
+}
@@ -0,0 +1,55 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * gzip 出力の圧縮スレッド（1回の実行で1つを作り、すべてのファイル・ワーカーで共有する）。
+ *
+ * <p>{@link ProcessingOptions#getCompressionThreads()} が 2 以上の場合だけスレッドを持つ。 同時に処理するファイルが何件あっても、
+ * 圧縮スレッドは実行全体でこの本数になる（ファイルごとにプールを作らない）。
+ */
+final class GzipCompressor implements AutoCloseable {
+
+  private final ExecutorService pool;
+  private final int threads;
+
+  private GzipCompressor(ExecutorService pool, int threads) {
+    this.pool = pool;
+    this.threads = threads;
+  }
+
+  /**
+   * 実行オプションに合わせて生成する。
+   *
+   * @param options 実行オプション（圧縮スレッド数）
+   * @return 圧縮スレッド（呼び出し側で close すること）
+   */
+  static GzipCompressor forRun(ProcessingOptions options) {
+    int threads = options.getCompressionThreads();
+    return (threads > 1)
+        ? new GzipCompressor(WorkerThreads.newFixedPool("gzip-worker", threads), threads)
+        : new GzipCompressor(null, 1);
+  }
+
+  /**
+   * 出力ファイルを開く（{@link GzipFiles#newOutputStream(Path, boolean, ExecutorService, int)}）。
+   *
+   * @param file 出力ファイル
+   * @param gzip true: gzip で圧縮して書き出す
+   * @return 出力ストリーム（呼び出し側で close すること）
+   * @throws IOException 開けなかった場合
+   */
+  OutputStream open(Path file, boolean gzip) throws IOException {
+    return GzipFiles.newOutputStream(file, gzip, pool, threads);
+  }
+
+  @Override
+  public void close() {
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+}
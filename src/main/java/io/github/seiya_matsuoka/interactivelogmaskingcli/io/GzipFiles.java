@@ -0,0 +1,96 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/** gzip の入力（展開しながら読む）と出力（圧縮しながら書く）の共通処理。 */
+final class GzipFiles {
+
+  /** 展開/圧縮のバッファサイズ。 */
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  /** 複数スレッドで圧縮する出力サイズの下限（小さな出力はスレッドへ渡すより1スレッドで圧縮する方が速い）。 */
+  static final long PARALLEL_MIN_BYTES = 4L * ParallelGzipOutputStream.BLOCK_SIZE;
+
+  private GzipFiles() {}
+
+  /**
+   * ファイルが gzip 形式か（先頭2バイトのマジックナンバーで判定する）。
+   *
+   * @param file 入力ファイル
+   * @return true: gzip
+   * @throws IOException 読み込みに失敗した場合
+   */
+  static boolean isGzip(Path file) throws IOException {
+    try (InputStream in = Files.newInputStream(file)) {
+      return in.read() == 0x1F && in.read() == 0x8B;
+    }
+  }
+
+  /**
+   * 入力ファイルを開く（gzip なら展開しながら読む）。
+   *
+   * @param file 入力ファイル
+   * @param gzip true: gzip として展開する（連結された複数のメンバーも続けて読む）
+   * @return 入力ストリーム（呼び出し側で close すること）
+   * @throws IOException 開けなかった場合
+   */
+  static InputStream newInputStream(Path file, boolean gzip) throws IOException {
+    return newInputStream(file, gzip, null);
+  }
+
+  /**
+   * {@link #newInputStream(Path, boolean)} と同じだが、読んだ（展開前の）バイト列を hash に加える。
+   *
+   * @param file 入力ファイル
+   * @param gzip true: gzip として展開する
+   * @param hash 内容のハッシュ（null なら求めない）
+   * @return 入力ストリーム（呼び出し側で close すること）
+   * @throws IOException 開けなかった場合
+   */
+  static InputStream newInputStream(Path file, boolean gzip, ContentHash hash) throws IOException {
+    InputStream in =
+        (hash == null) ? Files.newInputStream(file) : hash.wrap(Files.newInputStream(file));
+    if (!gzip) {
+      return in;
+    }
+    try {
+      return new GZIPInputStream(in, BUFFER_SIZE);
+    } catch (IOException | RuntimeException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * 出力ファイルを開く（既存ファイルは上書き）。
+   *
+   * <p>gzip で pool がある場合は、書き込まれた量が {@link #PARALLEL_MIN_BYTES} 以上になった時点から、ブロックごとに独立した
+   * gzip メンバーとして複数スレッドで圧縮する（{@link ParallelGzipOutputStream}）。 判定は入力ファイルのサイズではなく実際に書き出す量で行う
+   * （gzip の入力ではファイルのサイズが展開後の量と大きく異なるため）。
+   *
+   * @param file 出力ファイル
+   * @param gzip true: gzip で圧縮して書き出す
+   * @param pool 圧縮スレッド（実行全体で共有する。null なら呼び出しスレッドで圧縮する）
+   * @param threads pool のスレッド数
+   * @return 出力ストリーム（呼び出し側で close すること）
+   * @throws IOException 開けなかった場合
+   */
+  static OutputStream newOutputStream(Path file, boolean gzip, ExecutorService pool, int threads)
+      throws IOException {
+    OutputStream out = Files.newOutputStream(file);
+    if (!gzip) {
+      return out;
+    }
+    if (pool != null) {
+      return new ParallelGzipOutputStream(out, pool, threads);
+    }
+    return new GZIPOutputStream(out, BUFFER_SIZE);
+  }
+}
@@ -1,15 +1,31 @@
 package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
 
 import java.io.IOException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /** 入力パスから、処理対象ファイルを収集する。 */
 public class InputFileCollector {
 
+  /** 入力ファイルの並び順（relative の文字列順）。レポートの順序もこれに合わせる。 */
+  public static final Comparator<InputFileRef> ORDER =
+      Comparator.comparing(ref -> ref.relative().toString());
+
+  /**
+   * 大きいファイルから先に処理するための並び順（サイズの降順。同じサイズは {@link #ORDER}）。
+   *
+   * <p>並列処理で、最後に残った大きなファイルだけが処理され続ける状態（ロングテール）を避けるために使う。
+   */
+  public static final Comparator<InputFileRef> LARGEST_FIRST =
+      Comparator.comparingLong(InputFileRef::size).reversed().thenComparing(ORDER);
+
   /**
    * 入力パスがファイルなら1件、ディレクトリなら再帰で全ファイルを収集する。
    *
@@ -17,26 +33,118 @@ public class InputFileCollector {
    * @return 入力ファイル参照一覧（relative は inputBase からの相対パス）
    */
   public List<InputFileRef> collect(Path inputPath) throws IOException {
+    return collect(inputPath, InputFileFilter.ALL);
+  }
+
+  /**
+   * 入力パスがファイルなら1件、ディレクトリなら再帰で、フィルタに一致するファイルを収集する。
+   *
+   * @param inputPath 入力（ファイル or ディレクトリ）
+   * @param filter 絞り込み（除外したディレクトリの配下は辿らない）
+   * @return 入力ファイル参照一覧（relative の文字列順）
+   */
+  public List<InputFileRef> collect(Path inputPath, InputFileFilter filter) throws IOException {
 
     if (Files.isRegularFile(inputPath)) {
       // 単一ファイル入力の場合、relative はファイル名のみとする（outBase直下に出すため）
-      return List.of(new InputFileRef(inputPath, inputPath.getFileName()));
+      InputFileRef single =
+          new InputFileRef(inputPath, inputPath.getFileName(), Files.size(inputPath));
+      return filter.acceptsFile(single.relative()) ? List.of(single) : List.of();
     }
 
     if (!Files.isDirectory(inputPath)) {
       throw new IllegalArgumentException("inputPath はファイルまたはディレクトリである必要があります: " + inputPath);
     }
 
-    // Files.walk でディレクトリ配下を再帰的に探索する（Streamなので try-with-resources で確実にcloseする）
-    try (var stream = Files.walk(inputPath)) {
-      return stream
-          // ディレクトリ配下の通常ファイルだけを処理対象にする
-          .filter(Files::isRegularFile)
-          // inputBase からの相対パスを保持しておく（out配下の構造維持に使う）
-          .map(p -> new InputFileRef(p, inputPath.relativize(p)))
-          // 出力順を安定させる（テストしやすいため）
-          .sorted(Comparator.comparing(ref -> ref.relative().toString()))
-          .collect(Collectors.toList());
+    if (!filter.acceptsAll()) {
+      // 絞り込みがある場合は、除外したディレクトリの配下を辿らないよう列挙しながら適用する
+      List<InputFileRef> list = new ArrayList<>();
+      try (InputFileSource source = ParallelInputDiscovery.start(inputPath, filter, 1)) {
+        InputFileRef ref;
+        while ((ref = source.next()) != null) {
+          list.add(ref);
+        }
+      }
+      list.sort(ORDER);
+      return list;
+    }
+
+    // ディレクトリ配下を再帰的に探索する（サイズは辿る際に得た属性から取る）
+    List<InputFileRef> list = new ArrayList<>();
+    Files.walkFileTree(
+        inputPath,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            // ディレクトリ配下の通常ファイルだけを処理対象にする（通常ファイルへのシンボリックリンクを含む）
+            if (attrs.isRegularFile()) {
+              list.add(new InputFileRef(file, inputPath.relativize(file), attrs.size()));
+            } else if (attrs.isSymbolicLink() && Files.isRegularFile(file)) {
+              list.add(new InputFileRef(file, inputPath.relativize(file), Files.size(file)));
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+
+    // 出力順を安定させる（テストしやすいため）
+    list.sort(ORDER);
+    return list;
+  }
+
+  /**
+   * 入力ファイルを見つけた順に返す {@link InputFileSource} を開く（列挙の完了を待たずに処理を始めるため）。
+   *
+   * <p>threads が 1 以上でディレクトリ入力の場合は、複数スレッドで辿りながら返す（順序は不定）。 それ以外は {@link #collect(Path,
+   * InputFileFilter)} の結果を順に返す。
+   *
+   * @param inputPath 入力（ファイル or ディレクトリ）
+   * @param filter 絞り込み
+   * @param threads 列挙のスレッド数（0 の場合は列挙を終えてから返す）
+   * @return 入力ファイルの列挙（呼び出し側で close すること）
+   */
+  public InputFileSource open(Path inputPath, InputFileFilter filter, int threads)
+      throws IOException {
+    return open(inputPath, filter, threads, ORDER);
+  }
+
+  /**
+   * {@link #open(Path, InputFileFilter, int)} と同じだが、列挙を終えてから返す場合の順序を指定する。
+   *
+   * @param inputPath 入力（ファイル or ディレクトリ）
+   * @param filter 絞り込み
+   * @param threads 列挙のスレッド数（1 以上の場合、order は使わない）
+   * @param order 列挙を終えてから返す場合の順序（例: {@link #LARGEST_FIRST}）
+   * @return 入力ファイルの列挙（呼び出し側で close すること）
+   */
+  public InputFileSource open(
+      Path inputPath, InputFileFilter filter, int threads, Comparator<InputFileRef> order)
+      throws IOException {
+
+    if (threads > 0 && Files.isDirectory(inputPath)) {
+      return ParallelInputDiscovery.start(inputPath, filter, threads);
+    }
+
+    List<InputFileRef> sorted = collect(inputPath, filter);
+    List<InputFileRef> list = sorted;
+    if (order != ORDER) {
+      list = new ArrayList<>(list);
+      list.sort(order);
     }
+    Iterator<InputFileRef> it = list.iterator();
+    return new InputFileSource() {
+      @Override
+      public InputFileRef next() {
+        return it.hasNext() ? it.next() : null;
+      }
+
+      @Override
+      public List<InputFileRef> listed() {
+        return sorted;
+      }
+
+      @Override
+      public void close() {}
+    };
   }
 }
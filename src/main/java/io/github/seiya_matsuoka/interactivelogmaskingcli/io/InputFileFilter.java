@@ -0,0 +1,122 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 入力ファイルの絞り込み（include / exclude の glob）。
+ *
+ * <ul>
+ *   <li>パターンは入力ベースからの相対パスと照合する（例: {@code **}{@code /*.log}、{@code archive/**}）。
+ *   <li>{@code /} を含まないパターンはファイル名（ディレクトリ名）だけと照合する（例: {@code *.gz.bak}）。
+ *   <li>{@code **}{@code /} で始まるパターンは、入力ベース直下のファイルにも一致する。
+ *   <li>include が空ならすべてのファイルが対象。exclude に一致するファイルは対象外で、一致するディレクトリは配下ごと辿らない。
+ * </ul>
+ *
+ * <p>構築後は不変のため、複数スレッドから共有してよい。
+ */
+public final class InputFileFilter {
+
+  /** 絞り込みを行わないフィルタ。 */
+  public static final InputFileFilter ALL = new InputFileFilter(List.of(), List.of());
+
+  private final List<Glob> includes;
+  private final List<Glob> excludes;
+
+  private InputFileFilter(List<Glob> includes, List<Glob> excludes) {
+    this.includes = includes;
+    this.excludes = excludes;
+  }
+
+  /**
+   * glob パターンからフィルタを構築する。
+   *
+   * @param includes 対象にするファイルのパターン（空ならすべて）
+   * @param excludes 対象外にするファイル/ディレクトリのパターン
+   * @return フィルタ
+   * @throws IllegalArgumentException パターンが不正な場合
+   */
+  public static InputFileFilter of(List<String> includes, List<String> excludes) {
+    Objects.requireNonNull(includes, "includes");
+    Objects.requireNonNull(excludes, "excludes");
+    if (includes.isEmpty() && excludes.isEmpty()) {
+      return ALL;
+    }
+    FileSystem fs = FileSystems.getDefault();
+    return new InputFileFilter(compile(fs, includes), compile(fs, excludes));
+  }
+
+  /** 絞り込みを行わないか。 */
+  public boolean acceptsAll() {
+    return includes.isEmpty() && excludes.isEmpty();
+  }
+
+  /**
+   * ファイルを処理対象にするか。
+   *
+   * @param relative 入力ベースからの相対パス
+   */
+  public boolean acceptsFile(Path relative) {
+    if (matchesAny(excludes, relative)) {
+      return false;
+    }
+    return includes.isEmpty() || matchesAny(includes, relative);
+  }
+
+  /**
+   * ディレクトリの配下を辿るか。
+   *
+   * @param relative 入力ベースからの相対パス
+   */
+  public boolean acceptsDirectory(Path relative) {
+    return !matchesAny(excludes, relative);
+  }
+
+  private static List<Glob> compile(FileSystem fs, List<String> patterns) {
+    List<Glob> globs = new ArrayList<>(patterns.size());
+    for (String p : patterns) {
+      if (p == null || p.isBlank()) {
+        continue;
+      }
+      String pattern = p.strip();
+      try {
+        PathMatcher whole = fs.getPathMatcher("glob:" + pattern);
+        PathMatcher rest =
+            pattern.startsWith("**/") ? fs.getPathMatcher("glob:" + pattern.substring(3)) : null;
+        globs.add(new Glob(whole, rest, !pattern.contains("/")));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("glob パターンが不正です: " + pattern, e);
+      }
+    }
+    return List.copyOf(globs);
+  }
+
+  private static boolean matchesAny(List<Glob> globs, Path relative) {
+    for (Glob g : globs) {
+      if (g.matches(relative)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param whole パターン全体
+   * @param rest 先頭の {@code **}{@code /} を除いたパターン（入力ベース直下にも一致させるため。無ければ null）
+   * @param nameOnly true: ファイル名だけと照合する
+   */
+  private record Glob(PathMatcher whole, PathMatcher rest, boolean nameOnly) {
+    boolean matches(Path relative) {
+      if (nameOnly) {
+        Path name = relative.getFileName();
+        return name != null && whole.matches(name);
+      }
+      return whole.matches(relative) || (rest != null && rest.matches(relative));
+    }
+  }
+}
@@ -1,11 +1,25 @@
 package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
- * 入力ファイル参照（実体パス + 入力ベースからの相対パス）。
+ * 入力ファイル参照（実体パス + 入力ベースからの相対パス + 列挙時のサイズ）。
  *
  * @param file 実体パス
  * @param relative inputBase からの相対パス（構造維持出力に使用）
+ * @param size 列挙時に取得したファイルサイズ（bytes。不明なら -1）
  */
-public record InputFileRef(Path file, Path relative) {}
+public record InputFileRef(Path file, Path relative, long size) {
+
+  /** サイズ不明の参照。 */
+  public InputFileRef(Path file, Path relative) {
+    this(file, relative, -1L);
+  }
+
+  /** ファイルサイズ（列挙時に取得していなければ、ここで取得する）。 */
+  public long sizeOrRead() throws IOException {
+    return (size >= 0) ? size : Files.size(file);
+  }
+}
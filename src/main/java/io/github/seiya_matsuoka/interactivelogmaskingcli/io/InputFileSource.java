@@ -0,0 +1,36 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 処理対象の入力ファイルを、見つかった順に1件ずつ返す。
+ *
+ * <p>列挙が終わる前から処理を始められるようにするためのもの。順序は実装によって異なる（並べ替えはレポート作成時に行う）。
+ */
+public interface InputFileSource extends Closeable {
+
+  /**
+   * 次の入力ファイルを返す（まだ見つかっていなければ見つかるまで待つ）。
+   *
+   * @return 入力ファイル参照（列挙が終わったら null）
+   * @throws IOException 列挙中の入出力エラー
+   */
+  InputFileRef next() throws IOException;
+
+  /**
+   * 列挙を終えてから返す実装では、返す入力ファイルの全件を {@link InputFileCollector#ORDER} の順で返す。
+   *
+   * <p>処理の結果を入力順に並べ直す際、全件が分かっていれば列挙の完了を待たずに順に渡せる。
+   *
+   * @return 全件（ORDER の順）。見つけながら返す実装では null
+   */
+  default List<InputFileRef> listed() {
+    return null;
+  }
+
+  /** 列挙を打ち切る（列挙用のスレッドがあれば停止する）。 */
+  @Override
+  void close();
+}
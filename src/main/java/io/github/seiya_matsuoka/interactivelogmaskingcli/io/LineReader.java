@@ -0,0 +1,91 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 入力ファイルを1行ずつ読む（UTF-8）。
+ *
+ * <p>行の区切り（\n / \r / \r\n）と不正な UTF-8 の扱いは、実装によらず {@link BufferedReader#readLine()} と同じにする。
+ */
+interface LineReader extends Closeable {
+
+  /**
+   * 次の1行を返す（行末の改行は含まない）。
+   *
+   * @return 1行分の文字列（末尾に達したら null）
+   * @throws IOException 入出力エラー（不正な UTF-8 を含む）
+   */
+  String readLine() throws IOException;
+
+  /**
+   * ファイルサイズに応じて読み込み方法を選んで開く。
+   *
+   * <p>{@link ProcessingOptions#getMappedReadThresholdBytes()} 以上のファイルはメモリマップで読み（{@link
+   * MappedLineReader}）、それ以外は {@link Files#newBufferedReader(Path, java.nio.charset.Charset)} で読む。
+   *
+   * @param file 入力ファイル
+   * @param options 実行オプション
+   * @return 行リーダー（呼び出し側で close すること）
+   * @throws IOException 入出力エラー
+   */
+  static LineReader open(Path file, ProcessingOptions options) throws IOException {
+    return open(file, options, false);
+  }
+
+  /**
+   * {@link #open(Path, ProcessingOptions)} と同じだが、gzip の入力は展開しながら読む（メモリマップは使わない）。
+   *
+   * @param file 入力ファイル
+   * @param options 実行オプション
+   * @param gzip true: gzip として展開しながら読む
+   * @return 行リーダー（呼び出し側で close すること）
+   * @throws IOException 入出力エラー
+   */
+  static LineReader open(Path file, ProcessingOptions options, boolean gzip) throws IOException {
+    return open(file, options, gzip, null);
+  }
+
+  /**
+   * {@link #open(Path, ProcessingOptions, boolean)} と同じだが、読んだバイト列を hash に加える（メモリマップは使わない）。
+   *
+   * @param file 入力ファイル
+   * @param options 実行オプション
+   * @param gzip true: gzip として展開しながら読む
+   * @param hash 内容のハッシュ（null なら求めない）
+   * @return 行リーダー（呼び出し側で close すること）
+   * @throws IOException 入出力エラー
+   */
+  static LineReader open(Path file, ProcessingOptions options, boolean gzip, ContentHash hash)
+      throws IOException {
+    long threshold = options.getMappedReadThresholdBytes();
+    if (!gzip && hash == null && threshold > 0 && Files.size(file) >= threshold) {
+      return new MappedLineReader(file);
+    }
+
+    // 不正な UTF-8 は Files.newBufferedReader と同様にエラーにする（newDecoder は REPORT）
+    BufferedReader reader =
+        (gzip || hash != null)
+            ? new BufferedReader(
+                new InputStreamReader(
+                    GzipFiles.newInputStream(file, gzip, hash),
+                    StandardCharsets.UTF_8.newDecoder()))
+            : Files.newBufferedReader(file, StandardCharsets.UTF_8);
+    return new LineReader() {
+      @Override
+      public String readLine() throws IOException {
+        return reader.readLine();
+      }
+
+      @Override
+      public void close() throws IOException {
+        reader.close();
+      }
+    };
+  }
+}
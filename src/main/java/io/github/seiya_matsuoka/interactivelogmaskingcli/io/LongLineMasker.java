@@ -0,0 +1,158 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskContext;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngine;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.StreamingLineMasker;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Objects;
+
+/**
+ * 行の長さによらず一定のメモリで、入力を1行ずつマスキングする。
+ *
+ * <p>しきい値以下の行は従来どおり行全体を {@link MaskEngine#mask(String, MaskContext, boolean)} に渡す。
+ * しきい値を超えた行は、読み込んだ分ずつ {@link StreamingLineMasker} に流し、確定した分から出力する（行全体を1つの文字列にしない）。
+ *
+ * <p>行の区切り（\n / \r / \r\n）は {@link java.io.BufferedReader#readLine()} と同じに扱い、出力の改行は OS の改行に統一する。
+ * そのため出力内容・件数は、行全体で処理した場合と同じになる。行末まで続きうるマッチ（例: {@code password=.*}）は確定するまで保持するため、
+ * その間のメモリは行全体を処理する場合と同じになる。
+ */
+final class LongLineMasker {
+
+  private static final int READ_BUFFER_CHARS = 64 * 1024;
+
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  private final MaskEngine engine;
+  private final int thresholdChars;
+
+  /**
+   * @param engine マスキングコア
+   * @param thresholdChars 区切って処理する行の長さ（文字数。1以上）
+   */
+  LongLineMasker(MaskEngine engine, int thresholdChars) {
+    this.engine = Objects.requireNonNull(engine, "engine");
+    if (thresholdChars < 1) {
+      throw new IllegalArgumentException("thresholdChars は1以上を指定してください: " + thresholdChars);
+    }
+    this.thresholdChars = thresholdChars;
+  }
+
+  /**
+   * 入力の終端までマスキングする。件数は ctx に加算する（呼び出し側でリセットしておくこと）。
+   *
+   * @param in 入力
+   * @param out 出力（dryRun の場合は null）
+   * @param ctx 作業領域
+   * @param dryRun true: 件数のみ集計する
+   * @throws IOException 入出力エラー（不正な UTF-8 を含む）
+   */
+  void process(Reader in, Writer out, MaskContext ctx, boolean dryRun) throws IOException {
+    new Run(in, out, ctx, dryRun).run();
+  }
+
+  /** 1入力分の処理状態。 */
+  private final class Run {
+
+    private final Reader in;
+    private final Writer out;
+    private final MaskContext ctx;
+    private final boolean dryRun;
+
+    private final char[] buffer = new char[READ_BUFFER_CHARS];
+
+    /** しきい値に達するまでの行の内容。 */
+    private final StringBuilder line = new StringBuilder();
+
+    /** 区切って処理している行の、確定したマスキング結果。 */
+    private final StringBuilder masked = new StringBuilder();
+
+    /** しきい値を超えた行を処理中の場合のみ非 null。 */
+    private StreamingLineMasker streaming;
+
+    /** 直前が \r で、続く \n を読み飛ばす必要があるか。 */
+    private boolean skipLf;
+
+    Run(Reader in, Writer out, MaskContext ctx, boolean dryRun) {
+      this.in = in;
+      this.out = out;
+      this.ctx = ctx;
+      this.dryRun = dryRun;
+    }
+
+    void run() throws IOException {
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+          char c = buffer[i];
+          if (skipLf) {
+            skipLf = false;
+            if (c == '\n') {
+              start = i + 1;
+              continue;
+            }
+          }
+          if (c == '\n' || c == '\r') {
+            append(start, i);
+            endLine();
+            skipLf = (c == '\r');
+            start = i + 1;
+          }
+        }
+        append(start, n);
+      }
+
+      // 改行で終わらない最後の行
+      if (line.length() > 0 || streaming != null) {
+        endLine();
+      }
+    }
+
+    private void append(int from, int to) throws IOException {
+      if (to <= from) {
+        return;
+      }
+      if (streaming != null) {
+        streaming.append(CharBuffer.wrap(buffer, from, to - from), masked);
+        flushMasked();
+        return;
+      }
+
+      line.append(buffer, from, to - from);
+      if (line.length() > thresholdChars) {
+        // しきい値を超えたら、ここまでの内容を流して以降は区切って処理する
+        streaming = new StreamingLineMasker(ctx);
+        streaming.append(line, masked);
+        line.setLength(0);
+        flushMasked();
+      }
+    }
+
+    private void endLine() throws IOException {
+      if (streaming != null) {
+        streaming.finish(masked);
+        streaming = null;
+        flushMasked();
+      } else {
+        String result = engine.mask(line.toString(), ctx, dryRun);
+        line.setLength(0);
+        if (out != null) {
+          out.write(result);
+        }
+      }
+      if (out != null) {
+        out.write(LINE_SEPARATOR);
+      }
+    }
+
+    private void flushMasked() throws IOException {
+      if (out != null && !dryRun) {
+        out.append(masked);
+      }
+      masked.setLength(0);
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * メモリマップ（{@link FileChannel#map}）でファイルを読み、1行ずつ返す {@link LineReader}。
+ *
+ * <ul>
+ *   <li>マップした領域を直接走査して改行位置を探し、行の範囲だけを UTF-8 としてデコードする。
+ *   <li>デコード先の {@link CharBuffer} は使い回し、行ごとのコピーは返す {@link String} の1回だけにする。
+ *   <li>1回のマップは 2GB 未満に制限されるため、大きなファイルは窓（window）単位でマップし直す。 行が窓の終端をまたぐ場合は、その行の先頭から次の窓をマップする。
+ * </ul>
+ *
+ * <p>行の区切り（\n / \r / \r\n）と不正な UTF-8 の扱いは {@link java.io.BufferedReader#readLine()} と同じ。
+ */
+final class MappedLineReader implements LineReader {
+
+  /** 既定の窓サイズ（1 GiB）。 */
+  static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+  private final FileChannel channel;
+  private final long size;
+  private final int windowSize;
+  private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+
+  private CharBuffer chars = CharBuffer.allocate(256);
+
+  /** 現在の窓と、その先頭のファイル内オフセット。 */
+  private MappedByteBuffer window;
+
+  private long windowStart;
+
+  /** 次に読む位置（ファイル内オフセット）。 */
+  private long position;
+
+  MappedLineReader(Path file) throws IOException {
+    this(file, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * @param file 入力ファイル
+   * @param windowSize 1回にマップする最大バイト数（テスト用に小さくできる）
+   */
+  MappedLineReader(Path file, int windowSize) throws IOException {
+    if (windowSize < 2) {
+      throw new IllegalArgumentException("windowSize は2以上を指定してください: " + windowSize);
+    }
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    this.size = channel.size();
+    this.windowSize = windowSize;
+  }
+
+  @Override
+  public String readLine() throws IOException {
+    if (position >= size) {
+      return null;
+    }
+
+    while (true) {
+      ensureMapped(position);
+
+      int start = (int) (position - windowStart);
+      int limit = window.limit();
+
+      for (int i = start; i < limit; i++) {
+        byte b = window.get(i);
+        if (b != '\n' && b != '\r') {
+          continue;
+        }
+
+        // \r\n は1つの区切りとして扱う（\r が窓の末尾にある場合は、次のバイトを直接確認する）
+        long next = windowStart + i + 1;
+        if (b == '\r' && next < size && byteAt(next, i + 1, limit) == '\n') {
+          next++;
+        }
+        String line = decode(start, i);
+        position = next;
+        return line;
+      }
+
+      long windowEnd = windowStart + limit;
+      if (windowEnd >= size) {
+        // 改行なしでファイル末尾に達した（最終行）
+        String line = decode(start, limit);
+        position = size;
+        return line;
+      }
+      if (start == 0) {
+        throw new IOException("1行が長すぎるため読み込めません（" + windowSize + " バイト超）");
+      }
+      // 行が窓の終端をまたぐため、行の先頭から窓をマップし直す
+      remap(position);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    channel.close();
+  }
+
+  /** ファイル内オフセット pos のバイト（窓内ならそこから、窓外なら1バイトだけ読む）。 */
+  private byte byteAt(long pos, int indexInWindow, int limit) throws IOException {
+    if (indexInWindow < limit) {
+      return window.get(indexInWindow);
+    }
+    ByteBuffer one = ByteBuffer.allocate(1);
+    if (channel.read(one, pos) <= 0) {
+      return -1;
+    }
+    return one.get(0);
+  }
+
+  private void ensureMapped(long pos) throws IOException {
+    if (window == null || pos < windowStart || pos >= windowStart + window.limit()) {
+      remap(pos);
+    }
+  }
+
+  private void remap(long pos) throws IOException {
+    long length = Math.min(windowSize, size - pos);
+    window = channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+    windowStart = pos;
+  }
+
+  /** 窓の [from, to) を UTF-8 としてデコードする（不正なバイト列はエラー）。 */
+  private String decode(int from, int to) throws IOException {
+    int length = to - from;
+    if (length == 0) {
+      return "";
+    }
+
+    ByteBuffer slice = window.duplicate();
+    slice.limit(to).position(from);
+
+    // UTF-8 は 1バイト以上で1文字以下（char 単位）のため、バイト数分あれば足りる
+    if (chars.capacity() < length) {
+      chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+    }
+    chars.clear();
+    decoder.reset();
+
+    CoderResult result = decoder.decode(slice, chars, true);
+    if (result.isError()) {
+      result.throwException();
+    }
+    result = decoder.flush(chars);
+    if (result.isError()) {
+      result.throwException();
+    }
+    chars.flip();
+    return chars.toString();
+  }
+}
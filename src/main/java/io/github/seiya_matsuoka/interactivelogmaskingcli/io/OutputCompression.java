@@ -0,0 +1,35 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+/**
+ * 出力ファイルの圧縮方法。
+ *
+ * <p>入力が gzip かどうかはファイル名ではなく先頭のマジックナンバー（{@code 1f 8b}）で判定する。 圧縮して出力する場合は出力ファイル名に ".gz"
+ * を付け、圧縮しない場合は外す。
+ *
+ * @see ProcessingOptions#setOutputCompression(OutputCompression)
+ */
+public enum OutputCompression {
+
+  /** 入力が gzip なら gzip で、それ以外は圧縮せずに出力する（既定）。 */
+  MATCH_INPUT,
+
+  /** すべて圧縮せずに出力する（gzip の入力も展開したまま出力する）。 */
+  NONE,
+
+  /** すべて gzip で出力する。 */
+  GZIP;
+
+  /**
+   * 出力を gzip 圧縮するか。
+   *
+   * @param gzipInput 入力が gzip か
+   * @return true: gzip 圧縮して出力する
+   */
+  public boolean compress(boolean gzipInput) {
+    return switch (this) {
+      case MATCH_INPUT -> gzipInput;
+      case NONE -> false;
+      case GZIP -> true;
+    };
+  }
+}
@@ -0,0 +1,167 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 書き込まれたデータをブロックに区切り、ブロックごとに独立した gzip メンバーとして複数スレッドで圧縮する（pigz と同様の方式）。
+ *
+ * <p>gzip は複数のメンバーを連結したものも1つのファイルとして展開できるため（RFC 1952）、出力は通常の gzip として読める。
+ * ブロックをまたいだ辞書を使わない分だけ圧縮率はわずかに下がる。
+ *
+ * <ul>
+ *   <li>圧縮したメンバーは元の順序で書き出す。
+ *   <li>圧縮待ちのブロックは スレッド数×2 までに抑える（それ以上は書き出しを待つ）。
+ *   <li>圧縮スレッドは実行全体で共有するプールを使う（このストリームは停止しない）。
+ *   <li>書き込まれた量が {@link GzipFiles#PARALLEL_MIN_BYTES} に届くまではブロックを溜めておき、届かないまま閉じた場合は
+ *       呼び出しスレッドで1つのメンバーとして圧縮する（小さな出力でスレッド間の受け渡しをしない）。
+ * </ul>
+ *
+ * <p>スレッドセーフではない。
+ */
+final class ParallelGzipOutputStream extends OutputStream {
+
+  /** 1メンバーにまとめるブロックのサイズ。 */
+  static final int BLOCK_SIZE = 1024 * 1024;
+
+  private final OutputStream out;
+  private final ExecutorService pool;
+  private final int maxPending;
+  private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+
+  /** 並列に圧縮し始めるまで溜めておくブロック（並列に圧縮し始めたら null）。 */
+  private List<byte[]> staged = new ArrayList<>();
+
+  private byte[] block = new byte[BLOCK_SIZE];
+  private int count;
+  private boolean closed;
+
+  /**
+   * @param out 出力先（close 時に close する）
+   * @param pool 圧縮スレッド（実行全体で共有する。停止は呼び出し側で行う）
+   * @param threads pool のスレッド数（1以上。圧縮待ちのブロック数の上限に使う）
+   */
+  ParallelGzipOutputStream(OutputStream out, ExecutorService pool, int threads) {
+    this.out = out;
+    this.pool = pool;
+    this.maxPending = threads * 2;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    block[count++] = (byte) b;
+    if (count == block.length) {
+      fullBlock();
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      int n = Math.min(len, block.length - count);
+      System.arraycopy(b, off, block, count, n);
+      count += n;
+      off += n;
+      len -= n;
+      if (count == block.length) {
+        fullBlock();
+      }
+    }
+  }
+
+  /** 圧縮を終えたメンバーを書き出して flush する（途中のブロックは区切らない）。 */
+  @Override
+  public void flush() throws IOException {
+    while (!pending.isEmpty() && pending.peek().isDone()) {
+      out.write(WorkerThreads.await(pending.poll()));
+    }
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (staged != null) {
+        // 並列に圧縮するほどの量が無かった：溜めたブロックをまとめて1つのメンバーにする（空の入力でも正しい gzip になる）
+        compressStaged();
+        return;
+      }
+      if (count > 0) {
+        submitBlock();
+      }
+      while (!pending.isEmpty()) {
+        out.write(WorkerThreads.await(pending.poll()));
+      }
+    } finally {
+      // 失敗時に圧縮中のブロックを打ち切る（プールは共有のため停止しない）
+      for (Future<byte[]> f : pending) {
+        f.cancel(true);
+      }
+      out.close();
+    }
+  }
+
+  /** ブロックが埋まった：しきい値に届くまでは溜め、届いたら溜めた分から並列に圧縮する。 */
+  private void fullBlock() throws IOException {
+    if (staged == null) {
+      submitBlock();
+      return;
+    }
+    staged.add(block);
+    block = new byte[BLOCK_SIZE];
+    count = 0;
+    if ((long) staged.size() * BLOCK_SIZE < GzipFiles.PARALLEL_MIN_BYTES) {
+      return;
+    }
+    List<byte[]> blocks = staged;
+    staged = null;
+    for (byte[] b : blocks) {
+      submit(b, b.length);
+    }
+  }
+
+  /** 溜めたブロックを呼び出しスレッドで1つのメンバーとして圧縮し、出力先を閉じる。 */
+  private void compressStaged() throws IOException {
+    try (GZIPOutputStream gz = new GZIPOutputStream(out, GzipFiles.BUFFER_SIZE)) {
+      for (byte[] b : staged) {
+        gz.write(b, 0, b.length);
+      }
+      gz.write(block, 0, count);
+    }
+    staged = null;
+  }
+
+  private void submitBlock() throws IOException {
+    submit(block, count);
+    block = new byte[BLOCK_SIZE];
+    count = 0;
+  }
+
+  private void submit(byte[] data, int length) throws IOException {
+    pending.add(pool.submit(() -> compress(data, length)));
+
+    // 圧縮済みのメンバーから順に書き出し、溜め込むブロック数を抑える
+    while (pending.size() > maxPending) {
+      out.write(WorkerThreads.await(pending.poll()));
+    }
+  }
+
+  private static byte[] compress(byte[] data, int length) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream(length / 4 + 64);
+    try (GZIPOutputStream gz = new GZIPOutputStream(buf, GzipFiles.BUFFER_SIZE)) {
+      gz.write(data, 0, length);
+    }
+    return buf.toByteArray();
+  }
+}
@@ -0,0 +1,144 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ディレクトリを複数スレッドで辿り、見つかった入力ファイルを順次返す（{@link InputFileSource}）。
+ *
+ * <ul>
+ *   <li>ディレクトリ1つを1タスクとし、サブディレクトリは別タスクとして投入する。
+ *   <li>ファイルの種類は1回の属性取得（リンクを辿らない）で判定する。シンボリックリンクは、通常ファイルを指す場合だけ対象にする（ディレクトリへのリンクは辿らない）。
+ *   <li>include / exclude（{@link InputFileFilter}）は辿りながら適用し、除外したディレクトリの配下は辿らない。
+ *   <li>見つかったファイルは容量上限付きのキューに入れる（処理が追いつかない間は列挙も待つ）。
+ * </ul>
+ *
+ * <p>返す順序は不定。
+ */
+final class ParallelInputDiscovery implements InputFileSource {
+
+  private static final int QUEUE_CAPACITY = 4096;
+
+  /** 列挙の終わりを表す印。 */
+  private static final InputFileRef END = new InputFileRef(Path.of(""), Path.of(""));
+
+  private final Path root;
+  private final InputFileFilter filter;
+  private final ExecutorService pool;
+  private final BlockingQueue<InputFileRef> found = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+  /** 未完了のディレクトリのタスク数（0 になったら列挙の終わり）。 */
+  private final AtomicInteger pending = new AtomicInteger();
+
+  private volatile IOException failure;
+  private boolean finished;
+
+  private ParallelInputDiscovery(Path root, InputFileFilter filter, int threads) {
+    this.root = root;
+    this.filter = filter;
+    this.pool = WorkerThreads.newFixedPool("input-discovery", threads);
+  }
+
+  /**
+   * ディレクトリの列挙を開始する。
+   *
+   * @param root 入力ディレクトリ
+   * @param filter 絞り込み
+   * @param threads 列挙のスレッド数（1以上）
+   */
+  static ParallelInputDiscovery start(Path root, InputFileFilter filter, int threads) {
+    ParallelInputDiscovery d = new ParallelInputDiscovery(root, filter, threads);
+    d.submit(root);
+    return d;
+  }
+
+  @Override
+  public InputFileRef next() throws IOException {
+    if (finished) {
+      return null;
+    }
+    try {
+      InputFileRef ref = found.take();
+      if (failure != null) {
+        throw failure;
+      }
+      if (ref == END) {
+        finished = true;
+        return null;
+      }
+      return ref;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("処理が中断されました");
+    }
+  }
+
+  @Override
+  public void close() {
+    pool.shutdownNow();
+  }
+
+  private void submit(Path dir) {
+    pending.incrementAndGet();
+    pool.execute(() -> walk(dir));
+  }
+
+  private void walk(Path dir) {
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+      for (Path p : entries) {
+        BasicFileAttributes attrs =
+            Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        Path relative = root.relativize(p);
+
+        if (attrs.isDirectory()) {
+          if (filter.acceptsDirectory(relative)) {
+            submit(p);
+          }
+        } else if (attrs.isRegularFile()) {
+          if (filter.acceptsFile(relative)) {
+            found.put(new InputFileRef(p, relative, attrs.size()));
+          }
+        } else if (attrs.isSymbolicLink() && Files.isRegularFile(p)) {
+          if (filter.acceptsFile(relative)) {
+            found.put(new InputFileRef(p, relative, Files.size(p)));
+          }
+        }
+      }
+    } catch (IOException e) {
+      fail(e);
+    } catch (InterruptedException e) {
+      // close() で打ち切られた
+      Thread.currentThread().interrupt();
+      return;
+    } finally {
+      if (pending.decrementAndGet() == 0) {
+        signalEnd();
+      }
+    }
+  }
+
+  private void fail(IOException e) {
+    if (failure == null) {
+      failure = e;
+    }
+    // 待っている呼び出し側を起こす（キューが満杯なら、呼び出し側が次に取り出した時点で failure を見る）
+    found.offer(END);
+  }
+
+  private void signalEnd() {
+    try {
+      found.put(END);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.ByteSequence;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskContext;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngine;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 置換が発生した行だけを書き直し、それ以外の範囲は入力ファイルからそのまま転送する。
+ *
+ * <ul>
+ *   <li>変更の無い行が続く範囲は、まとめて {@link FileChannel#transferTo} で出力へ転送する（ヒープを経由しない）。
+ *   <li>置換が発生した行は、置換後の行（UTF-8）と元の改行バイトをヒープから書き出す。
+ *   <li>1件も置換が無いファイルは、ファイル全体の転送（カーネル内でのコピー）になる。
+ * </ul>
+ *
+ * <p>改行は入力のバイト列をそのまま残す（\r\n / \n / \r の混在や、末尾改行の有無も維持する）。 そのため、改行を {@link
+ * java.io.BufferedWriter#newLine()} で統一する通常の出力とは、改行部分が異なり得る。
+ */
+final class PassthroughFileMasker {
+
+  private static final int HEAP_BUFFER_SIZE = 64 * 1024;
+
+  private final MaskEngine engine;
+
+  PassthroughFileMasker(MaskEngine engine) {
+    this.engine = engine;
+  }
+
+  /**
+   * 1ファイルを処理して outputFile へ書き出す。
+   *
+   * @param inputFile 入力ファイル
+   * @param outputFile 出力ファイル（親ディレクトリは必要に応じて作成）
+   * @param ctx 作業領域（件数はこのファイル分にリセットしてから集計する）
+   * @param byteLevel true: バイト列のまま処理する（ルールセットが ASCII 安全な場合のみ指定すること）
+   * @param hash 読んだ入力から求める内容のハッシュ（null なら求めない。転送する範囲も行として読むため全体が加わる）
+   * @throws IOException 入出力エラー（不正な UTF-8 を含む）
+   */
+  void process(
+      Path inputFile, Path outputFile, MaskContext ctx, boolean byteLevel, ContentHash hash)
+      throws IOException {
+
+    ctx.resetCounts();
+
+    if (outputFile.getParent() != null) {
+      Files.createDirectories(outputFile.getParent());
+    }
+
+    try (FileChannel in = FileChannel.open(inputFile, StandardOpenOption.READ);
+        FileChannel out =
+            FileChannel.open(
+                outputFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+
+      // 行の読み込みはチャネルの現在位置で進め、転送は位置指定で行う（transferTo は現在位置を変えない）
+      ByteLineReader reader =
+          new ByteLineReader(
+              (hash == null)
+                  ? Channels.newInputStream(in)
+                  : hash.wrap(Channels.newInputStream(in)));
+      Utf8LineMasker masker = new Utf8LineMasker(engine, byteLevel);
+      ByteBuffer heap = ByteBuffer.allocate(HEAP_BUFFER_SIZE);
+
+      // まだ書き出していない「変更の無い範囲」の先頭
+      long spanStart = 0;
+
+      ByteSequence line;
+      while ((line = reader.next()) != null) {
+        byte[] replaced = masker.maskLine(line, ctx);
+        if (replaced == null) {
+          continue;
+        }
+
+        // 直前までの変更の無い範囲を転送し、置換後の行 + 元の改行を書き出す
+        long lineStart = reader.lineOffset();
+        flush(heap, out);
+        transfer(in, spanStart, lineStart - spanStart, out);
+
+        write(heap, out, replaced, 0, replaced.length);
+        if (reader.terminatorLength() > 0) {
+          int eolStart = line.offset() + line.length();
+          write(heap, out, line.array(), eolStart, reader.terminatorLength());
+        }
+        spanStart = lineStart + line.length() + reader.terminatorLength();
+      }
+
+      flush(heap, out);
+      transfer(in, spanStart, in.size() - spanStart, out);
+    }
+  }
+
+  private static void transfer(FileChannel in, long position, long count, FileChannel out)
+      throws IOException {
+    long done = 0;
+    while (done < count) {
+      long n = in.transferTo(position + done, count - done, out);
+      if (n <= 0) {
+        throw new IOException("入力ファイルの転送が途中で終了しました: " + (position + done));
+      }
+      done += n;
+    }
+  }
+
+  private static void write(ByteBuffer heap, FileChannel out, byte[] src, int from, int len)
+      throws IOException {
+    if (len > heap.remaining()) {
+      flush(heap, out);
+      if (len > heap.capacity()) {
+        writeFully(out, ByteBuffer.wrap(src, from, len));
+        return;
+      }
+    }
+    heap.put(src, from, len);
+  }
+
+  private static void flush(ByteBuffer heap, FileChannel out) throws IOException {
+    heap.flip();
+    writeFully(out, heap);
+    heap.clear();
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) {
+      out.write(buf);
+    }
+  }
+}
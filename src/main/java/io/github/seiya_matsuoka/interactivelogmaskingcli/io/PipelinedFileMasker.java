@@ -0,0 +1,226 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskContext;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngine;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 1ファイルを「読み込み → マスキング → 書き出し」の3段のパイプラインで処理する。
+ *
+ * <ul>
+ *   <li>読み込みスレッド: 行をバッチにまとめ、作業キューと順序キューに積む
+ *   <li>マスキングワーカー（1つ以上）: 作業キューからバッチを取り、{@link MaskEngine} で処理する
+ *   <li>書き出し（呼び出しスレッド）: 順序キューから元の順にバッチの結果を取り、書き出して件数を合算する
+ * </ul>
+ *
+ * <p>キューはどちらも容量上限付きのため、どこかの段が遅い場合は前段が待つ（メモリ使用量はバッチ数 × バッチ行数で頭打ちになる）。
+ *
+ * <p>スレッド（読み込み1 + ワーカー）はインスタンスで保持し、複数ファイルで使い回す。使い終わったら {@link #close()} すること。
+ */
+final class PipelinedFileMasker implements AutoCloseable {
+
+  /** 1バッチの行数。 */
+  static final int BATCH_LINES = 512;
+
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  /** 作業キューの終端（ワーカーに終了を伝える）。 */
+  private static final Task POISON = new Task(new String[0], 0, new CompletableFuture<>());
+
+  /** 順序キューの終端（書き出し側に全バッチの終了を伝える）。 */
+  private static final Result END = new Result("", new long[0], 0, 0);
+
+  private final MaskEngine engine;
+  private final int workers;
+  private final int capacity;
+  private final ExecutorService pool;
+  private final ThreadLocal<MaskContext> contexts;
+
+  /**
+   * @param engine マスキングコア
+   * @param ruleSet コンパイル済みルールセット
+   * @param workers マスキングワーカー数（1以上）
+   */
+  PipelinedFileMasker(MaskEngine engine, CompiledRuleSet ruleSet, int workers) {
+    this.engine = engine;
+    this.workers = workers;
+    this.capacity = workers * 4;
+    this.pool = WorkerThreads.newFixedPool("mask-pipeline", workers + 1);
+    this.contexts = ThreadLocal.withInitial(() -> new MaskContext(ruleSet));
+  }
+
+  /**
+   * 1ファイルを処理する。
+   *
+   * @param inputFile 入力ファイル
+   * @param outputFile 出力ファイル（dryRun の場合は作らない）
+   * @param ctx 件数の集計先（このファイル分にリセットしてから合算する）
+   * @param dryRun true: 件数集計のみ
+   * @param options 実行オプション（読み込み方法の選択に使う）
+   * @param hash 読んだ入力から求める内容のハッシュ（null なら求めない）
+   * @throws IOException 入出力エラー
+   */
+  void process(
+      Path inputFile,
+      Path outputFile,
+      MaskContext ctx,
+      boolean dryRun,
+      ProcessingOptions options,
+      ContentHash hash)
+      throws IOException {
+
+    ctx.resetCounts();
+
+    try (LineReader reader = LineReader.open(inputFile, options, false, hash)) {
+      if (dryRun) {
+        run(reader, null, ctx, true);
+        return;
+      }
+
+      if (outputFile.getParent() != null) {
+        Files.createDirectories(outputFile.getParent());
+      }
+      try (BufferedWriter writer =
+          Files.newBufferedWriter(
+              outputFile,
+              StandardCharsets.UTF_8,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING)) {
+        run(reader, writer, ctx, false);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    pool.shutdownNow();
+  }
+
+  private void run(LineReader reader, BufferedWriter writer, MaskContext ctx, boolean dryRun)
+      throws IOException {
+
+    BlockingQueue<Task> work = new ArrayBlockingQueue<>(capacity);
+    BlockingQueue<CompletableFuture<Result>> ordered = new ArrayBlockingQueue<>(capacity);
+
+    List<Future<?>> stages = new ArrayList<>(workers + 1);
+    try {
+      stages.add(pool.submit(() -> read(reader, work, ordered)));
+      for (int i = 0; i < workers; i++) {
+        stages.add(pool.submit(() -> mask(work, dryRun)));
+      }
+
+      // 書き出し：元の順にバッチの完了を待ち、書き出して件数を合算する
+      while (true) {
+        Result result = WorkerThreads.await(take(ordered));
+        if (result == END) {
+          break;
+        }
+        if (writer != null) {
+          writer.write(result.text());
+        }
+        ctx.addCounts(result.counts(), result.total());
+        ctx.addLines(result.lines());
+      }
+    } finally {
+      // 失敗時は読み込み/ワーカーを打ち切る（正常終了時はすでに終わっている）
+      for (Future<?> f : stages) {
+        f.cancel(true);
+      }
+    }
+  }
+
+  /** 読み込み段：行をバッチにまとめてキューに積む。 */
+  private Void read(
+      LineReader reader, BlockingQueue<Task> work, BlockingQueue<CompletableFuture<Result>> ordered)
+      throws InterruptedException {
+    try {
+      while (true) {
+        String[] lines = new String[BATCH_LINES];
+        int n = 0;
+        String line;
+        while (n < BATCH_LINES && (line = reader.readLine()) != null) {
+          lines[n++] = line;
+        }
+        if (n == 0) {
+          break;
+        }
+
+        // 順序キューに先に積むことで、書き出し側は元の順に結果を待てる
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        ordered.put(result);
+        work.put(new Task(lines, n, result));
+
+        if (n < BATCH_LINES) {
+          break;
+        }
+      }
+      ordered.put(CompletableFuture.completedFuture(END));
+    } catch (IOException | RuntimeException e) {
+      ordered.put(CompletableFuture.failedFuture(e));
+    } finally {
+      for (int i = 0; i < workers; i++) {
+        work.put(POISON);
+      }
+    }
+    return null;
+  }
+
+  /** マスキング段：バッチを取り出して処理し、結果を完了させる。 */
+  private Void mask(BlockingQueue<Task> work, boolean dryRun) throws InterruptedException {
+    MaskContext ctx = contexts.get();
+
+    while (true) {
+      Task task = work.take();
+      if (task == POISON) {
+        return null;
+      }
+      try {
+        ctx.resetCounts();
+        StringBuilder sb = dryRun ? null : new StringBuilder(task.size() * 64);
+        for (int i = 0; i < task.size(); i++) {
+          String masked = engine.mask(task.lines()[i], ctx, dryRun);
+          if (sb != null) {
+            sb.append(masked).append(LINE_SEPARATOR);
+          }
+        }
+        long[] counts = Arrays.copyOf(ctx.counts(), ctx.counts().length);
+        task.result()
+            .complete(
+                new Result(
+                    sb == null ? "" : sb.toString(), counts, ctx.totalCount(), ctx.lines()));
+      } catch (RuntimeException e) {
+        task.result().completeExceptionally(e);
+      }
+    }
+  }
+
+  private static <T> T take(BlockingQueue<T> queue) throws IOException {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("処理が中断されました");
+    }
+  }
+
+  /** 1バッチ分の行（lines の先頭 size 行が有効）。 */
+  private record Task(String[] lines, int size, CompletableFuture<Result> result) {}
+
+  /** 1バッチ分の処理結果（改行込みの出力 + 件数 + 行数）。 */
+  private record Result(String text, long[] counts, long total, long lines) {}
+}
@@ -0,0 +1,544 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * ファイル処理（{@link FileMaskingProcessor}）の実行オプション。
+ *
+ * <p>マスキング結果（出力内容・件数）には影響せず、処理の進め方（並列度など）だけを切り替える。 例外として {@link
+ * #setPassthroughUnchanged(boolean)} を有効にした場合は、改行が入力のまま残る。
+ *
+ * <p>未設定の項目は既定値（従来どおりの逐次処理）になる。
+ */
+public class ProcessingOptions {
+
+  /** ストリーム処理での flush の既定間隔（ms）。 */
+  public static final long DEFAULT_STREAM_FLUSH_MILLIS = 200;
+
+  /** 追従モードでのポーリングの既定間隔（ms）。 */
+  public static final long DEFAULT_FOLLOW_POLL_MILLIS = 1000;
+
+  /** メトリクスのテキストファイルを書き直す既定間隔（ms）。 */
+  public static final long DEFAULT_METRICS_INTERVAL_MILLIS = 10_000;
+
+  /** 1チャンクの既定サイズ（8 MiB）。 */
+  public static final int DEFAULT_CHUNK_SIZE_BYTES = 8 * 1024 * 1024;
+
+  private int parallelism = 1;
+  private long chunkThresholdBytes = 0;
+  private int chunkSizeBytes = DEFAULT_CHUNK_SIZE_BYTES;
+  private long mappedReadThresholdBytes = 0;
+  private int pipelineWorkers = 0;
+  private boolean byteLevelMasking = false;
+  private boolean passthroughUnchanged = false;
+  private long streamFlushMillis = DEFAULT_STREAM_FLUSH_MILLIS;
+  private long followPollMillis = DEFAULT_FOLLOW_POLL_MILLIS;
+  private boolean incremental = false;
+  private List<String> includeGlobs = List.of();
+  private List<String> excludeGlobs = List.of();
+  private int discoveryThreads = 0;
+  private BinaryPolicy binaryPolicy = BinaryPolicy.SKIP;
+  private boolean largestFirst = true;
+  private OutputCompression outputCompression = OutputCompression.MATCH_INPUT;
+  private int compressionThreads = 0;
+  private boolean expandArchives = true;
+  private int longLineThresholdChars = 0;
+  private boolean collectMetrics = false;
+  private boolean flightRecording = false;
+  private Path metricsFile = null;
+  private int metricsPort = 0;
+  private long metricsIntervalMillis = DEFAULT_METRICS_INTERVAL_MILLIS;
+
+  /** 既定値で生成する。 */
+  public ProcessingOptions() {}
+
+  /** 既定値（逐次処理）のオプションを返す。 */
+  public static ProcessingOptions defaults() {
+    return new ProcessingOptions();
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * 複数ファイルを同時に処理するワーカー数を設定する。
+   *
+   * <p>1 の場合は呼び出しスレッドで1ファイルずつ処理する（従来動作）。
+   *
+   * @param parallelism ワーカー数（1以上）
+   * @return this
+   */
+  public ProcessingOptions setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism は1以上を指定してください: " + parallelism);
+    }
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  public long getChunkThresholdBytes() {
+    return chunkThresholdBytes;
+  }
+
+  /**
+   * 1ファイルを分割して並列処理する対象のサイズ（バイト）を設定する。
+   *
+   * <p>並列度が 2 以上で、ファイルサイズがこの値以上の場合に、ファイルを行境界で分割してワーカーで同時に処理する。 0 の場合は分割しない（既定）。
+   *
+   * @param chunkThresholdBytes しきい値（0以上、0 は無効）
+   * @return this
+   */
+  public ProcessingOptions setChunkThresholdBytes(long chunkThresholdBytes) {
+    if (chunkThresholdBytes < 0) {
+      throw new IllegalArgumentException(
+          "chunkThresholdBytes は0以上を指定してください: " + chunkThresholdBytes);
+    }
+    this.chunkThresholdBytes = chunkThresholdBytes;
+    return this;
+  }
+
+  public int getChunkSizeBytes() {
+    return chunkSizeBytes;
+  }
+
+  /**
+   * 分割処理での1チャンクの目安サイズ（バイト）を設定する。
+   *
+   * <p>チャンクの終端は行境界に合わせるため、実際のサイズは行の長さの分だけ前後する。
+   *
+   * @param chunkSizeBytes 目安サイズ（1以上）
+   * @return this
+   */
+  public ProcessingOptions setChunkSizeBytes(int chunkSizeBytes) {
+    if (chunkSizeBytes < 1) {
+      throw new IllegalArgumentException("chunkSizeBytes は1以上を指定してください: " + chunkSizeBytes);
+    }
+    this.chunkSizeBytes = chunkSizeBytes;
+    return this;
+  }
+
+  public long getMappedReadThresholdBytes() {
+    return mappedReadThresholdBytes;
+  }
+
+  /**
+   * メモリマップで読み込む対象のサイズ（バイト）を設定する。
+   *
+   * <p>ファイルサイズがこの値以上の場合は {@link MappedLineReader} で読む。0 の場合は常に従来の reader で読む（既定）。
+   *
+   * @param mappedReadThresholdBytes しきい値（0以上、0 は無効）
+   * @return this
+   */
+  public ProcessingOptions setMappedReadThresholdBytes(long mappedReadThresholdBytes) {
+    if (mappedReadThresholdBytes < 0) {
+      throw new IllegalArgumentException(
+          "mappedReadThresholdBytes は0以上を指定してください: " + mappedReadThresholdBytes);
+    }
+    this.mappedReadThresholdBytes = mappedReadThresholdBytes;
+    return this;
+  }
+
+  public int getPipelineWorkers() {
+    return pipelineWorkers;
+  }
+
+  /**
+   * 1ファイルを「読み込み → マスキング → 書き出し」のパイプラインで処理する場合の、マスキングワーカー数を設定する。
+   *
+   * <p>読み込み/書き出しとマスキングを別スレッドで重ねて実行する（{@link PipelinedFileMasker}）。 並列度が 1 の場合のみ有効（複数ファイルを同時に処理する場合は、ファイル間ですでに重なるため）。
+   * 0 の場合は使わない（既定）。
+   *
+   * @param pipelineWorkers ワーカー数（0以上、0 は無効）
+   * @return this
+   */
+  public ProcessingOptions setPipelineWorkers(int pipelineWorkers) {
+    if (pipelineWorkers < 0) {
+      throw new IllegalArgumentException("pipelineWorkers は0以上を指定してください: " + pipelineWorkers);
+    }
+    this.pipelineWorkers = pipelineWorkers;
+    return this;
+  }
+
+  public boolean isByteLevelMasking() {
+    return byteLevelMasking;
+  }
+
+  /**
+   * ルールセットが ASCII 安全な場合に、UTF-8 のバイト列のままマスキングするかを設定する。
+   *
+   * <p>true の場合、{@link io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet#isAsciiSafe()}
+   * が成り立つ実行では行のデコード/エンコードを省く（出力内容・件数は変わらない）。 ASCII 安全でないルールを含む場合は従来どおり文字列として処理する。
+   * バイト単位の処理を行う実行では、分割処理・パイプライン処理は使わない。
+   *
+   * @param byteLevelMasking true: バイト単位の処理を使う
+   * @return this
+   */
+  public ProcessingOptions setByteLevelMasking(boolean byteLevelMasking) {
+    this.byteLevelMasking = byteLevelMasking;
+    return this;
+  }
+
+  public boolean isPassthroughUnchanged() {
+    return passthroughUnchanged;
+  }
+
+  /**
+   * 置換の無い範囲を入力ファイルからそのまま転送するかを設定する。
+   *
+   * <p>true の場合、置換が発生した行だけを書き直し、それ以外は {@link java.nio.channels.FileChannel#transferTo}
+   * で出力へ転送する（{@link PassthroughFileMasker}）。 改行は入力のバイト列のまま残る（既定の出力は OS の改行に統一する）。
+   * ファイル単位の処理でのみ行うため、有効な場合は分割処理・パイプライン処理を使わない（gzip で入出力するファイルを除く）。
+   *
+   * @param passthroughUnchanged true: 置換の無い範囲をそのまま転送する
+   * @return this
+   */
+  public ProcessingOptions setPassthroughUnchanged(boolean passthroughUnchanged) {
+    this.passthroughUnchanged = passthroughUnchanged;
+    return this;
+  }
+
+  public long getStreamFlushMillis() {
+    return streamFlushMillis;
+  }
+
+  /**
+   * ストリーム処理（{@link StreamMasker}）で、入力が流れ続けている間に出力を flush する間隔（ms）を設定する。
+   *
+   * <p>入力が途切れたとき（次の読み込みで待つとき）は、この間隔に関わらずすぐに flush する。 0 の場合は1行ごとに flush する。
+   *
+   * @param streamFlushMillis 間隔（0以上）
+   * @return this
+   */
+  public ProcessingOptions setStreamFlushMillis(long streamFlushMillis) {
+    if (streamFlushMillis < 0) {
+      throw new IllegalArgumentException(
+          "streamFlushMillis は0以上を指定してください: " + streamFlushMillis);
+    }
+    this.streamFlushMillis = streamFlushMillis;
+    return this;
+  }
+
+  public long getFollowPollMillis() {
+    return followPollMillis;
+  }
+
+  /**
+   * 追従モード（{@link FileFollower}）で、変更の通知が無くても入力を確認する間隔（ms）を設定する。
+   *
+   * <p>変更の通知（WatchService）を取りこぼした場合や、通知が使えない環境でも、この間隔で追記を検出する。
+   *
+   * @param followPollMillis 間隔（1以上）
+   * @return this
+   */
+  public ProcessingOptions setFollowPollMillis(long followPollMillis) {
+    if (followPollMillis < 1) {
+      throw new IllegalArgumentException("followPollMillis は1以上を指定してください: " + followPollMillis);
+    }
+    this.followPollMillis = followPollMillis;
+    return this;
+  }
+
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  /**
+   * 前回から変わっていない入力ファイルの処理を省く（差分実行）かを設定する。
+   *
+   * <p>true の場合、出力ベース直下のマニフェスト（{@value RunManifest#FILE_NAME}）に入力ファイルの状態と件数を記録し、
+   * 次回以降はサイズ・更新日時（必要なら内容の SHA-256）とルールセットが同じファイルの処理を省いて、前回の件数をレポートに載せる。
+   * dryRun では使わない。
+   *
+   * @param incremental true: 差分実行する
+   * @return this
+   */
+  public ProcessingOptions setIncremental(boolean incremental) {
+    this.incremental = incremental;
+    return this;
+  }
+
+  public List<String> getIncludeGlobs() {
+    return includeGlobs;
+  }
+
+  /**
+   * 処理対象にするファイルの glob パターンを設定する（例: {@code **}{@code /*.log}）。
+   *
+   * <p>入力ベースからの相対パスと照合する（{@code /} を含まないパターンはファイル名と照合する）。空ならすべてのファイルが対象（既定）。
+   *
+   * @param includeGlobs パターン一覧
+   * @return this
+   */
+  public ProcessingOptions setIncludeGlobs(List<String> includeGlobs) {
+    this.includeGlobs = List.copyOf(includeGlobs);
+    return this;
+  }
+
+  public List<String> getExcludeGlobs() {
+    return excludeGlobs;
+  }
+
+  /**
+   * 処理対象外にするファイル/ディレクトリの glob パターンを設定する（例: {@code *.gz.bak}）。
+   *
+   * <p>一致したディレクトリは配下ごと辿らない。
+   *
+   * @param excludeGlobs パターン一覧
+   * @return this
+   */
+  public ProcessingOptions setExcludeGlobs(List<String> excludeGlobs) {
+    this.excludeGlobs = List.copyOf(excludeGlobs);
+    return this;
+  }
+
+  public int getDiscoveryThreads() {
+    return discoveryThreads;
+  }
+
+  /**
+   * 入力ディレクトリを辿るスレッド数を設定する。
+   *
+   * <p>1 以上の場合は、複数スレッドで辿りながら見つかったファイルから処理を始める（{@link ParallelInputDiscovery}）。
+   * 0 の場合は、すべて列挙してから処理を始める（既定）。 いずれの場合もレポートの順序は同じ（relative の文字列順）。
+   *
+   * @param discoveryThreads スレッド数（0以上）
+   * @return this
+   */
+  public ProcessingOptions setDiscoveryThreads(int discoveryThreads) {
+    if (discoveryThreads < 0) {
+      throw new IllegalArgumentException("discoveryThreads は0以上を指定してください: " + discoveryThreads);
+    }
+    this.discoveryThreads = discoveryThreads;
+    return this;
+  }
+
+  public BinaryPolicy getBinaryPolicy() {
+    return binaryPolicy;
+  }
+
+  /**
+   * バイナリと判定した入力ファイルの扱いを設定する。
+   *
+   * <p>判定は各ファイルの先頭数KB（マジックナンバー・NUL バイト・不正な UTF-8 の割合）で行う。既定は {@link BinaryPolicy#SKIP}。
+   *
+   * @param binaryPolicy 扱い
+   * @return this
+   */
+  public ProcessingOptions setBinaryPolicy(BinaryPolicy binaryPolicy) {
+    this.binaryPolicy = Objects.requireNonNull(binaryPolicy, "binaryPolicy");
+    return this;
+  }
+
+  public boolean isLargestFirst() {
+    return largestFirst;
+  }
+
+  /**
+   * 並列処理（並列度 2 以上）で、大きいファイルから先に処理を始めるかを設定する。
+   *
+   * <p>true の場合、列挙時に取得したサイズの降順でワーカーへ投入する（既定）。 分割処理（{@link #setChunkThresholdBytes(long)}）の対象になる大きなファイルも先に処理される。
+   * レポートの順序は変わらない（relative の文字列順）。 入力ディレクトリを辿りながら処理する場合（{@link #setDiscoveryThreads(int)}）は、見つかった順に処理する。
+   *
+   * @param largestFirst true: 大きいファイルから処理する
+   * @return this
+   */
+  public ProcessingOptions setLargestFirst(boolean largestFirst) {
+    this.largestFirst = largestFirst;
+    return this;
+  }
+
+  public OutputCompression getOutputCompression() {
+    return outputCompression;
+  }
+
+  /**
+   * 出力ファイルの圧縮方法を設定する。
+   *
+   * <p>gzip の入力（先頭のマジックナンバーで判定）は常に展開しながら読む。既定は {@link OutputCompression#MATCH_INPUT}（入力が
+   * gzip なら gzip で出力）。 gzip で入出力するファイルは、分割処理・パイプライン処理・入力のままコピーする処理の対象にしない。
+   *
+   * @param outputCompression 圧縮方法
+   * @return this
+   */
+  public ProcessingOptions setOutputCompression(OutputCompression outputCompression) {
+    this.outputCompression = Objects.requireNonNull(outputCompression, "outputCompression");
+    return this;
+  }
+
+  public int getCompressionThreads() {
+    return compressionThreads;
+  }
+
+  /**
+   * gzip 出力を圧縮するスレッド数を設定する。
+   *
+   * <p>2 以上の場合、出力が数MB以上になるファイルはブロックごとに独立した gzip メンバーとして複数スレッドで圧縮する（展開結果は同じ）。
+   * スレッドは実行全体で共有し、並列度によらずこの本数になる。 0 の場合は1ファイルを1スレッドで圧縮する（既定）。
+   *
+   * @param compressionThreads スレッド数（0以上）
+   * @return this
+   */
+  public ProcessingOptions setCompressionThreads(int compressionThreads) {
+    if (compressionThreads < 0) {
+      throw new IllegalArgumentException("compressionThreads は0以上を指定してください: " + compressionThreads);
+    }
+    this.compressionThreads = compressionThreads;
+    return this;
+  }
+
+  public boolean isExpandArchives() {
+    return expandArchives;
+  }
+
+  /**
+   * zip / tar（{@code .tar.gz} を含む）の入力を、エントリごとにマスキングするかを設定する。
+   *
+   * <p>true の場合、アーカイブをディスクへ展開せずにエントリを読みながら処理し、同じ構造のアーカイブを出力する（既定）。
+   * レポートにはエントリごとの結果が載る。 false の場合はバイナリとして扱う（{@link #setBinaryPolicy(BinaryPolicy)}）。
+   *
+   * @param expandArchives true: アーカイブのエントリを処理する
+   * @return this
+   */
+  public ProcessingOptions setExpandArchives(boolean expandArchives) {
+    this.expandArchives = expandArchives;
+    return this;
+  }
+
+  public int getLongLineThresholdChars() {
+    return longLineThresholdChars;
+  }
+
+  /**
+   * 極端に長い行を、行全体を1つの文字列にせずに処理するしきい値（文字数）を設定する。
+   *
+   * <p>1以上の場合、この文字数を超えた行は区切って少しずつマスキングする（{@link LongLineMasker}）。 出力内容・件数は行全体で処理した場合と同じ。
+   * メモリ使用量は行の長さではなくマッチの長さで決まる（行末まで続きうるルール（例: {@code password=.*}）のマッチは、確定するまで行末まで保持する）。
+   * この場合、分割処理・パイプライン処理・入力の転送・バイト単位の処理・メモリマップでの読み込みは使わない。
+   * 0 の場合は行全体を読んでから処理する（既定）。
+   *
+   * @param longLineThresholdChars しきい値（0以上、0 は無効）
+   * @return this
+   */
+  public ProcessingOptions setLongLineThresholdChars(int longLineThresholdChars) {
+    if (longLineThresholdChars < 0) {
+      throw new IllegalArgumentException(
+          "longLineThresholdChars は0以上を指定してください: " + longLineThresholdChars);
+    }
+    this.longLineThresholdChars = longLineThresholdChars;
+    return this;
+  }
+
+  public boolean isCollectMetrics() {
+    return collectMetrics;
+  }
+
+  /**
+   * ルールごと・ファイルごとの処理時間と処理量を計測するかを設定する。
+   *
+   * <p>true の場合、ルールごとの評価時間の合計（{@link
+   * io.github.seiya_matsuoka.interactivelogmaskingcli.core.RuleTimer}）と、ファイルごとの行数・バイト数・処理時間をレポートに記録する。
+   * ルールを1つ適用するたびに時刻を取得するため、そのぶん処理は遅くなる。false の場合は計測自体を行わない（既定）。
+   *
+   * @param collectMetrics true: 計測する
+   * @return this
+   */
+  public ProcessingOptions setCollectMetrics(boolean collectMetrics) {
+    this.collectMetrics = collectMetrics;
+    return this;
+  }
+
+  public boolean isFlightRecording() {
+    return flightRecording;
+  }
+
+  /**
+   * 実行の間 JDK Flight Recorder で記録し、レポートと同じ名前の .jfr ファイル（例: {@code report-*.jfr}）を出力するかを設定する。
+   *
+   * <p>JDK 付属の profile 設定（CPU のサンプリングなど）に加えて、ファイルごと・遅いルール適用ごとのイベントを記録する（{@link
+   * io.github.seiya_matsuoka.interactivelogmaskingcli.jfr.RunRecording}）。 ファイル単位の実行（{@code
+   * FileMaskingService#run}）でのみ有効。
+   *
+   * @param flightRecording true: 記録する
+   * @return this
+   */
+  public ProcessingOptions setFlightRecording(boolean flightRecording) {
+    this.flightRecording = flightRecording;
+    return this;
+  }
+
+  public Path getMetricsFile() {
+    return metricsFile;
+  }
+
+  /**
+   * 実行中のメトリクス（行数・バイト数・ルール別の置換件数・所要時間の分布）を Prometheus のテキスト形式で書き出すファイルを設定する。
+   *
+   * <p>{@link #setMetricsIntervalMillis(long)} の間隔で書き直し、終了時に最後の値を書く（node_exporter の textfile collector
+   * 向け）。
+   *
+   * @param metricsFile 出力先（null: 出力しない。既定）
+   * @return this
+   */
+  public ProcessingOptions setMetricsFile(Path metricsFile) {
+    this.metricsFile = metricsFile;
+    return this;
+  }
+
+  public int getMetricsPort() {
+    return metricsPort;
+  }
+
+  /**
+   * 実行中のメトリクスを HTTP（ループバックアドレスの {@code /metrics}）で公開するポートを設定する。
+   *
+   * @param metricsPort ポート（1〜65535。0 = 公開しない（既定））
+   * @return this
+   */
+  public ProcessingOptions setMetricsPort(int metricsPort) {
+    if (metricsPort < 0 || metricsPort > 65535) {
+      throw new IllegalArgumentException("metricsPort は0〜65535を指定してください: " + metricsPort);
+    }
+    this.metricsPort = metricsPort;
+    return this;
+  }
+
+  public long getMetricsIntervalMillis() {
+    return metricsIntervalMillis;
+  }
+
+  /**
+   * メトリクスのテキストファイル（{@link #setMetricsFile(Path)}）を書き直す間隔（ms）を設定する。
+   *
+   * @param metricsIntervalMillis 間隔（1以上）
+   * @return this
+   */
+  public ProcessingOptions setMetricsIntervalMillis(long metricsIntervalMillis) {
+    if (metricsIntervalMillis < 1) {
+      throw new IllegalArgumentException(
+          "metricsIntervalMillis は1以上を指定してください: " + metricsIntervalMillis);
+    }
+    this.metricsIntervalMillis = metricsIntervalMillis;
+    return this;
+  }
+
+  /** メトリクスを公開するか（テキストファイル・HTTP のいずれかの指定がある）。 */
+  public boolean isExportMetrics() {
+    return metricsFile != null || metricsPort > 0;
+  }
+
+  /** include / exclude の glob から入力の絞り込みを構築する。 */
+  InputFileFilter inputFilter() {
+    return InputFileFilter.of(includeGlobs, excludeGlobs);
+  }
+
+  /** ファイルサイズが分割処理の対象か（並列度 2 以上かつしきい値以上。長い行を区切って処理する場合は対象外）。 */
+  boolean shouldSplit(long fileSize) {
+    return parallelism > 1
+        && chunkThresholdBytes > 0
+        && fileSize >= chunkThresholdBytes
+        && longLineThresholdChars == 0;
+  }
+}
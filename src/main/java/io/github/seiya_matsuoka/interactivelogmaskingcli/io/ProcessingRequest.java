@@ -0,0 +1,128 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.FileReportListener;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * ファイル処理1回分の依頼（{@link FileMaskingProcessor#process(ProcessingRequest)} に渡す）。
+ *
+ * <p>必須の項目は {@link #of} で指定し、任意の項目（実行オプション・結果の受け取り先・進捗・ファイル別の結果を保持するか）は with
+ * で差し替える。
+ *
+ * @param inputPath 入力（ファイル or ディレクトリ）
+ * @param outputBase 出力ベース（例: out/）
+ * @param ruleSet コンパイル済みルールセット
+ * @param suffix 出力ファイル名サフィックス（例: "_masked"。nullは空扱い）
+ * @param dryRun true: 件数集計のみ（ファイル生成しない）
+ * @param options 実行オプション（nullは既定値扱い）
+ * @param listener ファイルごとの結果の受け取り先（nullは受け取らない）
+ * @param progress 進捗の加算先（nullは公開しない）
+ * @param keepFileReports true: 戻り値のレポートにファイル別の結果を載せる。false: listener へ渡すだけで保持しない
+ *     （ファイル数によらないメモリで実行する。レポートにはファイル数・スキップしたファイルと合計だけが載る）
+ */
+public record ProcessingRequest(
+    Path inputPath,
+    Path outputBase,
+    CompiledRuleSet ruleSet,
+    String suffix,
+    boolean dryRun,
+    ProcessingOptions options,
+    FileReportListener listener,
+    ProgressTracker progress,
+    boolean keepFileReports) {
+
+  public ProcessingRequest {
+    Objects.requireNonNull(inputPath, "inputPath");
+    Objects.requireNonNull(outputBase, "outputBase");
+    Objects.requireNonNull(ruleSet, "ruleSet");
+
+    // 任意の項目は null を許容するが、扱いやすいよう既定値へ寄せる
+    suffix = (suffix == null) ? "" : suffix;
+    options = (options == null) ? ProcessingOptions.defaults() : options;
+    listener = (listener == null) ? FileReportListener.NONE : listener;
+    progress = (progress == null) ? new ProgressTracker() : progress;
+  }
+
+  /** 既定のオプションで処理する依頼を生成する。 */
+  public static ProcessingRequest of(
+      Path inputPath, Path outputBase, CompiledRuleSet ruleSet, String suffix, boolean dryRun) {
+    return new ProcessingRequest(
+        inputPath, outputBase, ruleSet, suffix, dryRun, null, null, null, true);
+  }
+
+  /** 実行オプションだけを差し替えた依頼を返す。 */
+  public ProcessingRequest withOptions(ProcessingOptions options) {
+    return new ProcessingRequest(
+        inputPath,
+        outputBase,
+        ruleSet,
+        suffix,
+        dryRun,
+        options,
+        listener,
+        progress,
+        keepFileReports);
+  }
+
+  /** ファイルごとの結果の受け取り先だけを差し替えた依頼を返す。 */
+  public ProcessingRequest withListener(FileReportListener listener) {
+    return new ProcessingRequest(
+        inputPath,
+        outputBase,
+        ruleSet,
+        suffix,
+        dryRun,
+        options,
+        listener,
+        progress,
+        keepFileReports);
+  }
+
+  /** 進捗の加算先だけを差し替えた依頼を返す。 */
+  public ProcessingRequest withProgress(ProgressTracker progress) {
+    return new ProcessingRequest(
+        inputPath,
+        outputBase,
+        ruleSet,
+        suffix,
+        dryRun,
+        options,
+        listener,
+        progress,
+        keepFileReports);
+  }
+
+  /**
+   * ファイル別の結果を戻り値のレポートに保持するかだけを差し替えた依頼を返す。
+   *
+   * <p>false にする場合は、ファイル別の結果を listener（レポートを書き足すストリームなど）で受け取ること。
+   */
+  public ProcessingRequest withFileReports(boolean keepFileReports) {
+    return new ProcessingRequest(
+        inputPath,
+        outputBase,
+        ruleSet,
+        suffix,
+        dryRun,
+        options,
+        listener,
+        progress,
+        keepFileReports);
+  }
+
+  /** ルールセットだけを差し替えた依頼を返す（計測用のタイマーを持つルールセットにする場合など）。 */
+  public ProcessingRequest withRuleSet(CompiledRuleSet ruleSet) {
+    return new ProcessingRequest(
+        inputPath,
+        outputBase,
+        ruleSet,
+        suffix,
+        dryRun,
+        options,
+        listener,
+        progress,
+        keepFileReports);
+  }
+}
@@ -0,0 +1,106 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 実行中の進捗（ファイル数・バイト数・置換件数）。
+ *
+ * <p>{@link FileMaskingProcessor} が入力を見つけるたび・1入力ファイルの処理が終わるたびに加算し、 表示側（対話 CLI
+ * の進捗表示など）は別スレッドから {@link #snapshot()} で読む。 加算は {@link LongAdder} で行うため、ワーカースレッドはロックで待たない。
+ *
+ * <p>入力を辿りながら処理する場合、合計（files / bytes の total）は入力を辿り終えるまで増え続ける。 辿り終えたかは {@link
+ * Snapshot#totalsKnown()} で分かる。
+ *
+ * <p>バイト数は入力ファイルのサイズ（gzip は圧縮後）で、ファイル単位で加算する（1ファイルの途中では増えない）。
+ */
+public final class ProgressTracker {
+
+  private final long startedNanos = System.nanoTime();
+
+  private final LongAdder filesTotal = new LongAdder();
+  private final LongAdder bytesTotal = new LongAdder();
+  private final LongAdder filesDone = new LongAdder();
+  private final LongAdder bytesDone = new LongAdder();
+  private final LongAdder hits = new LongAdder();
+
+  private volatile boolean totalsKnown;
+
+  /** 計測を始める（経過時間は生成した時点から数える）。 */
+  public ProgressTracker() {}
+
+  /** 入力ファイルを1つ見つけた。 */
+  void discovered(long bytes) {
+    filesTotal.increment();
+    bytesTotal.add(bytes);
+  }
+
+  /** 入力をすべて辿り終えた（以降、合計は増えない）。 */
+  void discoveryFinished() {
+    totalsKnown = true;
+  }
+
+  /** 1入力ファイル（アーカイブは1アーカイブ）の処理が終わった。 */
+  void completed(long bytes, long hitCount) {
+    filesDone.increment();
+    bytesDone.add(bytes);
+    hits.add(hitCount);
+  }
+
+  /**
+   * 現在の値を読む（各値は読んだ時点のもの。値どうしが同じ瞬間のものとは限らない）。
+   *
+   * @return 現在の進捗
+   */
+  public Snapshot snapshot() {
+    // 合計を後に読み、完了数が合計を超えて見えないようにする
+    long fd = filesDone.sum();
+    long bd = bytesDone.sum();
+    long h = hits.sum();
+    boolean known = totalsKnown;
+    long ft = Math.max(filesTotal.sum(), fd);
+    long bt = Math.max(bytesTotal.sum(), bd);
+    return new Snapshot(fd, ft, bd, bt, h, known, System.nanoTime() - startedNanos);
+  }
+
+  /**
+   * 進捗の値。
+   *
+   * @param filesDone 処理が終わった入力ファイル数
+   * @param filesTotal 見つかった入力ファイル数
+   * @param bytesDone 処理が終わった入力のバイト数
+   * @param bytesTotal 見つかった入力のバイト数
+   * @param hits これまでの置換件数
+   * @param totalsKnown true: 入力をすべて辿り終え、合計が確定している
+   * @param elapsedNanos 計測開始からの経過時間（ナノ秒）
+   */
+  public record Snapshot(
+      long filesDone,
+      long filesTotal,
+      long bytesDone,
+      long bytesTotal,
+      long hits,
+      boolean totalsKnown,
+      long elapsedNanos) {
+
+    /** 完了の割合（0.0〜1.0。バイト数で求め、入力が空の場合はファイル数で求める）。 */
+    public double fraction() {
+      if (bytesTotal > 0) {
+        return (double) bytesDone / bytesTotal;
+      }
+      return (filesTotal > 0) ? (double) filesDone / filesTotal : 0.0;
+    }
+
+    /**
+     * 残り時間の見込み（ナノ秒）。これまでの平均速度から求める。
+     *
+     * @return 残り時間。合計が確定していない・まだ何も終わっていない場合は -1
+     */
+    public long etaNanos() {
+      double f = fraction();
+      if (!totalsKnown || f <= 0.0) {
+        return -1L;
+      }
+      return (long) (elapsedNanos * (1.0 - f) / f);
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.StreamingLineMasker;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskedFileReport;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 差分実行用のマニフェスト（前回処理した入力ファイルの状態と件数）。
+ *
+ * <p>サイズ・更新日時・ルールセットの指紋・出力パスが前回と同じで、出力ファイルが残っていれば、処理を省いて前回の件数を使う。
+ * 更新日時だけが変わっている場合は内容の SHA-256 を比べ、同じなら処理を省く（更新日時は記録し直す）。
+ *
+ * <p>記録するサイズ・更新日時は処理の前に読んだ値（{@link Snapshot}）、SHA-256 は処理中に読んだバイト列から求めた値
+ * （{@link ContentHash}）を使う。 処理中に入力が変わった場合は、次回サイズか更新日時が一致せずに処理し直す。
+ * {@link #lookup} は列挙するスレッドから、{@link #record} はワーカーから同時に呼んでよい。
+ */
+final class RunManifest {
+
+  /** out/ 直下に置くマニフェストのファイル名。 */
+  static final String FILE_NAME = ".mask-manifest.json";
+
+  private static final ObjectMapper MAPPER =
+      new ObjectMapper()
+          .enable(SerializationFeature.INDENT_OUTPUT)
+          .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+  private final Path file;
+  private final String rulesFingerprint;
+  private final RunManifestJson json;
+
+  private RunManifest(Path file, String rulesFingerprint, RunManifestJson json) {
+    this.file = file;
+    this.rulesFingerprint = rulesFingerprint;
+    this.json = json;
+  }
+
+  /**
+   * outputBase のマニフェストを読み込む（無ければ空）。
+   *
+   * @param outputBase 出力ベース
+   * @param rulesFingerprint 今回のルールセットと出力形式の指紋
+   */
+  static RunManifest load(Path outputBase, String rulesFingerprint) throws IOException {
+    Path file = outputBase.resolve(FILE_NAME);
+    RunManifestJson json =
+        Files.exists(file)
+            ? MAPPER.readValue(file.toFile(), RunManifestJson.class)
+            : new RunManifestJson();
+    if (json.files == null) {
+      json.files = new TreeMap<>();
+    }
+    return new RunManifest(file, rulesFingerprint, json);
+  }
+
+  /**
+   * 入力ファイルのサイズ・更新日時を読む（処理の前に呼び、{@link #lookup} と {@link #record} に渡す）。
+   *
+   * @param in 入力ファイル
+   * @return 処理前の状態
+   */
+  Snapshot snapshot(InputFileRef in) throws IOException {
+    BasicFileAttributes attrs = Files.readAttributes(in.file(), BasicFileAttributes.class);
+    return new Snapshot(in, attrs.size(), attrs.lastModifiedTime().toMillis());
+  }
+
+  /**
+   * 前回の結果を使えるなら、その結果（{@link MaskedFileReport#cached()} = true）を返す。
+   *
+   * @param state 処理前の入力ファイルの状態
+   * @param outputFile 今回の出力パス
+   * @return 前回の結果（処理が必要なら null）
+   */
+  MaskedFileReport lookup(Snapshot state, Path outputFile) throws IOException {
+    InputFileRef in = state.in();
+    RunManifestJson.EntryJson e;
+    synchronized (this) {
+      e = json.files.get(key(in));
+    }
+    if (e == null
+        || !rulesFingerprint.equals(e.rulesFingerprint)
+        || !outputFile.toString().equals(e.outputFile)
+        || !Files.exists(outputFile)
+        || state.size() != e.size) {
+      return null;
+    }
+    if (state.lastModifiedMillis() != e.lastModifiedMillis) {
+      // 更新日時だけ変わった（touch・コピーし直し等）場合は内容で判定する（処理を省けるなら読むのはこの1回だけ）
+      if (!sha256(in.file()).equals(e.contentSha256)) {
+        return null;
+      }
+      e.lastModifiedMillis = state.lastModifiedMillis();
+    }
+
+    return new MaskedFileReport(
+        in.file(), outputFile, Map.copyOf(e.countsPerRule), e.totalCount, true);
+  }
+
+  /**
+   * 処理したファイルの結果を記録する。
+   *
+   * @param state 処理前に読んだ入力ファイルの状態
+   * @param report ファイル単位の結果
+   * @param contentSha256 処理中に読んだ入力の SHA-256（{@link ContentHash#toHex()}）
+   */
+  void record(Snapshot state, MaskedFileReport report, String contentSha256) {
+    RunManifestJson.EntryJson e = new RunManifestJson.EntryJson();
+    e.size = state.size();
+    e.lastModifiedMillis = state.lastModifiedMillis();
+    e.contentSha256 = contentSha256;
+    e.rulesFingerprint = rulesFingerprint;
+    e.outputFile = report.outputFile().toString();
+    e.totalCount = report.totalCount();
+    e.countsPerRule = new TreeMap<>(report.countsPerRule());
+
+    synchronized (this) {
+      json.files.put(key(state.in()), e);
+    }
+  }
+
+  /** 今回の入力に無いファイルの記録を消す（すべての処理が終わってから呼ぶ）。 */
+  synchronized void retainOnly(List<InputFileRef> inputs) {
+    Set<String> keys = new HashSet<>();
+    for (InputFileRef in : inputs) {
+      keys.add(key(in));
+    }
+    json.files.keySet().retainAll(keys);
+  }
+
+  /** 一時ファイルに書いてから置き換える（途中で止まっても壊れたマニフェストを残さない）。 */
+  synchronized void save() throws IOException {
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+    MAPPER.writeValue(tmp.toFile(), json);
+    try {
+      Files.move(
+          tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static String key(InputFileRef in) {
+    return in.relative().toString();
+  }
+
+  private static String sha256(Path path) throws IOException {
+    ContentHash hash = ContentHash.sha256();
+    try (InputStream in = hash.wrap(Files.newInputStream(path))) {
+      in.transferTo(OutputStream.nullOutputStream());
+    }
+    return hash.toHex();
+  }
+
+  /**
+   * 処理の前に読んだ入力ファイルの状態。
+   *
+   * @param in 入力ファイル
+   * @param size サイズ（bytes）
+   * @param lastModifiedMillis 更新日時（エポックミリ秒）
+   */
+  record Snapshot(InputFileRef in, long size, long lastModifiedMillis) {}
+
+  /**
+   * ルールセットの指紋に、出力内容に影響する設定を加えた値。
+   *
+   * <p>改行の扱い・バイト単位の処理・長い行の扱い（しきい値と探し直す間隔）・バイナリの扱い・アーカイブの展開・出力の圧縮を含める。
+   * 並列度・分割・パイプライン・読み込み方法など、出力を変えない設定は含めない（変えても前回の結果を使える）。
+   */
+  static String fingerprint(String ruleSetFingerprint, ProcessingOptions options) {
+    String eol =
+        options.isPassthroughUnchanged()
+            ? "input"
+            : HexFormat.of().formatHex(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
+    String longLine =
+        (options.getLongLineThresholdChars() > 0)
+            ? options.getLongLineThresholdChars() + "/" + StreamingLineMasker.DEFAULT_RECHECK_CHARS
+            : "off";
+    return ruleSetFingerprint
+        + ";eol="
+        + eol
+        + ";byteLevel="
+        + options.isByteLevelMasking()
+        + ";longLine="
+        + longLine
+        + ";binary="
+        + options.getBinaryPolicy()
+        + ";archives="
+        + options.isExpandArchives()
+        + ";compression="
+        + options.getOutputCompression();
+  }
+}
@@ -0,0 +1,34 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 差分実行用のマニフェスト（out/ 直下の JSON）の入出力用DTO。
+ *
+ * <p>ログ本文は含めない（入力ファイルの状態と件数だけを記録する）。
+ */
+public class RunManifestJson {
+
+  public int version = 1;
+
+  /** 入力ベースからの相対パス -> 前回の処理結果 */
+  public Map<String, EntryJson> files = new TreeMap<>();
+
+  public static class EntryJson {
+    public long size;
+    public long lastModifiedMillis;
+
+    /** 入力の内容の SHA-256（16進） */
+    public String contentSha256;
+
+    /** 処理したときのルールセットと出力形式の指紋 */
+    public String rulesFingerprint;
+
+    public String outputFile;
+    public long totalCount;
+
+    /** ルールID -> 件数 */
+    public Map<String, Long> countsPerRule = new TreeMap<>();
+  }
+}
@@ -0,0 +1,178 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.ByteSequence;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskContext;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngine;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskedFileReport;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 入力ストリーム（標準入力など）を1行ずつマスキングし、出力ストリームへ書き出す（パイプラインのフィルタ用）。
+ *
+ * <p>出力はまとめて書き出し、次の条件で flush する（1行ごとには flush しない）。
+ *
+ * <ul>
+ *   <li>入力がこれ以上すぐには読めない（次の読み込みで待ちが発生する）とき：流量の少ないストリームでも遅延が増えない
+ *   <li>前回の flush から {@link ProcessingOptions#getStreamFlushMillis()} 以上経過したとき：入力が途切れず流れ続けても、出力が溜まり続けない
+ *   <li>入力の終端
+ * </ul>
+ *
+ * <p>改行は入力のバイト列のまま出力する。入力・出力ストリームは閉じない（呼び出し側の所有）。
+ */
+public class StreamMasker {
+
+  /** 標準入力/標準出力を表すパス（レポート上の表記）。 */
+  public static final Path STDIO = Path.of("-");
+
+  private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+  private final MaskEngine engine;
+
+  /** 既定の engine を使用するコンストラクタ。 */
+  public StreamMasker() {
+    this(new MaskEngine());
+  }
+
+  /**
+   * @param engine マスキングコア
+   */
+  public StreamMasker(MaskEngine engine) {
+    this.engine = Objects.requireNonNull(engine, "engine");
+  }
+
+  /**
+   * 入力の終端までマスキングして出力する。
+   *
+   * @param in 入力（UTF-8）
+   * @param out 出力（UTF-8）
+   * @param ruleSet コンパイル済みのルールセット
+   * @param options 実行オプション（flush の間隔・バイト単位の処理の指定に使う）
+   * @return 処理結果（入力/出力のパスは {@link #STDIO}）
+   * @throws IOException 入出力エラー（不正な UTF-8 を含む）
+   */
+  public MaskedFileReport process(
+      InputStream in, OutputStream out, CompiledRuleSet ruleSet, ProcessingOptions options)
+      throws IOException {
+
+    Objects.requireNonNull(in, "in");
+    Objects.requireNonNull(out, "out");
+    Objects.requireNonNull(ruleSet, "ruleSet");
+    Objects.requireNonNull(options, "options");
+
+    MaskContext ctx = new MaskContext(ruleSet);
+    Utf8LineMasker masker =
+        new Utf8LineMasker(engine, options.isByteLevelMasking() && ruleSet.isAsciiSafe());
+
+    Output output =
+        new Output(
+            new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE),
+            TimeUnit.MILLISECONDS.toNanos(options.getStreamFlushMillis()),
+            ctx);
+
+    // 入力を待つ前に出力を flush する（ByteLineReader は閉じない：入力は呼び出し側の所有）
+    ByteLineReader reader = new ByteLineReader(new FlushBeforeWait(in, output));
+
+    ByteSequence line;
+    while ((line = reader.next()) != null) {
+      int eolStart = line.offset() + line.length();
+      int eolLength = reader.terminatorLength();
+
+      byte[] replaced = masker.maskLine(line, ctx);
+      if (replaced == null) {
+        // 変更の無い行は改行ごとそのまま書き出す
+        output.write(line.array(), line.offset(), line.length() + eolLength);
+      } else {
+        output.write(replaced, 0, replaced.length);
+        output.write(line.array(), eolStart, eolLength);
+      }
+      output.consumed += line.length() + eolLength;
+      output.flushIfDue();
+    }
+    output.flush();
+
+    return new MaskedFileReport(
+        STDIO, STDIO, ruleSet.toCountMap(ctx.counts()), ctx.totalCount());
+  }
+
+  /** 出力バッファと、前回の flush 時刻（flush のたびに、それまでの処理量をメトリクスへ加算する）。 */
+  private static final class Output {
+    private final OutputStream out;
+    private final long intervalNanos;
+    private final MaskContext ctx;
+    private long lastFlush = System.nanoTime();
+    private boolean dirty;
+
+    /** 前回の flush 以降に処理した入力のバイト数。 */
+    private long consumed;
+
+    Output(OutputStream out, long intervalNanos, MaskContext ctx) {
+      this.out = out;
+      this.intervalNanos = intervalNanos;
+      this.ctx = ctx;
+    }
+
+    void write(byte[] b, int off, int len) throws IOException {
+      if (len > 0) {
+        out.write(b, off, len);
+        dirty = true;
+      }
+    }
+
+    void flushIfDue() throws IOException {
+      if (dirty && System.nanoTime() - lastFlush >= intervalNanos) {
+        flush();
+      }
+    }
+
+    void flush() throws IOException {
+      if (dirty) {
+        out.flush();
+        dirty = false;
+      }
+      ctx.publishMetrics(consumed);
+      consumed = 0;
+      lastFlush = System.nanoTime();
+    }
+  }
+
+  /** 読み込みで待ちが発生しそうなとき（すぐに読めるデータが無いとき）に、先に出力を flush する入力。 */
+  private static final class FlushBeforeWait extends FilterInputStream {
+    private final Output output;
+
+    FlushBeforeWait(InputStream in, Output output) {
+      super(in);
+      this.output = output;
+    }
+
+    @Override
+    public int read() throws IOException {
+      flushIfIdle();
+      return super.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      flushIfIdle();
+      return super.read(b, off, len);
+    }
+
+    @Override
+    public void close() {
+      // 入力は呼び出し側の所有のため閉じない
+    }
+
+    private void flushIfIdle() throws IOException {
+      if (output.dirty && in.available() == 0) {
+        output.flush();
+      }
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.ByteSequence;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskContext;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngine;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link ByteLineReader} で読んだ UTF-8 の1行をマスキングし、変更があった場合だけ置換後のバイト列を返す。
+ *
+ * <p>変更の無い行は呼び出し側で入力のバイト列をそのまま使えるよう、null を返す（大半の行でコピーが発生しない）。
+ */
+final class Utf8LineMasker {
+
+  private final MaskEngine engine;
+  private final boolean byteLevel;
+
+  /**
+   * @param engine マスキングコア
+   * @param byteLevel true: バイト列のまま処理する（ルールセットが ASCII 安全な場合のみ指定すること）
+   */
+  Utf8LineMasker(MaskEngine engine, boolean byteLevel) {
+    this.engine = engine;
+    this.byteLevel = byteLevel;
+  }
+
+  /**
+   * 1行を処理する（件数は ctx に加算される）。
+   *
+   * @param line 改行を含まない1行（UTF-8 として検証済み）
+   * @param ctx 作業領域
+   * @return 置換後の UTF-8 バイト列（変更が無ければ null）
+   * @throws CharacterCodingException 置換後の文字列を UTF-8 に符号化できない場合
+   */
+  byte[] maskLine(ByteSequence line, MaskContext ctx) throws CharacterCodingException {
+
+    if (byteLevel) {
+      ByteSequence masked = engine.maskBytes(line, ctx, false);
+      if (masked == line || masked.contentEquals(line)) {
+        return null;
+      }
+      byte[] out = new byte[masked.length()];
+      System.arraycopy(masked.array(), masked.offset(), out, 0, masked.length());
+      return out;
+    }
+
+    // ByteLineReader で UTF-8 として検証済みのため、そのまま文字列にできる
+    String text =
+        new String(line.array(), line.offset(), line.length(), StandardCharsets.UTF_8);
+    String masked = engine.mask(text, ctx, false);
+    if (masked == text || masked.equals(text)) {
+      return null;
+    }
+
+    // 符号化できない文字は通常の出力（BufferedWriter）と同様にエラーにする
+    ByteBuffer encoded = StandardCharsets.UTF_8.newEncoder().encode(CharBuffer.wrap(masked));
+    byte[] out = new byte[encoded.remaining()];
+    encoded.get(out);
+    return out;
+  }
+}
@@ -0,0 +1,67 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** ファイル処理で使うワーカースレッド（プール生成・完了待ち）の共通処理。 */
+final class WorkerThreads {
+
+  private WorkerThreads() {}
+
+  /**
+   * 固定数のワーカースレッドを持つプールを生成する。
+   *
+   * <p>スレッドはデーモンにし、処理中の例外で呼び出し側が抜けても JVM の終了を妨げないようにする。
+   *
+   * @param name スレッド名の接頭辞（例: "mask-worker"）
+   * @param threads スレッド数（1以上）
+   * @return プール（呼び出し側で shutdown すること）
+   */
+  static ExecutorService newFixedPool(String name, int threads) {
+    AtomicInteger seq = new AtomicInteger();
+    return Executors.newFixedThreadPool(
+        threads,
+        r -> {
+          Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+  }
+
+  /**
+   * タスクの完了を待ち、タスク内の例外は元の型で投げ直す。
+   *
+   * @param future 待つタスク
+   * @return タスクの結果
+   * @throws IOException タスク内で発生した入出力エラー（割り込みも含む）
+   */
+  static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("処理が中断されました");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException io) {
+        throw io;
+      }
+      if (cause instanceof UncheckedIOException uio) {
+        throw uio.getCause();
+      }
+      if (cause instanceof RuntimeException re) {
+        throw re;
+      }
+      if (cause instanceof Error err) {
+        throw err;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
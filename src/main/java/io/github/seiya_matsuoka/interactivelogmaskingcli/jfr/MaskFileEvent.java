@@ -0,0 +1,42 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 1入力ファイル（アーカイブの場合は1エントリ）の処理（JFR イベント）。
+ *
+ * <p>{@link #begin()} から {@link #commit()} までが処理時間になる。記録していない場合は {@link #shouldCommit()} が
+ * false になり、フィールドの設定（ファイルサイズの取得など）も省ける。
+ */
+@Name(MaskFileEvent.NAME)
+@Label("Mask File")
+@Category({"Log Masking"})
+@Description("1 入力ファイル（アーカイブの場合は 1 エントリ）のマスキング")
+@StackTrace(false)
+@Threshold("0 ms")
+public final class MaskFileEvent extends jdk.jfr.Event {
+
+  /** イベント名。 */
+  public static final String NAME = "io.github.seiya_matsuoka.interactivelogmaskingcli.MaskFile";
+
+  @Label("Path")
+  public String path;
+
+  @Label("Bytes")
+  @Description("入力のバイト数（gzip は圧縮後、アーカイブのエントリは展開後）")
+  @DataAmount
+  public long bytes;
+
+  @Label("Lines")
+  public long lines;
+
+  @Label("Hits")
+  @Description("合計置換件数")
+  public long hits;
+}
@@ -0,0 +1,36 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 1行への1ルールの適用（JFR イベント）。
+ *
+ * <p>適用は行数 × ルール数の回数だけ起きるため、しきい値（既定 1 ms）を超えた遅い適用だけを記録する。
+ * 正規表現のバックトラックなどで遅くなっているルールと行の長さを特定するために使う。 しきい値は記録の設定（.jfc の threshold）で変えられる。
+ */
+@Name(MaskRuleEvent.NAME)
+@Label("Mask Rule")
+@Category({"Log Masking"})
+@Description("1 行への 1 ルールの適用（しきい値を超えたもののみ）")
+@StackTrace(false)
+@Threshold("1 ms")
+public final class MaskRuleEvent extends jdk.jfr.Event {
+
+  /** イベント名。 */
+  public static final String NAME = "io.github.seiya_matsuoka.interactivelogmaskingcli.MaskRule";
+
+  @Label("Rule ID")
+  public String ruleId;
+
+  @Label("Input Length")
+  @Description("ルールを適用した行の長さ（文字数。バイト単位の処理ではバイト数）")
+  public int inputLength;
+
+  @Label("Hits")
+  public int hits;
+}
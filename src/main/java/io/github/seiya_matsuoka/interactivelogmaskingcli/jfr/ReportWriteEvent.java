@@ -0,0 +1,38 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * レポート（report-*.json）の出力（JFR イベント）。
+ *
+ * <p>レポートを開いてから、集計を書いて閉じるまでを1つのイベントにする（ファイル別の結果は実行中に書き足すため、実行時間とほぼ重なる）。
+ */
+@Name(ReportWriteEvent.NAME)
+@Label("Report Write")
+@Category({"Log Masking"})
+@Description("実行レポートの出力")
+@StackTrace(false)
+@Threshold("0 ms")
+public final class ReportWriteEvent extends jdk.jfr.Event {
+
+  /** イベント名。 */
+  public static final String NAME = "io.github.seiya_matsuoka.interactivelogmaskingcli.ReportWrite";
+
+  @Label("Path")
+  public String path;
+
+  @Label("Files")
+  @Description("レポートに書いたファイル別の結果の件数")
+  public int files;
+
+  @Label("Bytes")
+  @Description("レポートのサイズ")
+  @DataAmount
+  public long bytes;
+}
@@ -0,0 +1,73 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.jfr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Objects;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * 1回の実行の間だけ JDK Flight Recorder で記録し、.jfr ファイルとして出力する。
+ *
+ * <p>JDK 付属の {@code profile} 設定（CPU のサンプリング・GC など）に加えて、このツールのイベント（{@link
+ * MaskFileEvent} / {@link MaskRuleEvent} / {@link ReportWriteEvent}）を記録する。 記録していない間は、各イベントは
+ * {@code shouldCommit()} が false になるだけで、ほとんどコストがかからない。
+ */
+public final class RunRecording implements Closeable {
+
+  /** 記録に使う JDK 付属の設定名。 */
+  private static final String CONFIGURATION = "profile";
+
+  private final Recording recording;
+
+  private RunRecording(Recording recording) {
+    this.recording = recording;
+  }
+
+  /**
+   * 記録を開始する。
+   *
+   * @return 開始した記録（{@link #dump(Path)} または {@link #close()} で終える）
+   * @throws IOException JDK 付属の設定を読み込めない場合
+   */
+  public static RunRecording start() throws IOException {
+    Configuration configuration;
+    try {
+      configuration = Configuration.getConfiguration(CONFIGURATION);
+    } catch (ParseException e) {
+      throw new IOException("JFR の設定を読み込めません: " + CONFIGURATION, e);
+    }
+
+    Recording recording = new Recording(configuration);
+    recording.setName("interactive-log-masking-cli");
+    recording.setToDisk(true);
+
+    // 設定ファイルに無いこのツールのイベントは、アノテーションのしきい値で記録する
+    recording.enable(MaskFileEvent.class);
+    recording.enable(MaskRuleEvent.class);
+    recording.enable(ReportWriteEvent.class);
+
+    recording.start();
+    return new RunRecording(recording);
+  }
+
+  /**
+   * 記録を止めて、file へ書き出す（既存ファイルは上書き）。
+   *
+   * @param file 出力先（.jfr）
+   * @throws IOException 書き出しに失敗した場合
+   */
+  public void dump(Path file) throws IOException {
+    Objects.requireNonNull(file, "file");
+    recording.stop();
+    recording.dump(file);
+  }
+
+  /** 記録を破棄する（書き出していない記録は失われる）。 */
+  @Override
+  public void close() {
+    recording.close();
+  }
+}
@@ -0,0 +1,75 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 所要時間のヒストグラム（Prometheus の histogram と同じ、上限つきのバケット）。
+ *
+ * <p>バケットごとの件数と合計時間を {@link LongAdder} で加算するため、複数スレッドから同時に記録してもロックで待たない。
+ * 出力時は累積（上限以下の件数）に変換する。
+ */
+public final class LatencyHistogram {
+
+  private final long[] upperBoundsNanos;
+  private final LongAdder[] buckets;
+  private final LongAdder sumNanos = new LongAdder();
+
+  /**
+   * @param upperBoundsNanos バケットの上限（ナノ秒。昇順。最後の +Inf は含めない）
+   */
+  LatencyHistogram(long... upperBoundsNanos) {
+    for (int i = 1; i < upperBoundsNanos.length; i++) {
+      if (upperBoundsNanos[i] <= upperBoundsNanos[i - 1]) {
+        throw new IllegalArgumentException("バケットの上限は昇順で指定してください");
+      }
+    }
+    this.upperBoundsNanos = upperBoundsNanos.clone();
+    // 最後の要素は +Inf（どの上限も超えたもの）
+    this.buckets = new LongAdder[upperBoundsNanos.length + 1];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * 1件記録する。
+   *
+   * @param nanos 所要時間（ナノ秒）
+   */
+  public void observe(long nanos) {
+    int i = 0;
+    while (i < upperBoundsNanos.length && nanos > upperBoundsNanos[i]) {
+      i++;
+    }
+    buckets[i].increment();
+    sumNanos.add(nanos);
+  }
+
+  /** 記録した件数。 */
+  public long count() {
+    long n = 0;
+    for (LongAdder b : buckets) {
+      n += b.sum();
+    }
+    return n;
+  }
+
+  /** Prometheus のテキスト形式で書く（{@code _bucket} / {@code _sum} / {@code _count}。単位は秒）。 */
+  void writeTo(StringBuilder sb, String name, String help) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(" histogram\n");
+    long cumulative = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      cumulative += buckets[i].sum();
+      String le = (i < upperBoundsNanos.length) ? seconds(upperBoundsNanos[i]) : "+Inf";
+      sb.append(name).append("_bucket{le=\"").append(le).append("\"} ").append(cumulative);
+      sb.append('\n');
+    }
+    sb.append(name).append("_sum ").append(seconds(sumNanos.sum())).append('\n');
+    sb.append(name).append("_count ").append(cumulative).append('\n');
+  }
+
+  private static String seconds(long nanos) {
+    return Double.toString(nanos / 1e9);
+  }
+}
@@ -0,0 +1,173 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 実行中のメトリクス（処理量・ルール別の置換件数・所要時間の分布）。
+ *
+ * <p>マスキングコアと入出力処理が加算し、{@link MetricsExporter} が Prometheus のテキスト形式で公開する。
+ *
+ * <ul>
+ *   <li>行数・バイト数・置換件数は、1ファイル（追従モードでは追記1回分、ストリームでは flush 1回分）ごとにまとめて加算する。
+ *   <li>1行のマスキング時間は {@link #LINE_SAMPLE_INTERVAL} 行に1行だけ計測する（時刻の取得を行ごとに行わない）。
+ * </ul>
+ *
+ * <p>加算はすべて {@link LongAdder} で行い、常に有効にしておける程度のコストに抑える。
+ */
+public final class MaskMetrics {
+
+  /** 1行のマスキング時間を計測する間隔（この行数に1行）。2のべき乗。 */
+  public static final int LINE_SAMPLE_INTERVAL = 64;
+
+  /** メトリクス名の接頭辞。 */
+  static final String PREFIX = "logmask_";
+
+  private final LongAdder files = new LongAdder();
+  private final LongAdder lines = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final Map<String, LongAdder> hits = new ConcurrentHashMap<>();
+
+  // 1行: 1µs〜1s / 1ファイル: 1ms〜10min
+  private final LatencyHistogram lineDuration =
+      new LatencyHistogram(
+          micros(1), micros(5), micros(10), micros(50), micros(100), micros(500), millis(1),
+          millis(5), millis(10), millis(100), millis(1000));
+  private final LatencyHistogram fileDuration =
+      new LatencyHistogram(
+          millis(1), millis(10), millis(100), millis(500), millis(1000), millis(5_000),
+          millis(30_000), millis(60_000), millis(300_000), millis(600_000));
+
+  /** 空のメトリクスを生成する。 */
+  public MaskMetrics() {}
+
+  /**
+   * ルールの置換件数のカウンタを返す（無ければ 0 で作る）。
+   *
+   * <p>ルールセットに結び付けるとき（{@code CompiledRuleSet#withMetrics}）に一度だけ取得し、以降はそのカウンタへ加算する。
+   * 一度も置換の無いルールも 0 として出力される。
+   *
+   * @param ruleId ルールID
+   * @return カウンタ
+   */
+  public LongAdder hits(String ruleId) {
+    return hits.computeIfAbsent(ruleId, k -> new LongAdder());
+  }
+
+  /**
+   * 処理した行数・バイト数を加算する。
+   *
+   * @param lineCount 行数
+   * @param byteCount バイト数（入力のバイト数。分からない場合は 0）
+   */
+  public void addInput(long lineCount, long byteCount) {
+    lines.add(lineCount);
+    bytes.add(byteCount);
+  }
+
+  /**
+   * 1ファイル（アーカイブは1エントリ）の処理が終わった。
+   *
+   * @param nanos 所要時間（ナノ秒）
+   */
+  public void fileCompleted(long nanos) {
+    files.increment();
+    fileDuration.observe(nanos);
+  }
+
+  /**
+   * 1行のマスキング時間を記録する（計測対象の行のみ）。
+   *
+   * @param nanos 所要時間（ナノ秒）
+   */
+  public void lineMasked(long nanos) {
+    lineDuration.observe(nanos);
+  }
+
+  /** 処理した行数。 */
+  public long lines() {
+    return lines.sum();
+  }
+
+  /** 処理した入力のバイト数。 */
+  public long bytes() {
+    return bytes.sum();
+  }
+
+  /** 処理が終わったファイル数。 */
+  public long files() {
+    return files.sum();
+  }
+
+  /** ルール別の置換件数（id -> count。ID の昇順）。 */
+  public Map<String, Long> hitsPerRule() {
+    Map<String, Long> map = new TreeMap<>();
+    hits.forEach((id, n) -> map.put(id, n.sum()));
+    return map;
+  }
+
+  /** 1行のマスキング時間の分布。 */
+  public LatencyHistogram lineDuration() {
+    return lineDuration;
+  }
+
+  /** 1ファイルの処理時間の分布。 */
+  public LatencyHistogram fileDuration() {
+    return fileDuration;
+  }
+
+  /**
+   * Prometheus のテキスト形式（version 0.0.4）に変換する。
+   *
+   * @return テキスト（末尾は改行）
+   */
+  public String toPrometheusText() {
+    StringBuilder sb = new StringBuilder(2048);
+    counter(sb, "files_total", "Input files (archive entries) masked.", files.sum());
+    counter(sb, "lines_total", "Lines masked.", lines.sum());
+    counter(sb, "bytes_total", "Input bytes masked.", bytes.sum());
+
+    String name = PREFIX + "hits_total";
+    sb.append("# HELP ").append(name).append(" Replacements per rule.\n");
+    sb.append("# TYPE ").append(name).append(" counter\n");
+    hitsPerRule()
+        .forEach(
+            (id, n) ->
+                sb.append(name)
+                    .append("{rule=\"")
+                    .append(escapeLabel(id))
+                    .append("\"} ")
+                    .append(n)
+                    .append('\n'));
+
+    lineDuration.writeTo(
+        sb,
+        PREFIX + "line_mask_duration_seconds",
+        "Time to mask one line (sampled 1 in " + LINE_SAMPLE_INTERVAL + " lines).");
+    fileDuration.writeTo(
+        sb, PREFIX + "file_duration_seconds", "Time to mask one input file (archive entry).");
+    return sb.toString();
+  }
+
+  private static void counter(StringBuilder sb, String name, String help, long value) {
+    sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(PREFIX).append(name).append(" counter\n");
+    sb.append(PREFIX).append(name).append(' ').append(value).append('\n');
+  }
+
+  /** ラベル値のエスケープ（\ と " と改行）。 */
+  private static String escapeLabel(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static long micros(long n) {
+    return TimeUnit.MICROSECONDS.toNanos(n);
+  }
+
+  private static long millis(long n) {
+    return TimeUnit.MILLISECONDS.toNanos(n);
+  }
+}
@@ -0,0 +1,165 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MaskMetrics} を Prometheus のテキスト形式で公開する。
+ *
+ * <ul>
+ *   <li>テキストファイル: 一定間隔で書き直す（node_exporter の textfile collector 向け）。一時ファイルに書いてから置き換えるため、
+ *       読み手が書きかけの内容を読むことはない。閉じるときに最後の値を書く。
+ *   <li>HTTP: ループバックアドレスの指定ポートで {@code GET /metrics} に応答する（{@link HttpServer}）。
+ * </ul>
+ *
+ * <p>どちらか一方だけでも、両方でもよい。
+ */
+public final class MetricsExporter implements Closeable {
+
+  /** Prometheus のテキスト形式の Content-Type。 */
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final MaskMetrics metrics;
+  private final Path file;
+  private ScheduledExecutorService timer;
+  private HttpServer server;
+
+  private MetricsExporter(MaskMetrics metrics, Path file) {
+    this.metrics = metrics;
+    this.file = file;
+  }
+
+  /**
+   * 公開を始める。
+   *
+   * @param metrics 公開するメトリクス
+   * @param file テキストファイルの出力先（null: 出力しない）
+   * @param intervalMillis テキストファイルを書き直す間隔（ms。1以上）
+   * @param port HTTP で公開するポート（0: 公開しない）
+   * @return 開始した公開（close で停止する）
+   * @throws IOException ファイルの書き込み・ポートの待ち受けに失敗した場合
+   */
+  public static MetricsExporter start(MaskMetrics metrics, Path file, long intervalMillis, int port)
+      throws IOException {
+    Objects.requireNonNull(metrics, "metrics");
+    if (intervalMillis < 1) {
+      throw new IllegalArgumentException("intervalMillis は1以上を指定してください: " + intervalMillis);
+    }
+    if (port < 0 || port > 65535) {
+      throw new IllegalArgumentException("port は0〜65535を指定してください: " + port);
+    }
+
+    MetricsExporter exporter = new MetricsExporter(metrics, file);
+    boolean ok = false;
+    try {
+      if (file != null) {
+        // 起動直後から読めるように、最初の内容をすぐに書く
+        exporter.writeFile();
+        exporter.timer =
+            Executors.newSingleThreadScheduledExecutor(
+                r -> {
+                  Thread t = new Thread(r, "metrics-writer");
+                  t.setDaemon(true);
+                  return t;
+                });
+        exporter.timer.scheduleWithFixedDelay(
+            exporter::writeFileQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+      }
+      if (port > 0) {
+        exporter.server =
+            HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        exporter.server.createContext("/metrics", exporter::handle);
+        exporter.server.start();
+      }
+      ok = true;
+    } finally {
+      if (!ok) {
+        exporter.close();
+      }
+    }
+    return exporter;
+  }
+
+  /** 公開しているメトリクス。 */
+  public MaskMetrics metrics() {
+    return metrics;
+  }
+
+  /** HTTP で待ち受けているポート（公開していない場合は 0）。 */
+  public int port() {
+    return (server != null) ? server.getAddress().getPort() : 0;
+  }
+
+  /** 公開を停止する（テキストファイルには最後の値を書く）。 */
+  @Override
+  public void close() throws IOException {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+    if (timer != null) {
+      timer.shutdownNow();
+      try {
+        timer.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      timer = null;
+      writeFile();
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] body = metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /** 定期的な書き直し（失敗しても次の機会に書き直すため、ここでは止めない）。 */
+  private void writeFileQuietly() {
+    try {
+      writeFile();
+    } catch (IOException | UncheckedIOException e) {
+      // 書き込み先が一時的に使えない場合など。次の間隔で再試行する
+    }
+  }
+
+  /** 一時ファイルに書いてから置き換える。 */
+  private synchronized void writeFile() throws IOException {
+    Path dir = file.toAbsolutePath().getParent();
+    Files.createDirectories(dir);
+    Path tmp = dir.resolve(file.getFileName() + ".tmp");
+    Files.writeString(tmp, metrics.toPrometheusText(), StandardCharsets.UTF_8);
+    try {
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
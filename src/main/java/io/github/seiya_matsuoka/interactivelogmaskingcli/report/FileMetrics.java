@@ -0,0 +1,16 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.report;
+
+/**
+ * ファイル単位の処理量と処理時間（計測を有効にした実行でのみ記録する）。
+ *
+ * @param lines 処理した行数
+ * @param bytes 入力のバイト数（ファイルはディスク上のサイズ。gzip は圧縮後、アーカイブのエントリは展開後のサイズ）
+ * @param nanos 処理にかかった時間（ナノ秒。読み込み・書き出しを含む）
+ */
+public record FileMetrics(long lines, long bytes, long nanos) {
+
+  /** 1秒あたりの入力バイト数（処理時間が 0 の場合は 0）。 */
+  public long bytesPerSec() {
+    return (nanos <= 0) ? 0L : (long) (bytes * 1_000_000_000.0 / nanos);
+  }
+}
@@ -0,0 +1,24 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.report;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 入力ファイルの処理が終わるたびに、その結果を受け取る（{@link ReportStream} など）。
+ *
+ * <p>並列処理ではワーカースレッドから同時に呼ばれるため、実装はスレッドセーフにすること。
+ */
+@FunctionalInterface
+public interface FileReportListener {
+
+  /** 何もしないリスナー。 */
+  FileReportListener NONE = reports -> {};
+
+  /**
+   * 1つの入力ファイルの処理が終わったときに呼ばれる。
+   *
+   * @param reports 1入力ファイル分の結果（アーカイブの場合はエントリごとの結果）
+   * @throws IOException 書き出しに失敗した場合（実行全体を失敗として扱う）
+   */
+  void completed(List<MaskedFileReport> reports) throws IOException;
+}
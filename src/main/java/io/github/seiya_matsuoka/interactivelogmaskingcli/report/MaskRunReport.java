@@ -7,15 +7,57 @@ import java.util.Map;
 /**
  * 実行全体の処理結果。
  *
+ * <p>ファイル別の結果を保持しない実行（レポートを書き足しながら処理する場合など）では files は空になるが、ファイル数・処理を省いたファイル数・スキップしたファイルと
+ * 合計件数は保持する。
+ *
  * @param inputBase 入力ベース（単一ファイル時はそのファイル、ディレクトリ時はディレクトリ）
  * @param outputBase 出力ベース（例: out/）
- * @param files ファイル単位の結果一覧
+ * @param files ファイル単位の結果一覧（保持しない実行では空）
+ * @param fileCount ファイル単位の結果の件数（アーカイブはエントリごとに数える）
+ * @param cachedCount 前回の結果を使った（処理を省いた）ファイル数
+ * @param skipped スキップしたファイルの結果
  * @param totalPerRule ルール別の合計置換件数
  * @param totalCount 全ファイルの合計置換件数
+ * @param nanosPerRule ルール別の処理時間（ナノ秒。計測しない場合は空）
  */
 public record MaskRunReport(
     Path inputBase,
     Path outputBase,
     List<MaskedFileReport> files,
+    int fileCount,
+    int cachedCount,
+    List<MaskedFileReport> skipped,
     Map<String, Long> totalPerRule,
-    long totalCount) {}
+    long totalCount,
+    Map<String, Long> nanosPerRule) {
+
+  /** ファイル別の結果をすべて保持する実行の結果（件数・スキップしたファイルは files から求める）。 */
+  public MaskRunReport(
+      Path inputBase,
+      Path outputBase,
+      List<MaskedFileReport> files,
+      Map<String, Long> totalPerRule,
+      long totalCount,
+      Map<String, Long> nanosPerRule) {
+    this(
+        inputBase,
+        outputBase,
+        files,
+        files.size(),
+        (int) files.stream().filter(f -> f.cached()).count(),
+        files.stream().filter(f -> f.isSkipped()).toList(),
+        totalPerRule,
+        totalCount,
+        nanosPerRule);
+  }
+
+  /** 処理時間を計測しなかった実行の結果。 */
+  public MaskRunReport(
+      Path inputBase,
+      Path outputBase,
+      List<MaskedFileReport> files,
+      Map<String, Long> totalPerRule,
+      long totalCount) {
+    this(inputBase, outputBase, files, totalPerRule, totalCount, Map.of());
+  }
+}
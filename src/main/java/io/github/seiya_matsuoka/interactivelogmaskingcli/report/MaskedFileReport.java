@@ -10,6 +10,66 @@ import java.util.Map;
  * @param outputFile 出力ファイル
  * @param countsPerRule ルール別の置換件数（id -> count）
  * @param totalCount 合計置換件数
+ * @param cached true: 入力・ルールが前回から変わっていないため処理を省き、前回の件数を使った
+ * @param skippedReason バイナリと判定して処理しなかった場合の理由（例: {@code magic:zip}）。処理した場合は null
+ * @param metrics 処理量と処理時間（計測しない場合・処理しなかった場合は null）
  */
 public record MaskedFileReport(
-    Path inputFile, Path outputFile, Map<String, Long> countsPerRule, long totalCount) {}
+    Path inputFile,
+    Path outputFile,
+    Map<String, Long> countsPerRule,
+    long totalCount,
+    boolean cached,
+    String skippedReason,
+    FileMetrics metrics) {
+
+  /** 計測値を持たない結果。 */
+  public MaskedFileReport(
+      Path inputFile,
+      Path outputFile,
+      Map<String, Long> countsPerRule,
+      long totalCount,
+      boolean cached,
+      String skippedReason) {
+    this(inputFile, outputFile, countsPerRule, totalCount, cached, skippedReason, null);
+  }
+
+  /** 処理した、または前回の結果を使ったファイルの結果。 */
+  public MaskedFileReport(
+      Path inputFile,
+      Path outputFile,
+      Map<String, Long> countsPerRule,
+      long totalCount,
+      boolean cached) {
+    this(inputFile, outputFile, countsPerRule, totalCount, cached, null);
+  }
+
+  /** 処理した（前回の結果を使っていない）ファイルの結果。 */
+  public MaskedFileReport(
+      Path inputFile, Path outputFile, Map<String, Long> countsPerRule, long totalCount) {
+    this(inputFile, outputFile, countsPerRule, totalCount, false);
+  }
+
+  /**
+   * バイナリと判定して処理しなかったファイルの結果（件数は 0）。
+   *
+   * @param inputFile 入力ファイル
+   * @param outputFile 出力ファイル（予定パス。出力はしない）
+   * @param reason 判定の理由
+   * @return 結果
+   */
+  public static MaskedFileReport skipped(Path inputFile, Path outputFile, String reason) {
+    return new MaskedFileReport(inputFile, outputFile, Map.of(), 0L, false, reason);
+  }
+
+  /** 計測値を付けた結果を返す。 */
+  public MaskedFileReport withMetrics(FileMetrics metrics) {
+    return new MaskedFileReport(
+        inputFile, outputFile, countsPerRule, totalCount, cached, skippedReason, metrics);
+  }
+
+  /** バイナリと判定して処理しなかったか。 */
+  public boolean isSkipped() {
+    return skippedReason != null;
+  }
+}
@@ -0,0 +1,174 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.report;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.jfr.ReportWriteEvent;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * 実行中にレポート（report-*.json）を書き出す（{@link ReportWriter#open}）。
+ *
+ * <p>実行条件（rulesSource など）は開いた時点で書き、ファイル別の結果は {@link #completed(List)} で受け取るたびに
+ * {@code files} の配列へ1件ずつ追記する。 実行時間・集計（{@code summary}）と、ルールごとの処理時間を含む {@code ruleMeta}
+ * は {@link #finish} で最後に書く。
+ * ファイル別の結果をメモリに溜めないため、レポートの出力に使うメモリはファイル数によらない。
+ *
+ * <p>{@code files} の並びは {@link #completed(List)} で渡された順（{@code FileMaskingProcessor} は並列処理でも相対パスの順に渡す）。
+ * {@link #finish} を呼ばずに {@link #close()} した場合（実行の失敗など）は、書きかけのレポートを削除する。
+ *
+ * <p>開いてから {@link #finish} までを JFR のイベント（{@link ReportWriteEvent}）として記録する（記録している場合のみ）。
+ *
+ * <p>{@link #completed(List)} は複数スレッドから呼んでよい。
+ */
+public final class ReportStream implements FileReportListener, Closeable {
+
+  private final Path path;
+  private final ObjectWriter writer;
+  private final JsonGenerator generator;
+  private final Map<String, RunReportJson.RuleMetaJson> ruleMeta;
+  private final ReportWriteEvent event = new ReportWriteEvent();
+
+  private int files;
+  private int skippedFiles;
+  private boolean finished;
+  private boolean closed;
+
+  ReportStream(Path path, ObjectMapper mapper, RunReportJson header) throws IOException {
+    this.path = Objects.requireNonNull(path, "path");
+    event.begin();
+    // 1件ごとには flush しない（ファイル数が多い実行で書き込みの回数を増やさない）
+    this.writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    this.generator = mapper.getFactory().createGenerator(path.toFile(), JsonEncoding.UTF8);
+    this.ruleMeta = header.ruleMeta;
+
+    boolean ok = false;
+    try {
+      generator.useDefaultPrettyPrinter();
+      generator.writeStartObject();
+      generator.writeNumberField("schemaVersion", header.schemaVersion);
+      generator.writeStringField("generatedAt", header.generatedAt);
+      generator.writeBooleanField("dryRun", header.dryRun);
+      generator.writeStringField("inputPath", header.inputPath);
+      generator.writeStringField("outputBase", header.outputBase);
+      generator.writeStringField("suffix", header.suffix);
+      generator.writeFieldName("rulesSource");
+      writer.writeValue(generator, header.rulesSource);
+      generator.writeArrayFieldStart("files");
+      ok = true;
+    } finally {
+      if (!ok) {
+        discard();
+      }
+    }
+  }
+
+  /** 出力先のパス。 */
+  public Path path() {
+    return path;
+  }
+
+  /**
+   * ファイル別の結果を {@code files} へ追記する。
+   *
+   * @param reports 1入力ファイル分の結果
+   * @throws IOException 書き出しに失敗した場合
+   */
+  @Override
+  public synchronized void completed(List<MaskedFileReport> reports) throws IOException {
+    if (finished || closed) {
+      throw new IllegalStateException("レポートはすでに閉じています: " + path);
+    }
+    for (MaskedFileReport f : reports) {
+      RunReportJson.FileReportJson x = new RunReportJson.FileReportJson();
+      x.inputFile = f.inputFile().toString();
+      x.outputFile = f.outputFile().toString();
+      x.totalCount = f.totalCount();
+      x.countsPerRule = new TreeMap<>(f.countsPerRule());
+      x.cached = f.cached();
+      x.skipped = f.skippedReason();
+      FileMetrics m = f.metrics();
+      if (m != null) {
+        x.lines = m.lines();
+        x.bytes = m.bytes();
+        x.nanos = m.nanos();
+        x.bytesPerSec = m.bytesPerSec();
+      }
+      writer.writeValue(generator, x);
+
+      files++;
+      if (f.isSkipped()) {
+        skippedFiles++;
+      }
+    }
+  }
+
+  /**
+   * 実行時間・集計・ルールのメタ情報を書いてレポートを閉じる。
+   *
+   * <p>ファイル別の結果は {@link #completed(List)} で渡したものだけを書く（runReport の files は使わない）。
+   *
+   * @param runReport 実行結果（合計件数とルールごとの処理時間を使う）
+   * @param durationMs 実行時間（ms）
+   * @throws IOException 書き出しに失敗した場合
+   */
+  public synchronized void finish(MaskRunReport runReport, long durationMs) throws IOException {
+    if (finished || closed) {
+      throw new IllegalStateException("レポートはすでに閉じています: " + path);
+    }
+
+    RunReportJson.SummaryJson s = new RunReportJson.SummaryJson();
+    s.files = files;
+    s.skippedFiles = skippedFiles;
+    s.totalCount = runReport.totalCount();
+    s.totalPerRule = new TreeMap<>(runReport.totalPerRule());
+
+    // 計測した実行のみ、ルールごとの処理時間を付ける（計測しない実行では null のため出力されない）
+    ruleMeta.forEach((id, m) -> m.nanos = runReport.nanosPerRule().get(id));
+
+    generator.writeEndArray();
+    generator.writeNumberField("durationMs", durationMs);
+    generator.writeFieldName("summary");
+    writer.writeValue(generator, s);
+    generator.writeFieldName("ruleMeta");
+    writer.writeValue(generator, ruleMeta);
+    generator.writeEndObject();
+    generator.close();
+    finished = true;
+
+    event.end();
+    if (event.shouldCommit()) {
+      event.path = path.toString();
+      event.files = files;
+      event.bytes = Files.size(path);
+      event.commit();
+    }
+  }
+
+  /** {@link #finish} 済みなら何もしない。そうでなければ書きかけのレポートを削除する。 */
+  @Override
+  public synchronized void close() throws IOException {
+    if (finished || closed) {
+      return;
+    }
+    discard();
+  }
+
+  private void discard() throws IOException {
+    closed = true;
+    try {
+      generator.close();
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+}
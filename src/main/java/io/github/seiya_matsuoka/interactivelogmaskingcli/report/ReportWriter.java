@@ -48,30 +48,92 @@ public class ReportWriter {
     // report を出すために outputBase は必ず用意する（dryRun でも同様）
     Files.createDirectories(plan.outputBase());
 
-    RunReportJson dto = buildDto(plan, config, runReport, durationMs);
-
     Path path = createUniqueReportPath(plan.outputBase());
-    mapper.writeValue(path.toFile(), dto);
+    return writeTo(path, plan, config, runReport, durationMs);
+  }
+
+  /**
+   * 指定したパスへレポートを出力する（既存ファイルは上書き）。
+   *
+   * <p>ストリーム処理のように out/ を持たない実行で使う。
+   *
+   * @param path 出力先（親ディレクトリは必要に応じて作成）
+   * @param plan 実行計画
+   * @param config ルール設定（検証済み）
+   * @param runReport 実行結果
+   * @param durationMs 実行時間（ms）
+   * @return 生成したレポートファイルのパス
+   */
+  public Path writeTo(
+      Path path, RunPlan plan, MaskRulesConfig config, MaskRunReport runReport, long durationMs)
+      throws IOException {
 
+    Objects.requireNonNull(runReport, "runReport");
+
+    try (ReportStream stream = openAt(path, plan, config)) {
+      stream.completed(runReport.files());
+      stream.finish(runReport, durationMs);
+    }
     return path;
   }
 
-  private RunReportJson buildDto(
-      RunPlan plan, MaskRulesConfig config, MaskRunReport runReport, long durationMs) {
+  /**
+   * out/ に report-YYYYMMDD-HHMMSS-SSS.json を作り、実行中に結果を書き足すためのストリームを返す。
+   *
+   * <p>ファイル別の結果は処理が終わるたびに {@link ReportStream#completed(List)} で追記し、最後に {@link
+   * ReportStream#finish} で集計を書く。 実行全体の結果をメモリに溜めてから書き出す {@link #write} と違い、
+   * レポートの出力に使うメモリはファイル数によらない。
+   *
+   * @param plan 実行計画
+   * @param config ルール設定（検証済み）
+   * @return レポートのストリーム（呼び出し側で close すること）
+   * @throws IOException 作成できなかった場合
+   */
+  public ReportStream open(RunPlan plan, MaskRulesConfig config) throws IOException {
+
+    Objects.requireNonNull(plan, "plan");
+
+    // report を出すために outputBase は必ず用意する（dryRun でも同様）
+    Files.createDirectories(plan.outputBase());
+
+    return openAt(createUniqueReportPath(plan.outputBase()), plan, config);
+  }
+
+  /**
+   * 指定したパスへ書き出すレポートのストリームを返す（既存ファイルは上書き）。
+   *
+   * @param path 出力先（親ディレクトリは必要に応じて作成）
+   * @param plan 実行計画
+   * @param config ルール設定（検証済み）
+   * @return レポートのストリーム（呼び出し側で close すること）
+   * @throws IOException 作成できなかった場合
+   */
+  public ReportStream openAt(Path path, RunPlan plan, MaskRulesConfig config) throws IOException {
+
+    Objects.requireNonNull(path, "path");
+    Objects.requireNonNull(plan, "plan");
+    Objects.requireNonNull(config, "config");
+
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+
+    return new ReportStream(path, mapper, buildHeader(plan, config));
+  }
+
+  /** 実行前に決まる項目（実行時間・集計・ファイル別の結果は {@link ReportStream} が書く）。 */
+  private RunReportJson buildHeader(RunPlan plan, MaskRulesConfig config) {
 
     RunReportJson dto = new RunReportJson();
 
     dto.schemaVersion = SCHEMA_VERSION;
     dto.generatedAt = OffsetDateTime.now().toString();
-    dto.durationMs = durationMs;
     dto.dryRun = plan.dryRun();
     dto.inputPath = plan.inputPath().toString();
     dto.outputBase = plan.outputBase().toString();
     dto.suffix = plan.suffix();
     dto.rulesSource = buildRulesSource(plan);
-    dto.summary = buildSummary(runReport);
     dto.ruleMeta = buildRuleMeta(config);
-    dto.files = buildFiles(runReport);
 
     return dto;
   }
@@ -90,16 +152,6 @@ public class ReportWriter {
     return src;
   }
 
-  private RunReportJson.SummaryJson buildSummary(MaskRunReport runReport) {
-
-    RunReportJson.SummaryJson s = new RunReportJson.SummaryJson();
-
-    s.files = runReport.files().size();
-    s.totalCount = runReport.totalCount();
-    s.totalPerRule = new TreeMap<>(runReport.totalPerRule());
-    return s;
-  }
-
   private Map<String, RunReportJson.RuleMetaJson> buildRuleMeta(MaskRulesConfig config) {
 
     Map<String, RunReportJson.RuleMetaJson> map = new TreeMap<>();
@@ -119,21 +171,6 @@ public class ReportWriter {
     return map;
   }
 
-  private List<RunReportJson.FileReportJson> buildFiles(MaskRunReport runReport) {
-
-    List<RunReportJson.FileReportJson> list = new ArrayList<>();
-
-    for (MaskedFileReport f : runReport.files()) {
-      RunReportJson.FileReportJson x = new RunReportJson.FileReportJson();
-      x.inputFile = f.inputFile().toString();
-      x.outputFile = f.outputFile().toString();
-      x.totalCount = f.totalCount();
-      x.countsPerRule = new TreeMap<>(f.countsPerRule());
-      list.add(x);
-    }
-    return list;
-  }
-
   private Path createUniqueReportPath(Path outputBase) {
 
     String ts = FILE_TS.format(LocalDateTime.now());
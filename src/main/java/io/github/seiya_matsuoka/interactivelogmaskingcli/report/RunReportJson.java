@@ -1,5 +1,6 @@
 package io.github.seiya_matsuoka.interactivelogmaskingcli.report;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.List;
 import java.util.Map;
 
@@ -38,6 +39,9 @@ public class RunReportJson {
 
   public static class SummaryJson {
     public int files;
+
+    /** バイナリと判定して処理しなかったファイル数 */
+    public int skippedFiles;
     public long totalCount;
 
     /** ルールID -> 合計件数 */
@@ -46,6 +50,10 @@ public class RunReportJson {
 
   public static class RuleMetaJson {
     public String name;
+
+    /** ルールの評価にかかった時間の合計（ナノ秒）。計測しない実行では出力しない */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long nanos;
   }
 
   public static class FileReportJson {
@@ -55,5 +63,29 @@ public class RunReportJson {
 
     /** ルールID -> 件数 */
     public Map<String, Long> countsPerRule;
+
+    /** true: 前回から変わっていないため処理を省いた（件数は前回の値） */
+    public boolean cached;
+
+    /** バイナリと判定して処理しなかった場合の理由（例: "magic:zip"）。処理した場合は null */
+    public String skipped;
+
+    // 以下は計測を有効にした実行で、処理したファイルのみ出力する
+
+    /** 処理した行数 */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long lines;
+
+    /** 入力のバイト数 */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long bytes;
+
+    /** 処理時間（ナノ秒） */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long nanos;
+
+    /** 1秒あたりの入力バイト数 */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long bytesPerSec;
   }
 }
@@ -2,17 +2,32 @@ package io.github.seiya_matsuoka.interactivelogmaskingcli.service;
 
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRuleCompiler;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRulesConfig;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.RuleCost;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.RuleValidationException;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.RuleValidator;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.RulesRepository;
-import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskRule;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.FileFollower;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.io.FileMaskingProcessor;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.ProcessingOptions;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.ProcessingRequest;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.ProgressTracker;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.StreamMasker;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.jfr.RunRecording;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.metrics.MaskMetrics;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.metrics.MetricsExporter;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskRunReport;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskedFileReport;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.ReportStream;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.report.ReportWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * 設定（JSON）→ 検証 → コンパイル → 入出力処理 を束ねるアプリケーションサービス。
@@ -25,6 +40,8 @@ public class FileMaskingService {
   private final RuleValidator ruleValidator;
   private final MaskRuleCompiler ruleCompiler;
   private final FileMaskingProcessor fileProcessor;
+  private final StreamMasker streamMasker;
+  private final FileFollower fileFollower;
   private final ReportWriter reportWriter;
 
   /** 既定の実装を組み立てる（本番/手動実行向け）。 */
@@ -34,6 +51,8 @@ public class FileMaskingService {
         new RuleValidator(),
         new MaskRuleCompiler(),
         new FileMaskingProcessor(),
+        new StreamMasker(),
+        new FileFollower(),
         new ReportWriter());
   }
 
@@ -44,10 +63,31 @@ public class FileMaskingService {
       MaskRuleCompiler ruleCompiler,
       FileMaskingProcessor fileProcessor,
       ReportWriter reportWriter) {
+    this(
+        rulesRepository,
+        ruleValidator,
+        ruleCompiler,
+        fileProcessor,
+        new StreamMasker(),
+        new FileFollower(),
+        reportWriter);
+  }
+
+  /** DI（テスト等）用コンストラクタ（ストリーム処理・追従モードも差し替える場合）。 */
+  public FileMaskingService(
+      RulesRepository rulesRepository,
+      RuleValidator ruleValidator,
+      MaskRuleCompiler ruleCompiler,
+      FileMaskingProcessor fileProcessor,
+      StreamMasker streamMasker,
+      FileFollower fileFollower,
+      ReportWriter reportWriter) {
     this.rulesRepository = rulesRepository;
     this.ruleValidator = ruleValidator;
     this.ruleCompiler = ruleCompiler;
     this.fileProcessor = fileProcessor;
+    this.streamMasker = streamMasker;
+    this.fileFollower = fileFollower;
     this.reportWriter = reportWriter;
   }
 
@@ -56,12 +96,51 @@ public class FileMaskingService {
    *
    * <p>dryRun=true の場合は件数のみ集計し、ファイルは生成しない。
    *
+   * <p>{@code plan.options().isFlightRecording()} が true の場合は、実行の間 JFR で記録し、レポートの隣に {@code
+   * report-*.jfr} を出力する。
+   *
+   * <p>メトリクスの公開（{@link ProcessingOptions#isExportMetrics()}）の指定があれば、実行の間 Prometheus の形式で公開する。
+   *
    * @param plan 実行計画
-   * @return 実行レポート
+   * @return 実行レポート（ファイル別結果 + 集計）
    */
   public MaskRunReport run(RunPlan plan) throws IOException, RuleValidationException {
+    return run(plan, new ProgressTracker());
+  }
+
+  /**
+   * 実行計画（RunPlan）に従って input → out を実行し、進捗を progress へ加算する。
+   *
+   * <p>progress は実行中に別スレッドから読んでよい（対話 CLI の進捗表示など）。
+   *
+   * @param plan 実行計画
+   * @param progress 進捗の加算先
+   * @return 実行レポート（ファイル別結果 + 集計）
+   */
+  public MaskRunReport run(RunPlan plan, ProgressTracker progress)
+      throws IOException, RuleValidationException {
+    return run(plan, progress, true);
+  }
+
+  /**
+   * {@link #run(RunPlan, ProgressTracker)} と同じだが、ファイル別の結果は report-*.json に書くだけで戻り値に載せない。
+   *
+   * <p>ファイル数が多い実行でも、ファイル別の結果をメモリに溜めずに済む（CLI のように集計だけを表示する用途向け）。
+   *
+   * @param plan 実行計画
+   * @param progress 進捗の加算先
+   * @return 実行レポート（files は空。ファイル数・処理を省いたファイル数・スキップしたファイルと集計は載る）
+   */
+  public MaskRunReport runSummary(RunPlan plan, ProgressTracker progress)
+      throws IOException, RuleValidationException {
+    return run(plan, progress, false);
+  }
+
+  private MaskRunReport run(RunPlan plan, ProgressTracker progress, boolean keepFileReports)
+      throws IOException, RuleValidationException {
 
     Objects.requireNonNull(plan, "plan");
+    Objects.requireNonNull(progress, "progress");
 
     long started = System.nanoTime();
 
@@ -72,22 +151,135 @@ public class FileMaskingService {
     // 2) ルール検証（ここで RuleValidationException を投げる）
     ruleValidator.validateOrThrow(config);
 
-    // 3) コンパイル済みのマスキングルール へ変換
-    List<MaskRule> compiledRules = ruleCompiler.compile(config);
+    // 3) コンパイル済みのマスキングルール（+ アンカーのプレフィルタ）へ変換
+    CompiledRuleSet compiledRules = ruleCompiler.compileRuleSet(config);
 
     // 4) ファイル処理（input -> out）
+    // 指定があれば、実行の間 JFR で記録する（レポートの出力まで含める）・メトリクスを公開する
+    // report-*.json を out/ に作り（dryRun でも出力する）、ファイル別の結果は処理が終わるたびに書き足す
+    // keepFileReports=false なら、ファイル別の結果はレポートへ書き足すだけで保持しない（戻り値はファイル数・スキップしたファイルと合計のみ）
+    try (MetricsExporter metrics = startMetrics(plan.options());
+        RunRecording recording = plan.options().isFlightRecording() ? RunRecording.start() : null;
+        ReportStream reportStream = reportWriter.open(plan, config)) {
+      MaskRunReport report =
+          fileProcessor.process(
+              ProcessingRequest.of(
+                      plan.inputPath(),
+                      plan.outputBase(),
+                      withMetrics(compiledRules, metrics),
+                      plan.suffix(),
+                      plan.dryRun())
+                  .withOptions(plan.options())
+                  .withListener(reportStream)
+                  .withProgress(progress)
+                  .withFileReports(keepFileReports));
+
+      long durationMs = (System.nanoTime() - started) / 1_000_000L;
+
+      // 実行時間と集計を最後に書いてレポートを閉じる（失敗した場合は書きかけのレポートを残さない）
+      reportStream.finish(report, durationMs);
+
+      // 記録はレポートと同じ名前（拡張子 .jfr）で隣に出力する
+      if (recording != null) {
+        recording.dump(recordingPath(reportStream.path()));
+      }
+
+      return report;
+    }
+  }
+
+  /**
+   * 実行計画（StreamPlan）に従って、入力ストリームをマスキングして出力ストリームへ書き出す。
+   *
+   * <p>入力の終端まで処理したあと、reportFile が指定されていればレポート（JSON）を出力する。 入力/出力はレポート上 {@code -} と記録する。
+   *
+   * @param plan 実行計画
+   * @param in 入力（標準入力など）
+   * @param out 出力（標準出力など）
+   * @return 実行レポート
+   */
+  public MaskRunReport runStream(StreamPlan plan, InputStream in, OutputStream out)
+      throws IOException, RuleValidationException {
+
+    Objects.requireNonNull(plan, "plan");
+
+    long started = System.nanoTime();
+
+    // ルールの読み込み → 検証 → コンパイル（ファイル処理と同じ）
+    MaskRulesConfig config = rulesRepository.load(plan.rulesPath());
+    ruleValidator.validateOrThrow(config);
+    CompiledRuleSet compiledRules = ruleCompiler.compileRuleSet(config);
+
+    MaskedFileReport stream;
+    try (MetricsExporter metrics = startMetrics(plan.options())) {
+      stream =
+          streamMasker.process(in, out, withMetrics(compiledRules, metrics), plan.options());
+    }
     MaskRunReport report =
-        fileProcessor.process(
-            plan.inputPath(), plan.outputBase(), compiledRules, plan.suffix(), plan.dryRun());
+        new MaskRunReport(
+            StreamMasker.STDIO,
+            StreamMasker.STDIO,
+            List.of(stream),
+            stream.countsPerRule(),
+            stream.totalCount());
 
     long durationMs = (System.nanoTime() - started) / 1_000_000L;
 
-    // report-*.json を out/ に出力（dryRun でも出力する）
-    reportWriter.write(plan, config, report, durationMs);
+    if (plan.reportFile() != null) {
+      reportWriter.writeTo(
+          plan.reportFile(), plan.toRunPlan(StreamMasker.STDIO), config, report, durationMs);
+    }
 
     return report;
   }
 
+  /**
+   * 実行計画（FollowPlan）に従って、入力への追記を追いかけて out へ追記し続ける。
+   *
+   * <p>stopRequested が true を返すまで戻らない。処理位置はチェックポイントに保存され、次回はそこから再開する。
+   *
+   * <p>メトリクスの公開の指定があれば、追従している間 Prometheus の形式で公開する（run / runStream も同様）。
+   *
+   * @param plan 実行計画
+   * @param stopRequested 停止の判定
+   * @return 今回の実行で処理した分のレポート
+   */
+  public MaskRunReport runFollow(FollowPlan plan, BooleanSupplier stopRequested)
+      throws IOException, RuleValidationException {
+    return runFollow(plan, stopRequested, warning -> {});
+  }
+
+  /**
+   * {@link #runFollow(FollowPlan, BooleanSupplier)} と同じだが、追従中の警告（不正な UTF-8 のため読み飛ばした行など）を受け取る。
+   *
+   * @param plan 実行計画
+   * @param stopRequested 停止の判定
+   * @param warnings 警告の受け取り先（追従しているスレッドから呼ばれる）
+   * @return 今回の実行で処理した分のレポート
+   */
+  public MaskRunReport runFollow(
+      FollowPlan plan, BooleanSupplier stopRequested, Consumer<String> warnings)
+      throws IOException, RuleValidationException {
+
+    Objects.requireNonNull(plan, "plan");
+
+    MaskRulesConfig config = rulesRepository.load(plan.rulesPath());
+    ruleValidator.validateOrThrow(config);
+    CompiledRuleSet compiledRules = ruleCompiler.compileRuleSet(config);
+
+    try (MetricsExporter metrics = startMetrics(plan.options())) {
+      return fileFollower.follow(
+          plan.inputPath(),
+          plan.outputBase(),
+          withMetrics(compiledRules, metrics),
+          plan.suffix(),
+          plan.checkpointFile(),
+          plan.options(),
+          stopRequested,
+          warnings);
+    }
+  }
+
   /**
    * ルール設定JSONのパスを受け取り、input → out を実行する。
    *
@@ -120,4 +312,54 @@ public class FileMaskingService {
     RunPlan plan = RunPlan.ofConfig(inputPath, outputBase, config, suffix, false);
     return run(plan);
   }
+
+  /**
+   * 実行計画のルールについて、正規表現の処理コストを見積もる（実行前の確認用）。
+   *
+   * <p>指数関数的なもの（{@link io.github.seiya_matsuoka.interactivelogmaskingcli.config.RegexCost#EXPONENTIAL}）は、
+   * 実行すると検証で {@link RuleValidationException} になる。
+   *
+   * @param plan 実行計画
+   * @return 有効なルールごとの見積もり
+   */
+  public List<RuleCost> estimateRuleCosts(RunPlan plan) throws IOException {
+    Objects.requireNonNull(plan, "plan");
+    MaskRulesConfig config =
+        (plan.rulesPath() != null) ? rulesRepository.load(plan.rulesPath()) : plan.config();
+    return ruleValidator.estimateCosts(config);
+  }
+
+  /**
+   * ルール設定JSONの正規表現について、処理コストの警告を返す（3乗以上のコスト・危険な構造）。
+   *
+   * @param rulesPath ルールファイル
+   * @return 警告一覧（空なら問題なし）
+   */
+  public List<String> ruleWarnings(Path rulesPath) throws IOException {
+    return ruleValidator.warnings(rulesRepository.load(rulesPath));
+  }
+
+  /** レポートと同じ名前で、拡張子を .jfr にしたパス。 */
+  private static Path recordingPath(Path reportFile) {
+    String name = reportFile.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    return reportFile.resolveSibling(((dot > 0) ? name.substring(0, dot) : name) + ".jfr");
+  }
+
+  /** 指定があれば、メトリクスの公開（テキストファイル / HTTP）を始める（指定が無ければ null）。 */
+  private static MetricsExporter startMetrics(ProcessingOptions options) throws IOException {
+    if (!options.isExportMetrics()) {
+      return null;
+    }
+    return MetricsExporter.start(
+        new MaskMetrics(),
+        options.getMetricsFile(),
+        options.getMetricsIntervalMillis(),
+        options.getMetricsPort());
+  }
+
+  /** 公開する場合は、メトリクスへ加算するルールセットにする。 */
+  private static CompiledRuleSet withMetrics(CompiledRuleSet rules, MetricsExporter exporter) {
+    return (exporter != null) ? rules.withMetrics(exporter.metrics()) : rules;
+  }
 }
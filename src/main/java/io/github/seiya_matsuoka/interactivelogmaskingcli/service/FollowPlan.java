@@ -0,0 +1,40 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.service;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.ProcessingOptions;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * 追従モード（入力への追記を追いかけて処理し続ける）の実行計画。
+ *
+ * <p>引数CLIがユーザー入力をまとめ、Serviceへ渡すためのDTO。
+ *
+ * @param inputPath 入力（ファイル or ディレクトリ）
+ * @param outputBase 出力ベース（例: out/）
+ * @param rulesPath ルールJSONのパス
+ * @param suffix 出力ファイル名サフィックス（nullは空扱い）
+ * @param checkpointFile 処理位置の保存先（nullは outputBase 直下の {@value #DEFAULT_CHECKPOINT_NAME}）
+ * @param options 実行オプション（ポーリング間隔など。nullは既定値扱い）
+ */
+public record FollowPlan(
+    Path inputPath,
+    Path outputBase,
+    Path rulesPath,
+    String suffix,
+    Path checkpointFile,
+    ProcessingOptions options) {
+
+  /** チェックポイントの既定のファイル名。 */
+  public static final String DEFAULT_CHECKPOINT_NAME = ".follow-checkpoint.json";
+
+  public FollowPlan {
+    Objects.requireNonNull(inputPath, "inputPath");
+    Objects.requireNonNull(outputBase, "outputBase");
+    Objects.requireNonNull(rulesPath, "rulesPath");
+
+    suffix = (suffix == null) ? "" : suffix;
+    checkpointFile =
+        (checkpointFile == null) ? outputBase.resolve(DEFAULT_CHECKPOINT_NAME) : checkpointFile;
+    options = (options == null) ? ProcessingOptions.defaults() : options;
+  }
+}
@@ -1,6 +1,7 @@
 package io.github.seiya_matsuoka.interactivelogmaskingcli.service;
 
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRulesConfig;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.ProcessingOptions;
 import java.nio.file.Path;
 import java.util.Objects;
 
@@ -17,6 +18,7 @@ import java.util.Objects;
  * @param config ルール設定（任意）
  * @param suffix 出力ファイル名サフィックス（例: "_masked"。nullは空扱い）
  * @param dryRun true: 件数集計のみ（ファイル生成しない）
+ * @param options ファイル処理の実行オプション（並列度など。nullは既定値扱い）
  */
 public record RunPlan(
     Path inputPath,
@@ -24,7 +26,8 @@ public record RunPlan(
     Path rulesPath,
     MaskRulesConfig config,
     String suffix,
-    boolean dryRun) {
+    boolean dryRun,
+    ProcessingOptions options) {
 
   public RunPlan {
     Objects.requireNonNull(inputPath, "inputPath");
@@ -33,6 +36,9 @@ public record RunPlan(
     // suffix は null を許容するが、扱いやすいよう空文字へ寄せる
     suffix = (suffix == null) ? "" : suffix;
 
+    // options は null を許容するが、扱いやすいよう既定値へ寄せる
+    options = (options == null) ? ProcessingOptions.defaults() : options;
+
     boolean hasRulesPath = (rulesPath != null);
     boolean hasConfig = (config != null);
 
@@ -46,13 +52,18 @@ public record RunPlan(
   public static RunPlan ofRulesPath(
       Path inputPath, Path outputBase, Path rulesPath, String suffix, boolean dryRun) {
     Objects.requireNonNull(rulesPath, "rulesPath");
-    return new RunPlan(inputPath, outputBase, rulesPath, null, suffix, dryRun);
+    return new RunPlan(inputPath, outputBase, rulesPath, null, suffix, dryRun, null);
   }
 
   /** config を使う RunPlan を生成する（対話で作った設定を渡す場合の入口）。 */
   public static RunPlan ofConfig(
       Path inputPath, Path outputBase, MaskRulesConfig config, String suffix, boolean dryRun) {
     Objects.requireNonNull(config, "config");
-    return new RunPlan(inputPath, outputBase, null, config, suffix, dryRun);
+    return new RunPlan(inputPath, outputBase, null, config, suffix, dryRun, null);
+  }
+
+  /** 実行オプションだけを差し替えた RunPlan を返す。 */
+  public RunPlan withOptions(ProcessingOptions options) {
+    return new RunPlan(inputPath, outputBase, rulesPath, config, suffix, dryRun, options);
   }
 }
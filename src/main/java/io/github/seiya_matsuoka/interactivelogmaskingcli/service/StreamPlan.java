@@ -0,0 +1,29 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.service;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.ProcessingOptions;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * ストリーム処理（標準入力 → 標準出力）の実行計画。
+ *
+ * <p>引数CLIがユーザー入力をまとめ、Serviceへ渡すためのDTO。
+ *
+ * @param rulesPath ルールJSONのパス
+ * @param reportFile レポート（JSON）の出力先（任意。null なら出力しない）
+ * @param options 実行オプション（flush の間隔など。nullは既定値扱い）
+ */
+public record StreamPlan(Path rulesPath, Path reportFile, ProcessingOptions options) {
+
+  public StreamPlan {
+    Objects.requireNonNull(rulesPath, "rulesPath");
+
+    // options は null を許容するが、扱いやすいよう既定値へ寄せる
+    options = (options == null) ? ProcessingOptions.defaults() : options;
+  }
+
+  /** レポートの記録用に、入力/出力を {@code -}（標準入力/標準出力）とした RunPlan へ変換する。 */
+  RunPlan toRunPlan(Path stdio) {
+    return RunPlan.ofRulesPath(stdio, stdio, rulesPath, "", false).withOptions(options);
+  }
+}
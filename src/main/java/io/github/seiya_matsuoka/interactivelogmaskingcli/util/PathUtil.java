@@ -5,13 +5,16 @@ import java.nio.file.Path;
 /** パス/ファイル名に関するユーティリティ。 */
 public final class PathUtil {
 
+  private static final String GZIP_EXTENSION = ".gz";
+
   private PathUtil() {}
 
   /**
    * ファイル名にサフィックスを付与する（拡張子の前に挿入）。
    *
    * <p>例: - "app.log" + "_masked" -> "app_masked.log" - "README" + "_masked" -> "README_masked" -
-   * ".env" + "_masked" -> ".env_masked"（先頭ドットだけのファイルは拡張子扱いしない）
+   * ".env" + "_masked" -> ".env_masked"（先頭ドットだけのファイルは拡張子扱いしない） - "app.log.gz" + "_masked" ->
+   * "app_masked.log.gz"（".gz" はその手前の拡張子と合わせて残す）
    *
    * @param fileName ファイル名
    * @param suffix サフィックス（null/blankなら変更しない）
@@ -23,6 +26,12 @@ public final class PathUtil {
       return fileName;
     }
 
+    // ".gz" を外した名前にサフィックスを付け、".gz" を付け直す
+    if (hasGzipExtension(fileName) && fileName.length() > GZIP_EXTENSION.length()) {
+      String stem = fileName.substring(0, fileName.length() - GZIP_EXTENSION.length());
+      return withSuffix(stem, suffix) + fileName.substring(stem.length());
+    }
+
     int dot = fileName.lastIndexOf('.');
 
     // ".env" のようなケースは dot==0 なので拡張子扱いしない
@@ -53,4 +62,35 @@ public final class PathUtil {
         ? outputBase.resolve(outName)
         : outputBase.resolve(parent).resolve(outName);
   }
+
+  /**
+   * 出力を gzip 圧縮するかに合わせて、ファイル名の ".gz" を付ける/外す。
+   *
+   * <p>例: - ("out/app.log", true) -> "out/app.log.gz" - ("out/app.log.gz", false) -> "out/app.log"
+   *
+   * @param path 出力パス
+   * @param gzip true: gzip 圧縮して出力する
+   * @return 調整後の出力パス（変更が無ければ path そのもの）
+   */
+  public static Path withGzipExtension(Path path, boolean gzip) {
+    String fileName = path.getFileName().toString();
+    boolean has = hasGzipExtension(fileName);
+    if (gzip == has) {
+      return path;
+    }
+    if (gzip) {
+      return path.resolveSibling(fileName + GZIP_EXTENSION);
+    }
+    String stripped = fileName.substring(0, fileName.length() - GZIP_EXTENSION.length());
+    return stripped.isEmpty() ? path : path.resolveSibling(stripped);
+  }
+
+  private static boolean hasGzipExtension(String fileName) {
+    return fileName.regionMatches(
+        true,
+        fileName.length() - GZIP_EXTENSION.length(),
+        GZIP_EXTENSION,
+        0,
+        GZIP_EXTENSION.length());
+  }
 }
@@ -2,7 +2,11 @@ package io.github.seiya_matsuoka.interactivelogmaskingcli.config;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngine;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskEngineResult;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskRule;
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.jupiter.api.Test;
 
@@ -37,4 +41,118 @@ class MaskRuleCompilerTest {
     assertNotNull(r.pattern());
     assertEquals("[X]", r.replacement());
   }
+
+  // パターンからアンカー（必須リテラル）が抽出されることを確認（選択はいずれか1つの集合になる）
+  @Test
+  void compile_extracts_literal_anchors() {
+
+    MaskRulesConfig config =
+        new MaskRulesConfig()
+            .setVersion(1)
+            .setRules(
+                List.of(
+                    new MaskRuleConfig()
+                        .setId("ip")
+                        .setName("IP")
+                        .setPattern("\\b(?:ip|clientIp)=((?:\\d{1,3}\\.){3}\\d{1,3})\\b")
+                        .setReplacement("$1"),
+                    new MaskRuleConfig()
+                        .setId("bearer")
+                        .setName("Bearer")
+                        .setPattern("(?i)Authorization=\"?Bearer\\s+([A-Za-z0-9._-]{8,})\"?")
+                        .setReplacement("[X]"),
+                    new MaskRuleConfig()
+                        .setId("digits")
+                        .setName("Digits")
+                        .setPattern("\\d{4,}")
+                        .setReplacement("[X]")));
+
+    List<MaskRule> rules = new MaskRuleCompiler().compile(config);
+
+    assertEquals(List.of("ip=", "clientIp="), rules.get(0).anchors());
+    assertEquals(List.of("Authorization="), rules.get(1).anchors());
+    // リテラルが無いルールはアンカー無し（常に評価）
+    assertTrue(rules.get(2).anchors().isEmpty());
+  }
+
+  // UNICODE_CASE で大小無視する場合、非 ASCII 文字とも一致する k / s をアンカーに使わない（プレフィルタで取りこぼさない）ことを確認
+  @Test
+  void compile_skips_anchor_letters_folding_to_non_ascii_under_unicode_case() {
+
+    MaskRulesConfig config =
+        new MaskRulesConfig()
+            .setVersion(1)
+            .setRules(
+                List.of(
+                    new MaskRuleConfig()
+                        .setId("token")
+                        .setName("Token")
+                        .setPattern("(?iu)token=\\w+")
+                        .setReplacement("token=[X]"),
+                    new MaskRuleConfig()
+                        .setId("pass")
+                        .setName("Pass")
+                        .setPattern("(?iu)pass=\\w+")
+                        .setReplacement("pass=[X]"),
+                    new MaskRuleConfig()
+                        .setId("plain")
+                        .setName("Plain")
+                        .setPattern("(?u)token=\\w+")
+                        .setReplacement("token=[X]")));
+
+    List<MaskRule> rules = new MaskRuleCompiler().compile(config);
+
+    for (String anchor : rules.get(0).anchors()) {
+      assertFalse(anchor.toLowerCase().contains("k"), anchor);
+    }
+    for (String anchor : rules.get(1).anchors()) {
+      assertFalse(anchor.toLowerCase().contains("s"), anchor);
+    }
+    // 大小無視でなければ、UNICODE_CASE でもそのままアンカーにできる
+    assertEquals(List.of("token="), rules.get(2).anchors());
+
+    // U+212A（KELVIN SIGN）・U+017F（LATIN SMALL LETTER LONG S）を含む入力もマスキングされる
+    CompiledRuleSet set = CompiledRuleSet.of(rules.subList(0, 2));
+    MaskEngineResult r =
+        new MaskEngine().maskText("to\u212Aen=abc pa\u017F\u017F=xyz", set, false);
+    assertEquals("token=[X] pass=[X]", r.outputText());
+    assertEquals(2L, r.totalCount());
+  }
+
+  // ASCII の文字にしかマッチしないルールだけが、バイト単位で処理できる（asciiSafe）と判定されることを確認
+  @Test
+  void compile_marks_ascii_safe_rules() {
+
+    List<String> patterns =
+        List.of(
+            "token=([A-Za-z0-9._-]{8,})",
+            "dbUrl=(jdbc:[^\\s]+)",
+            "(?i)Authorization=\"?Bearer\\s+([A-Za-z0-9._-]{8,})\"?",
+            // 以下は不可: 非 ASCII のリテラル / 任意の1文字 / 空文字にマッチし得る / 最短一致の否定クラス
+            "名前=\\w+",
+            "user=.+",
+            "x*",
+            "key=[^\\s]+?");
+
+    List<MaskRuleConfig> configs = new ArrayList<>();
+    for (int i = 0; i < patterns.size(); i++) {
+      configs.add(
+          new MaskRuleConfig()
+              .setId("r" + i)
+              .setName("R" + i)
+              .setPattern(patterns.get(i))
+              .setReplacement("[X]"));
+    }
+
+    List<MaskRule> rules =
+        new MaskRuleCompiler().compile(new MaskRulesConfig().setVersion(1).setRules(configs));
+
+    assertTrue(rules.get(0).asciiSafe());
+    assertTrue(rules.get(1).asciiSafe());
+    assertTrue(rules.get(2).asciiSafe());
+    assertFalse(rules.get(3).asciiSafe());
+    assertFalse(rules.get(4).asciiSafe());
+    assertFalse(rules.get(5).asciiSafe());
+    assertFalse(rules.get(6).asciiSafe());
+  }
 }
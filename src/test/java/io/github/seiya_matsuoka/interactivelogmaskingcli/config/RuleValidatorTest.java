@@ -1,5 +1,6 @@
 package io.github.seiya_matsuoka.interactivelogmaskingcli.config;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -47,6 +48,61 @@ class RuleValidatorTest {
         "pattern error should exist: " + errors);
   }
 
+  // バックトラックが指数関数的に増えるパターンはエラーにし、無効なルールは見積もらないことを確認する
+  @Test
+  void validate_ng_for_catastrophic_backtracking() {
+
+    MaskRulesConfig config =
+        config(
+            rule("backref", "^(\\w+)*\\1$"),
+            rule("bounded", "(?:a|a){1,100}b"),
+            rule("disabled", "^(a|a)*\\1$").setEnabled(false),
+            rule("token", "\\btoken=([A-Za-z0-9._-]{8,})\\b"));
+
+    RuleValidator validator = new RuleValidator();
+    List<String> errors = validator.validate(config);
+
+    assertEquals(2, errors.size(), errors.toString());
+    assertTrue(errors.get(0).startsWith("rules[0].pattern"), errors.toString());
+    assertTrue(errors.get(1).startsWith("rules[1].pattern"), errors.toString());
+    assertTrue(errors.stream().allMatch(s -> s.contains("ReDoS")), errors.toString());
+
+    List<RuleCost> costs = validator.estimateCosts(config);
+    assertEquals(List.of("backref", "bounded", "token"), costs.stream().map(RuleCost::id).toList());
+    assertEquals(RegexCost.EXPONENTIAL, costs.get(0).cost());
+    assertEquals(RegexCost.LINEAR, costs.get(2).cost());
+    assertFalse(costs.get(2).isWarning());
+  }
+
+  // 入れ子の量指定子・隣り合う量指定子は、エラーにせず警告として返すことを確認する
+  @Test
+  void warnings_for_nested_and_adjacent_quantifiers() {
+
+    MaskRulesConfig config =
+        config(
+            rule("nested", "(\\w+\\s?)*$"),
+            rule("adjacent", "\\d+\\d+x"),
+            rule("possessive", "(a++)+b"),
+            rule("email", "[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}"));
+
+    RuleValidator validator = new RuleValidator();
+    assertTrue(validator.validate(config).isEmpty());
+
+    List<String> warnings = validator.warnings(config);
+    assertEquals(2, warnings.size(), warnings.toString());
+    assertTrue(warnings.get(0).startsWith("rules[0] (nested)"), warnings.toString());
+    assertTrue(warnings.get(0).contains("(\\w+\\s?)*"), warnings.toString());
+    assertTrue(warnings.get(1).startsWith("rules[1] (adjacent)"), warnings.toString());
+  }
+
+  private static MaskRulesConfig config(MaskRuleConfig... rules) {
+    return new MaskRulesConfig().setVersion(1).setRules(List.of(rules));
+  }
+
+  private static MaskRuleConfig rule(String id, String pattern) {
+    return new MaskRuleConfig().setId(id).setName(id).setPattern(pattern).setReplacement("[X]");
+  }
+
   /**
    * src/test/resources 配下のファイル（fixture）を、テスト用の一時ディレクトリへコピーして Path を返す。
    *
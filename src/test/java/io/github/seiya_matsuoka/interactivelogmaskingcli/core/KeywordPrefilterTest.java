@@ -0,0 +1,45 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class KeywordPrefilterTest {
+
+  // 含まれるアンカーのルールだけが候補になり、アンカー無しのルールは常に候補になることを確認
+  @Test
+  void scan_marks_rules_whose_anchor_appears() {
+
+    KeywordPrefilter filter =
+        KeywordPrefilter.build(
+            List.of(List.of("email="), List.of("ip=", "clientIp="), List.of(), List.of("token=")));
+
+    boolean[] candidates = new boolean[4];
+    filter.scan("user=1 CLIENTIP=10.0.0.1 msg=ok", candidates);
+
+    assertFalse(candidates[0]);
+    assertTrue(candidates[1]);
+    assertTrue(candidates[2]);
+    assertFalse(candidates[3]);
+  }
+
+  // 重なり合うアンカー（接尾辞関係）や非 ASCII のアンカーも検出できることを確認
+  @Test
+  void scan_handles_overlapping_and_non_ascii_anchors() {
+
+    KeywordPrefilter filter =
+        KeywordPrefilter.build(List.of(List.of("requestId="), List.of("Id="), List.of("社員番号")));
+
+    boolean[] candidates = new boolean[3];
+    filter.scan("requestId=abc", candidates);
+    assertTrue(candidates[0]);
+    assertTrue(candidates[1]);
+    assertFalse(candidates[2]);
+
+    boolean[] wide = new boolean[3];
+    filter.scan("氏名=山田 社員番号=123", wide);
+    assertFalse(wide[0]);
+    assertTrue(wide[2]);
+  }
+}
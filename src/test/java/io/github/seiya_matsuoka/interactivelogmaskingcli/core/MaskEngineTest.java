@@ -2,6 +2,7 @@ package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.regex.Pattern;
 import org.junit.jupiter.api.Test;
@@ -44,4 +45,144 @@ class MaskEngineTest {
     assertEquals(2L, r.totalCount());
     assertEquals(2L, r.countsPerRule().get("token"));
   }
+
+  // リスト版は同じリストなら変換済みのルールセットを使い回し、別のリストなら変換し直すことを確認
+  @Test
+  void maskText_list_reuses_compiled_set_per_list() {
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    MaskRule user = new MaskRule("user", "User", true, Pattern.compile("user=\\w+"), "user=[U]");
+
+    MaskEngine engine = new MaskEngine();
+    List<MaskRule> first = List.of(token);
+    assertEquals("token=[MASKED] user=x", engine.maskText("token=a user=x", first, false).outputText());
+    assertEquals("token=[MASKED]", engine.maskText("token=b", first, false).outputText());
+
+    List<MaskRule> second = List.of(token, user);
+    MaskEngineResult r = engine.maskText("token=a user=x", second, false);
+    assertEquals("token=[MASKED] user=[U]", r.outputText());
+    assertEquals(1L, r.countsPerRule().get("user"));
+  }
+
+  // 先のルールの置換で後続ルールのアンカーが現れた場合も、後続ルールが評価されることを確認
+  @Test
+  void maskText_rescans_prefilter_after_rewrite() {
+
+    MaskRule rename =
+        new MaskRule(
+            "rename", "Rename", true, Pattern.compile("tkn:"), "token=", List.of("tkn:"));
+    MaskRule token =
+        new MaskRule(
+            "token",
+            "Token",
+            true,
+            Pattern.compile("token=[A-Za-z0-9]+"),
+            "token=[MASKED]",
+            List.of("token="));
+
+    MaskEngine engine = new MaskEngine();
+    MaskEngineResult r =
+        engine.maskText("tkn:abc other", CompiledRuleSet.of(List.of(rename, token)), false);
+
+    assertEquals("token=[MASKED] other", r.outputText());
+    assertEquals(1L, r.countsPerRule().get("rename"));
+    assertEquals(1L, r.countsPerRule().get("token"));
+  }
+
+  // アンカーが含まれない行ではルールが評価されない（件数0・文字列そのまま）ことを確認
+  @Test
+  void maskText_skips_rules_without_anchor_in_line() {
+
+    MaskRule token =
+        new MaskRule(
+            "token",
+            "Token",
+            true,
+            Pattern.compile("(?i)token=[A-Za-z0-9]+"),
+            "token=[MASKED]",
+            List.of("token="));
+
+    MaskEngine engine = new MaskEngine();
+    CompiledRuleSet set = CompiledRuleSet.of(List.of(token));
+
+    assertEquals(0L, engine.maskText("status=200", set, false).totalCount());
+    // 大文字/小文字違いのアンカーも候補になる
+    assertEquals("token=[MASKED]", engine.maskText("TOKEN=abc", set, false).outputText());
+  }
+
+  // 作業領域を使い回す mask() で、マッチしない行は同一インスタンスが返り、件数はルール位置ごとに累積されることを確認
+  @Test
+  void mask_with_context_accumulates_counts_and_returns_input_when_unmatched() {
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    MaskRule user =
+        new MaskRule("user", "User", true, Pattern.compile("userId=\\d+"), "userId=[MASKED]");
+
+    MaskEngine engine = new MaskEngine();
+    MaskContext ctx = new MaskContext(CompiledRuleSet.of(List.of(token, user)));
+
+    String plain = "status=200";
+    assertSame(plain, engine.mask(plain, ctx, false));
+
+    assertEquals("token=[MASKED] token=[MASKED]", engine.mask("token=a token=b", ctx, false));
+    assertEquals("userId=[MASKED]", engine.mask("userId=1", ctx, false));
+
+    assertArrayEquals(new long[] {2L, 1L}, ctx.counts());
+    assertEquals(3L, ctx.totalCount());
+  }
+
+  // バイト単位の処理が、文字列として処理して UTF-8 に戻した結果と一致することを確認（非 ASCII はそのまま残る）
+  @Test
+  void maskBytes_matches_string_result_for_utf8_lines() {
+    Pattern tokenPattern = Pattern.compile("token=([A-Za-z0-9]+)");
+    MaskRule token =
+        new MaskRule(
+            "token",
+            "Token",
+            true,
+            tokenPattern,
+            "token=[伏字:$1]",
+            List.of("token="),
+            ReplacementTemplate.compile("token=[伏字:$1]", tokenPattern),
+            true);
+    Pattern urlPattern = Pattern.compile("url=([^\\s]+)");
+    MaskRule url =
+        new MaskRule(
+            "url",
+            "Url",
+            true,
+            urlPattern,
+            "url=***",
+            List.of("url="),
+            ReplacementTemplate.compile("url=***", urlPattern),
+            true);
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token, url));
+    assertTrue(ruleSet.isAsciiSafe());
+
+    MaskEngine engine = new MaskEngine();
+    MaskContext stringCtx = new MaskContext(ruleSet);
+    MaskContext byteCtx = new MaskContext(ruleSet);
+
+    List<String> lines =
+        List.of(
+            "ユーザー token=abc123 処理完了",
+            "url=https://例え.jp/パス?q=値 次 token=Z9",
+            "日本語のみ",
+            "");
+    for (String line : lines) {
+      byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+      ByteSequence out = engine.maskBytes(ByteSequence.wrap(bytes, 0, bytes.length), byteCtx, false);
+      String expected = engine.mask(line, stringCtx, false);
+
+      assertEquals(
+          expected,
+          new String(out.array(), out.offset(), out.length(), StandardCharsets.UTF_8));
+    }
+    assertArrayEquals(stringCtx.counts(), byteCtx.counts());
+    assertEquals(3L, byteCtx.totalCount());
+  }
 }
@@ -0,0 +1,60 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class ReplacementTemplateTest {
+
+  // 解析済みテンプレートでの置換結果が Matcher.replaceAll（appendReplacement）と一致することを確認
+  @Test
+  void appendTo_matches_appendReplacement_semantics() {
+
+    Pattern p = Pattern.compile("(?<key>[a-z]+)=(\\d+)?(x)?");
+    String input = "a=1 b= c=23x";
+
+    for (String replacement :
+        List.of(
+            "[MASKED]",
+            "$1",
+            "${key}=***",
+            "$2$3",
+            "$12", // グループ数(3)を超えるため "$1" + "2"
+            "\\$1 and \\\\",
+            "")) {
+
+      ReplacementTemplate template = ReplacementTemplate.compile(replacement, p);
+      assertNotNull(template, replacement);
+
+      Matcher m = p.matcher(input);
+      StringBuilder sb = new StringBuilder();
+      int last = 0;
+      while (m.find()) {
+        sb.append(input, last, m.start());
+        template.appendTo(sb, m, input);
+        last = m.end();
+      }
+      sb.append(input, last, input.length());
+
+      assertEquals(p.matcher(input).replaceAll(replacement), sb.toString(), replacement);
+    }
+  }
+
+  // 固定文字列の置換はリテラル扱いになり、appendReplacement がエラーにする置換文字列は解析しない（null）ことを確認
+  @Test
+  void compile_detects_literal_and_rejects_invalid_references() {
+
+    Pattern p = Pattern.compile("token=(\\w+)");
+
+    assertTrue(ReplacementTemplate.compile("token=[MASKED]", p).isLiteral());
+    assertFalse(ReplacementTemplate.compile("token=$1", p).isLiteral());
+
+    assertNull(ReplacementTemplate.compile("cost$", p));
+    assertNull(ReplacementTemplate.compile("trailing\\", p));
+    assertNull(ReplacementTemplate.compile("$2", p));
+    assertNull(ReplacementTemplate.compile("${}", p));
+  }
+}
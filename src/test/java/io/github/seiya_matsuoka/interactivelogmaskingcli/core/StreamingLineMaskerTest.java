@@ -0,0 +1,148 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.core;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class StreamingLineMaskerTest {
+
+  private static final List<MaskRule> RULES =
+      List.of(
+          new MaskRule("rename", "Rename", true, Pattern.compile("tkn:"), "token="),
+          new MaskRule(
+              "email",
+              "Email",
+              true,
+              Pattern.compile(
+                  "[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}", Pattern.CASE_INSENSITIVE),
+              "[MASKED_EMAIL]"),
+          new MaskRule(
+              "token", "Token", true, Pattern.compile("(token=)[A-Za-z0-9]+"), "$1[MASKED]"),
+          new MaskRule("pin", "Pin", true, Pattern.compile("\\b\\d{4}\\b"), "****"),
+          new MaskRule("key", "Key", true, Pattern.compile("(?<=key=)\\w+"), "[KEY]"),
+          new MaskRule("head", "Head", true, Pattern.compile("^head"), "HEAD"),
+          new MaskRule("tail", "Tail", true, Pattern.compile("tail$"), "TAIL"),
+          new MaskRule("dash", "Dash", true, Pattern.compile("-*"), "~"));
+
+  private static final String[] PARTS = {
+    "head", "tail", "tkn:", "token=", "abc", "XYZ", "1234", "12345", "a@example.com", "@", ".",
+    "key=", "val_1", " ", " ", "-", "--", "日本語", "😀", "x"
+  };
+
+  // 区切って流した結果が、行全体を一度に処理した結果（出力・件数）と一致することを確認
+  @Test
+  void chunked_line_matches_whole_line_masking() {
+
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(RULES);
+    Random random = new Random(42);
+
+    for (int trial = 0; trial < 30; trial++) {
+      StringBuilder sb = new StringBuilder();
+      int parts = 200 + random.nextInt(3000);
+      for (int i = 0; i < parts; i++) {
+        sb.append(PARTS[random.nextInt(PARTS.length)]);
+      }
+      String line = sb.toString();
+
+      MaskContext expectedCtx = new MaskContext(ruleSet);
+      String expected = new MaskEngine().mask(line, expectedCtx, false);
+
+      for (int chunk : new int[] {1, 3, 7, 300, 5000}) {
+        MaskContext ctx = new MaskContext(ruleSet);
+        String actual = maskInChunks(line, chunk, ctx);
+
+        String label = "trial=" + trial + " chunk=" + chunk;
+        assertEquals(expected, actual, label);
+        assertArrayEquals(expectedCtx.counts(), ctx.counts(), label);
+        assertEquals(expectedCtx.totalCount(), ctx.totalCount());
+      }
+    }
+  }
+
+  // マッチが無い範囲は、行の終わりを待たずに出力が進むことを確認
+  @Test
+  void output_progresses_before_end_of_line() {
+
+    // 空マッチのルール（dash）は除く
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(RULES.subList(0, RULES.size() - 1));
+    MaskContext ctx = new MaskContext(ruleSet);
+    StreamingLineMasker masker = new StreamingLineMasker(ctx);
+
+    StringBuilder out = new StringBuilder();
+    String block = "lorem ipsum dolor sit amet, ".repeat(1000);
+    for (int i = 0; i < 20; i++) {
+      masker.append(block, out);
+    }
+
+    // 行末（最後の数千文字）以外はすでに出力されている
+    assertTrue(out.length() > block.length() * 19, "emitted=" + out.length());
+
+    masker.finish(out);
+    assertEquals(block.repeat(20), out.toString());
+    assertEquals(0L, ctx.totalCount());
+  }
+
+  // 探し直す間隔を広げる長さを超えて続くマッチも、行全体で処理した場合と同じ結果になる（途中を素通しで出力しない）ことを確認
+  @Test
+  void match_longer_than_recheck_chars_matches_whole_line_masking() {
+    int recheck = 1000;
+    String run = "x".repeat(8 * recheck);
+    List<MaskRule> rules =
+        List.of(
+            new MaskRule(
+                "password", "Password", true, Pattern.compile("password=.*"), "password=[MASKED]"),
+            new MaskRule(
+                "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]{8,}"), "token=[MASKED]"),
+            new MaskRule("pair", "Pair", true, Pattern.compile("begin.*?end"), "[PAIR]"));
+    String[] lines = {
+      "ts=1 password=" + run,
+      "ts=1 token=" + run + " rest token=abcdefgh1",
+      "ts=1 begin " + run + " end rest",
+      "ts=1 begin " + run
+    };
+
+    for (MaskRule rule : rules) {
+      CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(rule));
+      for (String line : lines) {
+        MaskContext expectedCtx = new MaskContext(ruleSet);
+        String expected = new MaskEngine().mask(line, expectedCtx, false);
+
+        for (int chunk : new int[] {7, 100, 3000}) {
+          MaskContext ctx = new MaskContext(ruleSet);
+          String label = rule.id() + " chunk=" + chunk + " line=" + line.substring(0, 12);
+          assertEquals(expected, maskInChunks(line, chunk, ctx, recheck), label);
+          assertArrayEquals(expectedCtx.counts(), ctx.counts(), label);
+        }
+      }
+    }
+
+    // 行末まで続くマッチは、行末まで1文字も出力しない
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(rules.subList(0, 1));
+    StreamingLineMasker masker = new StreamingLineMasker(new MaskContext(ruleSet), recheck);
+    StringBuilder out = new StringBuilder();
+    masker.append("ts=1 password=", out);
+    for (int i = 0; i < run.length(); i += 100) {
+      masker.append(run.substring(i, i + 100), out);
+    }
+    assertEquals("ts=1 ", out.toString());
+    masker.finish(out);
+    assertEquals("ts=1 password=[MASKED]", out.toString());
+  }
+
+  private static String maskInChunks(String line, int chunk, MaskContext ctx) {
+    return maskInChunks(line, chunk, ctx, StreamingLineMasker.DEFAULT_RECHECK_CHARS);
+  }
+
+  private static String maskInChunks(String line, int chunk, MaskContext ctx, int recheck) {
+    StreamingLineMasker masker = new StreamingLineMasker(ctx, recheck);
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < line.length(); i += chunk) {
+      masker.append(line.substring(i, Math.min(line.length(), i + chunk)), out);
+    }
+    masker.finish(out);
+    return out.toString();
+  }
+}
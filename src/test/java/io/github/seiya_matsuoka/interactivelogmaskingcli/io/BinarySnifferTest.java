@@ -0,0 +1,36 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class BinarySnifferTest {
+
+  // 日本語を含む UTF-8 のテキストはバイナリと判定しないことを確認
+  @Test
+  void detect_returns_null_for_utf8_text() {
+    byte[] text = "2024-01-01 INFO ログイン成功 user=alice\n".getBytes(StandardCharsets.UTF_8);
+    assertNull(BinarySniffer.detect(text, text.length, true));
+
+    // サンプルの末尾で途切れた文字は不正としない
+    assertNull(BinarySniffer.detect(text, text.length - 20, false));
+  }
+
+  // マジックナンバー・NUL バイト・不正な UTF-8 の多いデータを判定することを確認
+  @Test
+  void detect_reports_reason_for_binary_data() {
+    byte[] gzip = {0x1F, (byte) 0x8B, 0x08, 0x00, 'a', 'b'};
+    assertEquals("magic:gzip", BinarySniffer.detect(gzip, gzip.length, true));
+
+    byte[] nul = "abc\0def\n".getBytes(StandardCharsets.US_ASCII);
+    assertEquals("nul-bytes", BinarySniffer.detect(nul, nul.length, true));
+
+    byte[] latin1 = "café déjà vu à l'été\n".getBytes(StandardCharsets.ISO_8859_1);
+    assertEquals("invalid-utf8", BinarySniffer.detect(latin1, latin1.length, true));
+
+    // 数バイトの破損だけならテキストとして扱う（処理時のエラーにする）
+    byte[] broken = {'o', 'k', '\n', (byte) 0xE3, (byte) 0x81};
+    assertNull(BinarySniffer.detect(broken, broken.length, true));
+  }
+}
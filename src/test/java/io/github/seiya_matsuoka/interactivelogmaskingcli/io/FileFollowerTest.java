@@ -0,0 +1,190 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRuleCompiler;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRuleConfig;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRulesConfig;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskRunReport;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileFollowerTest {
+
+  @TempDir Path tempDir;
+
+  private static final CompiledRuleSet RULES =
+      new MaskRuleCompiler()
+          .compileRuleSet(
+              new MaskRulesConfig()
+                  .setVersion(1)
+                  .setRules(
+                      List.of(
+                          new MaskRuleConfig()
+                              .setId("token")
+                              .setName("Token")
+                              .setPattern("token=([A-Za-z0-9]+)")
+                              .setReplacement("token=***"))));
+
+  private MaskRunReport follow(Path input, Path out, BooleanSupplier stop) throws Exception {
+    return new FileFollower()
+        .follow(
+            input,
+            out,
+            RULES,
+            "",
+            out.resolve("checkpoint.json"),
+            new ProcessingOptions().setFollowPollMillis(10),
+            stop);
+  }
+
+  private static void append(Path file, String text) throws Exception {
+    Files.writeString(
+        file, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  // 再起動しても処理済みの分は再処理せず、書きかけの行は区切りが追記されるまで待つことを確認
+  @Test
+  void follow_resumes_from_checkpoint_and_waits_for_complete_lines() throws Exception {
+    Path input = tempDir.resolve("input");
+    Files.createDirectories(input);
+    Path log = input.resolve("app.log");
+    Path out = tempDir.resolve("out");
+    append(log, "a token=abc\r\nユーザー\n");
+
+    MaskRunReport first = follow(input, out, () -> true);
+    assertEquals("a token=***\r\nユーザー\n", Files.readString(out.resolve("app.log")));
+    assertEquals(1L, first.totalCount());
+
+    // 書きかけの行（区切りなし）は出力しない
+    append(log, "token=def\ntoken=gh");
+    MaskRunReport second = follow(input, out, () -> true);
+    assertEquals("a token=***\r\nユーザー\ntoken=***\n", Files.readString(out.resolve("app.log")));
+    assertEquals(1L, second.totalCount());
+
+    // 行が完成したら、続きから処理する
+    append(log, "i end\n");
+    follow(input, out, () -> true);
+    assertEquals(
+        "a token=***\r\nユーザー\ntoken=***\ntoken=*** end\n",
+        Files.readString(out.resolve("app.log")));
+  }
+
+  // 書きかけの行を保持したまま続きを待ち、不正な UTF-8 の行は警告して読み飛ばし、追従を続けることを確認
+  @Test
+  void follow_keeps_partial_line_and_skips_malformed_lines() throws Exception {
+    Path input = tempDir.resolve("input");
+    Files.createDirectories(input);
+    Path log = input.resolve("app.log");
+    Path out = tempDir.resolve("out");
+    append(log, "token=ab");
+
+    List<String> warnings = new ArrayList<>();
+    int[] cycle = {0};
+    new FileFollower()
+        .follow(
+            input,
+            out,
+            RULES,
+            "",
+            out.resolve("checkpoint.json"),
+            new ProcessingOptions().setFollowPollMillis(10),
+            () -> {
+              try {
+                switch (cycle[0]++) {
+                  case 0 -> append(log, "cd");
+                  case 1 -> {
+                    append(log, "\n");
+                    Files.write(
+                        log, new byte[] {'x', (byte) 0xFF, '\n'}, StandardOpenOption.APPEND);
+                    append(log, "token=ef\n");
+                  }
+                  default -> {
+                    return true;
+                  }
+                }
+              } catch (Exception e) {
+                throw new IllegalStateException(e);
+              }
+              return false;
+            },
+            warnings::add);
+
+    assertEquals("token=***\ntoken=***\n", Files.readString(out.resolve("app.log")));
+    assertEquals(1, warnings.size());
+    assertTrue(warnings.get(0).contains("offset=11"), warnings.get(0));
+
+    // 読み飛ばした行の後ろから再開する
+    append(log, "token=gh\n");
+    follow(input, out, () -> true);
+    assertEquals("token=***\ntoken=***\ntoken=***\n", Files.readString(out.resolve("app.log")));
+  }
+
+  // チェックポイントの保存前に止まって出力だけ進んでいた場合、再開時に切り詰めて重複させないことを確認
+  @Test
+  void follow_truncates_output_written_after_last_checkpoint() throws Exception {
+    Path input = tempDir.resolve("input");
+    Files.createDirectories(input);
+    Path log = input.resolve("app.log");
+    Path out = tempDir.resolve("out");
+    append(log, "token=a\n");
+    follow(input, out, () -> true);
+
+    append(out.resolve("app.log"), "token=*** (not checkpointed)\n");
+    append(log, "token=b\n");
+    follow(input, out, () -> true);
+
+    assertEquals("token=***\ntoken=***\n", Files.readString(out.resolve("app.log")));
+  }
+
+  // 追従中のローテーション（旧ファイルの残りを処理してから新ファイルへ）と切り詰めを扱えることを確認
+  @Test
+  void follow_handles_rotation_and_truncation() throws Exception {
+    Path input = tempDir.resolve("input");
+    Files.createDirectories(input);
+    Path log = input.resolve("app.log");
+    Path out = tempDir.resolve("out");
+    append(log, "token=1\n");
+
+    int[] cycle = {0};
+    MaskRunReport report =
+        follow(
+            input,
+            out,
+            () -> {
+              try {
+                switch (cycle[0]++) {
+                  case 0 -> {
+                    // 旧ファイルへの最後の追記（区切りなし）→ 移動 → 新しいファイル
+                    append(log, "token=2");
+                    Files.move(log, tempDir.resolve("app.log.1"));
+                    append(log, "token=3\n");
+                  }
+                  case 1 -> {
+                    // copytruncate 相当（処理位置より短くなる）
+                    Files.writeString(log, "ok\n");
+                  }
+                  default -> {
+                    return true;
+                  }
+                }
+              } catch (Exception e) {
+                throw new IllegalStateException(e);
+              }
+              return false;
+            });
+
+    assertEquals(
+        "token=***\ntoken=***" + System.lineSeparator() + "token=***\nok\n",
+        Files.readString(out.resolve("app.log")));
+    assertEquals(3L, report.totalCount());
+  }
+}
@@ -2,12 +2,39 @@ package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRuleCompiler;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRuleConfig;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRulesConfig;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.core.MaskRule;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.report.MaskedFileReport;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.MalformedInputException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -80,4 +107,1156 @@ class FileMaskingProcessorTest {
     assertEquals(1, report.files().size());
     assertEquals(1L, report.totalCount());
   }
+
+  // ファイル別の件数と実行全体の件数が、ルールごとに正しく集計されることを確認（件数0のルールは載らない）
+  @Test
+  void process_aggregates_counts_per_file_and_run() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    Files.writeString(inputBase.resolve("a.log"), "token=abc\ntoken=def userId=1\n");
+    Files.writeString(inputBase.resolve("b.log"), "userId=2\nnothing here\n");
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    MaskRule user =
+        new MaskRule("user", "User", true, Pattern.compile("userId=\\d+"), "userId=[MASKED]");
+    MaskRule unused =
+        new MaskRule("unused", "Unused", true, Pattern.compile("never=\\d+"), "[X]");
+
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+    var report =
+        processor.process(inputBase, tempDir.resolve("out"), List.of(token, user, unused), "");
+
+    assertEquals(2, report.files().size());
+    assertEquals(Map.of("token", 2L, "user", 1L), report.files().get(0).countsPerRule());
+    assertEquals(Map.of("user", 1L), report.files().get(1).countsPerRule());
+
+    assertEquals(Map.of("token", 2L, "user", 2L), report.totalPerRule());
+    assertEquals(4L, report.totalCount());
+  }
+
+  // 並列処理でも、ファイル別結果の順序・出力内容・件数が逐次処理と一致することを確認
+  @Test
+  void process_parallel_matches_serial_result() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    for (int i = 0; i < 12; i++) {
+      Path dir = inputBase.resolve("d" + (i % 3));
+      Files.createDirectories(dir);
+      StringBuilder sb = new StringBuilder();
+      for (int line = 0; line <= i; line++) {
+        sb.append("token=t").append(line).append(" userId=").append(i).append('\n');
+      }
+      Files.writeString(dir.resolve("f" + i + ".log"), sb.toString());
+    }
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    MaskRule user =
+        new MaskRule("user", "User", true, Pattern.compile("userId=\\d+"), "userId=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token, user));
+
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+    var serial =
+        processor.process(request(inputBase, tempDir.resolve("out-serial"), ruleSet));
+    var parallel =
+        processor.process(
+            request(inputBase, tempDir.resolve("out-parallel"), ruleSet)
+                .withOptions(new ProcessingOptions().setParallelism(4)));
+
+    assertEquals(serial.files().size(), parallel.files().size());
+    for (int i = 0; i < serial.files().size(); i++) {
+      var s = serial.files().get(i);
+      var p = parallel.files().get(i);
+      assertEquals(s.inputFile(), p.inputFile());
+      assertEquals(s.countsPerRule(), p.countsPerRule());
+      assertEquals(Files.readString(s.outputFile()), Files.readString(p.outputFile()));
+    }
+    assertEquals(serial.totalPerRule(), parallel.totalPerRule());
+    assertEquals(78L, parallel.totalPerRule().get("token"));
+    assertEquals(serial.totalCount(), parallel.totalCount());
+  }
+
+  // 1ファイルを分割して並列処理しても、出力（バイト列）と件数が逐次処理と一致することを確認
+  @Test
+  void process_split_file_matches_serial_output() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+
+    // 改行の種類（\n / \r\n / \r）・マルチバイト文字・末尾改行なしを混在させる
+    StringBuilder sb = new StringBuilder();
+    String[] eols = {"\n", "\r\n", "\r"};
+    for (int i = 0; i < 500; i++) {
+      sb.append("行").append(i).append(" token=t").append(i).append(" ユーザー");
+      sb.append(eols[i % eols.length]);
+    }
+    sb.append("token=last");
+    Files.writeString(inputBase.resolve("big.log"), sb.toString());
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token));
+
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+    var serial =
+        processor.process(request(inputBase, tempDir.resolve("out-serial"), ruleSet));
+    var split =
+        processor.process(
+            request(inputBase, tempDir.resolve("out-split"), ruleSet)
+                .withOptions(
+                    new ProcessingOptions()
+                        .setParallelism(3)
+                        .setChunkThresholdBytes(1)
+                        .setChunkSizeBytes(97)));
+
+    assertArrayEquals(
+        Files.readAllBytes(serial.files().get(0).outputFile()),
+        Files.readAllBytes(split.files().get(0).outputFile()));
+    assertEquals(serial.files().get(0).countsPerRule(), split.files().get(0).countsPerRule());
+    assertEquals(501L, split.totalCount());
+  }
+
+  // パイプライン処理（読み込み/マスキング/書き出しを別スレッド）でも、出力と件数が逐次処理と一致することを確認
+  @Test
+  void process_pipelined_matches_serial_output() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+
+    // バッチ（512行）をまたぐ行数にする
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      sb.append("token=t").append(i).append(i % 7 == 0 ? " userId=" + i : "").append('\n');
+    }
+    Files.writeString(inputBase.resolve("app.log"), sb.toString());
+    Files.writeString(inputBase.resolve("empty.log"), "");
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    MaskRule user =
+        new MaskRule("user", "User", true, Pattern.compile("userId=\\d+"), "userId=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token, user));
+
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+    var serial =
+        processor.process(request(inputBase, tempDir.resolve("out-serial"), ruleSet));
+    var pipelined =
+        processor.process(
+            request(inputBase, tempDir.resolve("out-pipelined"), ruleSet)
+                .withOptions(new ProcessingOptions().setPipelineWorkers(3)));
+
+    assertEquals(serial.files().size(), pipelined.files().size());
+    for (int i = 0; i < serial.files().size(); i++) {
+      var s = serial.files().get(i);
+      var p = pipelined.files().get(i);
+      assertArrayEquals(Files.readAllBytes(s.outputFile()), Files.readAllBytes(p.outputFile()));
+      assertEquals(s.countsPerRule(), p.countsPerRule());
+    }
+    assertEquals(Map.of("token", 2000L, "user", 286L), pipelined.totalPerRule());
+  }
+
+  // 計測を有効にすると、どの処理方法でもファイルごとの行数・バイト数とルールごとの処理時間が記録されることを確認
+  @Test
+  void process_collects_metrics_in_every_mode() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+
+    StringBuilder sb = new StringBuilder();
+    String[] eols = {"\n", "\r\n", "\r"};
+    for (int i = 0; i < 500; i++) {
+      sb.append("行").append(i).append(" token=t").append(i).append(eols[i % eols.length]);
+    }
+    sb.append("token=last");
+    byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+    Files.write(inputBase.resolve("app.log"), content);
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token));
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+
+    List<ProcessingOptions> modes =
+        List.of(
+            new ProcessingOptions(),
+            new ProcessingOptions().setPipelineWorkers(2),
+            new ProcessingOptions()
+                .setParallelism(3)
+                .setChunkThresholdBytes(1)
+                .setChunkSizeBytes(97),
+            new ProcessingOptions().setLongLineThresholdChars(8),
+            new ProcessingOptions().setByteLevelMasking(true),
+            new ProcessingOptions().setPassthroughUnchanged(true));
+
+    for (int i = 0; i < modes.size(); i++) {
+      var report =
+          processor.process(
+              request(inputBase, tempDir.resolve("out" + i), ruleSet)
+                  .withOptions(modes.get(i).setCollectMetrics(true)));
+
+      var metrics = report.files().get(0).metrics();
+      assertNotNull(metrics, "mode=" + i);
+      assertEquals(501L, metrics.lines(), "mode=" + i);
+      assertEquals(content.length, metrics.bytes(), "mode=" + i);
+      assertTrue(metrics.nanos() > 0, "mode=" + i);
+      assertEquals(Map.of("token", 501L), report.totalPerRule());
+      assertTrue(report.nanosPerRule().get("token") > 0, "mode=" + i);
+    }
+
+    // アーカイブはエントリごとに（展開後のバイト数で）記録する
+    Path archiveBase = tempDir.resolve("archive");
+    Files.createDirectories(archiveBase);
+    try (ZipOutputStream zout =
+        new ZipOutputStream(Files.newOutputStream(archiveBase.resolve("logs.zip")))) {
+      zout.putNextEntry(new ZipEntry("app.log"));
+      zout.write(content);
+      zout.closeEntry();
+    }
+    var archived =
+        processor.process(
+            request(archiveBase, tempDir.resolve("out-archive"), ruleSet)
+                .withOptions(new ProcessingOptions().setCollectMetrics(true)));
+    assertEquals(501L, archived.files().get(0).metrics().lines());
+    assertEquals(content.length, archived.files().get(0).metrics().bytes());
+
+    // 計測しない場合は記録しない
+    var plain = processor.process(request(inputBase, tempDir.resolve("out-plain"), ruleSet));
+    assertNull(plain.files().get(0).metrics());
+    assertTrue(plain.nanosPerRule().isEmpty());
+  }
+
+  // 進捗（ファイル数・バイト数・置換件数）が、逐次・並列のどちらでも実行結果と一致することを確認
+  @Test
+  void process_publishes_progress_in_serial_and_parallel() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase.resolve("sub"));
+    Files.writeString(inputBase.resolve("a.log"), "token=a1\ntoken=a2\n", StandardCharsets.UTF_8);
+    Files.writeString(inputBase.resolve("sub/b.log"), "token=b1\n", StandardCharsets.UTF_8);
+    Files.writeString(inputBase.resolve("sub/c.log"), "no secret\n", StandardCharsets.UTF_8);
+    long totalBytes = 18 + 9 + 10;
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token));
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+
+    List<ProcessingOptions> modes =
+        List.of(new ProcessingOptions(), new ProcessingOptions().setParallelism(3));
+    for (int i = 0; i < modes.size(); i++) {
+      ProgressTracker progress = new ProgressTracker();
+      var report =
+          processor.process(
+              request(inputBase, tempDir.resolve("out" + i), ruleSet)
+                  .withOptions(modes.get(i))
+                  .withListener(reports -> {})
+                  .withProgress(progress));
+
+      ProgressTracker.Snapshot s = progress.snapshot();
+      assertTrue(s.totalsKnown(), "mode=" + i);
+      assertEquals(3L, s.filesTotal(), "mode=" + i);
+      assertEquals(3L, s.filesDone(), "mode=" + i);
+      assertEquals(totalBytes, s.bytesTotal(), "mode=" + i);
+      assertEquals(totalBytes, s.bytesDone(), "mode=" + i);
+      assertEquals(report.totalCount(), s.hits(), "mode=" + i);
+      assertEquals(3L, s.hits(), "mode=" + i);
+      assertEquals(1.0, s.fraction(), "mode=" + i);
+      assertEquals(0L, s.etaNanos(), "mode=" + i);
+    }
+  }
+
+  // ファイル別の結果を保持しない場合も、ファイル数・スキップ・合計（前回の結果を含む）が保持する場合と一致することを確認
+  @Test
+  void process_without_file_reports_keeps_counts_and_skipped() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase.resolve("sub"));
+    Files.writeString(inputBase.resolve("a.log"), "token=a1\ntoken=a2\n", StandardCharsets.UTF_8);
+    Files.writeString(inputBase.resolve("sub/b.log"), "token=b1\n", StandardCharsets.UTF_8);
+    Files.write(inputBase.resolve("sub/core.1"), new byte[] {0x7F, 'E', 'L', 'F', 2, 1, 1, 0});
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token));
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+
+    List<ProcessingOptions> modes =
+        List.of(
+            new ProcessingOptions().setIncremental(true),
+            new ProcessingOptions().setIncremental(true).setParallelism(3));
+    for (int i = 0; i < modes.size(); i++) {
+      Path outBase = tempDir.resolve("out" + i);
+      var kept = processor.process(request(inputBase, outBase, ruleSet).withOptions(modes.get(i)));
+
+      // 2回目は前回の結果を使う（処理を省いたファイルの件数も合計に入る）
+      List<MaskedFileReport> received = Collections.synchronizedList(new ArrayList<>());
+      var dropped =
+          processor.process(
+              request(inputBase, outBase, ruleSet)
+                  .withOptions(modes.get(i))
+                  .withListener(reports -> received.addAll(reports))
+                  .withFileReports(false));
+
+      assertEquals(3, kept.fileCount(), "mode=" + i);
+      assertEquals(0, kept.cachedCount(), "mode=" + i);
+      assertTrue(dropped.files().isEmpty(), "mode=" + i);
+      assertEquals(3, dropped.fileCount(), "mode=" + i);
+      assertEquals(2, dropped.cachedCount(), "mode=" + i);
+      assertEquals(3, received.size(), "mode=" + i);
+      assertEquals(kept.skipped(), dropped.skipped(), "mode=" + i);
+      assertEquals("magic:elf", dropped.skipped().get(0).skippedReason(), "mode=" + i);
+      assertEquals(kept.totalPerRule(), dropped.totalPerRule(), "mode=" + i);
+      assertEquals(3L, dropped.totalCount(), "mode=" + i);
+    }
+  }
+
+  // 長い行を区切って処理しても、出力と件数が行全体で処理した場合と一致することを確認
+  @Test
+  void process_long_lines_in_windows_matches_whole_line_output() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+
+    // しきい値を大きく超える1行（トークンが読み込みの区切りをまたぐ）と、改行の種類が混在する短い行
+    StringBuilder sb = new StringBuilder("{\"payload\":\"");
+    for (int i = 0; i < 20000; i++) {
+      sb.append("token=t").append(i).append(i % 7 == 0 ? " userId=" + i : "").append(", ");
+    }
+    sb.append("\"}\r\nshort token=abc\rlast userId=1\n\ntoken=tail");
+    Files.writeString(inputBase.resolve("dump.log"), sb.toString());
+    try (OutputStream gz =
+        new GZIPOutputStream(Files.newOutputStream(inputBase.resolve("z.log.gz")))) {
+      gz.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    MaskRule user =
+        new MaskRule("user", "User", true, Pattern.compile("userId=\\d+"), "userId=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token, user));
+
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+    var whole = processor.process(request(inputBase, tempDir.resolve("out-whole"), ruleSet));
+    var windowed =
+        processor.process(
+            request(inputBase, tempDir.resolve("out-windowed"), ruleSet)
+                .withOptions(new ProcessingOptions().setLongLineThresholdChars(100)));
+
+    assertEquals(2, windowed.files().size());
+    for (int i = 0; i < whole.files().size(); i++) {
+      var w = whole.files().get(i);
+      var l = windowed.files().get(i);
+      if (w.outputFile().toString().endsWith(".gz")) {
+        assertEquals(gunzip(w.outputFile()), gunzip(l.outputFile()));
+      } else {
+        assertArrayEquals(Files.readAllBytes(w.outputFile()), Files.readAllBytes(l.outputFile()));
+      }
+      assertEquals(w.countsPerRule(), l.countsPerRule());
+    }
+    assertEquals(Map.of("token", 40004L, "user", 5718L), windowed.totalPerRule());
+  }
+
+  // バイト単位の処理（ASCII 安全なルールのみ）でも、出力と件数が文字列としての処理と一致することを確認
+  @Test
+  void process_byte_level_matches_string_output() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    Files.writeString(
+        inputBase.resolve("app.log"),
+        "ユーザー token=abc123 完了\r\nurl=https://例え.jp/パス 次\rtoken=Z9\n\n末尾 token=x");
+
+    MaskRulesConfig config =
+        new MaskRulesConfig()
+            .setVersion(1)
+            .setRules(
+                List.of(
+                    new MaskRuleConfig()
+                        .setId("token")
+                        .setName("Token")
+                        .setPattern("token=([A-Za-z0-9]+)")
+                        .setReplacement("token=[伏字]"),
+                    new MaskRuleConfig()
+                        .setId("url")
+                        .setName("Url")
+                        .setPattern("url=([^\\s]+)")
+                        .setReplacement("url=***")));
+    CompiledRuleSet ruleSet = new MaskRuleCompiler().compileRuleSet(config);
+    assertTrue(ruleSet.isAsciiSafe());
+
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+    var string = processor.process(request(inputBase, tempDir.resolve("out-string"), ruleSet));
+    var bytes =
+        processor.process(
+            request(inputBase, tempDir.resolve("out-bytes"), ruleSet)
+                .withOptions(new ProcessingOptions().setByteLevelMasking(true)));
+
+    assertArrayEquals(
+        Files.readAllBytes(string.files().get(0).outputFile()),
+        Files.readAllBytes(bytes.files().get(0).outputFile()));
+    assertEquals(string.totalPerRule(), bytes.totalPerRule());
+    assertEquals(4L, bytes.totalCount());
+
+    // 不正な UTF-8 は文字列としての処理と同様にエラーになる
+    Files.write(inputBase.resolve("app.log"), new byte[] {'o', 'k', '\n', (byte) 0xE3, (byte) 0x81});
+    assertThrows(
+        MalformedInputException.class,
+        () ->
+            processor.process(
+                ProcessingRequest.of(inputBase, tempDir.resolve("out-bad"), ruleSet, "", true)
+                    .withOptions(new ProcessingOptions().setByteLevelMasking(true))));
+  }
+
+  // 単語境界のルールは、結合文字を含む入力でバイト単位と文字列とで結果が変わるため、バイト単位の処理の対象にしないことを確認
+  @Test
+  void process_byte_level_keeps_word_boundaries_with_combining_marks() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    Files.writeString(inputBase.resolve("app.log"), "token=abc\u0301 z\npin=1234\u0301 ok\n");
+
+    MaskRulesConfig config =
+        new MaskRulesConfig()
+            .setVersion(1)
+            .setRules(
+                List.of(
+                    new MaskRuleConfig()
+                        .setId("token")
+                        .setName("Token")
+                        .setPattern("token=\\w+\\b")
+                        .setReplacement("token=[MASKED]"),
+                    new MaskRuleConfig()
+                        .setId("pin")
+                        .setName("Pin")
+                        .setPattern("pin=\\d+\\B")
+                        .setReplacement("X")));
+    CompiledRuleSet ruleSet = new MaskRuleCompiler().compileRuleSet(config);
+    assertFalse(ruleSet.isAsciiSafe());
+
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+    var string = processor.process(request(inputBase, tempDir.resolve("out-string"), ruleSet));
+    var bytes =
+        processor.process(
+            request(inputBase, tempDir.resolve("out-bytes"), ruleSet)
+                .withOptions(new ProcessingOptions().setByteLevelMasking(true)));
+
+    String nl = System.lineSeparator();
+    assertEquals(
+        "token=abc\u0301 z" + nl + "X\u0301 ok" + nl,
+        Files.readString(string.files().get(0).outputFile()));
+    assertArrayEquals(
+        Files.readAllBytes(string.files().get(0).outputFile()),
+        Files.readAllBytes(bytes.files().get(0).outputFile()));
+    assertEquals(string.totalPerRule(), bytes.totalPerRule());
+  }
+
+  @Test
+  void process_passthrough_keeps_line_endings_and_copies_unchanged_files() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    String hit = "a token=abc123\r\nplain\rtoken=Z9 ユーザー\n\n末尾 token=x";
+    String clean = "no hits\r\n日本語の行\nlast";
+    Files.writeString(inputBase.resolve("hit.log"), hit);
+    Files.writeString(inputBase.resolve("clean.log"), clean);
+
+    CompiledRuleSet ruleSet =
+        new MaskRuleCompiler()
+            .compileRuleSet(
+                new MaskRulesConfig()
+                    .setVersion(1)
+                    .setRules(
+                        List.of(
+                            new MaskRuleConfig()
+                                .setId("token")
+                                .setName("Token")
+                                .setPattern("token=([A-Za-z0-9]+)")
+                                .setReplacement("token=[伏字]"))));
+
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+    String expected = "a token=[伏字]\r\nplain\rtoken=[伏字] ユーザー\n\n末尾 token=[伏字]";
+
+    // 文字列での処理・バイト単位の処理のどちらでも、改行は入力のまま残る
+    for (boolean byteLevel : new boolean[] {false, true}) {
+      Path outBase = tempDir.resolve("out-" + byteLevel);
+      var report =
+          processor.process(
+              request(inputBase, outBase, ruleSet)
+                  .withOptions(
+                      new ProcessingOptions()
+                          .setPassthroughUnchanged(true)
+                          .setByteLevelMasking(byteLevel)));
+
+      assertEquals(expected, Files.readString(outBase.resolve("hit.log")));
+      assertArrayEquals(
+          Files.readAllBytes(inputBase.resolve("clean.log")),
+          Files.readAllBytes(outBase.resolve("clean.log")));
+      assertEquals(3L, report.totalCount());
+    }
+  }
+
+  // チャンクの上限を超える長い行を含むファイルも、分割処理で逐次処理と同じ出力・件数になることを確認
+  @Test
+  void process_split_streams_ranges_longer_than_chunk_limit() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      sb.append("短い行 token=s").append(i).append("\r\n");
+    }
+    for (int i = 0; i < 200; i++) {
+      sb.append("長い行 token=L").append(i).append(' ');
+    }
+    sb.append('\n');
+    for (int i = 0; i < 50; i++) {
+      sb.append("後続 token=t").append(i).append('\n');
+    }
+    Files.writeString(inputBase.resolve("app.log"), sb.toString());
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token));
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+
+    Path serial = tempDir.resolve("serial");
+    processor.process(request(inputBase, serial, ruleSet));
+
+    // チャンクサイズ 97 バイトでは上限は 388 バイト。長い行（約 4KB）の範囲は1行ずつ処理される
+    ProcessingOptions split =
+        new ProcessingOptions().setParallelism(3).setChunkThresholdBytes(1).setChunkSizeBytes(97);
+    Path outBase = tempDir.resolve("split");
+    var report = processor.process(request(inputBase, outBase, ruleSet).withOptions(split));
+    var dry =
+        processor.process(
+            ProcessingRequest.of(inputBase, tempDir.resolve("dry"), ruleSet, "", true)
+                .withOptions(split));
+
+    assertArrayEquals(
+        Files.readAllBytes(serial.resolve("app.log")),
+        Files.readAllBytes(outBase.resolve("app.log")));
+    assertEquals(300L, report.totalCount());
+    assertEquals(300L, dry.totalCount());
+  }
+
+  // パイプライン処理・分割処理を指定しても、転送・バイト単位の処理はファイル単位の処理と同じ出力になることを確認
+  @Test
+  void process_passthrough_and_byte_level_are_not_pipelined_or_split() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      sb.append("行").append(i).append(" token=t").append(i).append((i % 2 == 0) ? "\r\n" : "\n");
+    }
+    Files.writeString(inputBase.resolve("app.log"), sb.toString());
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token));
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+
+    List<ProcessingOptions> modes =
+        List.of(
+            new ProcessingOptions().setPipelineWorkers(2),
+            new ProcessingOptions()
+                .setParallelism(3)
+                .setChunkThresholdBytes(1)
+                .setChunkSizeBytes(97));
+
+    for (boolean passthrough : new boolean[] {false, true}) {
+      for (boolean byteLevel : new boolean[] {false, true}) {
+        Path single = tempDir.resolve("single-" + passthrough + "-" + byteLevel);
+        processor.process(
+            request(inputBase, single, ruleSet)
+                .withOptions(
+                    new ProcessingOptions()
+                        .setPassthroughUnchanged(passthrough)
+                        .setByteLevelMasking(byteLevel)));
+        byte[] expected = Files.readAllBytes(single.resolve("app.log"));
+
+        for (int i = 0; i < modes.size(); i++) {
+          Path outBase = tempDir.resolve("out-" + passthrough + "-" + byteLevel + "-" + i);
+          var report =
+              processor.process(
+                  request(inputBase, outBase, ruleSet)
+                      .withOptions(
+                          modes
+                              .get(i)
+                              .setPassthroughUnchanged(passthrough)
+                              .setByteLevelMasking(byteLevel)));
+
+          String mode = "passthrough=" + passthrough + " byteLevel=" + byteLevel + " mode=" + i;
+          assertArrayEquals(expected, Files.readAllBytes(outBase.resolve("app.log")), mode);
+          assertEquals(300L, report.totalCount(), mode);
+        }
+        if (passthrough) {
+          assertTrue(new String(expected, StandardCharsets.UTF_8).contains("\r\n"));
+        }
+      }
+    }
+  }
+
+  // 差分実行では変わっていないファイルの処理を省き、前回の件数で合計が変わらないことを確認
+  @Test
+  void process_incremental_skips_unchanged_files() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase.resolve("sub"));
+    Files.writeString(inputBase.resolve("a.log"), "token=a1 token=a2\n");
+    Files.writeString(inputBase.resolve("sub/b.log"), "token=b1\n");
+    Files.writeString(inputBase.resolve("c.log"), "token=c1\n");
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token));
+    Path outBase = tempDir.resolve("out");
+    ProcessingOptions options = new ProcessingOptions().setIncremental(true);
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+
+    var first = processor.process(request(inputBase, outBase, ruleSet).withOptions(options));
+    assertTrue(first.files().stream().noneMatch(f -> f.cached()));
+    assertEquals(4L, first.totalCount());
+
+    // b は内容を変更、c は更新日時だけ変更、d は追加
+    Files.writeString(inputBase.resolve("sub/b.log"), "token=b1 token=b2 token=b3\n");
+    Files.setLastModifiedTime(
+        inputBase.resolve("c.log"), FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+    Files.writeString(inputBase.resolve("d.log"), "token=d1\n");
+
+    var second = processor.process(request(inputBase, outBase, ruleSet).withOptions(options));
+    List<Boolean> cached = second.files().stream().map(f -> f.cached()).toList();
+    // 入力順: a, c, d, sub/b
+    assertEquals(List.of(true, true, false, false), cached);
+    assertEquals(7L, second.totalCount());
+    assertEquals(Map.of("token", 7L), second.totalPerRule());
+    assertEquals(
+        "token=[MASKED] token=[MASKED] token=[MASKED]\n",
+        Files.readString(outBase.resolve("sub/b.log")));
+
+    // ルールが変わったら、すべて処理し直す
+    MaskRule changed =
+        new MaskRule("token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=***");
+    var third =
+        processor.process(
+            request(inputBase, outBase, CompiledRuleSet.of(List.of(changed))).withOptions(options));
+    assertTrue(third.files().stream().noneMatch(f -> f.cached()));
+    assertEquals("token=*** token=***\n", Files.readString(outBase.resolve("a.log")));
+
+    // 出力に影響する設定（長い行の扱い・アーカイブの展開）が変わっても、すべて処理し直す
+    CompiledRuleSet changedSet = CompiledRuleSet.of(List.of(changed));
+    for (ProcessingOptions changedOptions :
+        List.of(
+            new ProcessingOptions().setIncremental(true).setLongLineThresholdChars(8),
+            new ProcessingOptions().setIncremental(true).setExpandArchives(false))) {
+      var rerun =
+          processor.process(request(inputBase, outBase, changedSet).withOptions(changedOptions));
+      assertTrue(rerun.files().stream().noneMatch(f -> f.cached()));
+    }
+
+    // 出力を変えない設定（並列度）だけの違いなら、前回の結果を使う
+    var parallel =
+        processor.process(
+            request(inputBase, outBase, changedSet)
+                .withOptions(
+                    new ProcessingOptions()
+                        .setIncremental(true)
+                        .setExpandArchives(false)
+                        .setParallelism(2)));
+    assertTrue(parallel.files().stream().allMatch(f -> f.cached()));
+  }
+
+  // 差分実行のマニフェストには、どの読み込み方法でも入力全体の SHA-256 と処理前のサイズ・更新日時が記録されることを確認
+  @Test
+  void process_incremental_records_hash_of_bytes_read_while_processing() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      sb.append("行").append(i).append(" token=t").append(i).append((i % 3 == 0) ? "\r\n" : "\n");
+    }
+    byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+    Files.write(inputBase.resolve("app.log"), content);
+    ByteArrayOutputStream gz = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(gz)) {
+      out.write(content);
+    }
+    Files.write(inputBase.resolve("old.log.gz"), gz.toByteArray());
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token));
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+
+    List<ProcessingOptions> modes =
+        List.of(
+            new ProcessingOptions(),
+            new ProcessingOptions().setPipelineWorkers(2),
+            new ProcessingOptions()
+                .setParallelism(3)
+                .setChunkThresholdBytes(1)
+                .setChunkSizeBytes(97),
+            new ProcessingOptions().setParallelism(2),
+            new ProcessingOptions().setLongLineThresholdChars(8),
+            new ProcessingOptions().setByteLevelMasking(true),
+            new ProcessingOptions().setPassthroughUnchanged(true),
+            new ProcessingOptions().setMappedReadThresholdBytes(1));
+
+    for (int i = 0; i < modes.size(); i++) {
+      Path outBase = tempDir.resolve("out" + i);
+      processor.process(
+          request(inputBase, outBase, ruleSet).withOptions(modes.get(i).setIncremental(true)));
+
+      RunManifestJson json =
+          new ObjectMapper()
+              .readValue(outBase.resolve(RunManifest.FILE_NAME).toFile(), RunManifestJson.class);
+      for (String name : List.of("app.log", "old.log.gz")) {
+        Path file = inputBase.resolve(name);
+        RunManifestJson.EntryJson e = json.files.get(name);
+        String mode = "mode=" + i + " file=" + name;
+        assertEquals(
+            HexFormat.of()
+                .formatHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file))),
+            e.contentSha256,
+            mode);
+        assertEquals(Files.size(file), e.size, mode);
+        assertEquals(Files.getLastModifiedTime(file).toMillis(), e.lastModifiedMillis, mode);
+      }
+    }
+  }
+
+  // 辿りながら処理しても、レポートの順序・件数・出力は列挙してから処理した場合と同じになることを確認
+  @Test
+  void process_streaming_discovery_matches_listed_run() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    for (int d = 0; d < 4; d++) {
+      Path dir = inputBase.resolve("d" + d);
+      Files.createDirectories(dir);
+      for (int f = 0; f < 3; f++) {
+        Files.writeString(dir.resolve("f" + f + ".log"), "token=" + d + f + " x\n");
+      }
+      Files.writeString(dir.resolve("skip.txt"), "token=zz\n");
+    }
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token));
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+
+    var listed =
+        processor.process(
+            request(inputBase, tempDir.resolve("out1"), ruleSet)
+                .withOptions(new ProcessingOptions().setIncludeGlobs(List.of("*.log"))));
+    var streamed =
+        processor.process(
+            request(inputBase, tempDir.resolve("out2"), ruleSet)
+                .withOptions(
+                    new ProcessingOptions()
+                        .setIncludeGlobs(List.of("*.log"))
+                        .setDiscoveryThreads(2)
+                        .setParallelism(3)));
+
+    assertEquals(12, streamed.files().size());
+    assertEquals(
+        listed.files().stream()
+            .map(f -> tempDir.resolve("out1").relativize(f.outputFile()))
+            .toList(),
+        streamed.files().stream()
+            .map(f -> tempDir.resolve("out2").relativize(f.outputFile()))
+            .toList());
+    assertEquals(listed.totalPerRule(), streamed.totalPerRule());
+    assertEquals(
+        Files.readString(tempDir.resolve("out1/d2/f1.log")),
+        Files.readString(tempDir.resolve("out2/d2/f1.log")));
+    assertFalse(Files.exists(tempDir.resolve("out2/d0/skip.txt")));
+  }
+
+  // バイナリと判定したファイルはスキップして理由を記録し、FAIL ではエラーになることを確認
+  @Test
+  void process_skips_binary_files_and_records_reason() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    Files.writeString(inputBase.resolve("app.log"), "token=abc\n");
+    Files.write(inputBase.resolve("core.1234"), new byte[] {0x7F, 'E', 'L', 'F', 2, 1, 1, 0});
+    Files.write(inputBase.resolve("old.log.gz"), new byte[] {0x1F, (byte) 0x8B, 8, 0, 0, 0});
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token));
+    Path outBase = tempDir.resolve("out");
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+
+    var report =
+        processor.process(
+            request(inputBase, outBase, ruleSet).withOptions(new ProcessingOptions()));
+
+    assertEquals(
+        Arrays.asList(null, "magic:elf", "invalid-gzip"),
+        report.files().stream().map(f -> f.skippedReason()).toList());
+    assertEquals(1L, report.totalCount());
+    assertEquals("token=[MASKED]\n", Files.readString(outBase.resolve("app.log")));
+    assertFalse(Files.exists(outBase.resolve("core.1234")));
+
+    assertThrows(
+        IOException.class,
+        () ->
+            processor.process(
+                ProcessingRequest.of(inputBase, tempDir.resolve("out-fail"), ruleSet, "", true)
+                    .withOptions(
+                        new ProcessingOptions()
+                            .setBinaryPolicy(BinaryPolicy.FAIL)
+                            .setParallelism(2))));
+  }
+
+  // gzip の入力を展開しながら処理し、既定では gzip で（".gz" を残して）出力することを確認
+  @Test
+  void process_gzip_input_streams_and_keeps_gz_extension() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    try (OutputStream out =
+        new GZIPOutputStream(Files.newOutputStream(inputBase.resolve("app.log.gz")))) {
+      out.write("token=abc ok\nplain\n".getBytes(StandardCharsets.UTF_8));
+    }
+    Files.writeString(inputBase.resolve("b.log"), "token=def\n");
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    CompiledRuleSet ruleSet = CompiledRuleSet.of(List.of(token));
+    FileMaskingProcessor processor = new FileMaskingProcessor();
+
+    Path outBase = tempDir.resolve("out");
+    var report =
+        processor.process(
+            ProcessingRequest.of(inputBase, outBase, ruleSet, "_masked", false)
+                .withOptions(new ProcessingOptions()));
+
+    assertEquals(2L, report.totalCount());
+    assertEquals(outBase.resolve("app_masked.log.gz"), report.files().get(0).outputFile());
+    assertEquals(
+        "token=[MASKED] ok" + System.lineSeparator() + "plain" + System.lineSeparator(),
+        gunzip(outBase.resolve("app_masked.log.gz")));
+    assertEquals(
+        "token=[MASKED]" + System.lineSeparator(),
+        Files.readString(outBase.resolve("b_masked.log")));
+
+    // NONE では展開したまま（".gz" を外して）出力する
+    Path plainBase = tempDir.resolve("out-plain");
+    processor.process(
+        request(inputBase, plainBase, ruleSet)
+            .withOptions(
+                new ProcessingOptions()
+                    .setOutputCompression(OutputCompression.NONE)
+                    .setByteLevelMasking(true)));
+    assertEquals(
+        "token=[MASKED] ok" + System.lineSeparator() + "plain" + System.lineSeparator(),
+        Files.readString(plainBase.resolve("app.log")));
+  }
+
+  // 複数スレッドでの gzip 圧縮（独立したメンバーの連結）でも、展開結果が同じになることを確認
+  @Test
+  void process_gzip_output_with_compression_threads() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    StringBuilder sb = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; sb.length() < 5 * 1024 * 1024; i++) {
+      sb.append("line ").append(i).append(" token=t").append(i).append('\n');
+      expected.append("line ").append(i).append(" token=[MASKED]").append(System.lineSeparator());
+    }
+    Files.writeString(inputBase.resolve("big.log"), sb);
+    // 圧縮後は数MBに満たないが、展開後は大きい gzip の入力
+    try (OutputStream gz =
+        new GZIPOutputStream(Files.newOutputStream(inputBase.resolve("packed.log.gz")))) {
+      gz.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    assertTrue(Files.size(inputBase.resolve("packed.log.gz")) < GzipFiles.PARALLEL_MIN_BYTES);
+    Files.writeString(inputBase.resolve("small.log"), "token=s1\n");
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    Path outBase = tempDir.resolve("out");
+
+    // 圧縮スレッドは2つのファイルのワーカーで共有する
+    new FileMaskingProcessor()
+        .process(
+            request(inputBase, outBase, CompiledRuleSet.of(List.of(token)))
+                .withOptions(
+                    new ProcessingOptions()
+                        .setOutputCompression(OutputCompression.GZIP)
+                        .setCompressionThreads(3)
+                        .setParallelism(2)));
+
+    assertEquals(expected.toString(), gunzip(outBase.resolve("big.log.gz")));
+    assertEquals(expected.toString(), gunzip(outBase.resolve("packed.log.gz")));
+    assertEquals(
+        "token=[MASKED]" + System.lineSeparator(), gunzip(outBase.resolve("small.log.gz")));
+
+    // 並列に圧縮するかは書き出した量で決まる（gzip の入力は展開後の量）。小さな出力は1メンバーのまま
+    assertTrue(gzipMembers(outBase.resolve("big.log.gz")) > 1);
+    assertTrue(gzipMembers(outBase.resolve("packed.log.gz")) > 1);
+    assertEquals(1, gzipMembers(outBase.resolve("small.log.gz")));
+  }
+
+  // zip のエントリごとにマスキングし、同じ構造の zip を出力してエントリごとの結果を載せることを確認
+  @Test
+  void process_zip_archive_masks_entries_without_extracting() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    ByteArrayOutputStream nested = new ByteArrayOutputStream();
+    try (OutputStream gz = new GZIPOutputStream(nested)) {
+      gz.write("token=gz\n".getBytes(StandardCharsets.UTF_8));
+    }
+    byte[] core = {0x7F, 'E', 'L', 'F', 2, 1, 1, 0};
+    try (ZipOutputStream zip =
+        new ZipOutputStream(Files.newOutputStream(inputBase.resolve("bundle.zip")))) {
+      zip.putNextEntry(new ZipEntry("logs/"));
+      zip.closeEntry();
+      ZipEntry app = new ZipEntry("logs/app.log");
+      app.setLastModifiedTime(FileTime.fromMillis(1_700_000_000_000L));
+      zip.putNextEntry(app);
+      zip.write("token=a1 x\nplain\n".getBytes(StandardCharsets.UTF_8));
+      zip.closeEntry();
+      zip.putNextEntry(new ZipEntry("logs/old.log.gz"));
+      zip.write(nested.toByteArray());
+      zip.closeEntry();
+      putStored(zip, "logs/stored.log", "token=s1\n".getBytes(StandardCharsets.UTF_8));
+      putStored(zip, "core", core);
+    }
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    Path outBase = tempDir.resolve("out");
+    var report =
+        new FileMaskingProcessor()
+            .process(
+                ProcessingRequest.of(
+                        inputBase, outBase, CompiledRuleSet.of(List.of(token)), "_masked", false)
+                    .withOptions(new ProcessingOptions().setParallelism(2)));
+
+    Path outZip = outBase.resolve("bundle_masked.zip");
+    assertEquals(
+        List.of(
+            inputBase.resolve("bundle.zip").resolve("logs/app.log"),
+            inputBase.resolve("bundle.zip").resolve("logs/old.log.gz"),
+            inputBase.resolve("bundle.zip").resolve("logs/stored.log"),
+            inputBase.resolve("bundle.zip").resolve("core")),
+        report.files().stream().map(f -> f.inputFile()).toList());
+    assertEquals(outZip.resolve("logs/app.log"), report.files().get(0).outputFile());
+    assertEquals("magic:elf", report.files().get(3).skippedReason());
+    assertEquals(3L, report.totalCount());
+
+    // バイナリのエントリもそのまま残し、圧縮方法・拡張タイムスタンプを引き継ぐ
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    Map<String, ZipEntry> headers = new LinkedHashMap<>();
+    try (ZipInputStream zin = new ZipInputStream(Files.newInputStream(outZip))) {
+      ZipEntry e;
+      while ((e = zin.getNextEntry()) != null) {
+        entries.put(e.getName(), zin.readAllBytes());
+        headers.put(e.getName(), e);
+      }
+    }
+    String nl = System.lineSeparator();
+    assertEquals(
+        List.of("logs/", "logs/app.log", "logs/old.log.gz", "logs/stored.log", "core"),
+        List.copyOf(entries.keySet()));
+    assertEquals(
+        "token=[MASKED] x" + nl + "plain" + nl,
+        new String(entries.get("logs/app.log"), StandardCharsets.UTF_8));
+    assertEquals(
+        FileTime.fromMillis(1_700_000_000_000L),
+        headers.get("logs/app.log").getLastModifiedTime());
+    assertEquals(ZipEntry.DEFLATED, headers.get("logs/app.log").getMethod());
+    assertEquals(ZipEntry.STORED, headers.get("logs/stored.log").getMethod());
+    assertEquals(
+        "token=[MASKED]" + nl, new String(entries.get("logs/stored.log"), StandardCharsets.UTF_8));
+    assertEquals(ZipEntry.STORED, headers.get("core").getMethod());
+    assertArrayEquals(core, entries.get("core"));
+    try (InputStream in =
+        new GZIPInputStream(new ByteArrayInputStream(entries.get("logs/old.log.gz")))) {
+      assertEquals("token=[MASKED]" + nl, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+  }
+
+  // tar（gzip 圧縮を含む）のエントリごとにマスキングし、サイズを書き換えた tar を出力することを確認
+  @Test
+  void process_tar_gz_archive_rewrites_entry_sizes() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    ByteArrayOutputStream tar = new ByteArrayOutputStream();
+    tar.writeBytes(tarHeader("bundle/", 0, '5'));
+    byte[] app = "token=abc\nplain\n".getBytes(StandardCharsets.UTF_8);
+    tar.writeBytes(tarHeader("bundle/app.log", app.length, '0'));
+    tar.writeBytes(Arrays.copyOf(app, 512));
+    tar.writeBytes(new byte[1024]);
+    try (OutputStream gz =
+        new GZIPOutputStream(Files.newOutputStream(inputBase.resolve("bundle.tar.gz")))) {
+      gz.write(tar.toByteArray());
+    }
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    Path outBase = tempDir.resolve("out");
+    var report =
+        new FileMaskingProcessor()
+            .process(
+                ProcessingRequest.of(
+                        inputBase, outBase, CompiledRuleSet.of(List.of(token)), "_masked", false)
+                    .withOptions(new ProcessingOptions()));
+
+    assertEquals(1, report.files().size());
+    assertEquals(1L, report.totalCount());
+    assertEquals(
+        outBase.resolve("bundle_masked.tar.gz").resolve("bundle/app.log"),
+        report.files().get(0).outputFile());
+
+    byte[] out;
+    try (InputStream in =
+        new GZIPInputStream(Files.newInputStream(outBase.resolve("bundle_masked.tar.gz")))) {
+      out = in.readAllBytes();
+    }
+    assertEquals(0, out.length % 10240);
+    assertEquals("bundle/", new String(out, 0, 7, StandardCharsets.US_ASCII));
+    assertEquals("bundle/app.log", new String(out, 512, 14, StandardCharsets.US_ASCII));
+
+    String expected = "token=[MASKED]" + System.lineSeparator() + "plain" + System.lineSeparator();
+    long size = Long.parseLong(new String(out, 512 + 124, 11, StandardCharsets.US_ASCII), 8);
+    assertEquals(expected.length(), size);
+    assertEquals(expected, new String(out, 1024, (int) size, StandardCharsets.UTF_8));
+  }
+
+  // メモリに溜める上限を超える tar のエントリも書き出せ、バイナリのエントリはそのまま残ることを確認
+  @Test
+  void process_tar_spools_large_entries_and_keeps_binary_entries() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase);
+    StringBuilder sb = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; sb.length() <= ArchiveMasker.SPOOL_MEMORY_LIMIT + 4096; i++) {
+      sb.append("line ").append(i).append(" token=t").append(i).append('\n');
+      expected.append("line ").append(i).append(" token=[MASKED]").append(System.lineSeparator());
+    }
+    byte[] big = sb.toString().getBytes(StandardCharsets.UTF_8);
+    byte[] core = {0x7F, 'E', 'L', 'F', 2, 1, 1, 0};
+    ByteArrayOutputStream tar = new ByteArrayOutputStream();
+    tar.writeBytes(tarHeader("big.log", big.length, '0'));
+    tar.writeBytes(Arrays.copyOf(big, (big.length + 511) / 512 * 512));
+    tar.writeBytes(tarHeader("core", core.length, '0'));
+    tar.writeBytes(Arrays.copyOf(core, 512));
+    tar.writeBytes(new byte[1024]);
+    Files.write(inputBase.resolve("bundle.tar"), tar.toByteArray());
+
+    MaskRule token =
+        new MaskRule(
+            "token", "Token", true, Pattern.compile("token=[A-Za-z0-9]+"), "token=[MASKED]");
+    Path outBase = tempDir.resolve("out");
+    var report =
+        new FileMaskingProcessor()
+            .process(
+                ProcessingRequest.of(
+                        inputBase, outBase, CompiledRuleSet.of(List.of(token)), "", false)
+                    .withOptions(new ProcessingOptions()));
+
+    assertEquals(2, report.files().size());
+    assertEquals("magic:elf", report.files().get(1).skippedReason());
+
+    byte[] out = Files.readAllBytes(outBase.resolve("bundle.tar"));
+    byte[] masked = expected.toString().getBytes(StandardCharsets.UTF_8);
+    assertTrue(masked.length > ArchiveMasker.SPOOL_MEMORY_LIMIT);
+    assertEquals("big.log", new String(out, 0, 7, StandardCharsets.US_ASCII));
+    long size = Long.parseLong(new String(out, 124, 11, StandardCharsets.US_ASCII), 8);
+    assertEquals(masked.length, size);
+    assertArrayEquals(masked, Arrays.copyOfRange(out, 512, 512 + masked.length));
+
+    int coreHeader = 512 + (masked.length + 511) / 512 * 512;
+    assertEquals("core", new String(out, coreHeader, 4, StandardCharsets.US_ASCII));
+    assertEquals(
+        core.length,
+        Long.parseLong(new String(out, coreHeader + 124, 11, StandardCharsets.US_ASCII), 8));
+    assertArrayEquals(
+        core, Arrays.copyOfRange(out, coreHeader + 512, coreHeader + 512 + core.length));
+
+    // 一時ファイルは残さない
+    try (var files = Files.list(outBase)) {
+      assertEquals(List.of(outBase.resolve("bundle.tar")), files.toList());
+    }
+  }
+
+  /** 無圧縮（STORED）の zip エントリを書く。 */
+  private static void putStored(ZipOutputStream zip, String name, byte[] data) throws IOException {
+    ZipEntry e = new ZipEntry(name);
+    e.setMethod(ZipEntry.STORED);
+    e.setSize(data.length);
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    e.setCrc(crc.getValue());
+    zip.putNextEntry(e);
+    zip.write(data);
+    zip.closeEntry();
+  }
+
+  /** テスト用の ustar ヘッダー（チェックサム付き）。 */
+  private static byte[] tarHeader(String name, long size, char type) {
+    byte[] h = new byte[512];
+    byte[] n = name.getBytes(StandardCharsets.US_ASCII);
+    System.arraycopy(n, 0, h, 0, n.length);
+    putAscii(h, 100, String.format("%07o", 0644));
+    putAscii(h, 108, "0000000");
+    putAscii(h, 116, "0000000");
+    putAscii(h, 124, String.format("%011o", size));
+    putAscii(h, 136, String.format("%011o", 0));
+    h[156] = (byte) type;
+    putAscii(h, 257, "ustar");
+    putAscii(h, 263, "00");
+    Arrays.fill(h, 148, 156, (byte) ' ');
+    int sum = 0;
+    for (byte b : h) {
+      sum += b & 0xFF;
+    }
+    putAscii(h, 148, String.format("%06o", sum));
+    h[154] = 0;
+    return h;
+  }
+
+  private static void putAscii(byte[] h, int off, String s) {
+    byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+    System.arraycopy(b, 0, h, off, b.length);
+  }
+
+  /** 既定のサフィックス（なし）・本実行の依頼。 */
+  private static ProcessingRequest request(Path inputPath, Path outputBase, CompiledRuleSet rules) {
+    return ProcessingRequest.of(inputPath, outputBase, rules, "", false);
+  }
+
+  /** gzip ファイルのメンバー数（GZIPOutputStream が書く、拡張ヘッダーの無いメンバーを前提にする）。 */
+  private static int gzipMembers(Path file) throws Exception {
+    byte[] data = Files.readAllBytes(file);
+    int members = 0;
+    int pos = 0;
+    while (pos < data.length) {
+      assertEquals(0x1F, data[pos] & 0xFF);
+      assertEquals(0x8B, data[pos + 1] & 0xFF);
+      Inflater inflater = new Inflater(true);
+      inflater.setInput(data, pos + 10, data.length - pos - 10);
+      byte[] buf = new byte[64 * 1024];
+      while (!inflater.finished()) {
+        inflater.inflate(buf);
+      }
+      pos = data.length - inflater.getRemaining() + 8;
+      inflater.end();
+      members++;
+    }
+    return members;
+  }
+
+  private static String gunzip(Path file) throws IOException {
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
 }
@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -36,4 +37,78 @@ class InputFileCollectorTest {
     assertTrue(
         refs.stream().anyMatch(r -> r.relative().toString().replace('\\', '/').equals("root.log")));
   }
+
+  // include/exclude の glob で絞り込み、除外したディレクトリは辿らないことを確認
+  @Test
+  void collect_with_filter_applies_globs() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase.resolve("a/b"));
+    Files.createDirectories(inputBase.resolve("archive"));
+
+    Files.writeString(inputBase.resolve("a/b/app.log"), "x\n", StandardCharsets.UTF_8);
+    Files.writeString(inputBase.resolve("a/b/app.txt"), "x\n", StandardCharsets.UTF_8);
+    Files.writeString(inputBase.resolve("root.log"), "y\n", StandardCharsets.UTF_8);
+    Files.writeString(inputBase.resolve("archive/old.log"), "z\n", StandardCharsets.UTF_8);
+
+    InputFileCollector collector = new InputFileCollector();
+    List<InputFileRef> refs =
+        collector.collect(inputBase, InputFileFilter.of(List.of("*.log"), List.of("archive")));
+
+    assertEquals(
+        List.of("a/b/app.log", "root.log"),
+        refs.stream().map(r -> r.relative().toString().replace('\\', '/')).toList());
+  }
+
+  // 複数スレッドで辿った結果が、並べ直すと collect と同じになることを確認
+  @Test
+  void open_with_threads_streams_same_files_as_collect() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    for (int d = 0; d < 5; d++) {
+      Path dir = inputBase.resolve("d" + d + "/sub");
+      Files.createDirectories(dir);
+      for (int f = 0; f < 4; f++) {
+        Files.writeString(dir.resolve("f" + f + ".log"), "x\n", StandardCharsets.UTF_8);
+      }
+    }
+
+    InputFileCollector collector = new InputFileCollector();
+    List<InputFileRef> found = new ArrayList<>();
+    try (InputFileSource source = collector.open(inputBase, InputFileFilter.ALL, 3)) {
+      InputFileRef ref;
+      while ((ref = source.next()) != null) {
+        found.add(ref);
+      }
+    }
+    found.sort(InputFileCollector.ORDER);
+
+    List<InputFileRef> expected = new ArrayList<>(collector.collect(inputBase));
+    expected.sort(InputFileCollector.ORDER);
+    assertEquals(expected, found);
+  }
+
+  // 列挙時にサイズを取得し、LARGEST_FIRST ではサイズの降順（同じサイズは相対パス順）で返すことを確認
+  @Test
+  void open_with_largest_first_returns_files_by_size() throws Exception {
+    Path inputBase = tempDir.resolve("input");
+    Files.createDirectories(inputBase.resolve("sub"));
+    Files.writeString(inputBase.resolve("a.log"), "x".repeat(10), StandardCharsets.UTF_8);
+    Files.writeString(inputBase.resolve("sub/big.log"), "x".repeat(1000), StandardCharsets.UTF_8);
+    Files.writeString(inputBase.resolve("b.log"), "x".repeat(100), StandardCharsets.UTF_8);
+    Files.writeString(inputBase.resolve("c.log"), "x".repeat(10), StandardCharsets.UTF_8);
+
+    InputFileCollector collector = new InputFileCollector();
+    List<String> order = new ArrayList<>();
+    List<Long> sizes = new ArrayList<>();
+    try (InputFileSource source =
+        collector.open(inputBase, InputFileFilter.ALL, 0, InputFileCollector.LARGEST_FIRST)) {
+      InputFileRef ref;
+      while ((ref = source.next()) != null) {
+        order.add(ref.relative().toString().replace('\\', '/'));
+        sizes.add(ref.size());
+      }
+    }
+
+    assertEquals(List.of("sub/big.log", "b.log", "a.log", "c.log"), order);
+    assertEquals(List.of(1000L, 100L, 10L, 10L), sizes);
+  }
 }
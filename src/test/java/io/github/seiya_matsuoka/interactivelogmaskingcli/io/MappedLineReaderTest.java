@@ -0,0 +1,62 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedLineReaderTest {
+
+  @TempDir Path tempDir;
+
+  // 改行の種類・空行・マルチバイト文字・窓の境界をまたぐ行でも、BufferedReader#readLine と同じ行が返ることを確認
+  @Test
+  void readLine_matches_buffered_reader_across_windows() throws Exception {
+    Path file = tempDir.resolve("app.log");
+    Files.writeString(file, "a\r\n\r\nメール=a@example.com\rtoken=x\n\nend\r", StandardCharsets.UTF_8);
+
+    List<String> expected = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        expected.add(line);
+      }
+    }
+
+    // 窓サイズを変えて、境界の位置（\r と \n の間など）を一通り試す
+    for (int window = 32; window <= 64; window++) {
+      assertEquals(expected, readAll(file, window), "window=" + window);
+    }
+  }
+
+  // 不正な UTF-8 は BufferedReader と同様にエラーになることを確認
+  @Test
+  void readLine_rejects_malformed_utf8() throws Exception {
+    Path file = tempDir.resolve("bad.log");
+    Files.write(file, new byte[] {'o', 'k', '\n', (byte) 0xC3, '\n'});
+
+    try (MappedLineReader reader = new MappedLineReader(file, 16)) {
+      assertEquals("ok", reader.readLine());
+      assertThrows(MalformedInputException.class, reader::readLine);
+    }
+  }
+
+  private static List<String> readAll(Path file, int window) throws IOException {
+    List<String> lines = new ArrayList<>();
+    try (MappedLineReader reader = new MappedLineReader(file, window)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+}
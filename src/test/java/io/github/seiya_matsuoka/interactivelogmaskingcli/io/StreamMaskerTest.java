@@ -0,0 +1,101 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRuleCompiler;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRuleConfig;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRulesConfig;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.core.CompiledRuleSet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class StreamMaskerTest {
+
+  private static CompiledRuleSet tokenRules() {
+    return new MaskRuleCompiler()
+        .compileRuleSet(
+            new MaskRulesConfig()
+                .setVersion(1)
+                .setRules(
+                    List.of(
+                        new MaskRuleConfig()
+                            .setId("token")
+                            .setName("Token")
+                            .setPattern("token=([A-Za-z0-9]+)")
+                            .setReplacement("token=***"))));
+  }
+
+  // 行ごとにマスキングされ、改行は入力のまま残ることを確認
+  @Test
+  void process_masks_lines_and_keeps_line_endings() throws Exception {
+    byte[] input = "a token=abc\r\nユーザー\rtoken=Z9\n\nend token=x".getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    for (boolean byteLevel : new boolean[] {false, true}) {
+      out.reset();
+      var report =
+          new StreamMasker()
+              .process(
+                  new ByteArrayInputStream(input),
+                  out,
+                  tokenRules(),
+                  new ProcessingOptions().setByteLevelMasking(byteLevel));
+
+      assertEquals(
+          "a token=***\r\nユーザー\rtoken=***\n\nend token=***",
+          out.toString(StandardCharsets.UTF_8));
+      assertEquals(3L, report.totalCount());
+      assertEquals(Map.of("token", 3L), report.countsPerRule());
+      assertEquals(StreamMasker.STDIO, report.inputFile());
+    }
+  }
+
+  // 入力を待つ前には、flush 間隔を待たずに出力が flush されることを確認
+  @Test
+  void process_flushes_before_waiting_for_input() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[][] chunks = {
+      "token=first\n".getBytes(StandardCharsets.UTF_8), "token=second\n".getBytes(StandardCharsets.UTF_8)
+    };
+
+    // 1回の read で1チャンクだけ返し、すぐに読めるデータは無い（available = 0）入力
+    InputStream slow =
+        new InputStream() {
+          int next = 0;
+
+          @Override
+          public int read() {
+            throw new UnsupportedOperationException();
+          }
+
+          @Override
+          public int read(byte[] b, int off, int len) {
+            if (next == 1) {
+              // 2つ目を読む時点で、1行目はすでに出力されている
+              assertEquals("token=***\n", out.toString(StandardCharsets.UTF_8));
+            }
+            if (next >= chunks.length) {
+              return -1;
+            }
+            byte[] c = chunks[next++];
+            System.arraycopy(c, 0, b, off, c.length);
+            return c.length;
+          }
+
+          @Override
+          public int available() {
+            return 0;
+          }
+        };
+
+    new StreamMasker()
+        .process(slow, out, tokenRules(), new ProcessingOptions().setStreamFlushMillis(60_000));
+
+    assertEquals("token=***\ntoken=***\n", out.toString(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,66 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class MetricsExporterTest {
+
+  // HTTP の /metrics で、その時点の値が Prometheus のテキスト形式で返ることを確認
+  @Test
+  void serves_current_metrics_over_http() throws Exception {
+    MaskMetrics metrics = new MaskMetrics();
+    metrics.hits("token").add(5);
+    metrics.hits("mail\"x").add(1);
+    metrics.addInput(10, 300);
+    metrics.fileCompleted(2_000_000L);
+    metrics.lineMasked(3_000L);
+    metrics.lineMasked(2_000_000_000L);
+
+    int port;
+    try (ServerSocket s = new ServerSocket(0)) {
+      port = s.getLocalPort();
+    }
+
+    try (MetricsExporter exporter = MetricsExporter.start(metrics, null, 1000, port)) {
+      assertEquals(port, exporter.port());
+
+      List<String> lines = get(port);
+      assertTrue(lines.contains("# TYPE logmask_hits_total counter"), lines.toString());
+      assertTrue(lines.contains("logmask_hits_total{rule=\"token\"} 5"), lines.toString());
+      // ラベル値の " はエスケープする
+      assertTrue(lines.contains("logmask_hits_total{rule=\"mail\\\"x\"} 1"), lines.toString());
+      assertTrue(lines.contains("logmask_lines_total 10"), lines.toString());
+      assertTrue(lines.contains("logmask_bytes_total 300"), lines.toString());
+
+      // ヒストグラムは上限以下の件数の累積（1µs 超 5µs 以下に1件、1s 超に1件）
+      assertTrue(lines.contains("logmask_line_mask_duration_seconds_bucket{le=\"1.0E-6\"} 0"));
+      assertTrue(lines.contains("logmask_line_mask_duration_seconds_bucket{le=\"5.0E-6\"} 1"));
+      assertTrue(lines.contains("logmask_line_mask_duration_seconds_bucket{le=\"1.0\"} 1"));
+      assertTrue(lines.contains("logmask_line_mask_duration_seconds_bucket{le=\"+Inf\"} 2"));
+      assertTrue(lines.contains("logmask_line_mask_duration_seconds_count 2"));
+      assertTrue(lines.contains("logmask_file_duration_seconds_bucket{le=\"0.01\"} 1"));
+
+      // 値は要求のたびに読み直す
+      metrics.addInput(1, 1);
+      assertTrue(get(port).contains("logmask_lines_total 11"));
+    }
+  }
+
+  private static List<String> get(int port) throws Exception {
+    URI uri = URI.create("http://127.0.0.1:" + port + "/metrics");
+    HttpURLConnection c = (HttpURLConnection) uri.toURL().openConnection();
+    try {
+      assertEquals(200, c.getResponseCode());
+      assertTrue(c.getContentType().startsWith("text/plain; version=0.0.4"));
+      return new String(c.getInputStream().readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+    } finally {
+      c.disconnect();
+    }
+  }
+}
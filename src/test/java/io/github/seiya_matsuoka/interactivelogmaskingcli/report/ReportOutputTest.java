@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRuleConfig;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRulesConfig;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.ProcessingOptions;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.service.FileMaskingService;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.service.RunPlan;
 import java.nio.charset.StandardCharsets;
@@ -117,4 +118,148 @@ class ReportOutputTest {
     assertNotNull(rulesSource);
     assertEquals("interactive", rulesSource.get("type"));
   }
+
+  // 並列処理・列挙しながらの処理でも、ファイル別の結果が相対パスの順に書き足され、最後に集計が書かれることを確認
+  @Test
+  void streams_file_entries_and_writes_summary_last() throws Exception {
+
+    Path input = tempDir.resolve("input");
+    Files.createDirectories(input);
+    // 大きいファイルから投入されるよう、名前の順とサイズの順をずらす
+    for (int i = 0; i < 20; i++) {
+      String padding = " ".repeat((i * 7 % 20) * 4096);
+      Files.writeString(
+          input.resolve("app" + i + ".log"), "token=t" + i + " token=x\n" + padding + "\n");
+    }
+    Files.write(input.resolve("core.bin"), new byte[] {0x7F, 'E', 'L', 'F', 0, 0, 0, 0});
+
+    Path out = tempDir.resolve("out");
+    MaskRulesConfig config =
+        new MaskRulesConfig()
+            .setVersion(1)
+            .setRules(
+                List.of(
+                    new MaskRuleConfig()
+                        .setId("token")
+                        .setName("Token")
+                        .setPattern("token=[A-Za-z0-9]+")
+                        .setReplacement("token=[MASKED]")));
+
+    RunPlan plan =
+        new RunPlan(
+            input,
+            out,
+            null,
+            config,
+            "",
+            false,
+            new ProcessingOptions().setParallelism(4).setDiscoveryThreads(2));
+    MaskRunReport report = new FileMaskingService().run(plan);
+
+    List<Path> reports =
+        Files.list(out)
+            .filter(p -> p.getFileName().toString().startsWith("report-"))
+            .collect(Collectors.toList());
+    assertEquals(1, reports.size());
+
+    String json = Files.readString(reports.get(0));
+    assertTrue(json.indexOf("\"files\"") < json.indexOf("\"summary\""));
+
+    Map<?, ?> root = new ObjectMapper().readValue(reports.get(0).toFile(), Map.class);
+    List<?> files = (List<?>) root.get("files");
+    assertEquals(21, files.size());
+
+    // 並びは逐次処理と同じ（戻り値の files も同じ順で、すべて載る）
+    List<String> names =
+        files.stream()
+            .map(f -> Path.of((String) ((Map<?, ?>) f).get("inputFile")).getFileName().toString())
+            .collect(Collectors.toList());
+    assertEquals(names.stream().sorted().collect(Collectors.toList()), names);
+    assertEquals(
+        names,
+        report.files().stream()
+            .map(f -> f.inputFile().getFileName().toString())
+            .collect(Collectors.toList()));
+    assertTrue(((Number) root.get("durationMs")).longValue() >= 0);
+
+    Map<?, ?> summary = (Map<?, ?>) root.get("summary");
+    assertEquals(21, ((Number) summary.get("files")).intValue());
+    assertEquals(1, ((Number) summary.get("skippedFiles")).intValue());
+    assertEquals(40L, ((Number) summary.get("totalCount")).longValue());
+    Map<?, ?> totalPerRule = (Map<?, ?>) summary.get("totalPerRule");
+    assertEquals(40L, ((Number) totalPerRule.get("token")).longValue());
+  }
+
+  // 計測を有効にした場合のみ、ルールごとの処理時間とファイルごとの処理量がレポートに入ることを確認
+  @Test
+  void writes_metrics_only_when_enabled() throws Exception {
+
+    Path input = tempDir.resolve("input");
+    Files.createDirectories(input);
+    Files.writeString(input.resolve("app.log"), "token=a\ntoken=b\nplain\n");
+
+    MaskRulesConfig config =
+        new MaskRulesConfig()
+            .setVersion(1)
+            .setRules(
+                List.of(
+                    new MaskRuleConfig()
+                        .setId("token")
+                        .setName("Token")
+                        .setPattern("token=[A-Za-z0-9]+")
+                        .setReplacement("token=[MASKED]")));
+
+    for (boolean metrics : new boolean[] {true, false}) {
+      Path out = tempDir.resolve("out-" + metrics);
+      RunPlan plan =
+          new RunPlan(
+              input,
+              out,
+              null,
+              config,
+              "",
+              false,
+              new ProcessingOptions().setCollectMetrics(metrics));
+      new FileMaskingService().run(plan);
+
+      Path report;
+      try (var files = Files.list(out)) {
+        report =
+            files
+                .filter(p -> p.getFileName().toString().startsWith("report-"))
+                .findFirst()
+                .orElseThrow();
+      }
+      Map<?, ?> root = new ObjectMapper().readValue(report.toFile(), Map.class);
+      Map<?, ?> rule = (Map<?, ?>) ((Map<?, ?>) root.get("ruleMeta")).get("token");
+      Map<?, ?> file = (Map<?, ?>) ((List<?>) root.get("files")).get(0);
+
+      assertEquals("Token", rule.get("name"));
+      assertEquals(metrics, rule.containsKey("nanos"));
+      assertEquals(metrics, file.containsKey("bytesPerSec"));
+      if (metrics) {
+        assertEquals(3, ((Number) file.get("lines")).intValue());
+        assertEquals(22, ((Number) file.get("bytes")).intValue());
+      }
+    }
+  }
+
+  // finish せずに閉じた（実行が失敗した）場合は、書きかけのレポートを残さないことを確認
+  @Test
+  void discards_partial_report_when_not_finished() throws Exception {
+
+    Path out = tempDir.resolve("out");
+    MaskRulesConfig config = new MaskRulesConfig().setVersion(1).setRules(List.of());
+    RunPlan plan = RunPlan.ofConfig(tempDir.resolve("input"), out, config, "", false);
+
+    Path path;
+    try (ReportStream stream = new ReportWriter().open(plan, config)) {
+      path = stream.path();
+      stream.completed(
+          List.of(new MaskedFileReport(Path.of("a.log"), Path.of("out/a.log"), Map.of(), 0)));
+      assertTrue(Files.exists(path));
+    }
+
+    assertFalse(Files.exists(path));
+  }
 }
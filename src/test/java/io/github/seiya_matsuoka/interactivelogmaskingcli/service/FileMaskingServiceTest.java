@@ -7,10 +7,19 @@ import io.github.seiya_matsuoka.interactivelogmaskingcli.config.MaskRulesConfig;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.RuleFlag;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.RuleValidationException;
 import io.github.seiya_matsuoka.interactivelogmaskingcli.config.RulesRepository;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.io.ProcessingOptions;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.jfr.MaskFileEvent;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.jfr.MaskRuleEvent;
+import io.github.seiya_matsuoka.interactivelogmaskingcli.jfr.ReportWriteEvent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -92,4 +101,169 @@ class FileMaskingServiceTest {
         RuleValidationException.class,
         () -> service.maskToOut(inputFile, outBase, invalid, "_masked"));
   }
+
+  // 入力ストリーム → 出力ストリームで処理し、指定したパスへレポートが出力されることを確認
+  @Test
+  void runStream_masks_stream_and_writes_report() throws Exception {
+
+    Path rulesPath = tempDir.resolve("rules.json");
+    new RulesRepository()
+        .save(
+            rulesPath,
+            new MaskRulesConfig()
+                .setVersion(1)
+                .setRules(
+                    List.of(
+                        new MaskRuleConfig()
+                            .setId("email")
+                            .setName("Email")
+                            .setPattern("[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}")
+                            .setReplacement("[MASKED_EMAIL]"))));
+
+    Path reportFile = tempDir.resolve("reports/stream.json");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    var report =
+        new FileMaskingService()
+            .runStream(
+                new StreamPlan(rulesPath, reportFile, null),
+                new ByteArrayInputStream(
+                    "mail=a@example.com\nplain\n".getBytes(StandardCharsets.UTF_8)),
+                out);
+
+    assertEquals("mail=[MASKED_EMAIL]\nplain\n", out.toString(StandardCharsets.UTF_8));
+    assertEquals(1L, report.totalCount());
+    assertTrue(Files.exists(reportFile));
+    assertTrue(Files.readString(reportFile).contains("\"totalCount\" : 1"));
+  }
+
+  // JFR で記録すると、レポートの隣に .jfr ができ、ファイル・遅いルール・レポート出力のイベントが入ることを確認
+  @Test
+  void run_with_flight_recording_writes_jfr_next_to_report() throws Exception {
+
+    Path input = tempDir.resolve("input");
+    Files.createDirectories(input);
+    Files.writeString(input.resolve("app.log"), "token=abc\n" + "a".repeat(3000) + "\n");
+
+    // マッチしない行では各位置から行末まで読むため、行の長さの2乗の時間がかかるルール（しきい値を超えて記録される）
+    MaskRulesConfig config =
+        new MaskRulesConfig()
+            .setVersion(1)
+            .setRules(
+                List.of(
+                    new MaskRuleConfig()
+                        .setId("token")
+                        .setName("Token")
+                        .setPattern("token=[a-z]+")
+                        .setReplacement("token=[MASKED]"),
+                    new MaskRuleConfig()
+                        .setId("slow")
+                        .setName("Slow")
+                        .setPattern("a*[0-9]")
+                        .setReplacement("x")));
+
+    Path out = tempDir.resolve("out");
+    RunPlan plan =
+        new RunPlan(
+            input, out, null, config, "", false, new ProcessingOptions().setFlightRecording(true));
+    new FileMaskingService().run(plan);
+
+    List<Path> reports;
+    try (var files = Files.list(out)) {
+      reports = files.filter(p -> p.getFileName().toString().startsWith("report-")).toList();
+    }
+    Path json = reports.stream().filter(p -> p.toString().endsWith(".json")).findFirst().get();
+    Path jfr = reports.stream().filter(p -> p.toString().endsWith(".jfr")).findFirst().get();
+    assertEquals(
+        json.getFileName().toString().replace(".json", ".jfr"), jfr.getFileName().toString());
+
+    List<RecordedEvent> events =
+        RecordingFile.readAllEvents(jfr).stream()
+            .filter(e -> e.getEventType().getName().startsWith("io.github.seiya_matsuoka"))
+            .collect(Collectors.toList());
+
+    RecordedEvent file = find(events, MaskFileEvent.NAME);
+    assertTrue(file.getString("path").endsWith("app.log"));
+    assertEquals(2L, file.getLong("lines"));
+    assertEquals(1L, file.getLong("hits"));
+
+    // 短い行も初回（JIT 前）はしきい値を超えることがあるため、長い行での遅いルールの記録があることだけを確かめる
+    assertTrue(
+        events.stream()
+            .filter(e -> e.getEventType().getName().equals(MaskRuleEvent.NAME))
+            .anyMatch(e -> "slow".equals(e.getString("ruleId")) && e.getInt("inputLength") == 3000),
+        "長い行での slow の記録がありません");
+
+    RecordedEvent report = find(events, ReportWriteEvent.NAME);
+    assertEquals(json.toString(), report.getString("path"));
+    assertEquals(1, report.getInt("files"));
+  }
+
+  // メトリクスのファイルを指定すると、実行の終わりに処理量・ルール別件数・所要時間の分布が Prometheus の形式で書かれることを確認
+  @Test
+  void run_and_runStream_write_prometheus_metrics_file() throws Exception {
+
+    Path input = tempDir.resolve("input");
+    Files.createDirectories(input.resolve("sub"));
+    Files.writeString(input.resolve("a.log"), "token=abc\nplain\n");
+    Files.writeString(input.resolve("sub/b.log"), "token=x token=y\n");
+
+    MaskRulesConfig config =
+        new MaskRulesConfig()
+            .setVersion(1)
+            .setRules(
+                List.of(
+                    new MaskRuleConfig()
+                        .setId("token")
+                        .setName("Token")
+                        .setPattern("token=[a-z]+")
+                        .setReplacement("token=[MASKED]"),
+                    new MaskRuleConfig()
+                        .setId("email")
+                        .setName("Email")
+                        .setPattern("[a-z]+@[a-z]+\\.com")
+                        .setReplacement("[MASKED_EMAIL]")));
+
+    Path metricsFile = tempDir.resolve("metrics/logmask.prom");
+    ProcessingOptions options = new ProcessingOptions().setMetricsFile(metricsFile);
+    new FileMaskingService()
+        .run(new RunPlan(input, tempDir.resolve("out"), null, config, "", false, options));
+
+    List<String> lines = Files.readAllLines(metricsFile);
+    assertTrue(lines.contains("logmask_files_total 2"), lines.toString());
+    assertTrue(lines.contains("logmask_lines_total 3"), lines.toString());
+    assertTrue(lines.contains("logmask_bytes_total 32"), lines.toString());
+    assertTrue(lines.contains("logmask_hits_total{rule=\"token\"} 3"), lines.toString());
+    // 一度も置換の無いルールも 0 として出力する
+    assertTrue(lines.contains("logmask_hits_total{rule=\"email\"} 0"), lines.toString());
+    assertTrue(lines.contains("logmask_file_duration_seconds_count 2"), lines.toString());
+    assertTrue(lines.contains("logmask_file_duration_seconds_bucket{le=\"+Inf\"} 2"));
+    // 1行の時間は一部の行（最初の行から一定間隔）だけ計測する
+    assertTrue(lines.contains("logmask_line_mask_duration_seconds_count 1"), lines.toString());
+    assertFalse(Files.exists(metricsFile.resolveSibling("logmask.prom.tmp")));
+
+    // ストリームの処理でも同じ形式で書く
+    Path rulesPath = tempDir.resolve("rules.json");
+    new RulesRepository().save(rulesPath, config);
+    Path streamMetrics = tempDir.resolve("stream.prom");
+    new FileMaskingService()
+        .runStream(
+            new StreamPlan(
+                rulesPath, null, new ProcessingOptions().setMetricsFile(streamMetrics)),
+            new ByteArrayInputStream("token=abc\nplain\n".getBytes(StandardCharsets.UTF_8)),
+            new ByteArrayOutputStream());
+
+    List<String> stream = Files.readAllLines(streamMetrics);
+    assertTrue(stream.contains("logmask_lines_total 2"), stream.toString());
+    assertTrue(stream.contains("logmask_bytes_total 16"), stream.toString());
+    assertTrue(stream.contains("logmask_hits_total{rule=\"token\"} 1"), stream.toString());
+    assertTrue(stream.contains("logmask_files_total 0"), stream.toString());
+  }
+
+  private static RecordedEvent find(List<RecordedEvent> events, String name) {
+    return events.stream()
+        .filter(e -> e.getEventType().getName().equals(name))
+        .findFirst()
+        .orElseThrow(() -> new AssertionError("イベントがありません: " + name));
+  }
 }
@@ -0,0 +1,30 @@
+package io.github.seiya_matsuoka.interactivelogmaskingcli.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+
+class PathUtilTest {
+
+  // サフィックスは拡張子の前に入り、".gz" はその手前の拡張子と合わせて残ることを確認
+  @Test
+  void withSuffix_keeps_gz_extension() {
+    assertEquals("app_masked.log", PathUtil.withSuffix("app.log", "_masked"));
+    assertEquals("app_masked.log.gz", PathUtil.withSuffix("app.log.gz", "_masked"));
+    assertEquals("app_masked.gz", PathUtil.withSuffix("app.gz", "_masked"));
+    assertEquals(".env_masked", PathUtil.withSuffix(".env", "_masked"));
+  }
+
+  // 圧縮するかに合わせて ".gz" を付ける/外すことを確認
+  @Test
+  void withGzipExtension_adds_or_removes_gz() {
+    Path out = Path.of("out", "a");
+    assertEquals(
+        out.resolve("app.log.gz"), PathUtil.withGzipExtension(out.resolve("app.log"), true));
+    assertEquals(
+        out.resolve("app.log"), PathUtil.withGzipExtension(out.resolve("app.log.gz"), false));
+    assertEquals(
+        out.resolve("app.log"), PathUtil.withGzipExtension(out.resolve("app.log"), false));
+  }
+}